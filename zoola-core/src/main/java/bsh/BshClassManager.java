@@ -31,6 +31,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Map;
@@ -111,6 +112,12 @@ public class BshClassManager
 	private transient Set<String> definingClasses = Collections.synchronizedSet(new HashSet<String>());
 	protected transient Map<String,String> definingClassesBaseNames = new Hashtable<String,String>();
 
+	/**
+		Locks serializing the definition of classes by base name, with the
+		number of threads using each, created when first needed.
+	*/
+	private transient Map<String,DefiningClassLock> definingClassLocks;
+
 	private static final Map<BshClassManager,Object> classManagers = Collections.synchronizedMap(new WeakHashMap<BshClassManager,Object>());
 
 	static void clearResolveCache() {
@@ -446,19 +453,81 @@ public class BshClassManager
 		so we'll try it for now.
 	*/
 	protected void definingClass( String className ) {
+		String baseName = getDefiningBaseName( className );
+		synchronized( definingClassesBaseNames ) {
+			String cur = definingClassesBaseNames.get( baseName );
+			if ( cur != null )
+				throw new InterpreterError("Defining class problem: "+className 
+					+": BeanShell cannot yet simultaneously define two or more "
+					+"dependant classes of the same name.  Attempt to define: "
+					+ className +" while defining: "+cur 
+				);
+			definingClasses.add( className );
+			definingClassesBaseNames.put( baseName, className );
+		}
+	}
+
+	/**
+		Get the lock which must be held while defining the specified class.
+		Classes sharing a base name (see definingClass()) are defined one at a
+		time, so that a thread defining a class waits for another thread
+		defining one of the same name rather than failing; classes of
+		different names may be defined in parallel.
+		<p>
+		Each lock obtained must be released with releaseDefiningClassLock()
+		when it is no longer held, so that the locks of names which are not
+		being defined are dropped.
+	*/
+	protected synchronized Object getDefiningClassLock( String className ) {
+		if ( definingClassLocks == null )
+			definingClassLocks = new HashMap<String,DefiningClassLock>();
+		String baseName = getDefiningBaseName( className );
+		DefiningClassLock lock = definingClassLocks.get( baseName );
+		if ( lock == null ) {
+			lock = new DefiningClassLock();
+			definingClassLocks.put( baseName, lock );
+		}
+		lock.users++;
+		return lock;
+	}
+
+	/**
+		Release a lock obtained with getDefiningClassLock().
+	*/
+	protected synchronized void releaseDefiningClassLock( String className, Object lock ) {
+		if ( --((DefiningClassLock)lock).users == 0 )
+			definingClassLocks.remove( getDefiningBaseName( className ) );
+	}
+
+	private static final class DefiningClassLock {
+		int users;
+	}
+
+	private static String getDefiningBaseName( String className ) {
 		String baseName = Name.suffix(className,1);
 		int i = baseName.indexOf("$");
 		if ( i != -1 )
 			baseName = baseName.substring(i+1);
-		String cur = definingClassesBaseNames.get( baseName );
-		if ( cur != null )
-			throw new InterpreterError("Defining class problem: "+className 
-				+": BeanShell cannot yet simultaneously define two or more "
-				+"dependant classes of the same name.  Attempt to define: "
-				+ className +" while defining: "+cur 
-			);
-		definingClasses.add( className );
-		definingClassesBaseNames.put( baseName, className );
+		return baseName;
+	}
+
+	/**
+		Wait while another thread is defining the specified class.  The class
+		can be loaded as soon as its bytecode is defined, but it can't be
+		instantiated before the rest of its definition is complete.  The
+		defining thread itself holds the lock and passes.
+	*/
+	public void awaitClassDefinition( String className ) {
+		if ( isClassBeingDefined( className ) ) {
+			Object lock = getDefiningClassLock( className );
+			try {
+				synchronized( lock ) {
+					// the definition is complete
+				}
+			} finally {
+				releaseDefiningClassLock( className, lock );
+			}
+		}
 	}
 
 	protected boolean isClassBeingDefined( String className ) {
@@ -478,10 +547,17 @@ public class BshClassManager
 		Indicate that the specified class name has been defined and may be
 		loaded normally.
 	*/
+	/*
+		Note: the base name of an inner class stays registered after it is
+		defined; getClassBeingDefined() relies on it to resolve the inner
+		class name while the enclosing class is generated.
+	*/
 	protected void doneDefiningClass( String className ) {
 		String baseName = Name.suffix(className,1);
-		definingClasses.remove( className );
-		definingClassesBaseNames.remove( baseName );
+		synchronized( definingClassesBaseNames ) {
+			definingClasses.remove( className );
+			definingClassesBaseNames.remove( baseName );
+		}
 	}
 
 	/*
@@ -26,11 +26,15 @@ package bsh;
 
 import bsh.ast.BSHBlock;
 import bsh.ast.BSHMethodDeclaration;
+import bsh.ast.Node;
 import bsh.ast.SimpleNode;
 import bsh.interpreter.BshEvaluatingVisitor;
+import bsh.interpreter.Generator;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Set;
 
 /**
 	This represents an instance of a bsh method declaration in a particular
@@ -76,6 +80,9 @@ public class BshMethod
 	private Method javaMethod;
 	private Object javaObject;
 
+	/** The results of a memoized method, see getMemoCache() */
+	private transient volatile MemoCache memoCache;
+
 	// End method components
 
 	public BshMethod(
@@ -143,6 +150,24 @@ public class BshMethod
 
 	public Modifiers getModifiers() { return modifiers; }
 
+	/**
+		Get the cache of results of a method declared "memoized".
+		@return the cache, or null if the method is not memoized
+	*/
+	public MemoCache getMemoCache() 
+	{
+		if ( modifiers == null || !modifiers.hasModifier( Modifiers.MEMOIZED ) )
+			return null;
+		MemoCache cache = memoCache;
+		if ( cache == null )
+			synchronized ( this ) {
+				if ( memoCache == null )
+					memoCache = new MemoCache();
+				cache = memoCache;
+			}
+		return cache;
+	}
+
 	public String getName() { return name; }
 
 	/**
@@ -226,8 +251,33 @@ public class BshMethod
 					e2, callerInfo, visitor.getCallstack(), true/*isNative*/ );
 			}
 
+		MemoCache memo = overrideNameSpace ? null : getMemoCache();
+		if ( memo != null )
+		{
+			Object key = MemoCache.keyOf( argValues == null ? 
+				new Object [0] : argValues );
+			Object value = memo.get( key );
+			if ( value == null ) {
+				value = invokeDeclared( 
+					argValues, visitor, callerInfo, overrideNameSpace );
+				memo.put( key, value );
+			}
+			return value;
+		}
+		return invokeDeclared( 
+			argValues, visitor, callerInfo, overrideNameSpace );
+	}
+
+	/**
+		Invoke the scripted method, holding the lock of a synchronized method.
+	*/
+	private Object invokeDeclared(
+		Object[] argValues, BshEvaluatingVisitor visitor,
+			SimpleNode callerInfo, boolean overrideNameSpace ) 
+		throws EvalError 
+	{
 		// is this a syncrhonized method?
-		if ( modifiers != null && modifiers.hasModifier("synchronized") )
+		if ( modifiers != null && modifiers.hasModifier( Modifier.SYNCHRONIZED ) )
 		{
 			// The lock is our declaring namespace's This reference
 			// (the method's 'super').  Or in the case of a class it's the
@@ -265,7 +315,7 @@ public class BshMethod
 
 		// If null callstack
 		if ( visitor.getCallstack() == null )
-            visitor = new BshEvaluatingVisitor(new CallStack(declaringNameSpace), visitor.getInterpreter());
+            visitor = BshEvaluatingVisitor.create(new CallStack(declaringNameSpace), visitor.getInterpreter());
 			//callstack = new CallStack( declaringNameSpace );
 
 		if ( argValues == null )
@@ -351,6 +401,11 @@ public class BshMethod
 			}
 		}
 
+		// A method body with yield statements is run by the generator
+		Set<Node> yielding = Generator.yielding( methodBody, visitor.getCallstack() );
+		if ( yielding != null )
+			return generator( yielding, localNameSpace, visitor, callerInfo );
+
 		// Push the new namespace on the call stack
 		if ( !overrideNameSpace )
 			visitor.getCallstack().push( localNameSpace );
@@ -412,6 +467,36 @@ public class BshMethod
 		return ret;
 	}
 
+	/**
+		Create the generator of an invocation of a generator method, whose
+		body is run as its elements are asked for.
+	*/
+	private Object generator( Set<Node> yielding, NameSpace localNameSpace,
+		BshEvaluatingVisitor visitor, SimpleNode callerInfo )
+		throws EvalError
+	{
+		Class returnType = getReturnType();
+		if ( returnType == Void.TYPE )
+			throw new EvalError( "Generator method cannot be void: " + name,
+				callerInfo, visitor.getCallstack() );
+
+		CallStack callstack = visitor.getCallstack().copy();
+		if ( localNameSpace != callstack.top() )
+			callstack.push( localNameSpace );
+		Generator generator = new Generator( methodBody, yielding,
+			callstack, visitor.getInterpreter() );
+
+		if ( returnType != null )
+			try {
+				Types.castObject( generator, returnType, Types.ASSIGNMENT );
+			} catch( UtilEvalError e ) {
+				throw e.toEvalError(
+					"Incorrect type returned from generator method: " 
+					+ name + e.getMessage(), callerInfo, visitor.getCallstack() );
+			}
+		return generator;
+	}
+
 	public boolean hasModifier( String name ) {
 		return modifiers != null && modifiers.hasModifier(name);
 	}
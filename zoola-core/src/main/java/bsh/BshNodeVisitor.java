@@ -79,10 +79,18 @@ public class BshNodeVisitor<T> {
         return null;
     }
 
+    public T visit(BSHIteratorExpression node) {
+        return null;
+    }
+
     public T visit(BSHImportDeclaration node) {
         return null;
     }
 
+    public T visit(BSHLambdaExpression node) {
+        return null;
+    }
+
     public T visit(BSHLiteral node) {
         return null;
     }
@@ -162,4 +170,8 @@ public class BshNodeVisitor<T> {
     public T visit(BSHWhileStatement node) {
         return null;
     }
+
+    public T visit(BSHYieldStatement node) {
+        return null;
+    }
 }
@@ -35,20 +35,25 @@ import javax.script.ScriptEngineFactory;
 import javax.script.ScriptException;
 import javax.script.SimpleBindings;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /*
 	Adopted from http://ikayzo.org/svn/beanshell/BeanShell/engine/src/bsh/engine/BshScriptEngine.java
 	Notes
 	This engine supports open-ended pluggable scriptcontexts
+
+	The engine is thread safe (THREADING=MULTITHREADED).  The engine
+	interpreter is shared and never modified after construction.  All state
+	of a call lives in its script context - the global namespace is stored
+	in the engine scope, see getEngineNameSpace() - or is created for the
+	call: a child interpreter printing to the writers of the context, and
+	the callstack.
 */
 
 public class BshScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
@@ -56,8 +61,11 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 	// engine scope map under this key.
 	static final String engineNameSpaceKey = "org_beanshell_engine_namespace";
 
-	private BshScriptEngineFactory factory;
-	private bsh.Interpreter interpreter;
+	private volatile BshScriptEngineFactory factory;
+	private final bsh.Interpreter interpreter;
+
+	private static final int MAX_CALL_SITES = 256;
+	private final ConcurrentMap<CallSiteKey, DelegateCallSite> callSites = new ConcurrentHashMap<CallSiteKey, DelegateCallSite>();
 
 
 	public BshScriptEngine() {
@@ -67,20 +75,26 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 
 	public BshScriptEngine(BshScriptEngineFactory factory) {
 		this.factory = factory;
-		getInterpreter(); // go ahead and prime the interpreter now
+		this.interpreter = new bsh.Interpreter();
+		interpreter.setNameSpace(null); // should always be set by context
 	}
 
 
 	protected Interpreter getInterpreter() {
-		if (interpreter == null) {
-			this.interpreter = new bsh.Interpreter();
-			interpreter.setNameSpace(null); // should always be set by context
-		}
-
 		return interpreter;
 	}
 
 
+	/**
+	 * Get an interpreter for a single call in the context.  It evaluates in
+	 * the global namespace of the context and prints to its writers.
+	 */
+	private Interpreter getCallInterpreter(ScriptContext scriptContext) {
+		return new Interpreter(interpreter, getEngineNameSpace(scriptContext),
+				toPrintStream(scriptContext.getWriter()), toPrintStream(scriptContext.getErrorWriter()));
+	}
+
+
 	public Object eval(String script, ScriptContext scriptContext) throws ScriptException {
 		return evalSource(script, scriptContext);
 	}
@@ -99,12 +113,7 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 
 
 	private Object evalSource(Object source, ScriptContext scriptContext) throws ScriptException {
-		bsh.NameSpace contextNameSpace = getEngineNameSpace(scriptContext);
-		Interpreter bsh = getInterpreter();
-		bsh.setNameSpace(contextNameSpace);
-
-		bsh.setOut(toPrintStream(scriptContext.getWriter()));
-		bsh.setErr(toPrintStream(scriptContext.getErrorWriter()));
+		Interpreter bsh = getCallInterpreter(scriptContext);
 
 		try {
 			if (source instanceof Reader) {
@@ -132,31 +141,39 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 	}
 
 
-	private PrintStream toPrintStream(final Writer writer) {
-		// This is a big hack, convert writer to PrintStream
-		return new PrintStream(new WriterOutputStream(writer));
+	/**
+	 * Get a print stream for the writer of a context.  Each call gets its own
+	 * stream: calls on other threads may print to the same or other writers,
+	 * and the stream keeps the bytes of a partly written character.
+	 */
+	private static PrintStream toPrintStream(final Writer writer) {
+		return new WriterPrintStream(writer);
 	}
 
 
 	/*
 		Check the context for an existing global namespace embedded
 		in the script context engine scope.  If none exists, ininitialize the
-		context with one.
+		context with one.  Concurrent calls in a new context get the same
+		namespace.
 	*/
 
 
 	private static NameSpace getEngineNameSpace(ScriptContext scriptContext) {
-		NameSpace ns = (NameSpace) scriptContext.getAttribute(engineNameSpaceKey, ScriptContext.ENGINE_SCOPE);
+		synchronized (scriptContext) {
+			NameSpace ns = (NameSpace) scriptContext.getAttribute(engineNameSpaceKey, ScriptContext.ENGINE_SCOPE);
 
-		if (ns == null) {
-			// Create a global namespace for the interpreter
-			Map<String, Object> engineView = new ScriptContextEngineView(scriptContext);
-			ns = new ExternalNameSpace(null/*parent*/, "javax_script_context", engineView);
+			if (ns == null) {
+				// Create a global namespace for the interpreter
+				Map<String, Object> engineView = new ScriptContextEngineView(scriptContext);
+				ns = new ExternalNameSpace(null/*parent*/, "javax_script_context", engineView);
+				ns.getClassManager(); // create it before the namespace is shared
 
-			scriptContext.setAttribute(engineNameSpaceKey, ns, ScriptContext.ENGINE_SCOPE);
-		}
+				scriptContext.setAttribute(engineNameSpaceKey, ns, ScriptContext.ENGINE_SCOPE);
+			}
 
-		return ns;
+			return ns;
+		}
 	}
 
 
@@ -191,17 +208,11 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 
 				@Override
 				public Object eval(ScriptContext context) throws ScriptException {
-					final HashMap<String, Object> map = new HashMap<String, Object>();
-					final List<Integer> scopes = new ArrayList<Integer>(context.getScopes());
-					Collections.sort(scopes); // lowest scope at first pos
-					Collections.reverse(scopes); // highest scope at first pos
-					for (final Integer scope : scopes) {
-						map.putAll(context.getBindings(scope));
-					}
-					preparsed.setOut(toPrintStream(context.getWriter()));
-					preparsed.setErr(toPrintStream(context.getErrorWriter()));
+					// the script reads the bindings it uses through the view, the
+					// scope of the lowest precedence wins as in getAttribute()
+					final Map<String, Object> bindings = new ScriptContextEngineView(context);
 					try {
-						return preparsed.invoke(map);
+						return preparsed.invoke(bindings, toPrintStream(context.getWriter()), toPrintStream(context.getErrorWriter()));
 					} catch (final EvalError e) {
 						throw constructScriptException(e);
 					}
@@ -286,19 +297,10 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 		bsh.This bshObject = (bsh.This) thiz;
 
 		try {
-			return bshObject.invokeMethod(name, args);
-		//} catch (ParseException e) {
-			// explicit parsing error
-		//	throw new ScriptException(e.toString(), e.getErrorSourceFile(), e.getErrorLineNumber());
-		} catch (TargetError e) {
-			// The script threw an application level exception
-			// set it as the cause ?
-			ScriptException se = new ScriptException(e.toString(), e.getErrorSourceFile(), e.getErrorLineNumber());
-			se.initCause(e.getTarget());
-			throw se;
+			return bshObject.invokeMethod(name, args, getCallInterpreter(getContext()),
+					null/*callstack*/, null/*callerInfo*/, false/*declaredOnly*/);
 		} catch (EvalError e) {
-			// The script couldn't be evaluated properly
-			throw new ScriptException(e.toString(), e.getErrorSourceFile(), e.getErrorLineNumber());
+			throw toScriptException(e);
 		} catch (InterpreterError e) {
 			// The interpreter had a fatal problem
 			throw new ScriptException(e.toString());
@@ -309,6 +311,9 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 	/**
 	 * Same as invoke(Object, String, Object...) with {@code null} as the
 	 * first argument.  Used to call top-level procedures defined in scripts.
+	 * <p/>
+	 * The procedure is resolved once for the name and the argument types and
+	 * then called directly until a procedure is redefined in the context.
 	 *
 	 * @param args Arguments to pass to the procedure
 	 * @return The value returned by the procedure
@@ -319,7 +324,152 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 	 * @throws NullPointerException		 if method name is null.
 	 */
 	public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
-		return invokeMethod(getGlobal(), name, args);
+		if (args == null) {
+			args = new Object[0];
+		}
+		final Class[] types = Types.getTypes(args);
+		final Object[] bshArgs = new Object[args.length];
+		for (int i = 0; i < args.length; i++) {
+			bshArgs[i] = args[i] == null ? Primitive.NULL : args[i];
+		}
+		return invoke(getCallSite(name, types), bshArgs);
+	}
+
+
+	/**
+	 * Get a handle calling the top-level procedure with the specified name
+	 * which accepts arguments of the specified types.  The handle resolves
+	 * the procedure on first call and keeps it until a procedure is redefined
+	 * in the script context, so it is the fastest way to call a procedure
+	 * repeatedly.  A handle may be used concurrently and calls the procedure
+	 * in the context of the engine at the time of the call.
+	 *
+	 * @param name	 The name of the procedure.
+	 * @param argTypes The types of the arguments, primitive types for
+	 *                 primitive parameters.
+	 * @return A handle calling the procedure.
+	 */
+	public FunctionHandle getFunctionHandle(String name, Class<?>... argTypes) {
+		if (name == null) {
+			throw new NullPointerException("name");
+		}
+		return new FunctionHandle(new DelegateCallSite(name, argTypes.clone()), argTypes.clone());
+	}
+
+
+	/**
+	 * A reusable invoker of a top-level procedure.
+	 *
+	 * @see #getFunctionHandle(String, Class[])
+	 */
+	public final class FunctionHandle {
+
+		private final DelegateCallSite callSite;
+		private final Class<?>[] argTypes;
+
+
+		private FunctionHandle(DelegateCallSite callSite, Class<?>[] argTypes) {
+			this.callSite = callSite;
+			this.argTypes = argTypes;
+		}
+
+
+		public String getName() {
+			return callSite.getName();
+		}
+
+
+		/**
+		 * Call the procedure with the arguments, which must match the types
+		 * the handle was created for.
+		 *
+		 * @return The value returned by the procedure.
+		 * @throws ScriptException if an error occurrs during invocation of
+		 *                         the procedure or no procedure accepts the
+		 *                         argument types.
+		 */
+		public Object invoke(Object... args) throws ScriptException {
+			if ((args == null ? 0 : args.length) != argTypes.length) {
+				throw new IllegalArgumentException("expected " + argTypes.length + " arguments for " + getName());
+			}
+			return BshScriptEngine.this.invoke(callSite, args == null ? args : Primitive.wrap(args, argTypes));
+		}
+	}
+
+
+	private Object invoke(DelegateCallSite callSite, Object[] args) throws ScriptException {
+		final ScriptContext context = getContext();
+		try {
+			return Primitive.unwrap(callSite.invoke(getGlobal(context), args == null ? new Object[0] : args, getCallInterpreter(context)));
+		} catch (EvalError e) {
+			throw toScriptException(e);
+		} catch (InterpreterError e) {
+			// The interpreter had a fatal problem
+			throw new ScriptException(e.toString());
+		}
+	}
+
+
+	/*
+		The call sites of the procedures called through invokeFunction() by
+		name and argument types.  A call site relinks itself when a procedure
+		is redefined or it is called in another context.
+	*/
+	private DelegateCallSite getCallSite(String name, Class[] types) {
+		final CallSiteKey key = new CallSiteKey(name, types);
+		DelegateCallSite callSite = callSites.get(key);
+		if (callSite == null) {
+			if (callSites.size() >= MAX_CALL_SITES) {
+				callSites.clear();
+			}
+			callSite = new DelegateCallSite(name, types);
+			final DelegateCallSite existing = callSites.putIfAbsent(key, callSite);
+			if (existing != null) {
+				callSite = existing;
+			}
+		}
+		return callSite;
+	}
+
+
+	private static final class CallSiteKey {
+
+		private final String name;
+		private final Class[] types;
+		private final int hashCode;
+
+
+		CallSiteKey(String name, Class[] types) {
+			this.name = name;
+			this.types = types;
+			this.hashCode = 31 * name.hashCode() + Arrays.hashCode(types);
+		}
+
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CallSiteKey)) {
+				return false;
+			}
+			final CallSiteKey other = (CallSiteKey) obj;
+			return name.equals(other.name) && Arrays.equals(types, other.types);
+		}
+	}
+
+
+	private static ScriptException toScriptException(EvalError e) {
+		final ScriptException se = new ScriptException(e.toString(), e.getErrorSourceFile(), e.getErrorLineNumber());
+		if (e instanceof TargetError) {
+			// The script threw an application level exception
+			se.initCause(((TargetError) e).getTarget());
+		}
+		return se;
 	}
 
 
@@ -368,38 +518,13 @@ public class BshScriptEngine extends AbstractScriptEngine implements Compilable,
 
 
 	private bsh.This getGlobal() {
-		// requires 2.0b5 to make getThis() public
-		return getEngineNameSpace(getContext()).getThis(getInterpreter());
+		return getGlobal(getContext());
 	}
 
-	/*
-		This is a total hack.  We need to introduce a writer to the
-		Interpreter.
-	*/
-
-	class WriterOutputStream extends OutputStream {
 
-		Writer writer;
-
-
-		WriterOutputStream(Writer writer) {
-			this.writer = writer;
-		}
-
-
-		public void write(int b) throws IOException {
-			writer.write(b);
-		}
-
-
-		public void flush() throws IOException {
-			writer.flush();
-		}
-
-
-		public void close() throws IOException {
-			writer.close();
-		}
+	private bsh.This getGlobal(ScriptContext scriptContext) {
+		// requires 2.0b5 to make getThis() public
+		return getEngineNameSpace(scriptContext).getThis(interpreter);
 	}
 
 }
@@ -25,7 +25,6 @@
 package bsh;
 
 import java.io.Serializable;
-import java.util.Stack;
 import java.util.EmptyStackException;
 
 /**
@@ -52,8 +51,27 @@ public final class CallStack implements Serializable {
 
 	private static final long serialVersionUID = 0L;
 
-	private final Stack<NameSpace> stack = new Stack<NameSpace>();
+	/**
+		An immutable stack entry.  Entries are shared between a stack and its
+		copies, so copying a stack is free.
+	*/
+	private static final class Frame implements Serializable {
+
+		private static final long serialVersionUID = 0L;
+
+		final NameSpace namespace;
+		final Frame next;
+		final int depth;
+
+		Frame( NameSpace namespace, Frame next ) {
+			this.namespace = namespace;
+			this.next = next;
+			this.depth = next == null ? 1 : next.depth + 1;
+		}
+	}
 
+	/** null when empty */
+	private Frame top;
 
 	public CallStack() { }
 
@@ -62,26 +80,29 @@ public final class CallStack implements Serializable {
 	}
 
 	public void clear() {
-		stack.removeAllElements();
+		top = null;
 	}
 
 	public void push( NameSpace ns ) {
-		stack.push( ns );
+		top = new Frame( ns, top );
 	}
 
 	public NameSpace top() {
-		return stack.peek();
+		if ( top == null )
+			throw new EmptyStackException();
+		return top.namespace;
 	}
 
 	/**
 		zero based.
 	*/
 	public NameSpace get(int depth) {
-		int size = stack.size();
-		if ( depth >= size )
+		if ( depth >= depth() )
 			return NameSpace.JAVACODE;
-		else
-			return stack.get(size-1-depth);
+		Frame frame = top;
+		for( int i=0; i<depth; i++ )
+			frame = frame.next;
+		return frame.namespace;
 	}
 	
 	/**
@@ -89,15 +110,23 @@ public final class CallStack implements Serializable {
 		zero based.
 	*/
 	public void set(int depth, NameSpace ns) {
-		stack.set( stack.size()-1-depth, ns );
+		top = set( top, depth, ns );
+	}
+
+	private static Frame set( Frame frame, int depth, NameSpace ns ) {
+		if ( frame == null )
+			throw new ArrayIndexOutOfBoundsException( depth );
+		if ( depth == 0 )
+			return new Frame( ns, frame.next );
+		return new Frame( frame.namespace, set( frame.next, depth-1, ns ) );
 	}
 
 	public NameSpace pop() {
-		try {
-			return stack.pop();
-		} catch(EmptyStackException e) {
+		if ( top == null )
 			throw new InterpreterError("pop on empty CallStack");
-		}
+		NameSpace ns = top.namespace;
+		top = top.next;
+		return ns;
 	}
 
 	/**
@@ -105,38 +134,31 @@ public final class CallStack implements Serializable {
 		value.
 	*/
 	public NameSpace swap( NameSpace newTop ) {
-		int last = stack.size() - 1;
-		NameSpace oldTop = stack.get(last);
-		stack.set( last, newTop );
+		NameSpace oldTop = top.namespace;
+		top = new Frame( newTop, top.next );
 		return oldTop;
 	}
 
 	public int depth() {
-		return stack.size();
-	}
-/*
-	public NameSpace [] toArray() {
-		NameSpace [] nsa = new NameSpace [ depth() ];
-		stack.copyInto( nsa );
-		return nsa;
+		return top == null ? 0 : top.depth;
 	}
-*/
+
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("CallStack:\n");
-		for( int i=stack.size()-1; i>=0; i-- )
-			sb.append("\t"+stack.get(i)+"\n");
-
+		for( Frame frame = top; frame != null; frame = frame.next )
+			sb.append("\t"+frame.namespace+"\n");
 		return sb.toString();
 	}
 
 	/**
 		Occasionally we need to freeze the callstack for error reporting
-		purposes, etc.
+		purposes, etc.  The copy shares the entries of this stack and takes
+		constant time.
 	*/
 	public CallStack copy() {
 		CallStack cs = new CallStack();
-		cs.stack.addAll(this.stack);
+		cs.top = top;
 		return cs;
 	}
 }
@@ -35,15 +35,11 @@ import java.lang.reflect.Method;
 
 public final class ClassGenerator {
 
-    private static ClassGenerator cg;
+    private static final ClassGenerator cg = new ClassGenerator();
 	private static final String DEBUG_DIR = System.getProperty("bsh.debugClasses");
 
 
 	public static ClassGenerator getClassGenerator() {
-        if (cg == null) {
-            cg = new ClassGenerator();
-        }
-
         return cg;
     }
 
@@ -56,7 +52,7 @@ public final class ClassGenerator {
                                CallStack callstack, Interpreter interpreter) throws EvalError {
         // Delegate to the static method
         return generateClassImpl(name, modifiers, interfaces, superClass, block, isInterface,
-                new BshEvaluatingVisitor(callstack, interpreter));
+                BshEvaluatingVisitor.create(callstack, interpreter));
     }
 
 
@@ -107,9 +103,28 @@ public final class ClassGenerator {
         String fqClassName = packageName == null ? className : packageName + "." + className;
 
         BshClassManager bcm = visitor.getInterpreter().getClassManager();
-        // Race condition here...
-        bcm.definingClass(fqClassName);
+        // Classes of the same name are defined one at a time, others may be
+        // defined in parallel by other threads.
+        Object lock = bcm.getDefiningClassLock(fqClassName);
+        try {
+            synchronized (lock) {
+                bcm.definingClass(fqClassName);
+                try {
+                    return defineClassImpl(className, packageName, fqClassName, modifiers, interfaces,
+                            superClass, block, isInterface, enclosingNameSpace, bcm, visitor);
+                } finally {
+                    bcm.doneDefiningClass(fqClassName);
+                }
+            }
+        } finally {
+            bcm.releaseDefiningClassLock(fqClassName, lock);
+        }
+    }
+
 
+    private static Class defineClassImpl(String className, String packageName, String fqClassName,
+            Modifiers modifiers, Class[] interfaces, Class superClass, BSHBlock block, boolean isInterface,
+            NameSpace enclosingNameSpace, BshClassManager bcm, BshEvaluatingVisitor visitor) throws EvalError {
         // Create the class static namespace
         NameSpace classStaticNameSpace = new NameSpace(enclosingNameSpace, className);
         classStaticNameSpace.isClass = true;
@@ -125,7 +140,7 @@ public final class ClassGenerator {
         DelayedEvalBshMethod[] methods = getDeclaredMethods(block, visitor, packageName);
 
         ClassGeneratorUtil classGenerator = new ClassGeneratorUtil(modifiers, className, packageName, superClass, interfaces, variables, methods, classStaticNameSpace, isInterface);
-        byte[] code = classGenerator.generateClass();
+        byte[] code = classGenerator.getClassCode();
 
         // if debug, write out the class file to debugClasses directory
 		if (DEBUG_DIR != null) try {
@@ -138,19 +153,18 @@ public final class ClassGenerator {
 
         // Define the new class in the classloader
         Class genClass = bcm.defineClass(fqClassName, code);
+        classGenerator.initCallSites(genClass);
+        ClassInstantiator instantiator = genClass.isInterface() ? null : classGenerator.initInstantiator(genClass, block);
 
         // import the unq name into parent
         enclosingNameSpace.importClass(fqClassName.replace('$', '.'));
 
-        try {
-            classStaticNameSpace.setLocalVariable(ClassGeneratorUtil.BSHINIT, block, false/*strictJava*/);
-        } catch (UtilEvalError e) {
-            throw new InterpreterError("unable to init static: " + e);
-        }
-
         // Give the static space its class static import
         // important to do this after all classes are defined
         classStaticNameSpace.setClassStatic(genClass);
+        if (instantiator != null) {
+            classStaticNameSpace.setClassFields(genClass, instantiator.getClassFields());
+        }
 
         // evaluate the static portion of the block in the static space
         visitor.evalBlock(block, true/*override*/, ClassNodeFilter.CLASSSTATIC);
@@ -160,15 +174,16 @@ public final class ClassGenerator {
         if ( ! genClass.isInterface()) {
             // Set the static bsh This callback
             String bshStaticFieldName = ClassGeneratorUtil.BSHSTATIC + className;
+            This classStaticThis = classStaticNameSpace.getThis(visitor.getInterpreter());
             try {
                 LHS lhs = Reflect.getLHSStaticField(genClass, bshStaticFieldName);
-                lhs.assign(classStaticNameSpace.getThis(visitor.getInterpreter()), false/*strict*/);
+                lhs.assign(classStaticThis, false/*strict*/);
             } catch (Exception e) {
                 throw new InterpreterError("Error in class gen setup: " + e);
             }
+            instantiator.setClassStaticThis(classStaticThis);
         }
 
-        bcm.doneDefiningClass(fqClassName);
         return genClass;
     }
 
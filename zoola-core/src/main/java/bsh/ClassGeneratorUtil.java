@@ -30,9 +30,13 @@ import bsh.interpreter.BshInterpreterUtil;
 import org.objectweb.asm.*;
 import org.objectweb.asm.Type;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ClassGeneratorUtil utilizes the ASM (www.objectweb.org) bytecode generator
@@ -50,9 +54,9 @@ import java.util.List;
  * (i.e. mixin) to delegate variable access to the class' instance variables.
  * <p/>
  * <p/>
- * Constructors for the class delegate to the static initInstance() method of
- * ClassGeneratorUtil to initialize new instances of the object.  initInstance()
- * invokes the instance intializer code (init vars and instance blocks) and
+ * Constructors for the class delegate to the initInstance() method of the
+ * ClassInstantiator of the class to initialize new instances of the object.
+ * initInstance() invokes the instance intializer code (init vars and instance blocks) and
  * then delegates to the corresponding scripted constructor method in the
  * instance namespace.  Constructors contain special switch logic which allows
  * the BeanShell to control the calling of alternate constructors (this() or
@@ -92,23 +96,41 @@ public class ClassGeneratorUtil implements Opcodes {
 	static final String BSHSUPER = "_bshSuper";
 
 	/**
-	 * The bsh static namespace variable name of the instance initializer
+	 * The name of the static field holding the ClassInstantiator of the
+	 * class, which the constructors hand over to
 	 */
-	static final String BSHINIT = "_bshInstanceInitializer";
+	private static final String BSHINSTANTIATOR = "_bshInstantiator";
 
 	/**
-	 * The bsh static namespace variable that holds the constructor methods
+	 * The prefix for the name of the static fields holding the delegate
+	 * method call sites, suffixed by the method index.
 	 */
-	private static final String BSHCONSTRUCTORS = "_bshConstructors";
+	private static final String BSHCALLSITE = "_bshCallSite";
 
 	/**
 	 * The switch branch number for the default constructor.
 	 * The value -1 will cause the default branch to be taken.
 	 */
-	private static final int DEFAULTCONSTRUCTOR = -1;
+	static final int DEFAULTCONSTRUCTOR = -1;
 
 	private static final String OBJECT = "Ljava/lang/Object;";
 
+	/**
+	 * The maximum number of class declarations kept in the bytecode cache.
+	 */
+	private static final int CODE_CACHE_SIZE = 1000;
+
+	/**
+	 * Bytecode of generated classes, shared by all interpreters, keyed by
+	 * the class key.  Least recently used entries are dropped first.
+	 */
+	private static final Map<String,CachedCode> codeCache = Collections.synchronizedMap(
+			new LinkedHashMap<String,CachedCode>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<String,CachedCode> eldest) {
+					return size() > CODE_CACHE_SIZE;
+				}
+			});
+
 	private final String className;
 	/**
 	 * fully qualified class name (with package) e.g. foo/bar/Blah
@@ -165,13 +187,65 @@ public class ClassGeneratorUtil implements Opcodes {
 		this.constructors = (DelayedEvalBshMethod[]) consl.toArray(new DelayedEvalBshMethod[consl.size()]);
 		this.methods = (DelayedEvalBshMethod[]) methodsl.toArray(new DelayedEvalBshMethod[methodsl.size()]);
 
-		try {
-			classStaticNameSpace.setLocalVariable(BSHCONSTRUCTORS, constructors, false/*strict*/);
-		} catch (UtilEvalError e) {
-			throw new InterpreterError("can't set cons var");
+		this.isInterface = isInterface;
+	}
+
+
+	/**
+	 * Get the class bytecode for this class.  The bytecode is generated only
+	 * if no identical class declaration (see getClassKey()) has been
+	 * generated before, by this or any other interpreter.  Only the bytes are
+	 * shared; each definition still gets its own class and static state.
+	 */
+	public byte[] getClassCode() {
+		String key = getClassKey();
+		CachedCode cached = codeCache.get(key);
+		if (cached != null && cached.matches(superClass, interfaces)) {
+			return cached.code;
 		}
 
-		this.isInterface = isInterface;
+		byte[] code = generateClass();
+		codeCache.put(key, new CachedCode(code, superClass, interfaces));
+		return code;
+	}
+
+
+	/**
+	 * Describe everything the generated bytecode depends on: the class name,
+	 * modifiers, superclass, interfaces and the members with their resolved
+	 * type descriptors.  Resolved descriptors are used rather than the source
+	 * text as the same declaration may resolve its types differently under
+	 * different imports.  The superclass and interfaces are described by name
+	 * only; CachedCode checks their identity.
+	 */
+	String getClassKey() {
+		StringBuilder sb = new StringBuilder(fqClassName);
+		sb.append(isInterface ? " interface " : " class ").append(getASMModifiers(classModifiers));
+		sb.append(" extends ").append(superClass.getName()).append(" implements");
+		for (Class intf : interfaces) {
+			sb.append(' ').append(intf.getName());
+		}
+		for (Variable var : vars) {
+			sb.append("\nfield ").append(var.getName()).append(' ').append(var.getTypeDescriptor());
+			sb.append(var.hasModifier("private") ? " private " : " ").append(getASMModifiers(var.getModifiers()));
+		}
+		for (DelayedEvalBshMethod constructor : constructors) {
+			appendMethodKey("\nconstructor ", constructor, sb);
+		}
+		for (DelayedEvalBshMethod method : methods) {
+			appendMethodKey("\nmethod ", method, sb);
+		}
+		return sb.toString();
+	}
+
+
+	private static void appendMethodKey(String kind, DelayedEvalBshMethod method, StringBuilder sb) {
+		sb.append(kind).append(method.getName()).append(' ').append(method.getReturnTypeDescriptor()).append(" (");
+		for (String paramType : method.getParamTypeDescriptors()) {
+			sb.append(paramType).append(',');
+		}
+		sb.append(')');
+		sb.append(method.hasModifier("private") ? " private " : " ").append(getASMModifiers(method.getModifiers()));
 	}
 
 
@@ -203,6 +277,9 @@ public class ClassGeneratorUtil implements Opcodes {
 
 			// Generate the static bsh static reference holder field
 			generateField(BSHSTATIC + className, "Lbsh/This;", ACC_PUBLIC + ACC_STATIC, cw);
+
+			// Generate the static instantiator holder field
+			generateField(BSHINSTANTIATOR + className, "Lbsh/ClassInstantiator;", ACC_PUBLIC + ACC_STATIC, cw);
 		}
 
 		// Generate the fields
@@ -244,7 +321,8 @@ public class ClassGeneratorUtil implements Opcodes {
 		}
 
 		// Generate the delegate methods
-		for (DelayedEvalBshMethod method : methods) {
+		for (int i = 0; i < methods.length; i++) {
+			DelayedEvalBshMethod method = methods[i];
 			String returnType = method.getReturnTypeDescriptor();
 
 			// Don't generate private /*or loosely return typed */ methods
@@ -257,7 +335,11 @@ public class ClassGeneratorUtil implements Opcodes {
 				modifiers |= (ACC_PUBLIC | ACC_ABSTRACT);
 			}
 
-			generateMethod(className, fqClassName, method.getName(), returnType, method.getParamTypeDescriptors(), modifiers, cw);
+			if ((modifiers & ACC_ABSTRACT) == 0) {
+				generateField(BSHCALLSITE + i, "Lbsh/DelegateCallSite;", ACC_PUBLIC + ACC_STATIC, cw);
+			}
+
+			generateMethod(className, fqClassName, BSHCALLSITE + i, method.getName(), returnType, method.getParamTypeDescriptors(), modifiers, cw);
 
 			boolean isStatic = (modifiers & ACC_STATIC) > 0;
 			boolean overridden = classContainsMethod(superClass, method.getName(), method.getParamTypeDescriptors());
@@ -271,31 +353,52 @@ public class ClassGeneratorUtil implements Opcodes {
 
 
 	/**
-	 * Translate bsh.Modifiers into ASM modifier bitflags.
+	 * Bind the delegate method call sites of the generated class.  This must
+	 * be done after the class has been defined and before any of its methods
+	 * can be called.
 	 */
-	private static int getASMModifiers(Modifiers modifiers) {
-		int mods = 0;
-		if (modifiers == null) {
-			return mods;
+	void initCallSites(Class genClass) {
+		for (int i = 0; i < methods.length; i++) {
+			try {
+				Field field = genClass.getDeclaredField(BSHCALLSITE + i);
+				field.set(null, new DelegateCallSite(methods[i]));
+			} catch (NoSuchFieldException e) {
+				// private or abstract method, no delegate generated
+			} catch (IllegalAccessException e) {
+				throw new InterpreterError("Error in class gen setup: " + e);
+			}
 		}
+	}
 
-		if (modifiers.hasModifier("public")) {
-			mods += ACC_PUBLIC;
-		}
-		if (modifiers.hasModifier("protected")) {
-			mods += ACC_PROTECTED;
-		}
-		if (modifiers.hasModifier("static")) {
-			mods += ACC_STATIC;
-		}
-		if (modifiers.hasModifier("synchronized")) {
-			mods += ACC_SYNCHRONIZED;
-		}
-		if (modifiers.hasModifier("abstract")) {
-			mods += ACC_ABSTRACT;
+
+	/**
+	 * Create the instantiator of the generated class and bind it to the
+	 * class.  This must be done after the class has been defined and before
+	 * it can be instantiated.
+	 *
+	 * @param block the class body
+	 */
+	ClassInstantiator initInstantiator(Class genClass, BSHBlock block) {
+		try {
+			ClassInstantiator instantiator = new ClassInstantiator(genClass, className, getBaseName(className),
+					genClass.getDeclaredField(BSHTHIS + className), superConstructors, constructors, block);
+			genClass.getDeclaredField(BSHINSTANTIATOR + className).set(null, instantiator);
+			return instantiator;
+		} catch (Exception e) {
+			throw new InterpreterError("Error in class gen setup: " + e);
 		}
+	}
+
 
-		return mods;
+	/**
+	 * Translate bsh.Modifiers into ASM modifier bitflags.
+	 */
+	private static int getASMModifiers(Modifiers modifiers) {
+		if (modifiers == null) {
+			return 0;
+		}
+		// the reflection modifier flags are the JVM access flags
+		return modifiers.getFlags() & (ACC_PUBLIC | ACC_PROTECTED | ACC_STATIC | ACC_SYNCHRONIZED | ACC_ABSTRACT);
 	}
 
 
@@ -310,11 +413,11 @@ public class ClassGeneratorUtil implements Opcodes {
 	/**
 	 * Generate a delegate method - static or instance.
 	 * The generated code packs the method arguments into an object array
-	 * (wrapping primitive types in bsh.Primitive), invokes the static or
-	 * instance namespace invokeMethod() method, and then unwraps / returns
-	 * the result.
+	 * (wrapping primitive types in bsh.Primitive and nulls as Primitive.NULL),
+	 * passes them along with the static or instance This to the method's
+	 * DelegateCallSite, and then unwraps / returns the result.
 	 */
-	private static void generateMethod(String className, String fqClassName, String methodName, String returnType, String[] paramTypes, int modifiers, ClassWriter cw) {
+	private static void generateMethod(String className, String fqClassName, String callSiteName, String methodName, String returnType, String[] paramTypes, int modifiers, ClassWriter cw) {
 		String[] exceptions = null;
 		boolean isStatic = (modifiers & ACC_STATIC) != 0;
 
@@ -332,6 +435,9 @@ public class ClassGeneratorUtil implements Opcodes {
 			return;
 		}
 
+		// Push the call site linked to the scripted method
+		cv.visitFieldInsn(GETSTATIC, fqClassName, callSiteName, "Lbsh/DelegateCallSite;");
+
 		// Generate code to push the BSHTHIS or BSHSTATIC field
 		if (isStatic) {
 			cv.visitFieldInsn(GETSTATIC, fqClassName, BSHSTATIC + className, "Lbsh/This;");
@@ -343,24 +449,11 @@ public class ClassGeneratorUtil implements Opcodes {
 			cv.visitFieldInsn(GETFIELD, fqClassName, BSHTHIS + className, "Lbsh/This;");
 		}
 
-		// Push the name of the method as a constant
-		cv.visitLdcInsn(methodName);
-
 		// Generate code to push arguments as an object array
-		generateParameterReifierCode(paramTypes, isStatic, cv);
-
-		// Push nulls for various args of invokeMethod
-		cv.visitInsn(ACONST_NULL); // interpreter
-		cv.visitInsn(ACONST_NULL); // callstack
-		cv.visitInsn(ACONST_NULL); // callerinfo
-
-		// Push the boolean constant 'true' (for declaredOnly)
-		cv.visitInsn(ICONST_1);
+		generateParameterReifierCode(paramTypes, isStatic, true/*wrapNulls*/, cv);
 
-		// Invoke the method This.invokeMethod( name, Class [] sig, boolean )
-		cv.visitMethodInsn(INVOKEVIRTUAL, "bsh/This", "invokeMethod", Type.getMethodDescriptor(Type.getType(Object.class),
-                new Type[]{Type.getType(String.class), Type.getType(Object[].class), Type.getType(Interpreter.class),
-                        Type.getType(CallStack.class), Type.getType(SimpleNode.class), Type.getType(Boolean.TYPE)}));
+		// Invoke the method DelegateCallSite.invoke( This, Object [] )
+		cv.visitMethodInsn(INVOKEVIRTUAL, "bsh/DelegateCallSite", "invoke", "(Lbsh/This;[Ljava/lang/Object;)Ljava/lang/Object;");
 
 		// Generate code to unwrap bsh Primitive types
 		cv.visitMethodInsn(INVOKESTATIC, "bsh/Primitive", "unwrap", "(Ljava/lang/Object;)Ljava/lang/Object;");
@@ -389,25 +482,28 @@ public class ClassGeneratorUtil implements Opcodes {
 		MethodVisitor cv = cw.visitMethod(modifiers, "<init>", methodDescriptor, null, exceptions);
 
 		// Generate code to push arguments as an object array
-		generateParameterReifierCode(paramTypes, false/*isStatic*/, cv);
+		generateParameterReifierCode(paramTypes, false/*isStatic*/, false/*wrapNulls*/, cv);
 		cv.visitVarInsn(ASTORE, argsVar);
 
 		// Generate the code implementing the alternate constructor switch
 		generateConstructorSwitch(index, argsVar, consArgsVar, cv);
 
-		// Generate code to invoke the ClassGeneratorUtil initInstance() method
+		// Generate code to invoke the ClassInstantiator initInstance() method
+
+		// push the class instantiator
+		cv.visitFieldInsn(GETSTATIC, fqClassName, BSHINSTANTIATOR + className, "Lbsh/ClassInstantiator;");
 
 		// push 'this'
 		cv.visitVarInsn(ALOAD, 0);
 
-		// Push the class/constructor name as a constant
-		cv.visitLdcInsn(className);
+		// push this constructor index number onto stack
+		cv.visitIntInsn(BIPUSH, index);
 
 		// Push arguments as an object array
 		cv.visitVarInsn(ALOAD, argsVar);
 
 		// invoke the initInstance() method
-		cv.visitMethodInsn(INVOKESTATIC, "bsh/ClassGeneratorUtil", "initInstance", "(L" + GeneratedClass.class.getName().replace('.', '/') + ";Ljava/lang/String;[Ljava/lang/Object;)V");
+		cv.visitMethodInsn(INVOKEVIRTUAL, "bsh/ClassInstantiator", "initInstance", "(L" + GeneratedClass.class.getName().replace('.', '/') + ";I[Ljava/lang/Object;)V");
 
 		cv.visitInsn(RETURN);
 
@@ -422,8 +518,7 @@ public class ClassGeneratorUtil implements Opcodes {
 	 * constructors of this class.  The default branch of this switch is the
 	 * default superclass constructor.
 	 * <p/>
-	 * This method also generates the code to call the static
-	 * ClassGeneratorUtil
+	 * This method also generates the code to call the ClassInstantiator
 	 * getConstructorArgs() method which inspects the scripted constructor to
 	 * find the alternate constructor signature (if any) and evalute the
 	 * arguments at runtime.  The getConstructorArgs() method returns the
@@ -442,11 +537,8 @@ public class ClassGeneratorUtil implements Opcodes {
 		// Generate code to call ClassGeneratorUtil to get our switch index
 		// and give us args...
 
-		// push super class name
-		cv.visitLdcInsn(superClass.getName()); // use superClassName var?
-
-		// push class static This object
-		cv.visitFieldInsn(GETSTATIC, fqClassName, BSHSTATIC + className, "Lbsh/This;");
+		// push the class instantiator
+		cv.visitFieldInsn(GETSTATIC, fqClassName, BSHINSTANTIATOR + className, "Lbsh/ClassInstantiator;");
 
 		// push args
 		cv.visitVarInsn(ALOAD, argsVar);
@@ -454,8 +546,8 @@ public class ClassGeneratorUtil implements Opcodes {
 		// push this constructor index number onto stack
 		cv.visitIntInsn(BIPUSH, consIndex);
 
-		// invoke the ClassGeneratorUtil getConstructorsArgs() method
-		cv.visitMethodInsn(INVOKESTATIC, "bsh/ClassGeneratorUtil", "getConstructorArgs", "(Ljava/lang/String;Lbsh/This;[Ljava/lang/Object;I)" + "Lbsh/ClassGeneratorUtil$ConstructorArgs;");
+		// invoke the ClassInstantiator getConstructorsArgs() method
+		cv.visitMethodInsn(INVOKEVIRTUAL, "bsh/ClassInstantiator", "getConstructorArgs", "([Ljava/lang/Object;I)" + "Lbsh/ClassGeneratorUtil$ConstructorArgs;");
 
 		// store ConstructorArgs in consArgsVar
 		cv.visitVarInsn(ASTORE, consArgsVar);
@@ -657,10 +749,11 @@ public class ClassGeneratorUtil implements Opcodes {
 	 *
 	 * @param cv	   the code visitor to be used to generate the bytecode.
 	 * @param isStatic the enclosing methods is static
+	 * @param wrapNulls map null object arguments to bsh.Primitive.NULL
 	 * @author Eric Bruneton
 	 * @author Pat Niemeyer
 	 */
-	private static void generateParameterReifierCode(String[] paramTypes, boolean isStatic, final MethodVisitor cv) {
+	private static void generateParameterReifierCode(String[] paramTypes, boolean isStatic, boolean wrapNulls, final MethodVisitor cv) {
 		cv.visitIntInsn(SIPUSH, paramTypes.length);
 		cv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
 		int localVarIndex = isStatic ? 0 : 1;
@@ -687,12 +780,16 @@ public class ClassGeneratorUtil implements Opcodes {
 				String desc = param; // ok?
 				cv.visitMethodInsn(INVOKESPECIAL, type, "<init>", "(" + desc + ")V");
 			} else {
-				// Technically incorrect here - we need to wrap null values
-				// as bsh.Primitive.NULL.  However the This.invokeMethod()
-				// will do that much for us.
-				// We need to generate a conditional here to test for null
-				// and return Primitive.NULL
 				cv.visitVarInsn(ALOAD, localVarIndex);
+				if (wrapNulls) {
+					// arg == null ? Primitive.NULL : arg
+					Label notNull = new Label();
+					cv.visitInsn(DUP);
+					cv.visitJumpInsn(IFNONNULL, notNull);
+					cv.visitInsn(POP);
+					cv.visitFieldInsn(GETSTATIC, "bsh/Primitive", "NULL", "Lbsh/Primitive;");
+					cv.visitLabel(notNull);
+				}
 			}
 			cv.visitInsn(AASTORE);
 			localVarIndex += ((param.equals("D") || param.equals("J")) ? 2 : 1);
@@ -758,261 +855,157 @@ public class ClassGeneratorUtil implements Opcodes {
 
 
 	/**
-	 * Evaluate the arguments (if any) for the constructor specified by
-	 * the constructor index.  Return the ConstructorArgs object which
-	 * contains the actual arguments to the alternate constructor and also the
-	 * index of that constructor for the constructor switch.
+	 * Generate an adapter class implementing the given interfaces on top of
+	 * InterfaceAdapter.  The adapter has a single constructor taking the bsh
+	 * This to delegate to; each of the methods is implemented by reifying its
+	 * arguments and dispatching them through the InterfaceAdapter call site
+	 * slot of the same index, then unwrapping the result.
 	 *
-	 * @param consArgs the arguments to the constructor.  These are necessary in
-	 *                 the evaluation of the alt constructor args.  e.g. Foo(a) { super(a); }
-	 * @return the ConstructorArgs object containing a constructor selector
-	 *         and evaluated arguments for the alternate constructor
+	 * @param fqClassName fully qualified internal name e.g. foo/bar/Blah
+	 * @param methods     the interface methods to implement, in slot order
+	 * @see InterfaceAdapter
 	 */
-	public static ConstructorArgs getConstructorArgs(String superClassName, This classStaticThis, Object[] consArgs, int index) {
-		DelayedEvalBshMethod[] constructors;
-		try {
-			constructors = (DelayedEvalBshMethod[]) classStaticThis.getNameSpace().getVariable(BSHCONSTRUCTORS);
-		} catch (Exception e) {
-			throw new InterpreterError("unable to get instance initializer: " + e);
+	static byte[] generateInterfaceAdapter(String fqClassName, Class[] interfaces, Method[] methods) {
+		String[] interfaceNames = new String[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaceNames[i] = Type.getInternalName(interfaces[i]);
 		}
 
-		if (index == DEFAULTCONSTRUCTOR) // auto-gen default constructor
-		{
-			return ConstructorArgs.DEFAULT;
-		} // use default super constructor
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, fqClassName, null, "bsh/InterfaceAdapter", interfaceNames);
 
-		DelayedEvalBshMethod constructor = constructors[index];
+		// The methods are needed by the superclass constructor to make the
+		// call sites, they are set right after the class is defined
+		generateField(InterfaceAdapter.METHODS, "[Ljava/lang/reflect/Method;", ACC_PUBLIC + ACC_STATIC, cw);
 
-		if (constructor.methodBody.jjtGetNumChildren() == 0) {
-			return ConstructorArgs.DEFAULT;
-		} // use default super constructor
+		MethodVisitor cv = cw.visitMethod(ACC_PUBLIC, "<init>", "(Lbsh/This;)V", null, null);
+		cv.visitVarInsn(ALOAD, 0);
+		cv.visitVarInsn(ALOAD, 1);
+		cv.visitFieldInsn(GETSTATIC, fqClassName, InterfaceAdapter.METHODS, "[Ljava/lang/reflect/Method;");
+		cv.visitMethodInsn(INVOKESPECIAL, "bsh/InterfaceAdapter", "<init>", "(Lbsh/This;[Ljava/lang/reflect/Method;)V");
+		cv.visitInsn(RETURN);
+		cv.visitMaxs(3, 2);
 
-		// Determine if the constructor calls this() or super()
-		String altConstructor = null;
-		BSHArguments argsNode = null;
-		SimpleNode firstStatement = (SimpleNode) constructor.methodBody.jjtGetChild(0);
-		if (firstStatement instanceof BSHPrimaryExpression) {
-			firstStatement = (SimpleNode) firstStatement.jjtGetChild(0);
-		}
-		if (firstStatement instanceof BSHMethodInvocation) {
-			BSHMethodInvocation methodNode = (BSHMethodInvocation) firstStatement;
-			BSHAmbiguousName methodName = methodNode.getNameNode();
-			if (methodName.text.equals("super") || methodName.text.equals("this")) {
-				altConstructor = methodName.text;
-				argsNode = methodNode.getArgsNode();
-			}
-		}
+		for (int i = 0; i < methods.length; i++) {
+			String[] paramTypes = getTypeDescriptors(methods[i].getParameterTypes());
+			String returnType = BshInterpreterUtil.getTypeDescriptor(methods[i].getReturnType());
+			cv = cw.visitMethod(ACC_PUBLIC, methods[i].getName(), getMethodDescriptor(returnType, paramTypes), null, null);
+
+			// this.invokeSlot( i, new Object [] { args... } )
+			cv.visitVarInsn(ALOAD, 0);
+			cv.visitIntInsn(SIPUSH, i);
+			generateParameterReifierCode(paramTypes, false/*isStatic*/, true/*wrapNulls*/, cv);
+			cv.visitMethodInsn(INVOKEVIRTUAL, "bsh/InterfaceAdapter", "invokeSlot", "(I[Ljava/lang/Object;)Ljava/lang/Object;");
 
-		if (altConstructor == null) {
-			return ConstructorArgs.DEFAULT;
-		} // use default super constructor
+			cv.visitMethodInsn(INVOKESTATIC, "bsh/Primitive", "unwrap", "(Ljava/lang/Object;)Ljava/lang/Object;");
+			generateReturnCode(returnType, cv);
 
-		// Make a tmp namespace to hold the original constructor args for
-		// use in eval of the parameters node
-		NameSpace consArgsNameSpace = new NameSpace(classStaticThis.getNameSpace(), "consArgs");
-		String[] consArgNames = constructor.getParameterNames();
-		Class[] consArgTypes = constructor.getParameterTypes();
-		for (int i = 0; i < consArgs.length; i++) {
-			try {
-				consArgsNameSpace.setTypedVariable(consArgNames[i], consArgTypes[i], consArgs[i], null/*modifiers*/);
-			} catch (UtilEvalError e) {
-				throw new InterpreterError("err setting local cons arg:" + e);
-			}
+			// Need to calculate this... just fudging here for now.
+			cv.visitMaxs(20, 20);
 		}
 
-		// evaluate the args
+		return cw.toByteArray();
+	}
 
-		CallStack callstack = new CallStack();
-		callstack.push(consArgsNameSpace);
-		Object[] args;
-		Interpreter interpreter = classStaticThis.declaringInterpreter;
 
-		try {
-			args = new BshEvaluatingVisitor(callstack, interpreter).getArguments(argsNode);
-		} catch (EvalError e) {
-			throw new InterpreterError("Error evaluating constructor args: " + e);
-		}
+	/**
+	 * Generate an adapter class implementing a functional interface on top
+	 * of LambdaAdapter.  The adapter has a single constructor taking the
+	 * Lambda to delegate to; the interface method reifies its arguments,
+	 * passes them to LambdaAdapter.invokeLambda() and unwraps the result.
+	 *
+	 * @param fqClassName fully qualified internal name e.g. foo/bar/Blah
+	 * @param method      the single abstract method of the interface
+	 * @see LambdaAdapter
+	 */
+	static byte[] generateLambdaAdapter(String fqClassName, Class type, Method method) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, fqClassName, null, "bsh/LambdaAdapter", new String[] { Type.getInternalName(type) });
 
-		Class[] argTypes = Types.getTypes(args);
-		args = Primitive.unwrap(args);
-		Class superClass = interpreter.getClassManager().classForName(superClassName);
-		if (superClass == null) {
-			throw new InterpreterError("can't find superclass: " + superClassName);
-		}
-		Constructor[] superCons = superClass.getDeclaredConstructors();
+		// The method is needed by the superclass constructor, it is set
+		// right after the class is defined
+		generateField(LambdaAdapter.METHOD, "Ljava/lang/reflect/Method;", ACC_PUBLIC + ACC_STATIC, cw);
 
-		// find the matching super() constructor for the args
-		if (altConstructor.equals("super")) {
-			int i = Reflect.findMostSpecificConstructorIndex(argTypes, superCons);
-			if (i == -1) {
-				throw new InterpreterError("can't find constructor for args!");
-			}
-			return new ConstructorArgs(i, args);
-		}
+		MethodVisitor cv = cw.visitMethod(ACC_PUBLIC, "<init>", "(Lbsh/Lambda;)V", null, null);
+		cv.visitVarInsn(ALOAD, 0);
+		cv.visitVarInsn(ALOAD, 1);
+		cv.visitFieldInsn(GETSTATIC, fqClassName, LambdaAdapter.METHOD, "Ljava/lang/reflect/Method;");
+		cv.visitMethodInsn(INVOKESPECIAL, "bsh/LambdaAdapter", "<init>", "(Lbsh/Lambda;Ljava/lang/reflect/Method;)V");
+		cv.visitInsn(RETURN);
+		cv.visitMaxs(3, 2);
 
-		// find the matching this() constructor for the args
-		Class[][] candidates = new Class[constructors.length][];
-		for (int i = 0; i < candidates.length; i++) {
-			candidates[i] = constructors[i].getParameterTypes();
-		}
-		int i = Reflect.findMostSpecificSignature(argTypes, candidates);
-		if (i == -1) {
-			throw new InterpreterError("can't find constructor for args 2!");
-		}
-		// this() constructors come after super constructors in the table
+		String[] paramTypes = getTypeDescriptors(method.getParameterTypes());
+		String returnType = BshInterpreterUtil.getTypeDescriptor(method.getReturnType());
+		cv = cw.visitMethod(ACC_PUBLIC, method.getName(), getMethodDescriptor(returnType, paramTypes), null, null);
 
-		int selector = i + superCons.length;
-		int ourSelector = index + superCons.length;
+		// this.invokeLambda( new Object [] { args... } )
+		cv.visitVarInsn(ALOAD, 0);
+		generateParameterReifierCode(paramTypes, false/*isStatic*/, true/*wrapNulls*/, cv);
+		cv.visitMethodInsn(INVOKEVIRTUAL, "bsh/LambdaAdapter", "invokeLambda", "([Ljava/lang/Object;)Ljava/lang/Object;");
 
-		// Are we choosing ourselves recursively through a this() reference?
-		if (selector == ourSelector) {
-			throw new InterpreterError("Recusive constructor call.");
-		}
+		cv.visitMethodInsn(INVOKESTATIC, "bsh/Primitive", "unwrap", "(Ljava/lang/Object;)Ljava/lang/Object;");
+		generateReturnCode(returnType, cv);
 
-		return new ConstructorArgs(selector, args);
+		// Need to calculate this... just fudging here for now.
+		cv.visitMaxs(20, 20);
+
+		return cw.toByteArray();
 	}
 
 
-	private static final ThreadLocal<NameSpace> CONTEXT_NAMESPACE = new ThreadLocal<NameSpace>();
-	private static final ThreadLocal<Interpreter> CONTEXT_INTERPRETER = new ThreadLocal<Interpreter>();
+	private static final ThreadLocal<ConstructorContext> CONTEXT = new ThreadLocal<ConstructorContext>();
 
 
 	/**
 	 * Register actual context, used by generated class constructor, which calls
-	 * {@link  #initInstance(GeneratedClass, String, Object[])}.
+	 * {@link ClassInstantiator#initInstance(GeneratedClass, int, Object[])}.
+	 * The caller must restore the returned previous context when the
+	 * construction is done (also when it fails), e.g.:
+	 * <pre>
+	 * Object previous = registerConstructorContext(callstack, interpreter);
+	 * try {
+	 *     ... construct ...
+	 * } finally {
+	 *     restoreConstructorContext(previous);
+	 * }
+	 * </pre>
+	 * Restoring rather than clearing keeps the context of an enclosing
+	 * construction intact when constructors construct other objects.
+	 *
+	 * @return the previous context, to be passed to restoreConstructorContext()
 	 */
-	public static void registerConstructorContext(CallStack callstack, Interpreter interpreter) {
-		if (callstack != null) {
-			CONTEXT_NAMESPACE.set(callstack.top());
+	public static Object registerConstructorContext(CallStack callstack, Interpreter interpreter) {
+		Object previous = CONTEXT.get();
+		if (callstack != null || interpreter != null) {
+			CONTEXT.set(new ConstructorContext(callstack != null ? callstack.top() : null, interpreter));
 		} else {
-			CONTEXT_NAMESPACE.remove();
-		}
-		if (interpreter != null) {
-			CONTEXT_INTERPRETER.set(interpreter);
-		} else {
-			CONTEXT_INTERPRETER.remove();
+			CONTEXT.remove();
 		}
+		return previous;
 	}
 
 
 	/**
-	 * Initialize an instance of the class.
-	 * This method is called from the generated class constructor to evaluate
-	 * the instance initializer and scripted constructor in the instance
-	 * namespace.
+	 * Restore the context returned by registerConstructorContext().  The
+	 * thread local is removed entirely when there is no enclosing context
+	 * so that it can not leak.
 	 */
-	public static void initInstance(GeneratedClass instance, String className, Object[] args) {
-		Class[] sig = Types.getTypes(args);
-		CallStack callstack = new CallStack();
-		Interpreter interpreter;
-		NameSpace instanceNameSpace;
-
-		// check to see if the instance has already been initialized
-		// (the case if using a this() alternate constuctor)
-		// todo PeJoBo70 write test for this
-		This instanceThis = getClassInstanceThis(instance, className);
-
-		// XXX clean up this conditional
-		if (instanceThis == null) {
-			// Create the instance 'This' namespace, set it on the object
-			// instance and invoke the instance initializer
-
-			// Get the static This reference from the proto-instance
-			This classStaticThis = getClassStaticThis(instance.getClass(), className);
-			interpreter = CONTEXT_INTERPRETER.get();
-			if (interpreter == null) {
-				interpreter = classStaticThis.declaringInterpreter;
-			}
-
-
-			// Get the instance initializer block from the static This
-			BSHBlock instanceInitBlock;
-			try {
-				instanceInitBlock = (BSHBlock) classStaticThis.getNameSpace().getVariable(BSHINIT);
-			} catch (Exception e) {
-				throw new InterpreterError("unable to get instance initializer: " + e);
-			}
-
-			// Create the instance namespace
-			if (CONTEXT_NAMESPACE.get() != null) {
-				instanceNameSpace = classStaticThis.getNameSpace().copy();
-				instanceNameSpace.setParent(CONTEXT_NAMESPACE.get());
-			} else {
-				instanceNameSpace = new NameSpace(classStaticThis.getNameSpace(), className); // todo: old code
-			}
-			instanceNameSpace.isClass = true;
-
-			// Set the instance This reference on the instance
-			instanceThis = instanceNameSpace.getThis(interpreter);
-			try {
-				LHS lhs = Reflect.getLHSObjectField(instance, BSHTHIS + className);
-				lhs.assign(instanceThis, false/*strict*/);
-			} catch (Exception e) {
-				throw new InterpreterError("Error in class gen setup: " + e);
-			}
-
-			// Give the instance space its object import
-			instanceNameSpace.setClassInstance(instance);
-
-			// should use try/finally here to pop ns
-			callstack.push(instanceNameSpace);
-
-			// evaluate the instance portion of the block in it
-			try { // Evaluate the initializer block
-				new BshEvaluatingVisitor(callstack, interpreter).evalBlock(instanceInitBlock, true/*override*/, ClassGenerator.ClassNodeFilter.CLASSINSTANCE);
-			} catch (Exception e) {
-				throw new InterpreterError("Error in class initialization: " + e, e);
-			}
-
-			callstack.pop();
-
+	public static void restoreConstructorContext(Object previous) {
+		if (previous != null) {
+			CONTEXT.set((ConstructorContext) previous);
 		} else {
-			// The object instance has already been initialzed by another
-			// constructor.  Fall through to invoke the constructor body below.
-			interpreter = instanceThis.declaringInterpreter;
-			instanceNameSpace = instanceThis.getNameSpace();
-		}
-
-		// invoke the constructor method from the instanceThis
-
-		String constructorName = getBaseName(className);
-		try {
-			// Find the constructor (now in the instance namespace)
-			BshMethod constructor = instanceNameSpace.getMethod(constructorName, sig, true/*declaredOnly*/);
-
-			// if args, we must have constructor
-			if (args.length > 0 && constructor == null) {
-				throw new InterpreterError("Can't find constructor: " + className);
-			}
-
-			// Evaluate the constructor
-			if (constructor != null) {
-				constructor.invoke(args, new BshEvaluatingVisitor(callstack,  interpreter),
-                        null/*callerInfo*/, false/*overrideNameSpace*/);
-			}
-		} catch (Throwable e) {
-			if (e instanceof TargetError) {
-				e = (Exception) ((TargetError) e).getTarget();
-			}
-			if (e instanceof InvocationTargetException) {
-				e = (Exception) ((InvocationTargetException) e).getTargetException();
-			}
-			throw new InterpreterError("Error in class initialization: " + e);
+			CONTEXT.remove();
 		}
 	}
 
 
 	/**
-	 * Get the static bsh namespace field from the class.
+	 * Get the context of the construction in progress on the current thread.
 	 *
-	 * @param className may be the name of clas itself or a superclass of clas.
+	 * @return the context or null if none was registered
 	 */
-	private static This getClassStaticThis(Class clas, String className) {
-		try {
-			return (This) Reflect.getStaticFieldValue(clas, BSHSTATIC + className);
-		} catch (Exception e) {
-			throw new InterpreterError("Unable to get class static space: " + e);
-		}
+	static ConstructorContext getConstructorContext() {
+		return CONTEXT.get();
 	}
 
 
@@ -1072,6 +1065,56 @@ public class ClassGeneratorUtil implements Opcodes {
 	}
 
 
+	/**
+	 * The namespace and interpreter constructing a generated class instance.
+	 */
+	static class ConstructorContext {
+
+		final NameSpace namespace;
+		final Interpreter interpreter;
+
+
+		ConstructorContext(NameSpace namespace, Interpreter interpreter) {
+			this.namespace = namespace;
+			this.interpreter = interpreter;
+		}
+	}
+
+
+	/**
+	 * A bytecode cache entry.  The superclass and interfaces the code was
+	 * generated for are held weakly so that the cache does not pin their
+	 * classloaders.
+	 */
+	private static class CachedCode {
+
+		final byte[] code;
+		final List<WeakReference<Class>> types = new ArrayList<WeakReference<Class>>();
+
+
+		CachedCode(byte[] code, Class superClass, Class[] interfaces) {
+			this.code = code;
+			types.add(new WeakReference<Class>(superClass));
+			for (Class intf : interfaces) {
+				types.add(new WeakReference<Class>(intf));
+			}
+		}
+
+
+		boolean matches(Class superClass, Class[] interfaces) {
+			if (types.get(0).get() != superClass || types.size() != interfaces.length + 1) {
+				return false;
+			}
+			for (int i = 0; i < interfaces.length; i++) {
+				if (types.get(i + 1).get() != interfaces[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+
 	/**
 	 * A ConstructorArgs object holds evaluated arguments for a constructor
 	 * call as well as the index of a possible alternate selector to invoke.
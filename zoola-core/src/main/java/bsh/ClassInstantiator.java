@@ -0,0 +1,407 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh;
+
+import bsh.ast.BSHAmbiguousName;
+import bsh.ast.BSHArguments;
+import bsh.ast.BSHBlock;
+import bsh.ast.BSHClassDeclaration;
+import bsh.ast.BSHMethodInvocation;
+import bsh.ast.BSHPrimaryExpression;
+import bsh.ast.SimpleNode;
+import bsh.interpreter.BshEvaluatingVisitor;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-class instantiation metadata of a generated class.
+ * <p/>
+ * The constructors of a generated class hold their class' ClassInstantiator
+ * in a static field and hand it the constructor index and the arguments.
+ * Everything which is the same for all instances is prepared once, when the
+ * class is defined: the instance field holding the instance This, the
+ * fields of the class by name, the instance initializer statements of the class body, the alternate
+ * constructor (this() or super()) invoked by each scripted constructor and
+ * the superclass constructor table of the constructor switch.  Creating an
+ * instance then only sets up the instance namespace, evaluates the
+ * initializers and invokes the scripted constructor selected by index.
+ *
+ * @see ClassGeneratorUtil
+ */
+public final class ClassInstantiator {
+
+	private final String className;
+	private final String constructorName;
+	private final boolean innerClass;
+	private final Class genClass;
+	private final Field thisField;
+	private final Map<String,Field> classFields;
+	private final Constructor[] superConstructors;
+	private final DelayedEvalBshMethod[] constructors;
+	private final AltConstructorCall[] altConstructorCalls;
+	private final SimpleNode[] instanceInitializers;
+
+	/**
+	 * Constructor parameter types, resolved on first use
+	 */
+	private volatile Class[][] constructorTypes;
+
+	private volatile This classStaticThis;
+
+
+	ClassInstantiator(Class genClass, String className, String constructorName, Field thisField, Constructor[] superConstructors, DelayedEvalBshMethod[] constructors, BSHBlock block) {
+		this.genClass = genClass;
+		this.className = className;
+		this.constructorName = constructorName;
+		this.innerClass = className.indexOf('$') != -1;
+		this.thisField = thisField;
+		this.classFields = Collections.unmodifiableMap(Reflect.getAccessibleFields(genClass));
+		this.superConstructors = superConstructors;
+		this.constructors = constructors;
+
+		altConstructorCalls = new AltConstructorCall[constructors.length];
+		for (int i = 0; i < constructors.length; i++) {
+			altConstructorCalls[i] = getAltConstructorCall(constructors[i]);
+		}
+
+		List<SimpleNode> initializers = new ArrayList<SimpleNode>();
+		for (int i = block.isSynchronized ? 1 : 0; i < block.jjtGetNumChildren(); i++) {
+			SimpleNode node = (SimpleNode) block.jjtGetChild(i);
+			if (!(node instanceof BSHClassDeclaration) && ClassGenerator.ClassNodeFilter.CLASSINSTANCE.isVisible(node)) {
+				initializers.add(node);
+			}
+		}
+		instanceInitializers = initializers.toArray(new SimpleNode[initializers.size()]);
+	}
+
+
+	/**
+	 * Get the fields of the generated class by name.
+	 *
+	 * @see NameSpace#setClassFields(Class, Map)
+	 */
+	Map<String,Field> getClassFields() {
+		return classFields;
+	}
+
+
+	/**
+	 * Set the class static This.  This is done once the static part of the
+	 * class body has been evaluated.
+	 */
+	void setClassStaticThis(This classStaticThis) {
+		this.classStaticThis = classStaticThis;
+	}
+
+
+	/**
+	 * Evaluate the arguments (if any) for the constructor specified by
+	 * the constructor index.  Return the ConstructorArgs object which
+	 * contains the actual arguments to the alternate constructor and also the
+	 * index of that constructor for the constructor switch.
+	 *
+	 * @param consArgs the arguments to the constructor.  These are necessary in
+	 *                 the evaluation of the alt constructor args.  e.g. Foo(a) { super(a); }
+	 * @return the ConstructorArgs object containing a constructor selector
+	 *         and evaluated arguments for the alternate constructor
+	 */
+	public ClassGeneratorUtil.ConstructorArgs getConstructorArgs(Object[] consArgs, int index) {
+		if (index == ClassGeneratorUtil.DEFAULTCONSTRUCTOR) // auto-gen default constructor
+		{
+			return ClassGeneratorUtil.ConstructorArgs.DEFAULT;
+		} // use default super constructor
+
+		AltConstructorCall altConstructor = altConstructorCalls[index];
+		if (altConstructor == null) {
+			return ClassGeneratorUtil.ConstructorArgs.DEFAULT;
+		} // use default super constructor
+
+		// Make a tmp namespace to hold the original constructor args for
+		// use in eval of the parameters node
+		This classStaticThis = this.classStaticThis;
+		NameSpace consArgsNameSpace = new NameSpace(classStaticThis.getNameSpace(), "consArgs");
+		String[] consArgNames = constructors[index].getParameterNames();
+		Class[] consArgTypes = getConstructorTypes()[index];
+		for (int i = 0; i < consArgs.length; i++) {
+			try {
+				consArgsNameSpace.setTypedVariable(consArgNames[i], consArgTypes[i], consArgs[i], null/*modifiers*/);
+			} catch (UtilEvalError e) {
+				throw new InterpreterError("err setting local cons arg:" + e);
+			}
+		}
+
+		// evaluate the args
+
+		CallStack callstack = new CallStack();
+		callstack.push(consArgsNameSpace);
+		Object[] args;
+
+		try {
+			args = BshEvaluatingVisitor.create(callstack, classStaticThis.declaringInterpreter).getArguments(altConstructor.argsNode);
+		} catch (EvalError e) {
+			throw new InterpreterError("Error evaluating constructor args: " + e);
+		}
+
+		Class[] argTypes = Types.getTypes(args);
+		args = Primitive.unwrap(args);
+
+		// find the matching super() constructor for the args
+		if (altConstructor.isSuper) {
+			int i = Reflect.findMostSpecificConstructorIndex(argTypes, superConstructors);
+			if (i == -1) {
+				throw new InterpreterError("can't find constructor for args!");
+			}
+			return new ClassGeneratorUtil.ConstructorArgs(i, args);
+		}
+
+		// find the matching this() constructor for the args
+		int i = Reflect.findMostSpecificSignature(argTypes, getConstructorTypes());
+		if (i == -1) {
+			throw new InterpreterError("can't find constructor for args 2!");
+		}
+		// this() constructors come after super constructors in the table
+
+		int selector = i + superConstructors.length;
+		int ourSelector = index + superConstructors.length;
+
+		// Are we choosing ourselves recursively through a this() reference?
+		if (selector == ourSelector) {
+			throw new InterpreterError("Recusive constructor call.");
+		}
+
+		return new ClassGeneratorUtil.ConstructorArgs(selector, args);
+	}
+
+
+	/**
+	 * Initialize an instance of the class.
+	 * This method is called from the generated class constructor to evaluate
+	 * the instance initializer and scripted constructor in the instance
+	 * namespace.
+	 *
+	 * @param index the index of the scripted constructor or
+	 *              ClassGeneratorUtil.DEFAULTCONSTRUCTOR
+	 */
+	public void initInstance(GeneratedClass instance, int index, Object[] args) {
+		CallStack callstack = new CallStack();
+		BshEvaluatingVisitor visitor;
+		NameSpace instanceNameSpace;
+
+		// check to see if the instance has already been initialized
+		// (the case if using a this() alternate constuctor)
+		This instanceThis = getInstanceThis(instance);
+
+		if (instanceThis == null) {
+			// Create the instance 'This' namespace, set it on the object
+			// instance and invoke the instance initializer
+			This classStaticThis = this.classStaticThis;
+			ClassGeneratorUtil.ConstructorContext context = ClassGeneratorUtil.getConstructorContext();
+			Interpreter interpreter = context != null ? context.interpreter : null;
+			if (interpreter == null) {
+				interpreter = classStaticThis.declaringInterpreter;
+			}
+
+			// Create the instance namespace
+			if (context != null && context.namespace != null) {
+				instanceNameSpace = classStaticThis.getNameSpace().copy();
+				instanceNameSpace.setParent(getEnclosingNameSpace(context.namespace, interpreter));
+			} else {
+				instanceNameSpace = new NameSpace(classStaticThis.getNameSpace(), className); // todo: old code
+				instanceNameSpace.setClassFields(genClass, classFields);
+			}
+			instanceNameSpace.isClass = true;
+
+			// Set the instance This reference on the instance
+			instanceThis = instanceNameSpace.getThis(interpreter);
+			try {
+				thisField.set(instance, instanceThis);
+			} catch (IllegalAccessException e) {
+				throw new InterpreterError("Error in class gen setup: " + e);
+			}
+
+			// Give the instance space its object import
+			instanceNameSpace.setClassInstance(instance);
+
+			// evaluate the instance portion of the class body in it
+			callstack.push(instanceNameSpace);
+			visitor = BshEvaluatingVisitor.create(callstack, interpreter);
+			try {
+				for (SimpleNode node : instanceInitializers) {
+					node.accept(visitor);
+				}
+			} catch (Exception e) {
+				throw new InterpreterError("Error in class initialization: " + e, e);
+			}
+			callstack.pop();
+
+		} else {
+			// The object instance has already been initialzed by another
+			// constructor.  Fall through to invoke the constructor body below.
+			instanceNameSpace = instanceThis.getNameSpace();
+			visitor = BshEvaluatingVisitor.create(callstack, instanceThis.declaringInterpreter);
+		}
+
+		// invoke the constructor method from the instanceThis
+
+		try {
+			// Find the constructor (now in the instance namespace)
+			BshMethod constructor = getConstructor(instanceNameSpace, index, args);
+
+			// if args, we must have constructor
+			if (args.length > 0 && constructor == null) {
+				throw new InterpreterError("Can't find constructor: " + className);
+			}
+
+			// Evaluate the constructor
+			if (constructor != null) {
+				constructor.invoke(args, visitor, null/*callerInfo*/, false/*overrideNameSpace*/);
+			}
+		} catch (TargetError e) {
+			// passed on to the script, see Reflect.constructObject()
+			throw e;
+		} catch (Throwable e) {
+			if (e instanceof InvocationTargetException) {
+				e = (Exception) ((InvocationTargetException) e).getTargetException();
+			}
+			throw new InterpreterError("Error in class initialization: " + e);
+		}
+	}
+
+
+	/**
+	 * Get the instance This of an instance of this class.
+	 *
+	 * @return the class instance This object or null if the object has not
+	 *         been initialized.
+	 */
+	This getInstanceThis(Object instance) {
+		try {
+			return (This) thisField.get(instance);
+		} catch (IllegalAccessException e) {
+			throw new InterpreterError("Generated class: Error getting This" + e);
+		}
+	}
+
+
+	/**
+	 * Find the scripted constructor in the instance namespace.  Constructors
+	 * generated for a scripted constructor know its index and thus its exact
+	 * signature, only the generated default constructor has to look it up
+	 * by the arguments.
+	 */
+	private BshMethod getConstructor(NameSpace instanceNameSpace, int index, Object[] args) throws UtilEvalError {
+		if (index != ClassGeneratorUtil.DEFAULTCONSTRUCTOR) {
+			BshMethod constructor = instanceNameSpace.getDeclaredMethod(constructorName, getConstructorTypes()[index]);
+			if (constructor != null) {
+				return constructor;
+			}
+		} else if (constructors.length == 0) {
+			return null;
+		}
+		return instanceNameSpace.getMethod(constructorName, Types.getTypes(args), true/*declaredOnly*/);
+	}
+
+
+	/**
+	 * Get the namespace enclosing a new instance constructed in namespace.
+	 * Instances of an inner class constructed by an instance of the enclosing
+	 * class are placed in the instance namespace of the enclosing instance.
+	 * This is not a sufficient emulation of inner classes; e.g. static inner
+	 * classes are treated alike as Java doesn't show the static modifier on
+	 * our fake inner classes.
+	 */
+	private NameSpace getEnclosingNameSpace(NameSpace namespace, Interpreter interpreter) {
+		if (!innerClass) {
+			return namespace;
+		}
+		NameSpace classNameSpace = Name.getClassNameSpace(namespace.getThis(interpreter).getNameSpace());
+		if (classNameSpace != null && className.startsWith(classNameSpace.getName() + "$")) {
+			return classNameSpace;
+		}
+		return namespace;
+	}
+
+
+	private Class[][] getConstructorTypes() {
+		Class[][] types = constructorTypes;
+		if (types == null) {
+			types = new Class[constructors.length][];
+			for (int i = 0; i < types.length; i++) {
+				types[i] = constructors[i].getParameterTypes();
+			}
+			constructorTypes = types;
+		}
+		return types;
+	}
+
+
+	/**
+	 * Determine if the constructor calls this() or super() as its first
+	 * statement.
+	 *
+	 * @return the alternate constructor call or null if the constructor calls
+	 *         the default super constructor
+	 */
+	private static AltConstructorCall getAltConstructorCall(DelayedEvalBshMethod constructor) {
+		if (constructor.methodBody.jjtGetNumChildren() == 0) {
+			return null;
+		}
+		SimpleNode firstStatement = (SimpleNode) constructor.methodBody.jjtGetChild(0);
+		if (firstStatement instanceof BSHPrimaryExpression) {
+			firstStatement = (SimpleNode) firstStatement.jjtGetChild(0);
+		}
+		if (firstStatement instanceof BSHMethodInvocation) {
+			BSHMethodInvocation methodNode = (BSHMethodInvocation) firstStatement;
+			BSHAmbiguousName methodName = methodNode.getNameNode();
+			if (methodName.text.equals("super") || methodName.text.equals("this")) {
+				return new AltConstructorCall(methodName.text.equals("super"), methodNode.getArgsNode());
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * A this() or super() call starting a scripted constructor.
+	 */
+	private static class AltConstructorCall {
+
+		final boolean isSuper;
+		final BSHArguments argsNode;
+
+
+		AltConstructorCall(boolean isSuper, BSHArguments argsNode) {
+			this.isSuper = isSuper;
+			this.argsNode = argsNode;
+		}
+	}
+}
@@ -24,20 +24,51 @@
 
 package bsh;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.lang.reflect.Array;
 
 /**
 	The default CollectionManager
 	supports iteration over objects of type:
-	Enumeration, Iterator, Iterable, CharSequence, and array.
+	Enumeration, Iterator, Iterable, Map (over its entries), CharSequence,
+	and array.
+	<p>
+
+	Further types can be made iterable, or iterated differently, by
+	registering an IterationStrategy for them.  The following are registered
+	by default and read their source lazily, so that they can be used on
+	sources too large for memory:
+	BufferedReader and java.nio.file.Path (over the lines of the file) and
+	java.util.stream.Stream (over its elements) where the runtime has them.
 */
 public final class CollectionManager
 {
 	private static final CollectionManager manager = new CollectionManager();
 
+	/** Registered strategies, the most recently registered first */
+	private volatile Registration[] registrations = new Registration[0];
+
+	private CollectionManager()
+	{
+		registerIterationStrategy( BufferedReader.class, new ReaderIteration() );
+		Class<?> type = classForName( "java.util.stream.BaseStream" );
+		if ( type != null )
+			registerIterationStrategy( type,
+				new StreamIteration( getMethod( type, "iterator" ) ) );
+		type = classForName( "java.nio.file.Path" );
+		if ( type != null )
+			registerIterationStrategy( type,
+				new PathIteration( getMethod( type, "toFile" ) ) );
+	}
+
 	public synchronized static CollectionManager getCollectionManager()
 	{
 		return manager;
@@ -47,13 +78,7 @@ public final class CollectionManager
 	*/
 	public boolean isBshIterable( Object obj ) 
 	{
-		// This could be smarter...
-		try { 
-			getBshIterator( obj ); 
-			return true;
-		} catch( IllegalArgumentException e ) { 
-			return false;
-		}
+		return obj != null && getIterationStrategy( obj.getClass() ) != null;
 	}
 
 	public Iterator getBshIterator( Object obj ) 
@@ -62,8 +87,91 @@ public final class CollectionManager
 		if(obj==null)
 			throw new NullPointerException("Cannot iterate over null.");
 
-		if (obj instanceof Enumeration) {
-			final Enumeration enumeration = (Enumeration)obj;
+		IterationStrategy strategy = getIterationStrategy( obj.getClass() );
+		if ( strategy == null )
+			throw new IllegalArgumentException(
+				"Cannot iterate over object of type "+obj.getClass());
+
+		return strategy.iterator( obj );
+	}
+
+	/**
+		Pick the way of iterating over instances of the type.
+		@return the strategy, or null if instances of the type cannot be
+		iterated.
+	*/
+	public IterationStrategy getIterationStrategy( Class<?> type )
+	{
+		for ( Registration registration : registrations )
+			if ( registration.type.isAssignableFrom( type ) )
+				return registration.strategy;
+
+		if ( Enumeration.class.isAssignableFrom( type ) )
+			return ENUMERATION;
+
+		if ( Iterator.class.isAssignableFrom( type ) )
+			return ITERATOR;
+
+		if ( Iterable.class.isAssignableFrom( type ) )
+			return ITERABLE;
+
+		if ( Map.class.isAssignableFrom( type ) )
+			return MAP;
+
+		if ( type.isArray() )
+		{
+			Class<?> componentType = type.getComponentType();
+			if ( !componentType.isPrimitive() )
+				return OBJECT_ARRAY;
+			if ( componentType == Integer.TYPE )
+				return INT_ARRAY;
+			if ( componentType == Long.TYPE )
+				return LONG_ARRAY;
+			if ( componentType == Double.TYPE )
+				return DOUBLE_ARRAY;
+			return PRIMITIVE_ARRAY;
+		}
+
+		if ( CharSequence.class.isAssignableFrom( type ) )
+			return CHAR_SEQUENCE;
+
+		return null;
+	}
+
+	/**
+		Iterate over instances of the type, including subtypes, with the
+		strategy.  The strategy takes precedence over the default iteration
+		and over strategies registered before it.
+		<p>
+
+		Enhanced for statements remember the strategy they used last, so a
+		strategy should be registered before running the scripts it applies
+		to.
+	*/
+	public synchronized void registerIterationStrategy(
+		Class<?> type, IterationStrategy strategy )
+	{
+		Registration[] old = registrations;
+		Registration[] updated = new Registration[old.length + 1];
+		updated[0] = new Registration( type, strategy );
+		System.arraycopy( old, 0, updated, 1, old.length );
+		registrations = updated;
+	}
+
+	private static final class Registration
+	{
+		final Class<?> type;
+		final IterationStrategy strategy;
+
+		Registration( Class<?> type, IterationStrategy strategy ) {
+			this.type = type;
+			this.strategy = strategy;
+		}
+	}
+
+	private static final IterationStrategy ENUMERATION = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final Enumeration enumeration = (Enumeration)iteratee;
 			return new Iterator<Object>() {
 				public boolean hasNext() {
 					return enumeration.hasMoreElements();
@@ -76,37 +184,270 @@ public final class CollectionManager
 				}
 			};
 		}
+	};
+
+	private static final IterationStrategy ITERATOR = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			return (Iterator)iteratee;
+		}
+	};
+
+	private static final IterationStrategy ITERABLE = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			return ((Iterable)iteratee).iterator();
+		}
+	};
+
+	private static final IterationStrategy MAP = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			return ((Map)iteratee).entrySet().iterator();
+		}
+	};
 
-		if (obj instanceof Iterator)
-			return (Iterator)obj;
+	private static final IterationStrategy OBJECT_ARRAY = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final Object[] array = (Object[])iteratee;
+			return new IndexIterator( array.length ) {
+				Object get( int index ) {
+					return array[index];
+				}
+			};
+		}
+	};
 
-		if (obj instanceof Iterable)
-			return ((Iterable)obj).iterator();
+	private static final IterationStrategy INT_ARRAY = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final int[] array = (int[])iteratee;
+			return new PrimitiveIndexIterator( array.length ) {
+				Object get( int index ) {
+					return Integer.valueOf( array[index] );
+				}
+				Primitive getPrimitive( int index ) {
+					return new Primitive( array[index] );
+				}
+			};
+		}
+	};
 
-		if (obj.getClass().isArray()) {
-			final Object array = obj;
-			return new Iterator() {
-				private int index = 0;
-				private final int length = Array.getLength(array);
+	private static final IterationStrategy LONG_ARRAY = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final long[] array = (long[])iteratee;
+			return new PrimitiveIndexIterator( array.length ) {
+				Object get( int index ) {
+					return Long.valueOf( array[index] );
+				}
+				Primitive getPrimitive( int index ) {
+					return new Primitive( array[index] );
+				}
+			};
+		}
+	};
+
+	private static final IterationStrategy DOUBLE_ARRAY = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final double[] array = (double[])iteratee;
+			return new PrimitiveIndexIterator( array.length ) {
+				Object get( int index ) {
+					return Double.valueOf( array[index] );
+				}
+				Primitive getPrimitive( int index ) {
+					return new Primitive( array[index] );
+				}
+			};
+		}
+	};
+
+	/** The remaining, less common primitive arrays. */
+	private static final IterationStrategy PRIMITIVE_ARRAY = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final Object array = iteratee;
+			return new IndexIterator( Array.getLength( array ) ) {
+				Object get( int index ) {
+					return Array.get( array, index );
+				}
+			};
+		}
+	};
+
+	/**
+		Iterates over a snapshot of the characters, which is free for a
+		String.
+	*/
+	private static final IterationStrategy CHAR_SEQUENCE = new IterationStrategy() {
+		public Iterator iterator( Object iteratee ) {
+			final String chars = iteratee.toString();
+			return new IndexIterator( chars.length() ) {
+				Object get( int index ) {
+					return Character.valueOf( chars.charAt( index ) );
+				}
+			};
+		}
+	};
 
+	/**
+		Reads the lines as the loop goes.  The reader is left open.
+	*/
+	private static final class ReaderIteration implements IterationStrategy
+	{
+		public Iterator iterator( Object iteratee ) {
+			final BufferedReader reader = (BufferedReader)iteratee;
+			return new Iterator<Object>() {
+				private String next;
 				public boolean hasNext() {
-					return index < length;
+					if ( next == null )
+						try {
+							next = reader.readLine();
+						} catch ( IOException e ) {
+							throw new IllegalStateException(
+								"Cannot read line: "+e, e );
+						}
+					return next != null;
 				}
 				public Object next() {
-					return Array.get(array, index++);
+					if ( !hasNext() )
+						throw new NoSuchElementException();
+					String line = next;
+					next = null;
+					return line;
 				}
 				public void remove() {
 					throw new UnsupportedOperationException();
 				}
 			};
-		} 
-		
-		if (obj instanceof CharSequence)
-			return getBshIterator(
-				obj.toString().toCharArray());
-
-		throw new IllegalArgumentException(
-			"Cannot iterate over object of type "+obj.getClass());
+		}
+	}
+
+	/**
+		Iterates over the elements of a java.util.stream.BaseStream, which
+		is not referred to directly so that BeanShell runs on older Java
+		versions.
+	*/
+	private static final class StreamIteration implements IterationStrategy
+	{
+		private final Method iterator;
+
+		StreamIteration( Method iterator ) {
+			this.iterator = iterator;
+		}
+
+		public Iterator iterator( Object iteratee ) {
+			return (Iterator)invoke( iterator, iteratee );
+		}
+	}
+
+	/**
+		Iterates over the lines of the file of a java.nio.file.Path, which
+		is not referred to directly so that BeanShell runs on older Java
+		versions.
+		@see MappedLineIterator
+	*/
+	private static final class PathIteration implements IterationStrategy
+	{
+		private final Method toFile;
+
+		PathIteration( Method toFile ) {
+			this.toFile = toFile;
+		}
+
+		public Iterator iterator( Object iteratee ) {
+			File file = (File)invoke( toFile, iteratee );
+			try {
+				return new MappedLineIterator( file, MappedLineIterator.WINDOW );
+			} catch ( IOException e ) {
+				throw new IllegalStateException(
+					"Cannot read "+file+": "+e, e );
+			}
+		}
+	}
+
+	private static Class<?> classForName( String name )
+	{
+		try {
+			return Class.forName( name );
+		} catch ( ClassNotFoundException e ) {
+			return null;
+		}
+	}
+
+	private static Method getMethod( Class<?> type, String name )
+	{
+		try {
+			return type.getMethod( name );
+		} catch ( NoSuchMethodException e ) {
+			throw new InterpreterError( "No "+name+"() in "+type );
+		}
+	}
+
+	private static Object invoke( Method method, Object target )
+	{
+		try {
+			return method.invoke( target );
+		} catch ( InvocationTargetException e ) {
+			Throwable cause = e.getTargetException();
+			if ( cause instanceof RuntimeException )
+				throw (RuntimeException)cause;
+			if ( cause instanceof Error )
+				throw (Error)cause;
+			throw new IllegalStateException( cause );
+		} catch ( IllegalAccessException e ) {
+			throw new InterpreterError( "Cannot call "+method+": "+e );
+		}
+	}
+
+	/**
+		Iterator over a sequence of values read by their index.
+	*/
+	private static abstract class IndexIterator implements Iterator<Object>
+	{
+		private final int length;
+		int index;
+
+		IndexIterator( int length ) {
+			this.length = length;
+		}
+
+		abstract Object get( int index );
+
+		public boolean hasNext() {
+			return index < length;
+		}
+
+		public Object next() {
+			if ( !hasNext() )
+				throw new NoSuchElementException();
+			return get( index++ );
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+		Iterator over the elements of a primitive array, which can also read
+		them as Primitives without boxing them.  An enhanced for loop with a
+		variable of a primitive type reads them this way, an untyped variable
+		still gets the wrapper objects.
+	*/
+	public interface PrimitiveIterator extends Iterator<Object>
+	{
+		Primitive nextPrimitive();
+	}
+
+	private static abstract class PrimitiveIndexIterator extends IndexIterator
+		implements PrimitiveIterator
+	{
+		PrimitiveIndexIterator( int length ) {
+			super( length );
+		}
+
+		abstract Primitive getPrimitive( int index );
+
+		public Primitive nextPrimitive() {
+			if ( !hasNext() )
+				throw new NoSuchElementException();
+			return getPrimitive( index++ );
+		}
 	}
 
 	public boolean isMap( Object obj ) {
@@ -0,0 +1,249 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh;
+
+import bsh.ast.SimpleNode;
+import bsh.interpreter.BshEvaluatingVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+	A DelegateCallSite links a Java method implemented by a scripted object to
+	the BshMethod implementing it.
+	<p>
+
+	Delegator methods generated by ClassGeneratorUtil hold their call site in
+	a static field of the generated class and pass their bsh This reference
+	(static or instance) and the reified arguments to invoke().  Interface
+	adapters (see InterfaceAdapter) do the same for each interface method.
+	The site resolves the scripted method by the Java signature once and
+	keeps it linked until the namespace chain it was resolved through changes
+	or a method is redefined there, so the per call name lookup and signature
+	matching of This.invokeMethod() is avoided.  The link is kept in the
+	target namespace, each instance of a generated class has its own.
+	<p>
+
+	If no scripted method matches the signature the call falls back to
+	This.invokeMethod(), which also covers the Object protocol defaults and
+	the invoke() meta-method.  So do calls of a site that is not declared
+	only (e.g. of an interface adapter) when the namespaces that may hold the
+	method declare overloads of its name: the overload is then chosen by the
+	runtime types of the arguments, as by a reflection proxy.
+
+	@see ClassGeneratorUtil
+	@see InterfaceAdapter
+*/
+public final class DelegateCallSite
+{
+	private final String name;
+	private final boolean declaredOnly;
+
+	/** Method whose parameter types are resolved on first link, or null */
+	private final BshMethod template;
+	private volatile Class [] paramTypes;
+
+	/**
+		Create a call site for a method declared directly in the target
+		namespace with exactly the signature of the template.
+	*/
+	DelegateCallSite( BshMethod template )
+	{
+		this.name = template.getName();
+		this.template = template;
+		this.declaredOnly = true;
+	}
+
+	/**
+		Create a call site for a method visible in the target namespace
+		(declared, imported or inherited) which accepts the specified
+		argument types.
+	*/
+	DelegateCallSite( String name, Class [] paramTypes )
+	{
+		this.name = name;
+		this.template = null;
+		this.paramTypes = paramTypes;
+		this.declaredOnly = false;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+		Invoke the linked scripted method on the target with the specified
+		arguments.  Primitive arguments must be wrapped in bsh.Primitive and
+		nulls mapped to Primitive.NULL by the caller.
+		@return the value returned by the scripted method, which may be a
+			bsh.Primitive
+	*/
+	public Object invoke( This target, Object [] args )
+		throws EvalError
+	{
+		return invoke( target, args, target.declaringInterpreter );
+	}
+
+	/**
+		Invoke the linked scripted method on the target, evaluating it with
+		the specified interpreter rather than the declaring interpreter of
+		the target.
+		@see #invoke(This, Object[])
+	*/
+	public Object invoke( This target, Object [] args, Interpreter interpreter )
+		throws EvalError
+	{
+		Link link = link( target.namespace );
+		BshMethod method = link.method;
+
+		if ( method == null || link.overloaded )
+			return target.invokeMethod( name, args, interpreter,
+				null/*callstack*/, null/*callerInfo*/, declaredOnly );
+
+		return method.invoke( args, BshEvaluatingVisitor.create(
+				new CallStack( target.namespace ), interpreter ),
+			SimpleNode.JAVACODE );
+	}
+
+	/**
+		Get the method linked for the namespace, relinking if necessary.
+		@return the BshMethod or null if there is no scripted method with
+			a matching signature.
+	*/
+	BshMethod getMethod( NameSpace namespace )
+	{
+		return link( namespace ).method;
+	}
+
+	private Link link( NameSpace namespace )
+	{
+		Link link = namespace.getCallSiteLink( this );
+		if ( link == null || !link.isValid( namespace ) ) {
+			link = resolve( namespace );
+			namespace.setCallSiteLink( this, link );
+		}
+		return link;
+	}
+
+	private Link resolve( NameSpace namespace )
+	{
+		if ( paramTypes == null )
+			paramTypes = template.getParameterTypes();
+
+		// Snapshot the versions before the lookup so that a concurrent
+		// redefinition can only make the link look stale, never current.
+		List<NameSpace> chain = new ArrayList<NameSpace>();
+		List<Integer> versions = new ArrayList<Integer>();
+		for( NameSpace ns = namespace; ns != null; ns = ns.getParent() )
+		{
+			chain.add( ns );
+			versions.add( ns.methodsVersion );
+			if ( declaredOnly )
+				break;
+		}
+
+		BshMethod method;
+		if ( declaredOnly )
+			method = namespace.getDeclaredMethod( name, paramTypes );
+		else
+			try {
+				method = namespace.getMethod( name, paramTypes );
+			} catch ( UtilEvalError e ) {
+				method = null;
+			}
+
+		// Nothing below the declaring namespace of a scripted method can
+		// shadow it anymore, so the namespaces above it need not be checked.
+		boolean complete = !declaredOnly;
+		if ( method != null && method.declaringNameSpace != null ) {
+			int i = chain.indexOf( method.declaringNameSpace );
+			if ( i != -1 ) {
+				chain = chain.subList( 0, i+1 );
+				complete = false;
+			}
+		}
+
+		int [] va = new int[ chain.size() ];
+		for( int i=0; i<va.length; i++ )
+			va[i] = versions.get(i);
+
+		return new Link( chain.toArray( new NameSpace[chain.size()] ), va,
+			complete, method, !declaredOnly && isOverloaded( chain ) );
+	}
+
+	/**
+		Check if the namespaces declare more than one method of the name.
+	*/
+	private boolean isOverloaded( List<NameSpace> chain )
+	{
+		int count = 0;
+		for( NameSpace ns : chain )
+			for( BshMethod method : ns.getMethods() )
+				if ( method.getName().equals( name ) && ++count > 1 )
+					return true;
+		return false;
+	}
+
+	public String toString() {
+		return "Call site for: " + name;
+	}
+
+	/**
+		An immutable snapshot of a resolution: the namespaces consulted,
+		their method versions at the time and the method found.
+	*/
+	static final class Link
+	{
+		final NameSpace [] chain;
+		final int [] versions;
+		/** true if chain runs up to the global namespace */
+		final boolean complete;
+		final BshMethod method;
+		/** true if the method must be chosen by the argument types */
+		final boolean overloaded;
+
+		Link( NameSpace [] chain, int [] versions, boolean complete,
+			BshMethod method, boolean overloaded )
+		{
+			this.chain = chain;
+			this.versions = versions;
+			this.complete = complete;
+			this.method = method;
+			this.overloaded = overloaded;
+		}
+
+		boolean isValid( NameSpace namespace )
+		{
+			for( int i=0; i<chain.length; i++ )
+			{
+				if ( namespace != chain[i]
+					|| namespace.methodsVersion != versions[i] )
+					return false;
+				namespace = namespace.getParent();
+			}
+			return !complete || namespace == null;
+		}
+	}
+}
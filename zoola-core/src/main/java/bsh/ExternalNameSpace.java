@@ -109,6 +109,15 @@ public class ExternalNameSpace extends NameSpace
 		putExternalMap( name, value );
 	}
 
+	/**
+		Variables are mirrored in the external map, which must see every
+		assignment, so they are never appended to in place.
+	*/
+	Variable getAppendVariable( String name, boolean recurse )
+	{
+		return null;
+	}
+
 	/**
 	*/
 	public void unsetVariable( String name )
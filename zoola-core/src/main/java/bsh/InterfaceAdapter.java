@@ -0,0 +1,371 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+	InterfaceAdapter is the superclass of the adapter classes generated for
+	This.getInterface().  An adapter implements a set of interfaces on behalf
+	of a bsh scripted object.
+	<p>
+
+	Adapter classes are generated with ClassGeneratorUtil once per set of
+	interfaces and classloader and then shared by all scripted objects
+	implementing that set.  Each adapter instance wraps one This and owns a
+	DelegateCallSite per interface method, so the scripted method is resolved
+	when first called and then invoked directly until the namespace changes.
+	<p>
+
+	The Object protocol follows the reflection proxy based implementation
+	this replaces: equals(), hashCode() and toString() are delegated to the
+	scripted methods when they exist and otherwise default to identity of the
+	adapter, the hash code of the This and a description of the interfaces.
+	Interfaces that can not be implemented by a generated class (non public
+	or not visible from a single classloader) still get a proxy.
+	<p>
+
+	The adapter classes of lambdas (see LambdaAdapter) are generated and
+	cached by the same classloaders.
+
+	@see This#getInterface(Class[])
+*/
+public abstract class InterfaceAdapter
+{
+	/** The name of the static field holding the adapted methods */
+	static final String METHODS = "_bshMethods";
+
+	/**
+		The adapter loaders by their parent loader.  A loader refers to its
+		parent, so it is held softly: a strong value would keep the weak key
+		reachable and the parent loader, e.g. of a web application, could
+		never be collected.  A soft loader and its adapter classes are only
+		dropped, and generated again on their next use, when memory runs low.
+	*/
+	private static final Map<ClassLoader,SoftReference<AdapterLoader>> loaders
+		= new WeakHashMap<ClassLoader,SoftReference<AdapterLoader>>();
+
+	private static int adapterCount;
+
+	protected final This bshThis;
+	private final Method [] methods;
+	private final DelegateCallSite [] sites;
+	private final DelegateCallSite equalsSite, hashCodeSite, toStringSite;
+
+	protected InterfaceAdapter( This bshThis, Method [] methods )
+	{
+		this.bshThis = bshThis;
+		this.methods = methods;
+		this.sites = new DelegateCallSite[ methods.length ];
+		for( int i=0; i<methods.length; i++ )
+			sites[i] = new DelegateCallSite(
+				methods[i].getName(), methods[i].getParameterTypes() );
+
+		equalsSite = new DelegateCallSite(
+			"equals", new Class [] { Object.class } );
+		hashCodeSite = new DelegateCallSite( "hashCode", new Class[0] );
+		toStringSite = new DelegateCallSite( "toString", new Class[0] );
+	}
+
+	/**
+		Invoke the scripted method linked to the specified slot.  This is
+		called by the generated interface methods.
+	*/
+	protected final Object invokeSlot( int slot, Object [] args )
+		throws Throwable
+	{
+		return invoke( sites[slot], args, methods[slot].getExceptionTypes() );
+	}
+
+	/**
+		Invoke the site, delivering exceptions the way a reflection proxy
+		does: checked exceptions not declared by the interface method are
+		wrapped in an UndeclaredThrowableException.
+	*/
+	private Object invoke(
+		DelegateCallSite site, Object [] args, Class [] declaredExceptions )
+		throws Throwable
+	{
+		try {
+			return site.invoke( bshThis, args );
+		} catch ( TargetError te ) {
+			throw deliverable( te, declaredExceptions );
+		} catch ( EvalError ee ) {
+			// Ease debugging...
+			if ( Interpreter.DEBUG )
+				Interpreter.debug( "EvalError in scripted interface: "
+				+ bshThis.toString() + ": "+ ee );
+			throw ee;
+		}
+	}
+
+	/**
+		Get the exception an interface method throws for the target
+		exception of a scripted method, the way a reflection proxy does:
+		checked exceptions not declared by the interface method are wrapped
+		in an UndeclaredThrowableException.
+	*/
+	static Throwable deliverable( TargetError te, Class [] declaredExceptions )
+		throws Exception
+	{
+		Throwable t = This.rewrapTargetError( te );
+		if ( t instanceof RuntimeException || t instanceof Error )
+			return t;
+		for( Class exceptionType : declaredExceptions )
+			if ( exceptionType.isInstance( t ) )
+				return t;
+		return new UndeclaredThrowableException( t );
+	}
+
+	private Object invokeObjectMethod( DelegateCallSite site, Object [] args )
+	{
+		try {
+			return Primitive.unwrap( invoke( site, args, new Class[0] ) );
+		} catch ( RuntimeException e ) {
+			throw e;
+		} catch ( Error e ) {
+			throw e;
+		} catch ( Throwable t ) {
+			// not reached, undeclared exceptions are wrapped above
+			throw new UndeclaredThrowableException( t );
+		}
+	}
+
+	public boolean equals( Object obj )
+	{
+		if ( equalsSite.getMethod( bshThis.namespace ) == null )
+			return this == obj;
+		return (Boolean)invokeObjectMethod( equalsSite,
+			new Object [] { obj == null ? Primitive.NULL : obj } );
+	}
+
+	public int hashCode()
+	{
+		if ( hashCodeSite.getMethod( bshThis.namespace ) == null )
+			return bshThis.hashCode();
+		return (Integer)invokeObjectMethod( hashCodeSite, new Object[0] );
+	}
+
+	public String toString()
+	{
+		if ( toStringSite.getMethod( bshThis.namespace ) == null )
+		{
+			Class [] ints = getClass().getInterfaces();
+			StringBuilder sb = new StringBuilder(
+				bshThis.toString() + "\nimplements:" );
+			for(int i=0; i<ints.length; i++)
+				sb.append( " "+ ints[i].getName()
+					+ ((ints.length > 1)?",":"") );
+			return sb.toString();
+		}
+		return String.valueOf(
+			invokeObjectMethod( toStringSite, new Object[0] ) );
+	}
+
+	/**
+		Get the adapter class implementing the interfaces, generating it if
+		necessary.
+		@return the adapter class or null if the interfaces can not be
+			implemented by a generated class.
+	*/
+	static Class getAdapterClass( Class [] interfaces )
+	{
+		ClassLoader parent = interfaces[0].getClassLoader();
+		for( Class intf : interfaces )
+			if ( !intf.isInterface() || !Modifier.isPublic( intf.getModifiers() )
+				|| !isVisible( intf, parent ) )
+				return null;
+
+		return getLoader( parent ).getAdapterClass( interfaces );
+	}
+
+	/**
+		Get the adapter class implementing a functional interface for a
+		Lambda, generating it if necessary.
+		@param method the single abstract method of the interface
+		@return the adapter class or null if the interface can not be
+			implemented by a generated class.
+		@see LambdaAdapter
+	*/
+	static Class getLambdaAdapterClass( Class intf, Method method )
+	{
+		ClassLoader parent = intf.getClassLoader();
+		if ( !Modifier.isPublic( intf.getModifiers() )
+				|| !isVisible( intf, parent ) )
+			return null;
+
+		return getLoader( parent ).getLambdaAdapterClass( intf, method );
+	}
+
+	private static AdapterLoader getLoader( ClassLoader parent )
+	{
+		synchronized( loaders )
+		{
+			SoftReference<AdapterLoader> ref = loaders.get( parent );
+			AdapterLoader loader = ref == null ? null : ref.get();
+			if ( loader == null ) {
+				loader = new AdapterLoader( parent );
+				loaders.put( parent, new SoftReference<AdapterLoader>( loader ) );
+			}
+			return loader;
+		}
+	}
+
+	private static boolean isVisible( Class clas, ClassLoader loader )
+	{
+		try {
+			return Class.forName( clas.getName(), false, loader ) == clas;
+		} catch ( ClassNotFoundException e ) {
+			return false;
+		}
+	}
+
+	/**
+		Collect the methods to implement, in a stable order, leaving out the
+		Object protocol which the adapter implements itself.
+		@return the methods or null if two interfaces declare the same
+			signature with different return types.
+	*/
+	private static Method [] getAdaptedMethods( Class [] interfaces )
+	{
+		Map<String,Method> methods = new LinkedHashMap<String,Method>();
+		for( Class intf : interfaces )
+			for( Method method : intf.getMethods() )
+			{
+				String key = method.getName()
+					+ Arrays.asList( method.getParameterTypes() );
+				if ( isObjectMethod( method ) )
+					continue;
+				Method other = methods.get( key );
+				if ( other == null )
+					methods.put( key, method );
+				else
+				if ( other.getReturnType() != method.getReturnType() )
+					return null;
+			}
+		return methods.values().toArray( new Method[ methods.size() ] );
+	}
+
+	static boolean isObjectMethod( Method method )
+	{
+		try {
+			Object.class.getMethod(
+				method.getName(), method.getParameterTypes() );
+			return true;
+		} catch ( NoSuchMethodException e ) {
+			return false;
+		}
+	}
+
+	/**
+		Defines the adapter classes for interfaces of one classloader.  The
+		bsh classes referenced by the adapters are always taken from our own
+		classloader.
+	*/
+	private static class AdapterLoader extends ClassLoader
+	{
+		private final Map<List<Class>,Class> adapters
+			= new HashMap<List<Class>,Class>();
+		private final Map<Class,Class> lambdaAdapters
+			= new HashMap<Class,Class>();
+
+		AdapterLoader( ClassLoader parent ) {
+			super( parent );
+		}
+
+		protected synchronized Class loadClass( String name, boolean resolve )
+			throws ClassNotFoundException
+		{
+			if ( name.startsWith("bsh.") && findLoadedClass( name ) == null )
+			{
+				ClassLoader bshLoader = InterfaceAdapter.class.getClassLoader();
+				return bshLoader == null
+					? findSystemClass( name ) : bshLoader.loadClass( name );
+			}
+			return super.loadClass( name, resolve );
+		}
+
+		synchronized Class getAdapterClass( Class [] interfaces )
+		{
+			List<Class> key = new ArrayList<Class>( Arrays.asList( interfaces ) );
+			if ( adapters.containsKey( key ) )
+				return adapters.get( key );
+
+			Class clas = null;
+			Method [] methods = getAdaptedMethods( interfaces );
+			if ( methods != null )
+			{
+				String name;
+				synchronized( loaders ) {
+					name = "bsh.InterfaceAdapter$$Impl" + (++adapterCount);
+				}
+				byte [] code = ClassGeneratorUtil.generateInterfaceAdapter(
+					name.replace('.','/'), interfaces, methods );
+				clas = defineClass( name, code, 0, code.length );
+				try {
+					clas.getField( METHODS ).set( null, methods );
+				} catch ( Exception e ) {
+					throw new InterpreterError(
+						"Error in interface adapter setup: " + e );
+				}
+			}
+			adapters.put( key, clas );
+			return clas;
+		}
+
+		synchronized Class getLambdaAdapterClass( Class intf, Method method )
+		{
+			Class clas = lambdaAdapters.get( intf );
+			if ( clas != null )
+				return clas;
+
+			String name;
+			synchronized( loaders ) {
+				name = "bsh.LambdaAdapter$$Impl" + (++adapterCount);
+			}
+			byte [] code = ClassGeneratorUtil.generateLambdaAdapter(
+				name.replace('.','/'), intf, method );
+			clas = defineClass( name, code, 0, code.length );
+			try {
+				clas.getField( LambdaAdapter.METHOD ).set( null, method );
+			} catch ( Exception e ) {
+				throw new InterpreterError(
+					"Error in lambda adapter setup: " + e );
+			}
+			lambdaAdapters.put( intf, clas );
+			return clas;
+		}
+	}
+}
@@ -127,6 +127,12 @@ public class Interpreter
 	*/
 	private boolean strictJava = false;
 
+	/**
+		Closure compilation
+		@see #setClosureCompilation( boolean )
+	*/
+	private boolean closureCompilation = false;
+
 	/* --- End static members --- */
 
 	/* --- Instance data --- */
@@ -187,12 +193,14 @@ public class Interpreter
 		this.interactive = interactive;
 		debug = err;
 		this.parent = parent;
-		if ( parent != null )
+		if ( parent != null ) {
 			setStrictJava( parent.getStrictJava() );
+			setClosureCompilation( parent.getClosureCompilation() );
+		}
 		this.sourceFileInfo = sourceFileInfo;
 
-		BshClassManager bcm = BshClassManager.createClassManager( this );
 		if ( namespace == null ) {
+			BshClassManager bcm = BshClassManager.createClassManager( this );
 			globalNameSpace = new NameSpace( bcm, "global");
 			initRootSystemObject();
 		} else {
@@ -264,6 +272,26 @@ public class Interpreter
 		setu( "bsh.evalOnly", new Primitive(true) );
 	}
 
+	/**
+		Create a child interpreter which evaluates in the specified namespace
+		and prints to its own output streams.  This is used to give a single
+		call its own streams while the parent is shared by several threads,
+		e.g. by the script engine.  The child has no input of its own, use
+		eval() only.
+	*/
+	Interpreter( 
+		Interpreter parent, NameSpace namespace, PrintStream out, 
+		PrintStream err )
+	{
+		this.parent = parent;
+		this.globalNameSpace = namespace;
+		this.out = out;
+		this.err = err;
+		this.evalOnly = true;
+		setStrictJava( parent.getStrictJava() );
+		setClosureCompilation( parent.getClosureCompilation() );
+	}
+
 	// End constructors
 
 	/**
@@ -444,7 +472,7 @@ public class Interpreter
 		// init the callstack.  
 		CallStack callstack = new CallStack( globalNameSpace );
 
-        BshEvaluatingVisitor evaluator = new BshEvaluatingVisitor(callstack, this);
+        BshEvaluatingVisitor evaluator = BshEvaluatingVisitor.create(callstack, this);
 
 		SimpleNode node = null;
 		boolean eof = false;
@@ -638,7 +666,7 @@ public class Interpreter
 
 		CallStack callstack = new CallStack( nameSpace );
 
-        BshEvaluatingVisitor evaluator = new BshEvaluatingVisitor(callstack, localInterpreter);
+        BshEvaluatingVisitor evaluator = BshEvaluatingVisitor.create(callstack, localInterpreter);
 
         SimpleNode node = null;
 		boolean eof = false;
@@ -877,7 +905,7 @@ public class Interpreter
 		try {
 			if ( Name.isCompound( name ) ) 
 			{
-				LHS lhs = globalNameSpace.getNameResolver( name ).toLHS( new BshEvaluatingVisitor(callstack,  this)	);
+				LHS lhs = globalNameSpace.getNameResolver( name ).toLHS( BshEvaluatingVisitor.create(callstack,  this)	);
 				lhs.assign( value, false );
 			} else // optimization for common case
 				globalNameSpace.setVariable( name, value, false );
@@ -927,7 +955,7 @@ public class Interpreter
 		CallStack callstack = new CallStack();
 		try {
 			LHS lhs = globalNameSpace.getNameResolver( name ).toLHS( 
-				new BshEvaluatingVisitor(callstack, this) );
+				BshEvaluatingVisitor.create(callstack, this) );
 
 			if ( lhs.type != LHS.VARIABLE )
 				throw new EvalError("Can't unset, not a variable: "+name, 
@@ -1117,6 +1145,26 @@ public class Interpreter
 		return this.strictJava;
 	}
 
+	/**
+		Set closure compilation on or off.
+		When enabled, scripts are evaluated by a BshCompilingVisitor which
+		translates each syntax tree once into a tree of compiled nodes
+		specialized for the shape of the tree, rather than visiting the nodes
+		on every evaluation.  The results are the same either way.  Child
+		interpreters inherit the setting.
+		@see bsh.interpreter.BshClosureCompiler
+	*/
+	public void setClosureCompilation( boolean b ) { 
+		this.closureCompilation = b; 
+	}
+
+	/**
+		@see #setClosureCompilation( boolean )
+	*/
+	public boolean getClosureCompilation() { 
+		return this.closureCompilation;
+	}
+
 	static void staticInit() 
 	{
 	/* 
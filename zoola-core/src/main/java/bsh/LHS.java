@@ -65,6 +65,12 @@ public class LHS implements ParserConstants, java.io.Serializable
 	Object object;
 	int index;
 
+	/** The String variable and its text before an append, see prepareAppend() */
+	private Variable appendVariable;
+	private CharSequence appendText;
+	private int appendLength;
+	private int appendChanges;
+
 /**
 		Variable LHS constructor.
 */
@@ -168,6 +174,9 @@ throw new Error("namespace lhs");
 			try {
 				return Reflect.getIndex(object, index);
 			}
+			catch(UtilTargetError e) { // pass along target error
+				throw e;
+			}
 			catch(Exception e) {
 				throw new UtilEvalError("Array access: " + e);
 			}
@@ -175,6 +184,44 @@ throw new Error("namespace lhs");
 		throw new InterpreterError("LHS type");
 	}
 
+	/**
+		Prepare to append to a String variable, as lhs += val does when the
+		value of the assignment is not used.  This is called before the value
+		to append is evaluated.
+		@return false if the LHS is not a String variable that can be
+		appended to, in which case the caller must assign the value
+	*/
+	public boolean prepareAppend( boolean strictJava )
+		throws UtilEvalError
+	{
+		if ( type != VARIABLE )
+			return false;
+		boolean recurse = !localVar
+			&& ( Interpreter.LOCALSCOPING ? strictJava : true );
+		Variable var = nameSpace.getAppendVariable( varName, recurse );
+		CharSequence text = var == null ? null : var.getAppendText();
+		if ( text == null )
+			return false;
+		appendVariable = var;
+		appendText = text;
+		appendLength = text.length();
+		appendChanges = var.getChanges();
+		return true;
+	}
+
+	/**
+		Append the string form of a value to the variable prepared by
+		prepareAppend().
+	*/
+	public void appendString( Object val, boolean strictJava )
+		throws UtilEvalError
+	{
+		if ( !appendVariable.appendString( val, appendChanges ) )
+			// the variable was changed while evaluating the value
+			assign( appendText.subSequence( 0, appendLength ).toString() + val,
+				strictJava );
+	}
+
 	/**
 		Assign a value to the LHS.
 	*/
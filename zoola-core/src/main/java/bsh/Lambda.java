@@ -0,0 +1,290 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh;
+
+import bsh.ast.BSHBlock;
+import bsh.ast.BSHFormalParameters;
+import bsh.ast.BSHLambdaExpression;
+import bsh.ast.SimpleNode;
+import bsh.interpreter.BshEvaluatingVisitor;
+import bsh.interpreter.LambdaCaptures;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+/**
+	The value of a lambda expression, e.g. ( a, b ) -&gt; a.compareTo( b ).
+	<p>
+
+	A lambda is converted to a functional interface, an interface with a
+	single abstract method, wherever one is expected: when it is passed to
+	a Java or scripted method, assigned to a typed variable or cast.  The
+	interface is implemented by an adapter class generated once per
+	interface (see LambdaAdapter), so calls from Java invoke the body
+	without a reflection proxy or a lookup by name.
+	<p>
+
+	The body is run as a scripted method declared in a namespace of the
+	lambda, whose parent is the namespace the lambda was created in.  The
+	local variables the body only reads are copied into the namespace of
+	the lambda when it is created, see LambdaCaptures, so the body finds
+	them at the first step and sees their values at that time, like a Java
+	lambda.  Other names are looked up through the enclosing scopes as
+	usual.
+*/
+public final class Lambda
+{
+	private final BshMethod method;
+	private final NameSpace nameSpace;
+	private final Interpreter interpreter;
+
+	/** The interface the lambda was converted to last and its adapter */
+	private Class adapterType;
+	private Object adapter;
+
+	private Lambda( BshMethod method, NameSpace nameSpace, Interpreter interpreter )
+	{
+		this.method = method;
+		this.nameSpace = nameSpace;
+		this.interpreter = interpreter;
+	}
+
+	/**
+		Create the lambda of a lambda expression in the current namespace
+		of the visitor.
+	*/
+	public static Lambda create(
+		BSHLambdaExpression node, BshEvaluatingVisitor visitor )
+		throws EvalError
+	{
+		CallStack callstack = visitor.getCallstack();
+		NameSpace enclosingNameSpace = callstack.top();
+
+		BSHFormalParameters params = (BSHFormalParameters)node.jjtGetChild(0);
+		Class [] paramTypes = (Class [])params.accept( visitor );
+		BSHBlock body = (BSHBlock)node.jjtGetChild(1);
+
+		NameSpace nameSpace = new NameSpace( enclosingNameSpace, "lambda" );
+		try {
+			for ( String name : LambdaCaptures.of( node ) )
+				capture( name, enclosingNameSpace, nameSpace );
+		} catch ( UtilEvalError e ) {
+			throw e.toEvalError( node, callstack );
+		}
+
+		BshMethod method = new BshMethod( "lambda", null/*returnType*/,
+			params.getParamNames(), paramTypes, body, nameSpace,
+			null/*modifiers*/ );
+		return new Lambda( method, nameSpace, visitor.getInterpreter() );
+	}
+
+	/**
+		Copy a local variable of the enclosing blocks and method into the
+		namespace of the lambda.  Variables of classes and of the global
+		namespace are not copied.
+	*/
+	private static void capture(
+		String name, NameSpace enclosingNameSpace, NameSpace nameSpace )
+		throws UtilEvalError
+	{
+		for ( NameSpace ns = enclosingNameSpace;
+			ns instanceof BlockNameSpace || ns.isMethod; ns = ns.getParent() )
+		{
+			Variable var = ns.getVariableImpl( name, false/*recurse*/ );
+			if ( var != null )
+			{
+				if ( var.getType() != null )
+					nameSpace.setTypedVariable( name, var.getType(),
+						var.getValue(), var.getModifiers() );
+				else
+					nameSpace.setLocalVariable( name, var.getValue(),
+						false/*strictJava*/ );
+				return;
+			}
+			if ( ns.isMethod )
+				return;
+		}
+	}
+
+	/**
+		Invoke the lambda.
+		@param args the arguments, primitive values may be wrapped in
+			bsh.Primitive
+		@return the value of the body, which may be a bsh.Primitive
+	*/
+	public Object invoke( Object [] args )
+		throws EvalError
+	{
+		if ( args == null )
+			args = new Object[0];
+		for ( int i = 0; i < args.length; i++ )
+			if ( args[i] == null ) {
+				args = args.clone();
+				for ( ; i < args.length; i++ )
+					if ( args[i] == null )
+						args[i] = Primitive.NULL;
+			}
+
+		return method.invoke( args, BshEvaluatingVisitor.create(
+				new CallStack( nameSpace ), interpreter ),
+			SimpleNode.JAVACODE );
+	}
+
+	/**
+		Invoke the lambda as the method of a functional interface, converting
+		the result to the return type of the method.  Exceptions are delivered
+		as by InterfaceAdapter.
+	*/
+	Object invoke( Object [] args, Method target )
+		throws Throwable
+	{
+		Object ret;
+		try {
+			ret = invoke( args );
+		} catch ( TargetError te ) {
+			throw InterfaceAdapter.deliverable( te, target.getExceptionTypes() );
+		}
+
+		Class returnType = target.getReturnType();
+		if ( returnType == Void.TYPE )
+			return Primitive.VOID;
+		try {
+			return Types.castObject( ret, returnType, Types.ASSIGNMENT );
+		} catch ( UtilEvalError e ) {
+			throw e.toEvalError( "Incorrect type returned from lambda for "
+				+ target.getName(), SimpleNode.JAVACODE, null/*callstack*/ );
+		}
+	}
+
+	/**
+		Get the single abstract method of a functional interface.
+		@return the method, or null if the type is not an interface with a
+			single abstract method
+	*/
+	static Method getFunctionalMethod( Class type )
+	{
+		if ( !type.isInterface() )
+			return null;
+
+		Method found = null;
+		for ( Method method : type.getMethods() )
+		{
+			if ( !Modifier.isAbstract( method.getModifiers() )
+					|| InterfaceAdapter.isObjectMethod( method ) )
+				continue;
+			if ( found == null )
+				found = method;
+			else
+			if ( !found.getName().equals( method.getName() )
+				|| !Arrays.equals(
+					found.getParameterTypes(), method.getParameterTypes() ) )
+				return null;
+			else
+			// a redeclaration with a more specific return type
+			if ( found.getReturnType().isAssignableFrom( method.getReturnType() ) )
+				found = method;
+		}
+		return found;
+	}
+
+	/**
+		Get an implementation of the functional interface calling this
+		lambda.  The implementation made last is kept, so that converting
+		the lambda to the same interface again gives the same object.
+	*/
+	public synchronized Object getInterface( Class type )
+	{
+		if ( type == adapterType )
+			return adapter;
+
+		Method target = getFunctionalMethod( type );
+		if ( target == null )
+			throw new InterpreterError(
+				"Not a functional interface: " + type.getName() );
+
+		Class adapterClass = InterfaceAdapter.getLambdaAdapterClass( type, target );
+		Object adapter;
+		if ( adapterClass != null )
+			try {
+				adapter = adapterClass.getConstructor( Lambda.class )
+					.newInstance( this );
+			} catch ( Exception e ) {
+				throw new InterpreterError(
+					"Error creating lambda adapter: " + e );
+			}
+		else
+			adapter = Proxy.newProxyInstance( type.getClassLoader(),
+				new Class [] { type }, new Handler( target ) );
+
+		this.adapterType = type;
+		this.adapter = adapter;
+		return adapter;
+	}
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder( "Lambda (" );
+		String [] names = method.getParameterNames();
+		for ( int i = 0; i < names.length; i++ )
+			sb.append( i == 0 ? " " : ", " ).append( names[i] );
+		return sb.append( names.length == 0 ? ")" : " )" ).toString();
+	}
+
+	/**
+		Implements an interface which can not be implemented by a generated
+		adapter class, e.g. a non public one.
+	*/
+	private class Handler implements InvocationHandler
+	{
+		private final Method target;
+
+		Handler( Method target ) {
+			this.target = target;
+		}
+
+		public Object invoke( Object proxy, Method method, Object [] args )
+			throws Throwable
+		{
+			String name = method.getName();
+			if ( name.equals( "equals" ) && args != null && args.length == 1 )
+				return proxy == args[0];
+			if ( name.equals( "hashCode" ) && args == null )
+				return System.identityHashCode( proxy );
+			if ( name.equals( "toString" ) && args == null )
+				return Lambda.this + " implementing "
+					+ target.getDeclaringClass().getName();
+			if ( !name.equals( target.getName() )
+				|| !Arrays.equals( method.getParameterTypes(),
+					target.getParameterTypes() ) )
+				throw new UnsupportedOperationException( name );
+
+			return Primitive.unwrap( Lambda.this.invoke(
+				args == null ? new Object[0] : args, target ) );
+		}
+	}
+}
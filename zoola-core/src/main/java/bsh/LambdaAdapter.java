@@ -0,0 +1,71 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh;
+
+import java.lang.reflect.Method;
+
+/**
+	LambdaAdapter is the superclass of the adapter classes generated to
+	implement a functional interface with a Lambda.  An adapter class is
+	generated with ClassGeneratorUtil once per interface and classloader
+	and each adapter instance wraps one lambda.  The interface method passes
+	its arguments to invokeLambda() and returns the result unwrapped to its
+	return type, so a call from Java goes straight to the body of the lambda.
+	<p>
+
+	equals() and hashCode() are those of Object, as for a Java lambda.
+
+	@see Lambda#getInterface(Class)
+	@see InterfaceAdapter#getLambdaAdapterClass(Class, Method)
+*/
+public abstract class LambdaAdapter
+{
+	/** The name of the static field holding the implemented method */
+	static final String METHOD = "_bshMethod";
+
+	protected final Lambda lambda;
+	private final Method method;
+
+	protected LambdaAdapter( Lambda lambda, Method method )
+	{
+		this.lambda = lambda;
+		this.method = method;
+	}
+
+	/**
+		Invoke the lambda.  This is called by the generated interface method.
+	*/
+	protected final Object invokeLambda( Object [] args )
+		throws Throwable
+	{
+		return lambda.invoke( args, method );
+	}
+
+	public String toString()
+	{
+		return lambda + " implementing "
+			+ method.getDeclaringClass().getName();
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+	Iterator over the lines of a UTF-8 text file that reads the file through
+	memory mapped windows, so that files of any size are read in constant
+	memory.  Lines end with a newline, optionally preceded by a carriage
+	return, which are not part of the line, as with BufferedReader.readLine().
+	<p>
+
+	The file is only kept open while a window is mapped, so an iteration
+	that is abandoned early does not leak a file handle.  The size of the
+	file is taken when iteration starts.
+*/
+final class MappedLineIterator implements Iterator<Object>
+{
+	/** Default size of the mapped windows */
+	static final int WINDOW = 1 << 26;
+
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private final File file;
+	private final long size;
+	private final int window;
+	private final CharsetDecoder decoder = UTF8.newDecoder()
+		.onMalformedInput( CodingErrorAction.REPLACE )
+		.onUnmappableCharacter( CodingErrorAction.REPLACE );
+
+	private MappedByteBuffer buffer;
+	/** Position in the file of the start of the buffer */
+	private long bufferStart;
+	/** Position in the file of the start of the next line */
+	private long position;
+	private String next;
+
+	MappedLineIterator( File file, int window ) throws IOException
+	{
+		this.file = file;
+		this.window = window;
+		RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try {
+			this.size = raf.length();
+		} finally {
+			raf.close();
+		}
+	}
+
+	public boolean hasNext()
+	{
+		if ( next == null && position < size )
+			next = readLine();
+		return next != null;
+	}
+
+	public Object next()
+	{
+		if ( !hasNext() )
+			throw new NoSuchElementException();
+		String line = next;
+		next = null;
+		return line;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private String readLine()
+	{
+		if ( buffer == null )
+			map( window );
+		while ( true )
+		{
+			int from = (int)( position - bufferStart );
+			int limit = buffer.limit();
+			for ( int i = from; i < limit; i++ )
+				if ( buffer.get( i ) == '\n' ) {
+					position = bufferStart + i + 1;
+					return decode( from, i );
+				}
+
+			if ( bufferStart + limit == size ) {
+				position = size;
+				return decode( from, limit );
+			}
+
+			// The line goes on past the window, map a window starting with
+			// it, a larger one if the line alone fills the window.
+			map( from == 0 ? 2L * limit : window );
+		}
+	}
+
+	/**
+		Map a window of the file starting at the current position.
+	*/
+	private void map( long length )
+	{
+		length = Math.min( Math.min( length, Integer.MAX_VALUE ), size - position );
+		try {
+			RandomAccessFile raf = new RandomAccessFile( file, "r" );
+			try {
+				buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, position, length );
+			} finally {
+				raf.close();
+			}
+		} catch ( IOException e ) {
+			throw new IllegalStateException( "Cannot read "+file+": "+e, e );
+		}
+		bufferStart = position;
+	}
+
+	private String decode( int from, int to )
+	{
+		if ( to > from && buffer.get( to - 1 ) == '\r' )
+			to--;
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit( to );
+		bytes.position( from );
+		try {
+			return decoder.decode( bytes ).toString();
+		} catch ( CharacterCodingException e ) {
+			// not thrown when replacing malformed input
+			throw new InterpreterError( "Cannot decode line: "+e );
+		}
+	}
+}
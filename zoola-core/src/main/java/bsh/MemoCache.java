@@ -0,0 +1,200 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+
+package bsh;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+	The results of a method declared with the "memoized" modifier, by the
+	values of its arguments.
+	<p>
+
+	Arguments are compared by equals() after unwrapping bsh.Primitive values,
+	so f(1) and f(new Integer(1)) share a result.  The cache holds at most 
+	getMaximumSize() results, dropping the least recently used, and a result
+	expires getExpiry() milliseconds after it was stored if the expiry is
+	set.  Exceptions thrown by the method are not cached.
+	<p>
+
+	The cache may be used by several threads.  The method is invoked outside
+	of the lock, so two threads missing the same arguments at once both 
+	invoke it and the last result is kept.
+	<p>
+
+	Memoized methods should be pure: a result is returned again as long as it
+	is cached, whatever the state of the script or of mutable arguments.
+
+	@see BshMethod#getMemoCache()
+	@see NameSpace#getMemoCache( String, Class [] )
+*/
+public final class MemoCache 
+{
+	public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+	private final LinkedHashMap<Key,Entry> entries = 
+		new LinkedHashMap<Key,Entry>( 16, 0.75f, true/*accessOrder*/ );
+
+	private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+	private long expiry;
+
+	private long hits, misses, evictions;
+
+	/**
+		Get the key of the arguments, for get() and put().
+	*/
+	static Object keyOf( Object [] args ) 
+	{
+		return new Key( args );
+	}
+
+	/**
+		Get the cached result for the arguments.
+		@return the result, or null if there is none
+	*/
+	synchronized Object get( Object key ) 
+	{
+		Entry entry = entries.get( key );
+		if ( entry != null && entry.expires != 0 
+				&& entry.expires < System.currentTimeMillis() ) 
+		{
+			entries.remove( key );
+			++evictions;
+			entry = null;
+		}
+		if ( entry == null ) {
+			++misses;
+			return null;
+		}
+		++hits;
+		return entry.value;
+	}
+
+	/**
+		Store the result for the arguments.
+	*/
+	synchronized void put( Object key, Object value ) 
+	{
+		long expires = expiry > 0 ? System.currentTimeMillis() + expiry : 0;
+		entries.put( (Key)key, new Entry( value, expires ) );
+		trim();
+	}
+
+	private void trim() 
+	{
+		Iterator<Entry> it = entries.values().iterator();
+		while ( entries.size() > maximumSize && it.hasNext() ) {
+			it.next();
+			it.remove();
+			++evictions;
+		}
+	}
+
+	/**
+		Set the maximum number of results kept, which must be at least 1.
+	*/
+	public synchronized void setMaximumSize( int maximumSize ) 
+	{
+		if ( maximumSize < 1 )
+			throw new IllegalArgumentException(
+				"Maximum size must be positive: "+maximumSize );
+		this.maximumSize = maximumSize;
+		trim();
+	}
+
+	public synchronized int getMaximumSize() { return maximumSize; }
+
+	/**
+		Set the time in milliseconds after which a result expires, or 0 if
+		results never expire.  Applies to results stored from now on.
+	*/
+	public synchronized void setExpiry( long millis ) 
+	{
+		if ( millis < 0 )
+			throw new IllegalArgumentException(
+				"Expiry must not be negative: "+millis );
+		this.expiry = millis;
+	}
+
+	public synchronized long getExpiry() { return expiry; }
+
+	/** The number of results currently cached */
+	public synchronized int size() { return entries.size(); }
+
+	/** The number of invocations answered from the cache */
+	public synchronized long getHits() { return hits; }
+
+	/** The number of invocations which invoked the method */
+	public synchronized long getMisses() { return misses; }
+
+	/** The number of results dropped for the size limit or expired */
+	public synchronized long getEvictions() { return evictions; }
+
+	/**
+		Drop all results.  The statistics are kept.
+	*/
+	public synchronized void clear() { entries.clear(); }
+
+	public synchronized String toString() 
+	{
+		return "MemoCache: size="+entries.size()+", hits="+hits
+			+", misses="+misses+", evictions="+evictions;
+	}
+
+	private static final class Key 
+	{
+		private final Object [] args;
+		private final int hash;
+
+		Key( Object [] args ) 
+		{
+			this.args = Primitive.unwrap( args );
+			this.hash = Arrays.hashCode( this.args );
+		}
+
+		public boolean equals( Object o ) 
+		{
+			return o instanceof Key && Arrays.equals( args, ((Key)o).args );
+		}
+
+		public int hashCode() { return hash; }
+	}
+
+	private static final class Entry 
+	{
+		final Object value;
+		/** the time the entry expires, 0 for never */
+		final long expires;
+
+		Entry( Object value, long expires ) 
+		{
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
@@ -24,9 +24,19 @@
 
 package bsh;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
 /**
+	The set of modifiers of a class, method or variable declaration.  The
+	modifiers are kept as a bit mask of java.lang.reflect.Modifier flags,
+	which are the same as the JVM access flags.
 	
 	@author Pat Niemeyer (pat@pat.net)
 */
@@ -36,25 +46,56 @@ import java.util.Hashtable;
 public class Modifiers implements java.io.Serializable
 {
 	public static final int CLASS=0, METHOD=1, FIELD=2;
-	Hashtable modifiers;
+
+	/**
+		The flag of the BeanShell "memoized" method modifier, which caches the
+		results of the method by its arguments.  It is not a JVM access flag.
+		@see BshMethod#getMemoCache()
+	*/
+	public static final int MEMOIZED = 0x100000;
+	public static final String MEMOIZED_NAME = "memoized";
+
+	private static final Map<String,Integer> FLAGS = new HashMap<String,Integer>();
+	static {
+		FLAGS.put( "public", Modifier.PUBLIC );
+		FLAGS.put( "private", Modifier.PRIVATE );
+		FLAGS.put( "protected", Modifier.PROTECTED );
+		FLAGS.put( "static", Modifier.STATIC );
+		FLAGS.put( "final", Modifier.FINAL );
+		FLAGS.put( "synchronized", Modifier.SYNCHRONIZED );
+		FLAGS.put( "volatile", Modifier.VOLATILE );
+		FLAGS.put( "transient", Modifier.TRANSIENT );
+		FLAGS.put( "native", Modifier.NATIVE );
+		FLAGS.put( "abstract", Modifier.ABSTRACT );
+		FLAGS.put( "strictfp", Modifier.STRICT );
+		FLAGS.put( MEMOIZED_NAME, MEMOIZED );
+	}
+
+	/**
+		Modifiers are serialized in the form of the earlier Hashtable of
+		modifier names, so that serialized methods and namespaces stay
+		readable across versions.
+	*/
+	private static final long serialVersionUID = 8471185022017946576L;
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField( "modifiers", Hashtable.class ) };
+
+	private int flags;
 
 	/**
 		@param context is METHOD or FIELD
 	*/
 	public void addModifier( int context, String name ) 
 	{
-		if ( modifiers == null )
-			modifiers = new Hashtable();
-
-		Object existing = modifiers.put( name, Void.TYPE/*arbitrary flag*/ );
-		if ( existing != null )
+		int flag = flagOf( name );
+		if ( flag == 0 )
+			throw new IllegalStateException("Unknown modifier: "+ name );
+		if ( (flags & flag) != 0 )
 			throw new IllegalStateException("Duplicate modifier: "+ name );
+		flags |= flag;
 
-		int count = 0;
-		if ( hasModifier("private") ) ++count;
-		if ( hasModifier("protected") ) ++count;
-		if ( hasModifier("public") ) ++count;
-		if ( count > 1 )
+		if ( Integer.bitCount( flags 
+				& (Modifier.PRIVATE | Modifier.PROTECTED | Modifier.PUBLIC) ) > 1 )
 			throw new IllegalStateException(
 				"public/private/protected cannot be used in combination." );
 
@@ -74,9 +115,30 @@ public class Modifiers implements java.io.Serializable
 
 	public boolean hasModifier( String name ) 
 	{
-		if ( modifiers == null )
-			modifiers = new Hashtable();
-		return modifiers.get(name) != null;
+		return (flags & flagOf( name )) != 0;
+	}
+
+	/**
+		@param flag one of the java.lang.reflect.Modifier flags
+	*/
+	public boolean hasModifier( int flag )
+	{
+		return (flags & flag) != 0;
+	}
+
+	/**
+		Get the modifiers as a bit mask of java.lang.reflect.Modifier flags,
+		and MEMOIZED.
+	*/
+	public int getFlags()
+	{
+		return flags;
+	}
+
+	private static int flagOf( String name )
+	{
+		Integer flag = FLAGS.get( name );
+		return flag == null ? 0 : flag.intValue();
 	}
 
 	// could refactor these a bit
@@ -90,12 +152,14 @@ public class Modifiers implements java.io.Serializable
 		insureNo("synchronized", "Variable");
 		insureNo("native", "Variable");
 		insureNo("abstract", "Variable");
+		insureNo(MEMOIZED_NAME, "Variable");
 	}
 	private void validateForClass() 
 	{ 
 		validateForMethod(); // volatile, transient
 		insureNo("native", "Class");
 		insureNo("synchronized", "Class");
+		insureNo(MEMOIZED_NAME, "Class");
 	}
 
 	private void insureNo( String modifier, String context )
@@ -105,9 +169,32 @@ public class Modifiers implements java.io.Serializable
 				context + " cannot be declared '"+modifier+"'");
 	}
 
+	private void writeObject( ObjectOutputStream out )
+		throws IOException
+	{
+		Hashtable<String,Object> names = null;
+		if ( flags != 0 ) {
+			names = new Hashtable<String,Object>();
+			for ( Map.Entry<String,Integer> entry : FLAGS.entrySet() )
+				if ( (flags & entry.getValue().intValue()) != 0 )
+					names.put( entry.getKey(), Void.TYPE/*arbitrary flag*/ );
+		}
+		out.putFields().put( "modifiers", names );
+		out.writeFields();
+	}
+
+	private void readObject( ObjectInputStream in )
+		throws IOException, ClassNotFoundException
+	{
+		Hashtable names = (Hashtable)in.readFields().get( "modifiers", null );
+		if ( names != null )
+			for ( Object name : names.keySet() )
+				flags |= flagOf( (String)name );
+	}
+
 	public String toString()
 	{
-		return "Modifiers: "+modifiers;
+		return "Modifiers: "+Modifier.toString( flags );
 	}
 
 }
@@ -34,6 +34,9 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Collections;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -41,6 +44,7 @@ import java.io.IOException;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 
 /**
     A namespace	in which methods, variables, and imports (class names) live.  
@@ -82,6 +86,26 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
     private Map<String,Variable> variables;
     private Map<String,List<BshMethod>> methods;
 
+	/**
+		Incremented each time a method is declared in (or cleared from) this
+		namespace or an object or class providing methods is imported.
+		Linked call sites compare it to detect redefinition.  It is volatile
+		so that call sites on other threads see a redefinition once it is
+		done; it is only incremented by the mutation paths of the namespace.
+		@see DelegateCallSite
+	*/
+	transient volatile int methodsVersion;
+
+	/**
+		The links of the call sites invoked on this namespace.  A generated
+		class has one call site per method for all of its instances, the
+		links are kept with each instance so that calls alternating between
+		instances do not relink the site.  A link lost to a concurrent first
+		use is only resolved again.
+		@see DelegateCallSite
+	*/
+	transient private volatile Map<DelegateCallSite,DelegateCallSite.Link> callSiteLinks;
+
     protected Map<String,String> importedClasses;
     private List<String> importedPackages;
     private List<String> importedCommands;
@@ -117,6 +141,22 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 	public boolean isClass;
 	Class classStatic;	
 	Object classInstance;
+	/**
+		The fields of a generated class by name, used to resolve imports of
+		the class and its instances without reflective lookups.
+		@see Reflect#getAccessibleFields( Class )
+	*/
+	transient private Class classFieldsType;
+	transient private Map<String,Field> classFields;
+
+	/**
+		Fields and methods found through the object and static imports.
+		Scripted class bodies look up every name in their imports before
+		their own variables, so the lookups are kept here instead of
+		reflecting on each import again.  Dropped when the imports change.
+		@see #getImportCache()
+	*/
+	transient private volatile ImportCache importCache;
 	
 	void setClassStatic( Class clas ) {
 		this.classStatic = clas;
@@ -126,6 +166,11 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		this.classInstance = instance;
 		importObject( instance );
 	}
+	void setClassFields( Class clas, Map<String,Field> fields ) {
+		this.classFieldsType = clas;
+		this.classFields = fields;
+		importCache = null;
+	}
 	Object getClassInstance()
 		throws UtilEvalError
 	{
@@ -231,7 +276,7 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		throws UtilEvalError 
 	{
 		CallStack callstack = new CallStack( this );
-		return getNameResolver( name ).toObject( new BshEvaluatingVisitor(callstack, interpreter) );
+		return getNameResolver( name ).toObject( BshEvaluatingVisitor.create(callstack, interpreter) );
 	}
 
 	/**
@@ -333,6 +378,28 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
     	}
 	}
 
+	/**
+		Find the variable 'name' as setVariable() would, for appending to a
+		String variable in place, see LHS.prepareAppend().
+		@return the variable, or null if it is not found here or must be
+		assigned through setVariable()
+	*/
+	Variable getAppendVariable( String name, boolean recurse )
+		throws UtilEvalError
+	{
+		Variable var = null;
+		if ( isClass )
+			var = getImportedVar( name );
+		if ( var == null && variables != null )
+			var = variables.get( name );
+		if ( var == null && !isClass )
+			var = getImportedVar( name );
+
+		if ( var == null && recurse && parent != null )
+			var = parent.getAppendVariable( name, recurse );
+		return var;
+	}
+
 	private void ensureVariables() {
 		if ( variables == null )
 			variables =	new HashMap<String,Variable>();
@@ -705,6 +772,7 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		String name = method.getName();
 		List<BshMethod> list = methods.get(name);
 
+		methodsVersion++;
 		if ( list == null ) {
 			methods.put(name, Collections.singletonList(method));
 		} else {
@@ -717,6 +785,19 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		}
     }
 
+	DelegateCallSite.Link getCallSiteLink( DelegateCallSite site ) {
+		Map<DelegateCallSite,DelegateCallSite.Link> links = callSiteLinks;
+		return links == null ? null : links.get( site );
+	}
+
+	void setCallSiteLink( DelegateCallSite site, DelegateCallSite.Link link ) {
+		Map<DelegateCallSite,DelegateCallSite.Link> links = callSiteLinks;
+		if ( links == null )
+			callSiteLinks = links =
+				new ConcurrentHashMap<DelegateCallSite,DelegateCallSite.Link>();
+		links.put( site, link );
+	}
+
 	/**
 		see #getMethod( String, Class [], boolean )
 		see #getMethod( String, Class [] )
@@ -727,6 +808,20 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		return getMethod( name, sig, false/*declaredOnly*/ );
 	}
 
+	/**
+		Get the cache of results of a memoized method declared in this
+		namespace, e.g. to read its statistics or change its limits.
+		@return the cache, or null if there is no such method or it is not
+		memoized
+		@see MemoCache
+	*/
+	public MemoCache getMemoCache( String name, Class [] sig ) 
+		throws UtilEvalError
+	{
+		BshMethod method = getMethod( name, sig, true/*declaredOnly*/ );
+		return method == null ? null : method.getMemoCache();
+	}
+
 	/**
 		Get the bsh method matching the specified signature declared in 
 		this name space or a parent.
@@ -779,6 +874,30 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		return method;
     }
 
+	/**
+		Get the method declared directly in this namespace whose parameter
+		types are exactly those specified.  Loosely typed parameters are
+		represented by null.  No signature matching, imports or parent
+		lookups are done here; this is what generated class delegators link
+		against.
+		@return the BshMethod or null if not found
+	*/
+	BshMethod getDeclaredMethod( String name, Class [] paramTypes )
+	{
+		if ( methods == null )
+			return null;
+
+		List<BshMethod> list = methods.get(name);
+		if ( list == null )
+			return null;
+
+		for( BshMethod method : list )
+			if ( Arrays.equals( method.getParameterTypes(), paramTypes ) )
+				return method;
+
+		return null;
+	}
+
 	/**
 		Import a class name.
 		Subsequent imports override earlier ones
@@ -912,6 +1031,23 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 
 	protected BshMethod getImportedMethod( String name, Class [] sig ) 
 		throws UtilEvalError
+	{
+		if ( importedObjects == null && importedStatic == null )
+			return null;
+
+		ImportCache cache = getImportCache();
+		MethodKey key = new MethodKey( name, sig );
+		Object method = cache.methods.get( key );
+		if ( method == null )
+		{
+			method = resolveImportedMethod( name, sig );
+			cache.methods.put( key, method == null ? ImportCache.NONE : method );
+		}
+		return method == ImportCache.NONE ? null : (BshMethod)method;
+	}
+
+	private BshMethod resolveImportedMethod( String name, Class [] sig ) 
+		throws UtilEvalError
 	{
 		// Try object imports
 		if ( importedObjects != null )
@@ -941,6 +1077,22 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 
 	protected Variable getImportedVar( String name ) 
 		throws UtilEvalError
+	{
+		if ( importedObjects == null && importedStatic == null )
+			return null;
+
+		ImportCache cache = getImportCache();
+		Object var = cache.vars.get( name );
+		if ( var == null )
+		{
+			var = resolveImportedVar( name );
+			cache.vars.put( name, var == null ? ImportCache.NONE : var );
+		}
+		return var == ImportCache.NONE ? null : (Variable)var;
+	}
+
+	private Variable resolveImportedVar( String name ) 
+		throws UtilEvalError
 	{
 		// Try object imports
 		if ( importedObjects != null )
@@ -948,8 +1100,8 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		{
 			Object object = importedObjects.get(i);
 			Class clas = object.getClass();
-			Field field = Reflect.resolveJavaField( 
-				clas, name, false/*onlyStatic*/ );
+			Field field = hasClassFields( clas ) ? classFields.get( name )
+				: Reflect.resolveJavaField( clas, name, false/*onlyStatic*/ );
 			if ( field != null )
 				return new Variable( 
 					name, field.getType(), new LHS( object, field ) );
@@ -960,8 +1112,16 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		for(int i=0; i<importedStatic.size(); i++)
 		{
 			Class clas = importedStatic.get(i);
-			Field field = Reflect.resolveJavaField( 
-				clas, name, true/*onlyStatic*/ );
+			Field field;
+			if ( hasClassFields( clas ) )
+			{
+				field = classFields.get( name );
+				if ( field != null && !Modifier.isStatic( field.getModifiers() ) )
+					throw new UtilEvalError( "Can't reach instance field: " 
+						+ name + " from static context: " + clas.getName() );
+			} else
+				field = Reflect.resolveJavaField( 
+					clas, name, true/*onlyStatic*/ );
 			if ( field != null )
 				return new Variable( name, field.getType(), new LHS( field ) );
 		}
@@ -970,6 +1130,75 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 	}
 
 	/**
+		Get the cache of imported members, making a new one if the imports
+		changed or the accessibility, which decides what members are found,
+		was switched since.
+	*/
+	private ImportCache getImportCache()
+	{
+		ImportCache cache = importCache;
+		boolean accessibility = Capabilities.haveAccessibility();
+		if ( cache == null || cache.accessibility != accessibility )
+			importCache = cache = new ImportCache( accessibility );
+		return cache;
+	}
+
+	/**
+		The imported members found by name, and for methods by signature.
+		Misses are cached as NONE.  The values are shared by all lookups:
+		an imported field is a Variable backed by its LHS, so its value is
+		never held or appended to in place (getAppendText() is null), and
+		the only state it keeps is its cached converter, an immutable
+		TypeConverter which any thread may replace.
+	*/
+	private static final class ImportCache
+	{
+		static final Object NONE = new Object();
+
+		final boolean accessibility;
+		final ConcurrentMap<String,Object> vars =
+			new ConcurrentHashMap<String,Object>();
+		final ConcurrentMap<MethodKey,Object> methods =
+			new ConcurrentHashMap<MethodKey,Object>();
+
+		ImportCache( boolean accessibility ) {
+			this.accessibility = accessibility;
+		}
+	}
+
+	private static final class MethodKey
+	{
+		final String name;
+		final Class [] sig;
+
+		MethodKey( String name, Class [] sig ) {
+			this.name = name;
+			this.sig = sig;
+		}
+
+		public boolean equals( Object o ) {
+			if ( !(o instanceof MethodKey) )
+				return false;
+			MethodKey key = (MethodKey)o;
+			return name.equals( key.name ) && Arrays.equals( sig, key.sig );
+		}
+
+		public int hashCode() {
+			return name.hashCode() * 31 + Arrays.hashCode( sig );
+		}
+	}
+
+	/**
+		Do we know the fields of the class?  The field layout corresponds to
+		the lookup done with accessibility only.
+	*/
+	private boolean hasClassFields( Class clas )
+	{
+		return clas == classFieldsType && classFields != null 
+			&& Capabilities.haveAccessibility();
+	}
+
+		/**
 		Load a command script from the input stream and find the BshMethod in
 		the target namespace.
 		@throws UtilEvalError on error in parsing the script or if the the
@@ -1014,7 +1243,7 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 	*/
 	void cacheClass( String name, Class c ) {
 		if ( classCache == null ) {
-			classCache = new HashMap<String,Class>();
+			classCache = new ConcurrentHashMap<String,Class>();
 			//cacheCount++; // debug
 		}
 
@@ -1300,6 +1529,7 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		Clear all cached classes and names
 	*/
 	public void classLoaderChanged() {
+		importCache = null;
 		nameSpaceChanged();
 	}
 
@@ -1423,10 +1653,13 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 	{
 		variables = null;
 		methods = null;
+		methodsVersion++;
 		importedClasses = null;
 		importedPackages = null;
 		importedCommands = null;
 		importedObjects = null;
+		importedStatic = null;
+		importCache = null;
 		if ( parent == null )
 			loadDefaultImports();	
     	classCache = null;
@@ -1454,6 +1687,8 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		importedObjects.remove( obj );
 
 		importedObjects.add( obj );
+		importCache = null;
+		methodsVersion++;
 		nameSpaceChanged();
 
 	}
@@ -1469,6 +1704,8 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 		importedStatic.remove( clas );
 
 		importedStatic.add( clas );
+		importCache = null;
+		methodsVersion++;
 		nameSpaceChanged();
 	}
 
@@ -1505,6 +1742,7 @@ public class NameSpace implements Serializable, BshClassManager.Listener, NameSo
 			clone.importedObjects = clone(importedObjects);
 			clone.importedStatic = clone(importedStatic);
 			clone.names = clone(names);
+			clone.callSiteLinks = null;
 			return clone;
 		} catch (CloneNotSupportedException e) {
 			throw new IllegalStateException(e);
@@ -42,6 +42,9 @@ public interface ParserTreeConstants
   public int JJTRETURNSTATEMENT = 35;
   public int JJTTHROWSTATEMENT = 36;
   public int JJTTRYSTATEMENT = 37;
+  public int JJTYIELDSTATEMENT = 38;
+  public int JJTITERATOREXPRESSION = 39;
+  public int JJTLAMBDAEXPRESSION = 40;
 
 
   public String[] jjtNodeName = {
@@ -83,5 +86,8 @@ public interface ParserTreeConstants
     "ReturnStatement",
     "ThrowStatement",
     "TryStatement",
+    "YieldStatement",
+    "IteratorExpression",
+    "LambdaExpression",
   };
 }
@@ -28,11 +28,16 @@ import bsh.classpath.ClassManagerImpl;
 import bsh.interpreter.BshEvaluatingVisitor;
 
 import java.io.*;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * With this class the script source is only parsed once and the resulting AST is used for
- * {@link #invoke(java.util.Map) every invocation}. This class is designed to be thread-safe.  
+ * {@link #invoke(java.util.Map) every invocation}. This class is designed to be thread-safe.
+ * <p/>
+ * The context map of an invocation is not copied.  Its entries are read when the script
+ * first refers to them and are kept for the rest of the invocation, so the map may be a
+ * large or computed view of which the script uses only a few entries.
  */
 public class PreparsedScript {
 
@@ -77,17 +82,24 @@ public class PreparsedScript {
 
 
 	public Object invoke(final Map<String, ?> context) throws EvalError {
-		final NameSpace nameSpace = new NameSpace(_interpreter.getClassManager(), "BeanshellExecutable");
-		nameSpace.setParent(_interpreter.getNameSpace());
+		return invoke(context, _interpreter);
+	}
+
+
+	/**
+	 * Invoke the script printing to the specified streams rather than the
+	 * ones set by {@link #setOut(PrintStream)} and {@link #setErr(PrintStream)}.
+	 * Concurrent invocations may use different streams.
+	 */
+	public Object invoke(final Map<String, ?> context, final PrintStream out, final PrintStream err) throws EvalError {
+		return invoke(context, new Interpreter(_interpreter, _interpreter.getNameSpace(), out, err));
+	}
+
+
+	private Object invoke(final Map<String, ?> context, final Interpreter interpreter) throws EvalError {
+		final NameSpace nameSpace = new ContextNameSpace(_interpreter.getNameSpace(), context);
 		final BshMethod method = new BshMethod(_method.getName(), _method.getReturnType(), _method.getParameterNames(), _method.getParameterTypes(), _method.methodBody, nameSpace, _method.getModifiers());
-		for (final Map.Entry<String, ?> entry : context.entrySet()) {
-			try {
-				nameSpace.setVariable(entry.getKey(), entry.getValue(), false);
-			} catch (final UtilEvalError e) {
-				throw new EvalError("cannot set variable '" + entry.getKey() + '\'', null, null, e);
-			}
-		}
-		final Object result = method.invoke(new Object[0], new BshEvaluatingVisitor(null, _interpreter));
+		final Object result = method.invoke(new Object[0], BshEvaluatingVisitor.create(null, interpreter));
 		if (result instanceof Primitive) {
 			if (( (Primitive) result).getType() == Void.TYPE) {
 				return null;
@@ -107,4 +119,59 @@ public class PreparsedScript {
 		_interpreter.setErr(value);
 	}
 
+
+	/**
+	 * Evaluate the script in its closure compiled form, see
+	 * {@link Interpreter#setClosureCompilation(boolean)}.
+	 */
+	public void setClosureCompilation(final boolean value) {
+		_interpreter.setClosureCompilation(value);
+	}
+
+
+
+	/**
+	 * The namespace of a single invocation.  Variables not assigned by the script are looked
+	 * up in the context map on first access; the result, including a missing entry, is cached
+	 * for the invocation.  Context entries shadow the variables of the global namespace.
+	 */
+	private static final class ContextNameSpace extends NameSpace {
+
+		private final Map<String, ?> _context;
+		private final Map<String, Variable> _bound = new HashMap<String, Variable>();
+
+
+		ContextNameSpace(final NameSpace parent, final Map<String, ?> context) {
+			super(parent, "BeanshellExecutable");
+			_context = context;
+		}
+
+
+		@Override
+		protected Variable getVariableImpl(final String name, final boolean recurse) throws UtilEvalError {
+			Variable var = super.getVariableImpl(name, false);
+			if (var == null) {
+				var = getContextVariable(name);
+			}
+			if (var == null && recurse && getParent() != null) {
+				var = getParent().getVariableImpl(name, true);
+			}
+			return var;
+		}
+
+
+		private Variable getContextVariable(final String name) throws UtilEvalError {
+			Variable var = _bound.get(name);
+			if (var == null && !_bound.containsKey(name)) {
+				final Object value = _context.get(name);
+				if (value != null) {
+					var = new Variable(name, value, null);
+				} else if (_context.containsKey(name)) {
+					var = new Variable(name, Primitive.NULL, null);
+				}
+				_bound.put(name, var);
+			}
+			return var;
+		}
+	}
 }
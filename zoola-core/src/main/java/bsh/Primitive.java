@@ -154,7 +154,7 @@ public final class Primitive implements ParserConstants, java.io.Serializable
     public Primitive(boolean value) { this(new Boolean(value)); }
     public Primitive(byte value) { this(new Byte(value)); }
     public Primitive(short value) { this(new Short(value)); }
-    public Primitive(char value) { this(new Character(value)); }
+    public Primitive(char value) { this(Character.valueOf(value)); }
     public Primitive(int value) { this(new Integer(value)); }
     public Primitive(long value) { this(new Long(value)); }
     public Primitive(float value) { this(new Float(value)); }
@@ -1108,7 +1108,7 @@ public final class Primitive implements ParserConstants, java.io.Serializable
 		if (toType == Short.TYPE)
 			return new Short(number.shortValue());
 		if (toType == Character.TYPE)
-			return new Character((char)number.intValue());
+			return Character.valueOf((char)number.intValue());
 		if (toType == Integer.TYPE)
 			return new Integer(number.intValue());
 		if (toType == Long.TYPE)
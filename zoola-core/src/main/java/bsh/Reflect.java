@@ -33,8 +33,12 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * All of the reflection API code lies here.  It is in the form of static
@@ -144,12 +148,30 @@ public final class Reflect {
 			Class returnType = method.getReturnType();
 
 			return Primitive.wrap(returnValue, returnType);
+		} catch (InvocationTargetException e) {
+			throw scriptedTargetError(e, method.getDeclaringClass(), object);
 		} catch (IllegalAccessException e) {
 			throw new ReflectError("Cannot access method " + StringUtil.methodString(method.getName(), method.getParameterTypes()) + " in '" + method.getDeclaringClass() + "' :" + e, e);
 		}
 	}
 
 
+	/**
+	 * A TargetError leaving a scripted class method or constructor, or an
+	 * interface adapter, crossed only scripted frames and the generated Java
+	 * code.  It already has the location and the target of the exception and
+	 * is rethrown as it is, so the calling script can catch the target.  Any
+	 * other exception is left to TargetError.wrap().
+	 */
+	private static InvocationTargetException scriptedTargetError(InvocationTargetException e, Class declaringClass, Object object) {
+		Throwable te = e.getTargetException();
+		if (te instanceof TargetError && (GeneratedClass.class.isAssignableFrom(declaringClass) || object instanceof InterfaceAdapter)) {
+			throw (TargetError) te;
+		}
+		return e;
+	}
+
+
 	public static Object getIndex(Object array, int index) throws ReflectError, UtilTargetError {
 		if (Interpreter.DEBUG) {
 			Interpreter.debug("getIndex: " + array + ", index=" + index);
@@ -355,6 +377,42 @@ public final class Reflect {
 	}
 
 
+	/**
+	 * Get all fields which findAccessibleField() locates in the class, by
+	 * name.  This is used to resolve the fields of generated classes up front
+	 * rather than hunting them down on each access.
+	 */
+	static Map<String,Field> getAccessibleFields(Class clas) {
+		Map<String,Field> fields = new HashMap<String,Field>();
+
+		// The most derived declared field wins...
+		for (Class c = clas; c != null; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (!fields.containsKey(field.getName())) {
+					fields.put(field.getName(), field);
+				}
+			}
+		}
+
+		// ...unless there is a public one (including those in interfaces)
+		Set<String> publicNames = new HashSet<String>();
+		for (Field field : clas.getFields()) {
+			if (publicNames.add(field.getName())) {
+				fields.put(field.getName(), field);
+			}
+		}
+
+		for (Field field : fields.values()) {
+			try {
+				field.setAccessible(true);
+			} catch (RuntimeException e) {
+				// left inaccessible, access will report the error
+			}
+		}
+		return fields;
+	}
+
+
 	/**
 	 * This method wraps resolveJavaMethod() and expects a non-null method
 	 * result. If the method is not found it throws a descriptive ReflectError.
@@ -566,6 +624,8 @@ public final class Reflect {
 		args = Primitive.unwrap(args);
 		try {
 			return con.newInstance(args);
+		} catch (InvocationTargetException e) {
+			throw scriptedTargetError(e, clas, null);
 		} catch (InstantiationException e) {
 			throw new ReflectError("The class " + clas + " is abstract ");
 		} catch (IllegalAccessException e) {
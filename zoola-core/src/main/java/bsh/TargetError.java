@@ -59,6 +59,43 @@ public final class TargetError extends EvalError
 		this("TargetError", t, node, callstack, false);
 	}
 
+	/**
+		Wrap the exception thrown by a reflective invocation.  An error
+		coming out of a reflective call back into the interpreter (eval(),
+		source()...) keeps the native code flag of the inner error.
+		@see Reflect#invokeMethod(java.lang.reflect.Method, Object, Object[])
+	*/
+	public static TargetError wrap( String msg, InvocationTargetException e,
+		SimpleNode node, CallStack callstack )
+	{
+		Throwable te = e.getTargetException();
+
+		/*
+			Try to squeltch the native code stack trace if the exception was
+			caused by a reflective call back into the bsh interpreter
+			(e.g. eval() or source()
+		*/
+		boolean isNative = true;
+		if ( te instanceof EvalError )
+			if ( te instanceof TargetError )
+				isNative = ((TargetError)te).inNativeCode();
+			else
+				isNative = false;
+
+		return new TargetError( msg, te, node, callstack, isNative );
+	}
+
+	/**
+		The native stack trace of a TargetError would only show the 
+		interpreter internals the target exception passed through, the target
+		has its own.  It is not filled in except for debugging, which keeps
+		exceptions thrown and caught by scripts cheap.
+	*/
+	public synchronized Throwable fillInStackTrace()
+	{
+		return Interpreter.DEBUG ? super.fillInStackTrace() : this;
+	}
+
 	public Throwable getTarget()
 	{
 		// check for easy mistake
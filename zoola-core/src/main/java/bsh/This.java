@@ -29,6 +29,8 @@ import bsh.ast.SimpleNode;
 import bsh.interpreter.BshEvaluatingVisitor;
 
 import java.lang.reflect.*;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -57,10 +59,9 @@ public final class This implements java.io.Serializable, Runnable
 	transient Interpreter declaringInterpreter;
 
 	/**
-		A cache of proxy interface handlers.
-		Currently just one per interface.
+		A cache of interface adapters (or proxies), one per interface set.
 	*/
-	private Map<Integer,Object> interfaces;
+	private transient Map<List<Class>,Object> interfaces;
 
 	private final InvocationHandler invocationHandler = new Handler();
 
@@ -100,32 +101,69 @@ public final class This implements java.io.Serializable, Runnable
 	}
 
 	/**
-		Get dynamic proxy for interface, caching those it creates.
+		Get an implementation of the interfaces, caching those it creates.
+		This is an instance of a generated adapter class (see
+		InterfaceAdapter) or a dynamic proxy for interfaces which can not be
+		adapted.
 	*/
-	public Object getInterface( Class [] ca ) 
+	public synchronized Object getInterface( Class [] ca ) 
 	{
 		if ( interfaces == null )
-			interfaces = new HashMap<Integer,Object>();
-
-		// Make a hash of the interface hashcodes in order to cache them
-		int hash = 21;
-		for(int i=0; i<ca.length; i++)
-			hash *= ca[i].hashCode() + 3;
-		Integer hashKey = new Integer(hash);
+			interfaces = new HashMap<List<Class>,Object>();
 
-		Object interf = interfaces.get( hashKey );
+		List<Class> key = Arrays.asList( ca.clone() );
+		Object interf = interfaces.get( key );
 
 		if ( interf == null ) 
 		{
-			ClassLoader classLoader = ca[0].getClassLoader(); // ?
-			interf = Proxy.newProxyInstance( 
-				classLoader, ca, invocationHandler );
-			interfaces.put( hashKey, interf );
+			Class adapterClass = InterfaceAdapter.getAdapterClass( ca );
+			if ( adapterClass != null )
+				try {
+					interf = adapterClass.getConstructor( This.class )
+						.newInstance( this );
+				} catch ( Exception e ) {
+					throw new InterpreterError(
+						"Error creating interface adapter: " + e );
+				}
+			else {
+				ClassLoader classLoader = ca[0].getClassLoader(); // ?
+				interf = Proxy.newProxyInstance( 
+					classLoader, ca, invocationHandler );
+			}
+			interfaces.put( key, interf );
 		}
 
 		return interf;
 	}
 
+	/**
+		Unwrap the target exception of a TargetError thrown by a scripted
+		method called through an interface.  If the interface declares that 
+		it throws the ex it will be delivered.  If not it will be wrapped in an
+		UndeclaredThrowable
+	*/
+	/*
+		This isn't simple because unwrapping this loses all context info.
+		So rewrap is better than unwrap.  - fschmidt
+	*/
+	static Throwable rewrapTargetError( TargetError te ) 
+		throws Exception
+	{
+		Throwable t = te.getTarget();
+		Class<? extends Throwable> c = t.getClass();
+		String msg = t.getMessage();
+		try {
+			Throwable t2 = msg==null 
+				? c.getConstructor().newInstance()
+				: c.getConstructor(String.class).newInstance(msg)
+			;
+			t2.initCause(te);
+			return t2;
+		} catch(NoSuchMethodException e) {
+			return t;
+		}
+	}
+
 	/**
 		This is the invocation handler for the dynamic proxy.
 		<p>
@@ -146,25 +184,7 @@ public final class This implements java.io.Serializable, Runnable
 			try { 
 				return invokeImpl( proxy, method, args );
 			} catch ( TargetError te ) {
-				// Unwrap target exception.  If the interface declares that 
-				// it throws the ex it will be delivered.  If not it will be 
-				// wrapped in an UndeclaredThrowable
-
-				// This isn't simple because unwrapping this loses all context info.
-				// So rewrap is better than unwrap.  - fschmidt
-				Throwable t = te.getTarget();
-				Class<? extends Throwable> c = t.getClass();
-				String msg = t.getMessage();
-				try {
-					Throwable t2 = msg==null 
-						? c.getConstructor().newInstance()
-						: c.getConstructor(String.class).newInstance(msg)
-					;
-					t2.initCause(te);
-					throw t2;
-				} catch(NoSuchMethodException e) {
-					throw t;
-				}
+				throw rewrapTargetError( te );
 			} catch ( EvalError ee ) {
 				// Ease debugging...
 				// XThis.this refers to the enclosing class instance
@@ -342,7 +362,7 @@ public final class This implements java.io.Serializable, Runnable
 		}
 
 		if ( bshMethod != null )
-			return bshMethod.invoke( args, new BshEvaluatingVisitor(callstack,  interpreter), callerInfo );
+			return bshMethod.invoke( args, BshEvaluatingVisitor.create(callstack,  interpreter), callerInfo );
 
 		/*
 			No scripted method of that name.
@@ -394,7 +414,7 @@ public final class This implements java.io.Serializable, Runnable
 		// Call script "invoke( String methodName, Object [] args );
 		if ( bshMethod != null )
 			return bshMethod.invoke( new Object [] { methodName, args }, 
-				new BshEvaluatingVisitor(callstack,  interpreter), callerInfo );
+				BshEvaluatingVisitor.create(callstack,  interpreter), callerInfo );
 
 		throw new EvalError("Method " + 
 			StringUtil.methodString( methodName, types ) +
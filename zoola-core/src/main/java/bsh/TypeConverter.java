@@ -0,0 +1,105 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh;
+
+/**
+	A precomputed conversion from one type to another for one kind of
+	conversion (Types.CAST or Types.ASSIGNMENT).  Types.castObject() walks
+	the full chain of assignability tests once for a pair of types and keeps
+	the outcome here, so that later conversions of values of the same types
+	go straight to the conversion that applies.
+	<p>
+
+	Conversions that are not valid, as well as the rare valid ones that have
+	no shortcut, fall back to the full conversion, which also reports errors
+	exactly as before.
+
+	@see Types#castObject( Object, Class, int )
+*/
+final class TypeConverter
+{
+	static final int
+		FULL = 0,
+		IDENTITY = 1,
+		PRIMITIVE = 2,
+		UNBOX = 3,
+		BOX_TO_WRAPPER = 4,
+		BOX = 5,
+		PROXY = 6,
+		LAMBDA = 7;
+
+	final Class<?> toType;
+	final Class<?> fromType;
+	final int operation;
+	final int kind;
+
+	/** True if a value of fromType can be converted to toType. */
+	final boolean valid;
+
+	TypeConverter( Class<?> toType, Class<?> fromType, int operation,
+		int kind, boolean valid )
+	{
+		this.toType = toType;
+		this.fromType = fromType;
+		this.operation = operation;
+		this.kind = kind;
+		this.valid = valid;
+	}
+
+	/**
+		Convert a value of exactly fromType (or a Primitive of fromType)
+		to toType.
+	*/
+	Object convert( Object fromValue ) throws UtilEvalError
+	{
+		switch ( kind )
+		{
+			case IDENTITY:
+				return fromValue;
+			case PRIMITIVE:
+				return Primitive.castPrimitive(
+					toType, fromType, (Primitive)fromValue, false, operation );
+			case UNBOX:
+				Class unboxedFromType = Primitive.unboxType( fromType );
+				return Primitive.castPrimitive( toType, unboxedFromType,
+					(Primitive)Primitive.wrap( fromValue, unboxedFromType ),
+					false, operation );
+			case BOX_TO_WRAPPER:
+				return Primitive.castWrapper(
+					Primitive.unboxType( toType ),
+					((Primitive)fromValue).getValue() );
+			case BOX:
+				return ((Primitive)fromValue).getValue();
+			case PROXY:
+				return ((This)fromValue).getInterface( toType );
+			case LAMBDA:
+				return ((Lambda)fromValue).getInterface( toType );
+			default:
+				return Types.castObject(
+					toType, fromType, fromValue, operation, false );
+		}
+	}
+}
@@ -24,6 +24,9 @@
 
 package bsh;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
 	Static routines supporing type comparison and conversion in BeanShell.
 
@@ -60,6 +63,15 @@ public class Types
 	static Primitive VALID_CAST = new Primitive(1);
 	static Primitive INVALID_CAST = new Primitive(-1);
 
+	/**
+		Converters computed so far, indexed by target type and then by source
+		type, one table per kind of conversion.
+		@see #getConverter( Class, Class, int )
+	*/
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, TypeConverter>>
+		castConverters = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, TypeConverter>>(),
+		assignmentConverters = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, TypeConverter>>();
+
 	/**
 		Get the Java types of the arguments.
 	*/
@@ -256,6 +268,9 @@ public class Types
 	 */
 	public static boolean isBshAssignable( Class toType, Class fromType )
 	{
+		TypeConverter converter = getConverter( toType, fromType, ASSIGNMENT );
+		if ( converter != null )
+			return converter.valid;
 		try {
 			return castObject(
 				toType, fromType, null/*fromValue*/,
@@ -298,10 +313,112 @@ public class Types
 				((Primitive)fromValue).getType()
 				: fromValue.getClass();
 
+		if ( toType == fromType && toType != Void.TYPE )
+			return fromValue;
+
+		TypeConverter converter = getConverter( toType, fromType, operation );
+		if ( converter != null )
+			return converter.convert( fromValue );
+
 		return castObject(
 			toType, fromType, fromValue, operation, false/*checkonly*/ );
 	}
 
+	/**
+		Get the converter from fromType to toType for the given operation,
+		computing it on first use.  Returns null for the loose, null and void
+		types, which are cheap to handle directly, and for types that are not
+		visible to the class loader of BeanShell itself (e.g. scripted classes)
+		so that the tables do not keep such classes from being unloaded.
+	*/
+	static TypeConverter getConverter(
+		Class<?> toType, Class<?> fromType, int operation )
+	{
+		if ( toType == null || fromType == null )
+			return null;
+
+		ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, TypeConverter>> table =
+			operation == CAST ? castConverters : assignmentConverters;
+		ConcurrentMap<Class<?>, TypeConverter> row = table.get( toType );
+		if ( row != null ) {
+			TypeConverter converter = row.get( fromType );
+			if ( converter != null )
+				return converter;
+		}
+
+		if ( toType == Void.TYPE || fromType == Void.TYPE
+			|| !isSharedType( toType ) || !isSharedType( fromType ) )
+			return null;
+
+		if ( row == null ) {
+			row = new ConcurrentHashMap<Class<?>, TypeConverter>();
+			ConcurrentMap<Class<?>, TypeConverter> existing =
+				table.putIfAbsent( toType, row );
+			if ( existing != null )
+				row = existing;
+		}
+		TypeConverter converter = createConverter( toType, fromType, operation );
+		TypeConverter existing = row.putIfAbsent( fromType, converter );
+		return existing != null ? existing : converter;
+	}
+
+	/**
+		Work out once which branch of castObject() applies to a pair of types.
+		The choice mirrors castObject() so that converting through the
+		converter gives exactly the same results.
+	*/
+	private static TypeConverter createConverter(
+		Class<?> toType, Class<?> fromType, int operation )
+	{
+		boolean valid;
+		try {
+			valid = castObject( toType, fromType, null/*fromValue*/,
+				operation, true/*checkOnly*/ ) == VALID_CAST;
+		} catch ( UtilEvalError e ) {
+			// This should not happen with checkOnly true
+			throw new InterpreterError("err in cast check: "+e);
+		}
+
+		int kind = TypeConverter.FULL;
+		if ( !valid )
+			; // let castObject() report the error
+		else if ( toType == fromType )
+			kind = TypeConverter.IDENTITY;
+		else if ( toType.isPrimitive() )
+			kind = fromType.isPrimitive() ?
+				TypeConverter.PRIMITIVE : TypeConverter.UNBOX;
+		else if ( fromType.isPrimitive() ) {
+			if ( Primitive.isWrapperType( toType ) )
+				kind = TypeConverter.BOX_TO_WRAPPER;
+			else if ( toType == Object.class )
+				kind = TypeConverter.BOX;
+		} else if ( toType.isAssignableFrom( fromType ) )
+			kind = TypeConverter.IDENTITY;
+		else if ( toType.isInterface()
+			&& bsh.This.class.isAssignableFrom( fromType ) )
+			kind = TypeConverter.PROXY;
+		else if ( Lambda.class == fromType )
+			kind = TypeConverter.LAMBDA;
+
+		return new TypeConverter( toType, fromType, operation, kind, valid );
+	}
+
+	/**
+		True if the type is loaded by the class loader of BeanShell or one of
+		its parents.
+	*/
+	private static boolean isSharedType( Class<?> type )
+	{
+		ClassLoader loader = type.getClassLoader();
+		for ( ClassLoader l = Types.class.getClassLoader(); ; l = l.getParent() )
+		{
+			if ( l == loader )
+				return true;
+			if ( l == null )
+				return false;
+		}
+	}
+
 	/**
 	 Perform a type conversion or test if a type conversion is possible with
 	 respect to BeanShell extended rules.  These rules are always a superset of
@@ -363,7 +480,7 @@ public class Types
 		Notes: This method is currently responsible for auto-boxing/unboxing
 		conversions...  Where does that need to go?
 	*/
-	private static Object castObject(
+	static Object castObject(
 		Class<?> toType, Class<?> fromType, Object fromValue,
 		int operation, boolean checkOnly )
 		throws UtilEvalError
@@ -479,6 +596,13 @@ public class Types
 			return checkOnly ? VALID_CAST : 
 				((bsh.This)fromValue).getInterface( toType );
 
+		// A lambda converts to any functional interface
+		if ( Lambda.class == fromType
+			&& Lambda.getFunctionalMethod( toType ) != null
+		)
+			return checkOnly ? VALID_CAST :
+				((Lambda)fromValue).getInterface( toType );
+
 		// Both numeric wrapper types? 
 		// Try numeric style promotion wrapper cast
 		if ( Primitive.isWrapperType( toType ) 
@@ -62,6 +62,17 @@ public class UtilEvalError extends Exception
 		super(s,cause);
 	}
 
+	/**
+		A UtilEvalError is rethrown as an EvalError, which has the script 
+		location, or handled by its caller (e.g. a failed cast trying the
+		next alternative).  Its native stack trace is filled in only for 
+		debugging.
+	*/
+	public synchronized Throwable fillInStackTrace()
+	{
+		return Interpreter.DEBUG ? super.fillInStackTrace() : this;
+	}
+
 	/**
 		Re-throw as an eval error, prefixing msg to the message and specifying
 		the node.  If a node already exists the addNode is ignored.
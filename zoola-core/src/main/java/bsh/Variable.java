@@ -24,6 +24,8 @@
 
 package bsh;
 
+import java.lang.reflect.Modifier;
+
 public class Variable implements java.io.Serializable 
 {
 	static final int DECLARATION=0, ASSIGNMENT=1;
@@ -35,6 +37,21 @@ public class Variable implements java.io.Serializable
 	Modifiers modifiers;
 	LHS lhs;
 
+	/**
+		The converter used by the last conversion of a value to the declared
+		type.  Values assigned to a variable are usually all of one type.
+	*/
+	private transient TypeConverter converter;
+
+	/**
+		The text of a String variable that is being appended to, see
+		appendString().  When pending is set the value is out of date and
+		is built from the buffer on the next read.
+	*/
+	private transient StringBuilder buffer;
+	private transient boolean pending;
+	private transient int changes;
+
 	Variable( String name, Class type, LHS lhs ) 
 	{
 		this.name = name;
@@ -84,12 +101,17 @@ public class Variable implements java.io.Serializable
 	{
 
 		// check this.value
-		if ( hasModifier("final") && this.value != null )
+		if ( this.value != null && modifiers != null
+			&& modifiers.hasModifier( Modifier.FINAL ) )
 			throw new UtilEvalError ("Final variable, can't re-assign.");
 
 		if ( value == null )
 			value = Primitive.getDefaultValue( type );
 
+		materialize();
+		buffer = null;
+		changes++;
+
 		if ( lhs != null )
 		{
 			lhs.assign( value, false/*strictjava*/ );
@@ -99,13 +121,32 @@ public class Variable implements java.io.Serializable
 		// TODO: should add isJavaCastable() test for strictJava
 		// (as opposed to isJavaAssignable())
 		if ( type != null )
-			value = Types.castObject( value, type, 
-				context == DECLARATION ? Types.CAST : Types.ASSIGNMENT
-			);
+			value = castValue( value,
+				context == DECLARATION ? Types.CAST : Types.ASSIGNMENT );
 
 		this.value= value;
 	}
 
+	private Object castValue( Object value, int operation )
+		throws UtilEvalError
+	{
+		Class fromType = value instanceof Primitive ?
+			((Primitive)value).getType() : value.getClass();
+		if ( fromType == type )
+			return value;
+
+		TypeConverter converter = this.converter;
+		if ( converter == null || converter.fromType != fromType
+			|| converter.operation != operation )
+		{
+			converter = Types.getConverter( type, fromType, operation );
+			if ( converter == null )
+				return Types.castObject( value, type, operation );
+			this.converter = converter;
+		}
+		return converter.convert( value );
+	}
+
 	/*
 		Note: UtilEvalError here comes from lhs.getValue().
 		A Variable can represent an LHS for the case of an imported class or
@@ -117,9 +158,72 @@ public class Variable implements java.io.Serializable
 		if ( lhs != null )
 			return lhs.getValue();
 
+		materialize();
 		return value; 
 	}
 
+	/**
+		Get the text of a String variable that can be appended to in place.
+		@return the text, or null if this is not a non final String variable
+		holding a String
+	*/
+	CharSequence getAppendText()
+	{
+		if ( type != String.class || lhs != null
+			|| !(this.value instanceof String)
+			|| ( modifiers != null && modifiers.hasModifier( Modifier.FINAL ) ) )
+			return null;
+		return pending ? buffer : (String)this.value;
+	}
+
+	/** The number of times the value was changed, see appendString() */
+	int getChanges() { return changes; }
+
+	/**
+		Append the string form of a value, as s += value does, without
+		building the new String until the variable is read.
+		@param changes the number of changes of the value when its text was
+		taken, see getChanges()
+		@return false if the value was changed since, in which case nothing
+		was appended
+	*/
+	synchronized boolean appendString( Object value, int changes )
+	{
+		if ( changes != this.changes )
+			return false;
+		if ( buffer == null )
+			buffer = new StringBuilder( (String)this.value );
+		buffer.append( value );
+		pending = true;
+		this.changes++;
+		return true;
+	}
+
+	private void materialize()
+	{
+		if ( pending )
+			build();
+	}
+
+	/**
+		Reading the variable builds its value, so a read on another thread,
+		e.g. in a parallel for, may build it while it is appended to.
+	*/
+	private synchronized void build()
+	{
+		if ( pending ) {
+			value = buffer.toString();
+			pending = false;
+		}
+	}
+
+	private void writeObject( java.io.ObjectOutputStream s )
+		throws java.io.IOException
+	{
+		materialize();
+		s.defaultWriteObject();
+	}
+
 	/** A type of null means loosely typed variable */
 	public Class getType() { return type;	}
 
@@ -135,6 +239,6 @@ public class Variable implements java.io.Serializable
 
 	public String toString() { 
 		return "Variable: "+super.toString()+" "+name+", type:"+type
-			+", value:"+value +", lhs = "+lhs;
+			+", value:"+( pending ? buffer.toString() : value ) +", lhs = "+lhs;
 	}
 }
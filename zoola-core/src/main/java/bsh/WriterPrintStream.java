@@ -0,0 +1,259 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+
+/**
+ * A print stream which prints to a {@link Writer}.  Text printed by the
+ * print and println methods is written to the writer as is.  Bytes written
+ * to the stream are decoded with the default charset, the one the print
+ * stream would encode text with, so multibyte characters survive the trip.
+ */
+final class WriterPrintStream extends PrintStream {
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private final Writer writer;
+	private final DecodingOutputStream decoder;
+
+
+	WriterPrintStream(Writer writer) {
+		this(writer, new DecodingOutputStream(writer, Charset.defaultCharset()));
+	}
+
+
+	private WriterPrintStream(Writer writer, DecodingOutputStream decoder) {
+		super(decoder);
+		this.writer = writer;
+		this.decoder = decoder;
+	}
+
+
+	private synchronized void write(String s, boolean newLine) {
+		try {
+			// bytes written before the text go first
+			decoder.decode();
+			writer.write(s);
+			if (newLine) {
+				writer.write(LINE_SEPARATOR);
+			}
+		} catch (IOException e) {
+			setError();
+		}
+	}
+
+
+	private synchronized void write(char[] s, boolean newLine) {
+		try {
+			decoder.decode();
+			writer.write(s);
+			if (newLine) {
+				writer.write(LINE_SEPARATOR);
+			}
+		} catch (IOException e) {
+			setError();
+		}
+	}
+
+
+	public void print(boolean b) {
+		write(String.valueOf(b), false);
+	}
+
+
+	public void print(char c) {
+		write(String.valueOf(c), false);
+	}
+
+
+	public void print(int i) {
+		write(String.valueOf(i), false);
+	}
+
+
+	public void print(long l) {
+		write(String.valueOf(l), false);
+	}
+
+
+	public void print(float f) {
+		write(String.valueOf(f), false);
+	}
+
+
+	public void print(double d) {
+		write(String.valueOf(d), false);
+	}
+
+
+	public void print(char[] s) {
+		write(s, false);
+	}
+
+
+	public void print(String s) {
+		write(String.valueOf(s), false);
+	}
+
+
+	public void print(Object obj) {
+		write(String.valueOf(obj), false);
+	}
+
+
+	public void println() {
+		write("", true);
+	}
+
+
+	public void println(boolean x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(char x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(int x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(long x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(float x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(double x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(char[] x) {
+		write(x, true);
+	}
+
+
+	public void println(String x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	public void println(Object x) {
+		write(String.valueOf(x), true);
+	}
+
+
+	/**
+	 * Decodes the bytes written to the print stream in a buffer which is
+	 * reused for the life of the stream.  The characters are passed to the
+	 * writer as soon as their bytes are written, so no flush is needed; only
+	 * an incomplete character at the end waits for its remaining bytes.
+	 * Callers synchronize on the print stream.
+	 */
+	private static final class DecodingOutputStream extends OutputStream {
+
+		private static final int BUFFER_SIZE = 1024;
+
+		private final Writer writer;
+		private final CharsetDecoder decoder;
+		private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+
+		DecodingOutputStream(Writer writer, Charset charset) {
+			this.writer = writer;
+			this.decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+
+		public void write(int b) throws IOException {
+			bytes.put((byte) b);
+			decode();
+		}
+
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!bytes.hasRemaining()) {
+					decode();
+				}
+				int n = Math.min(len, bytes.remaining());
+				bytes.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+			decode();
+		}
+
+
+		void decode() throws IOException {
+			if (bytes.position() == 0) {
+				return;
+			}
+			bytes.flip();
+			CoderResult result;
+			do {
+				result = decoder.decode(bytes, chars, false);
+				chars.flip();
+				writer.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+				chars.clear();
+			} while (result.isOverflow());
+			bytes.compact();
+		}
+
+
+		public void flush() throws IOException {
+			decode();
+			writer.flush();
+		}
+
+
+		public void close() throws IOException {
+			decode();
+			writer.close();
+		}
+	}
+}
@@ -26,12 +26,16 @@
 package bsh.ast;
 
 import bsh.*;
+import bsh.interpreter.ArrayTemplate;
 import bsh.interpreter.BshEvaluatingVisitor;
 
 import java.lang.reflect.Array;
 
 public class BSHArrayInitializer extends SimpleNode
 {
+    public ArrayTemplate template;
+    public boolean templateChecked;
+
     public BSHArrayInitializer(int id) { super(id); }
 
     public <T> T accept(BshNodeVisitor<T> visitor) {
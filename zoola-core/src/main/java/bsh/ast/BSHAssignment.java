@@ -31,6 +31,10 @@ public class BSHAssignment extends SimpleNode implements ParserConstants
 {
     public int operator;
 
+    /** Whether this is a += in a loop body, see Concatenation.isLoopAppend() */
+    public boolean loopAppend;
+    public boolean loopAppendChecked;
+
     public BSHAssignment(int id) { super(id); }
 
     public <T> T accept(BshNodeVisitor<T> visitor) {
@@ -37,6 +37,10 @@ public class BSHBinaryExpression extends SimpleNode
 {
     public int kind;
 
+    /** The chain of + operators ending here, see Concatenation.chain() */
+    public BSHBinaryExpression[] concatenation;
+    public boolean concatenationChecked;
+
     public BSHBinaryExpression(int id) { super(id); }
 
 	/*
@@ -28,10 +28,16 @@ package bsh.ast;
 import bsh.*;
 import bsh.interpreter.BshEvaluatingVisitor;
 
+import java.util.Set;
+
 public class BSHBlock extends SimpleNode
 {
 	public boolean isSynchronized = false;
 
+	/** The statements of a method body which yield, see Generator.yielding() */
+	public Set<Node> yielding;
+	public boolean yieldingChecked;
+
 	public BSHBlock(int id) { super(id); }
 
 	public interface NodeFilter {
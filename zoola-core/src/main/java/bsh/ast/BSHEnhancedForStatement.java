@@ -26,6 +26,8 @@ package bsh.ast;
 
 // Just testing...
 import bsh.*;
+import bsh.interpreter.ForEachIteration;
+import bsh.interpreter.ParallelForEach;
 
 import java.util.*;
 
@@ -40,6 +42,9 @@ import java.util.*;
 public class BSHEnhancedForStatement extends SimpleNode implements ParserConstants
 {
 	public String varName;
+	public ForEachIteration iteration;
+	public boolean parallel;
+	public ParallelForEach parallelForEach;
 
     public BSHEnhancedForStatement(int id) { super(id); }
 
@@ -26,6 +26,7 @@
 package bsh.ast;
 
 import bsh.*;
+import bsh.interpreter.CountedLoop;
 
 /**
 	Implementation of the for(;;) statement.
@@ -43,6 +44,10 @@ public class BSHForStatement extends SimpleNode implements ParserConstants
 
     public boolean parsed;
 
+    /** The counted loop form of the statement, see CountedLoop.of() */
+    public CountedLoop countedLoop;
+    public boolean countedLoopChecked;
+
     public BSHForStatement(int id) { super(id); }
 
     public <T> T accept(BshNodeVisitor<T> visitor) {
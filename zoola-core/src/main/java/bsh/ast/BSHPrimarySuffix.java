@@ -26,6 +26,7 @@
 package bsh.ast;
 
 import bsh.*;
+import bsh.interpreter.ArrayAccessor;
 import bsh.interpreter.BshEvaluatingVisitor;
 import bsh.interpreter.BshInterpreterUtil;
 
@@ -43,6 +44,7 @@ public class BSHPrimarySuffix extends SimpleNode
 	public int operation;
 	Object index;
 	public String field;
+	public ArrayAccessor arrayAccessor;
 
 	public BSHPrimarySuffix(int id) { super(id); }
 
@@ -25,12 +25,17 @@
 package bsh.ast;
 
 import bsh.*;
+import bsh.interpreter.SwitchTable;
 
 public class BSHSwitchStatement
 	extends SimpleNode
 	implements ParserConstants
 {
 
+	/** The jump table of the statement, see SwitchTable.of() */
+	public SwitchTable switchTable;
+	public boolean switchTableChecked;
+
 	public BSHSwitchStatement(int id) { super(id); }
 
 
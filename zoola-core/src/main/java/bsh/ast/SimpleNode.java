@@ -26,6 +26,7 @@
 package bsh.ast;
 
 import bsh.*;
+import bsh.interpreter.CompiledNode;
 
 /*
     Note: great care (and lots of typing) were taken to insure that the
@@ -65,6 +66,9 @@ public class SimpleNode implements Node
 	protected int id;
 	public Token firstToken, lastToken;
 
+	/** the closure compiled form of this node, see BshClosureCompiler */
+	public transient CompiledNode compiled;
+
 	/** the source of the text from which this was parsed */
 	String sourceFile;
 
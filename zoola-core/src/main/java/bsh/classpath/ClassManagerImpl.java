@@ -123,10 +123,18 @@ public class ClassManagerImpl extends BshClassManager
 	private BshClassLoader baseLoader;
 
 	/**
-		Map by classname of loaders to use for reloaded classes
+		Map by classname of loaders to use for reloaded classes.
+		This is read concurrently by class lookups.
 	*/
 	private Map loaderMap;
 
+	/**
+		The loader receiving generated classes.  Generated classes are
+		defined into the same loader until a class name is defined a second
+		time, which requires a new loader.
+	*/
+	private DiscreteFilesClassLoader generatedClassLoader;
+
 	/**
 		Used by BshClassManager singleton constructor
 	*/
@@ -309,7 +317,8 @@ public class ClassManagerImpl extends BshClassManager
 	{
 		baseClassPath = new BshClassPath("baseClassPath");
 		baseLoader = null;
-		loaderMap = new HashMap();
+		loaderMap = new Hashtable();
+		generatedClassLoader = null;
 		classLoaderChanged(); // calls clearCaches() for us.
 	}
 
@@ -321,7 +330,8 @@ public class ClassManagerImpl extends BshClassManager
 	public void setClassPath( URL [] cp ) {
 		baseClassPath.setPath( cp );
 		initBaseLoader();
-		loaderMap = new HashMap();
+		loaderMap = new Hashtable();
+		generatedClassLoader = null;
 		classLoaderChanged();
 	}
 
@@ -537,21 +547,33 @@ public class ClassManagerImpl extends BshClassManager
 
 	/*
 		Impl Notes:
-		We add the bytecode source and the "reload" the class, which causes the
-		BshClassLoader to be initialized and create a DiscreteFilesClassLoader
-		for the bytecode.
-
-		@exception ClassPathException can be thrown by reloadClasses
+		We add the bytecode source and map the class to the generated class
+		loader, which defines it from the bytecode when it is first loaded.
+		Classes defined one after another share the loader (just as classes
+		reloaded together do), so only the redefinition of a class name
+		requires a new DiscreteFilesClassLoader.
 	*/
 	@Override
-	public Class defineClass( String name, byte [] code )
+	public synchronized Class defineClass( String name, byte [] code )
 	{
-		baseClassPath.setClassSource( name, new GeneratedClassSource( code ) );
-		try {
-			reloadClasses( new String [] { name } );
-		} catch ( ClassPathException e ) {
-			throw new bsh.InterpreterError("defineClass: "+e);
+		ClassSource classSource = new GeneratedClassSource( code );
+		baseClassPath.setClassSource( name, classSource );
+
+		// init base class loader if there is none...
+		if ( baseLoader == null )
+			initBaseLoader();
+
+		if ( generatedClassLoader == null
+			|| !generatedClassLoader.addClassSource( name, classSource ) )
+		{
+			DiscreteFilesClassLoader.ClassSourceMap map =
+				new DiscreteFilesClassLoader.ClassSourceMap();
+			map.put( name, classSource );
+			generatedClassLoader = new DiscreteFilesClassLoader( this, map );
 		}
+		loaderMap.put( name, generatedClassLoader );
+
+		classLoaderChanged();
 		return classForName( name );
 	}
 
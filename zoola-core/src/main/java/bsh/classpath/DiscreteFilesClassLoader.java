@@ -63,20 +63,40 @@ public class DiscreteFilesClassLoader extends BshClassLoader
 	}
 
 	/**
+		Add a class to our coverage space, unless we already cover a class of
+		that name.  (A loader can define a class name only once.)
+		@return true if the class was added
 	*/
-	public Class findClass( String name ) throws ClassNotFoundException 
+	public synchronized boolean addClassSource( String name, ClassSource source )
 	{
-		// Load it if it's one of our classes
-		ClassSource source = map.get( name );
+		if ( map.containsKey( name ) )
+			return false;
+		map.put( name, source );
+		return true;
+	}
 
-		if ( source != null )
+	/**
+	*/
+	public Class findClass( String name ) throws ClassNotFoundException 
+	{
+		// Load it if it's one of our classes.  Loading is not otherwise
+		// synchronized, make sure concurrent lookups define it only once.
+		synchronized( this )
 		{
-			byte [] code = source.getCode( name );
-			return defineClass( name, code, 0, code.length );
-		} else
-			// Let superclass BshClassLoader (URLClassLoader) findClass try 
-			// to find the class...
-			return super.findClass( name );
+			ClassSource source = map.get( name );
+			if ( source != null )
+			{
+				Class c = findLoadedClass( name );
+				if ( c != null )
+					return c;
+				byte [] code = source.getCode( name );
+				return defineClass( name, code, 0, code.length );
+			}
+		}
+
+		// Let superclass BshClassLoader (URLClassLoader) findClass try 
+		// to find the class...
+		return super.findClass( name );
 	}
 
 	public String toString() {
@@ -0,0 +1,278 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.BSHPrimarySuffix;
+
+import java.lang.reflect.Array;
+
+/**
+ Reads and writes the elements of arrays of one class.
+ <p>
+
+ Reflect.getIndex() and setIndex() go through java.lang.reflect.Array for
+ every element.  An index suffix (e.g. a[i]) picks an accessor for the class
+ of its array once and keeps it while the class stays the same.  Accessors
+ for int[], long[], double[], byte[] and reference arrays read and write the
+ array directly.  Values that would need a widening conversion on write
+ (e.g. an int stored in a long[]) are left to Reflect.setIndex(), so the
+ accepted values and the errors are the same as before.
+ <p>
+
+ Out of bounds indexes are reported as a UtilTargetError wrapping the
+ ArrayIndexOutOfBoundsException, for writes as well as reads.
+ */
+public abstract class ArrayAccessor {
+
+    /** The class of the arrays this accessor handles */
+    private final Class<?> arrayType;
+
+    ArrayAccessor(Class<?> arrayType) {
+        this.arrayType = arrayType;
+    }
+
+    /**
+     Get the element at the index, wrapped as a Primitive if the component
+     type is primitive.
+     */
+    public abstract Object get(Object array, int index)
+        throws UtilEvalError;
+
+    /**
+     Set the element at the index to the value, which may be a Primitive.
+     */
+    public abstract void set(Object array, int index, Object value)
+        throws UtilEvalError;
+
+    /**
+     Get the accessor for the array of an index suffix, reusing the one the
+     suffix used last if the array is of the same class.
+     */
+    public static ArrayAccessor of(BSHPrimarySuffix node, Object array) {
+        ArrayAccessor accessor = node.arrayAccessor;
+        if ( accessor == null || accessor.arrayType != array.getClass() ) {
+            accessor = of(array.getClass());
+            node.arrayAccessor = accessor;
+        }
+        return accessor;
+    }
+
+    static ArrayAccessor of(Class<?> arrayType) {
+        Class<?> componentType = arrayType.getComponentType();
+        if ( !componentType.isPrimitive() )
+            return new ObjectArrayAccessor(arrayType);
+        if ( componentType == Integer.TYPE )
+            return new IntArrayAccessor();
+        if ( componentType == Long.TYPE )
+            return new LongArrayAccessor();
+        if ( componentType == Double.TYPE )
+            return new DoubleArrayAccessor();
+        if ( componentType == Byte.TYPE )
+            return new ByteArrayAccessor();
+        return new ReflectiveArrayAccessor(arrayType);
+    }
+
+    static UtilTargetError outOfBounds(ArrayIndexOutOfBoundsException e) {
+        return new UtilTargetError(e);
+    }
+
+    static void setIndex(Object array, int index, Object value)
+        throws UtilEvalError
+    {
+        if ( index < 0 || index >= Array.getLength(array) )
+            throw outOfBounds(new ArrayIndexOutOfBoundsException(index));
+        try {
+            Reflect.setIndex(array, index, value);
+        } catch ( ReflectError e ) {
+            throw new UtilEvalError("Assignment: " + e.getMessage());
+        }
+    }
+
+
+    private static final class ObjectArrayAccessor extends ArrayAccessor {
+
+        ObjectArrayAccessor(Class<?> arrayType) {
+            super(arrayType);
+        }
+
+        public Object get(Object array, int index) throws UtilEvalError {
+            try {
+                Object value = ((Object[])array)[index];
+                return value == null ? Primitive.NULL : value;
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+
+        public void set(Object array, int index, Object value) throws UtilEvalError {
+            try {
+                ((Object[])array)[index] = Primitive.unwrap(value);
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            } catch ( ArrayStoreException e ) {
+                throw new UtilTargetError(e);
+            }
+        }
+    }
+
+
+    private static final class IntArrayAccessor extends ArrayAccessor {
+
+        IntArrayAccessor() {
+            super(int[].class);
+        }
+
+        public Object get(Object array, int index) throws UtilEvalError {
+            try {
+                return new Primitive(((int[])array)[index]);
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+
+        public void set(Object array, int index, Object value) throws UtilEvalError {
+            Object unwrapped = Primitive.unwrap(value);
+            if ( !(unwrapped instanceof Integer) ) {
+                setIndex(array, index, value);
+                return;
+            }
+            try {
+                ((int[])array)[index] = ((Integer)unwrapped).intValue();
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+    }
+
+
+    private static final class LongArrayAccessor extends ArrayAccessor {
+
+        LongArrayAccessor() {
+            super(long[].class);
+        }
+
+        public Object get(Object array, int index) throws UtilEvalError {
+            try {
+                return new Primitive(((long[])array)[index]);
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+
+        public void set(Object array, int index, Object value) throws UtilEvalError {
+            Object unwrapped = Primitive.unwrap(value);
+            if ( !(unwrapped instanceof Long) ) {
+                setIndex(array, index, value);
+                return;
+            }
+            try {
+                ((long[])array)[index] = ((Long)unwrapped).longValue();
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+    }
+
+
+    private static final class DoubleArrayAccessor extends ArrayAccessor {
+
+        DoubleArrayAccessor() {
+            super(double[].class);
+        }
+
+        public Object get(Object array, int index) throws UtilEvalError {
+            try {
+                return new Primitive(((double[])array)[index]);
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+
+        public void set(Object array, int index, Object value) throws UtilEvalError {
+            Object unwrapped = Primitive.unwrap(value);
+            if ( !(unwrapped instanceof Double) ) {
+                setIndex(array, index, value);
+                return;
+            }
+            try {
+                ((double[])array)[index] = ((Double)unwrapped).doubleValue();
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+    }
+
+
+    private static final class ByteArrayAccessor extends ArrayAccessor {
+
+        ByteArrayAccessor() {
+            super(byte[].class);
+        }
+
+        public Object get(Object array, int index) throws UtilEvalError {
+            try {
+                return new Primitive(((byte[])array)[index]);
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+
+        public void set(Object array, int index, Object value) throws UtilEvalError {
+            Object unwrapped = Primitive.unwrap(value);
+            if ( !(unwrapped instanceof Byte) ) {
+                setIndex(array, index, value);
+                return;
+            }
+            try {
+                ((byte[])array)[index] = ((Byte)unwrapped).byteValue();
+            } catch ( ArrayIndexOutOfBoundsException e ) {
+                throw outOfBounds(e);
+            }
+        }
+    }
+
+
+    /** The remaining, less common primitive arrays */
+    private static final class ReflectiveArrayAccessor extends ArrayAccessor {
+
+        ReflectiveArrayAccessor(Class<?> arrayType) {
+            super(arrayType);
+        }
+
+        public Object get(Object array, int index) throws UtilEvalError {
+            try {
+                return Reflect.getIndex(array, index);
+            } catch ( ReflectError e ) {
+                throw new UtilEvalError("Array access: " + e.getMessage());
+            }
+        }
+
+        public void set(Object array, int index, Object value) throws UtilEvalError {
+            setIndex(array, index, value);
+        }
+    }
+}
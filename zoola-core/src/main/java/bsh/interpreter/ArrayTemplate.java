@@ -0,0 +1,130 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+import java.lang.reflect.Array;
+
+/**
+ The array built from an array initializer whose elements are all constants,
+ e.g. int[] table = { 1, 2, 3 }.
+ <p>
+
+ The initializer is evaluated once and each later evaluation returns a copy
+ of the result, copied down to the innermost arrays, so that callers can
+ modify the arrays they get.  Constants are literals and negated numeric
+ literals, which all evaluate to immutable values.
+ <p>
+
+ The template is kept for the base type and dimensions it was built for and
+ is built again if the initializer is evaluated for another type.
+ */
+public final class ArrayTemplate {
+
+    private final Class<?> baseType;
+    private final int dimensions;
+    private final Object array;
+
+    private ArrayTemplate(Class<?> baseType, int dimensions, Object array) {
+        this.baseType = baseType;
+        this.dimensions = dimensions;
+        this.array = array;
+    }
+
+    /**
+     Get the template for the initializer, building it if needed.
+     @return the template, or null if the initializer has elements that
+     are not constants
+     */
+    public static ArrayTemplate of(BSHArrayInitializer node, Class<?> baseType,
+            int dimensions, BshEvaluatingVisitor visitor)
+            throws EvalError
+    {
+        ArrayTemplate template = node.template;
+        if ( template != null && template.baseType == baseType
+                && template.dimensions == dimensions )
+            return template;
+        if ( node.templateChecked && template == null )
+            return null;
+
+        if ( !isConstant(node) ) {
+            node.templateChecked = true;
+            return null;
+        }
+        template = new ArrayTemplate(baseType, dimensions,
+                visitor.fillArrayInitializer(node, baseType, dimensions));
+        node.template = template;
+        node.templateChecked = true;
+        return template;
+    }
+
+    /** Get a new copy of the array. */
+    public Object newArray() {
+        return copy(array, dimensions);
+    }
+
+    private static Object copy(Object array, int dimensions) {
+        if ( array == null )
+            return null;
+        if ( dimensions > 1 ) {
+            Object[] copy = ((Object[])array).clone();
+            for ( int i = 0; i < copy.length; i++ )
+                copy[i] = copy(copy[i], dimensions - 1);
+            return copy;
+        }
+        int length = Array.getLength(array);
+        Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static boolean isConstant(BSHArrayInitializer node) {
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ ) {
+            SimpleNode child = (SimpleNode)node.jjtGetChild(i);
+            if ( child instanceof BSHArrayInitializer ) {
+                if ( !isConstant((BSHArrayInitializer)child) )
+                    return false;
+            } else if ( child instanceof BSHUnaryExpression
+                    && ((BSHUnaryExpression)child).kind == ParserConstants.MINUS ) {
+                Object value = literalValue((SimpleNode)child.jjtGetChild(0));
+                if ( !(value instanceof Primitive)
+                        || !(((Primitive)value).getValue() instanceof Number) )
+                    return false;
+            } else if ( literalValue(child) == null )
+                return false;
+        }
+        return true;
+    }
+
+    private static Object literalValue(SimpleNode node) {
+        if ( node instanceof BSHPrimaryExpression && node.jjtGetNumChildren() == 1
+                && node.jjtGetChild(0) instanceof BSHLiteral )
+            return ((BSHLiteral)node.jjtGetChild(0)).value;
+        return null;
+    }
+}
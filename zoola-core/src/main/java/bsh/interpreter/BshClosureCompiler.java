@@ -0,0 +1,1212 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ Translates syntax trees into trees of compiled nodes (see CompiledNode).
+ <p>
+
+ A node is translated once, when it is first evaluated by a
+ BshCompilingVisitor, and its compiled form is kept in the node.  Decisions
+ the visitor makes on every evaluation of a node - which operator, which
+ kind of suffix, whether there is an else branch or a for update, whether a
+ primary expression is a plain name - are made here once and baked into the
+ choice of the compiled node class and its fields.  The compiled nodes then
+ call each other directly instead of going through accept() and visit().
+ <p>
+
+ Expressions and statements whose evaluation is not sensitive to the node
+ shape or which are rarely evaluated repeatedly (class and method
+ declarations, allocations, switch, try, casts...) are not translated.
+ Their compiled form visits the node, the children of which are again
+ compiled by the compiling visitor.  Each compiled node must evaluate
+ exactly as the corresponding visit method of BshEvaluatingVisitor does,
+ including the error reporting.
+
+ @see BshCompilingVisitor
+ */
+public final class BshClosureCompiler {
+
+    private BshClosureCompiler() {
+    }
+
+
+    /**
+     Get the compiled form of the node, translating it if necessary.
+     */
+    public static CompiledNode compile(SimpleNode node) {
+        CompiledNode compiled = node.compiled;
+        if ( compiled == null ) {
+            compiled = translate(node);
+            // compiled nodes are immutable, a racing translation is harmless
+            node.compiled = compiled;
+        }
+        return compiled;
+    }
+
+
+    private static CompiledNode translate(SimpleNode node) {
+        if ( node instanceof BSHLiteral )
+            return translateLiteral((BSHLiteral)node);
+        if ( node instanceof BSHPrimaryExpression )
+            return translatePrimaryExpression((BSHPrimaryExpression)node);
+        if ( node instanceof BSHMethodInvocation )
+            return new MethodInvocation((BSHMethodInvocation)node);
+        if ( node instanceof BSHBinaryExpression )
+            return translateBinaryExpression((BSHBinaryExpression)node);
+        if ( node instanceof BSHUnaryExpression )
+            return translateUnaryExpression((BSHUnaryExpression)node);
+        if ( node instanceof BSHTernaryExpression )
+            return new Ternary(node);
+        if ( node instanceof BSHAssignment )
+            return translateAssignment((BSHAssignment)node);
+        if ( node instanceof BSHBlock )
+            return new Block((BSHBlock)node);
+        if ( node instanceof BSHIfStatement )
+            return new If(node);
+        if ( node instanceof BSHWhileStatement )
+            return new While((BSHWhileStatement)node);
+        if ( node instanceof BSHForStatement )
+            return new For((BSHForStatement)node);
+        if ( node instanceof BSHReturnStatement )
+            return new Return((BSHReturnStatement)node);
+        if ( node instanceof BSHStatementExpressionList )
+            return new StatementList(node);
+        if ( node instanceof BSHTypedVariableDeclaration )
+            return translateTypedVariableDeclaration((BSHTypedVariableDeclaration)node);
+        return new Interpreted(node);
+    }
+
+
+    private static CompiledNode child(SimpleNode node, int i) {
+        return compile((SimpleNode)node.jjtGetChild(i));
+    }
+
+
+    private static CompiledNode[] children(SimpleNode node, int start) {
+        CompiledNode[] children = new CompiledNode[node.jjtGetNumChildren() - start];
+        for( int i=0; i<children.length; i++ )
+            children[i] = child(node, start + i);
+        return children;
+    }
+
+
+    /**
+     A node which is evaluated by visiting it.
+     */
+    static final class Interpreted extends CompiledNode {
+
+        Interpreted(SimpleNode node) {
+            super(node);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) {
+            return node.accept(visitor);
+        }
+
+        boolean isInterpreted() {
+            return true;
+        }
+    }
+
+
+    // Expressions
+
+    private static CompiledNode translateLiteral(BSHLiteral node) {
+        if ( node.value == null )
+            return new Interpreted(node);
+        return new Constant(node, node.value);
+    }
+
+
+    static final class Constant extends CompiledNode {
+
+        private final Object value;
+
+        Constant(SimpleNode node, Object value) {
+            super(node);
+            this.value = value;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) {
+            return value;
+        }
+    }
+
+
+    private static CompiledNode translatePrimaryExpression(BSHPrimaryExpression node) {
+        SimpleNode prefix = (SimpleNode)node.jjtGetChild(0);
+        int numChildren = node.jjtGetNumChildren();
+        if ( numChildren == 1 ) {
+            if ( prefix instanceof BSHAmbiguousName )
+                return new NameValue(node, (BSHAmbiguousName)prefix);
+            return new PrefixValue(node, compile(prefix));
+        }
+
+        Suffix[] suffixes = new Suffix[numChildren - 1];
+        for( int i=1; i<numChildren; i++ ) {
+            BSHPrimarySuffix suffix = (BSHPrimarySuffix)node.jjtGetChild(i);
+            switch ( suffix.operation ) {
+                case BSHPrimarySuffix.INDEX:
+                    suffixes[i-1] = new IndexSuffix(suffix);
+                    break;
+                case BSHPrimarySuffix.NAME:
+                    suffixes[i-1] = new NameSuffix(suffix);
+                    break;
+                default:
+                    // .class needs the unevaluated prefix, properties are rare
+                    return new Interpreted(node);
+            }
+        }
+        return new SuffixedValue(node, prefix, suffixes);
+    }
+
+
+    private static Object value(Object obj, SimpleNode node, CallStack callstack) throws EvalError {
+        if ( obj instanceof LHS )
+            try {
+                return ((LHS)obj).getValue();
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        return obj;
+    }
+
+
+    /** A primary expression which is just a name, e.g. a variable */
+    static final class NameValue extends CompiledNode {
+
+        private final BSHAmbiguousName name;
+
+        NameValue(BSHPrimaryExpression node, BSHAmbiguousName name) {
+            super(node);
+            this.name = name;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            return value(visitor.ambiguousNameToObject(name), node, visitor.getCallstack());
+        }
+    }
+
+
+    /** A primary expression without suffixes, e.g. a literal or a call */
+    static final class PrefixValue extends CompiledNode {
+
+        private final CompiledNode prefix;
+
+        PrefixValue(BSHPrimaryExpression node, CompiledNode prefix) {
+            super(node);
+            this.prefix = prefix;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            return value(prefix.eval(visitor), node, visitor.getCallstack());
+        }
+    }
+
+
+    /** A primary expression with index and field or method suffixes */
+    static final class SuffixedValue extends CompiledNode {
+
+        private final BSHAmbiguousName prefixName;
+        private final CompiledNode prefix;
+        private final Suffix[] suffixes;
+
+        SuffixedValue(BSHPrimaryExpression node, SimpleNode prefix, Suffix[] suffixes) {
+            super(node);
+            if ( prefix instanceof BSHAmbiguousName ) {
+                this.prefixName = (BSHAmbiguousName)prefix;
+                this.prefix = null;
+            } else {
+                this.prefixName = null;
+                this.prefix = compile(prefix);
+            }
+            this.suffixes = suffixes;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            CallStack callstack = visitor.getCallstack();
+            Object obj = prefixName != null
+                    ? visitor.ambiguousNameToObject(prefixName)
+                    : prefix.eval(visitor);
+            obj = value(obj, suffixes[0].node, callstack);
+            for( int i=0; i<suffixes.length; i++ )
+                obj = suffixes[i].apply(visitor, obj);
+            return value(obj, node, callstack);
+        }
+    }
+
+
+    static abstract class Suffix {
+
+        final BSHPrimarySuffix node;
+
+        Suffix(BSHPrimarySuffix node) {
+            this.node = node;
+        }
+
+        abstract Object apply(BshEvaluatingVisitor visitor, Object obj) throws EvalError;
+    }
+
+
+    static final class IndexSuffix extends Suffix {
+
+        private final CompiledNode index;
+
+        IndexSuffix(BSHPrimarySuffix node) {
+            super(node);
+            this.index = child(node, 0);
+        }
+
+        Object apply(BshEvaluatingVisitor visitor, Object obj) throws EvalError {
+            CallStack callstack = visitor.getCallstack();
+            if ( !obj.getClass().isArray() )
+                throw new EvalError("Not an array", node, callstack );
+
+            int index;
+            try {
+                Object indexVal = this.index.eval(visitor);
+                if ( !(indexVal instanceof Primitive) )
+                    indexVal = Types.castObject(
+                            indexVal, Integer.TYPE, Types.ASSIGNMENT);
+                index = ((Primitive)indexVal).intValue();
+            } catch( UtilEvalError e ) {
+                Interpreter.debug("doIndex: "+e);
+                throw e.toEvalError(
+                        "Arrays may only be indexed by integer types.",
+                        node, callstack );
+            }
+
+            try {
+                return ArrayAccessor.of(node, obj).get(obj, index);
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        }
+    }
+
+
+    static final class NameSuffix extends Suffix {
+
+        private final String field;
+        /** null for a field access */
+        private final CompiledNode[] args;
+        private final BSHArguments argsNode;
+
+        NameSuffix(BSHPrimarySuffix node) {
+            super(node);
+            this.field = node.field;
+            if ( node.jjtGetNumChildren() == 0 ) {
+                this.args = null;
+                this.argsNode = null;
+            } else {
+                this.argsNode = (BSHArguments)node.jjtGetChild(0);
+                this.args = children(argsNode, 0);
+            }
+        }
+
+        Object apply(BshEvaluatingVisitor visitor, Object obj) throws EvalError {
+            CallStack callstack = visitor.getCallstack();
+            try {
+                // .length on array
+                if ( field.equals("length") && obj.getClass().isArray() )
+                    return new Primitive(Array.getLength(obj));
+
+                if ( args == null )
+                    return Reflect.getObjectFieldValue( obj, field );
+
+                Object[] oa = arguments(visitor, argsNode, args);
+                try {
+                    return Reflect.invokeObjectMethod(
+                            obj, field, oa, visitor, node );
+                } catch ( ReflectError e ) {
+                    throw new EvalError(
+                            "Error in method invocation: " + e.getMessage(),
+                            node, callstack, e );
+                } catch ( InvocationTargetException e ) {
+                    throw TargetError.wrap("Method Invocation "+field, e, node, callstack);
+                }
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            } catch ( ReflectError e ) {
+                throw new EvalError("reflection error: " + e, node, callstack, e );
+            }
+        }
+    }
+
+
+    /**
+     Evaluate the arguments of a call as BshEvaluatingVisitor getArguments().
+     */
+    static Object[] arguments(BshEvaluatingVisitor visitor, BSHArguments argsNode,
+            CompiledNode[] args) throws EvalError
+    {
+        Object[] values = new Object[args.length];
+        for( int i=0; i<args.length; i++ ) {
+            values[i] = args[i].eval(visitor);
+            if ( values[i] == Primitive.VOID )
+                throw new EvalError( "Undefined argument: " +
+                        args[i].node.getText(), argsNode, visitor.getCallstack() );
+        }
+        return values;
+    }
+
+
+    static final class MethodInvocation extends CompiledNode {
+
+        private final BSHAmbiguousName nameNode;
+        private final boolean thisOrSuper;
+        private final BSHArguments argsNode;
+        private final CompiledNode[] args;
+
+        MethodInvocation(BSHMethodInvocation node) {
+            super(node);
+            this.nameNode = node.getNameNode();
+            this.thisOrSuper = nameNode.text.equals("super") || nameNode.text.equals("this");
+            this.argsNode = node.getArgsNode();
+            this.args = children(argsNode, 0);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            CallStack callstack = visitor.getCallstack();
+            NameSpace namespace = callstack.top();
+
+            // Do not evaluate methods this() or super() in class instance space
+            // (i.e. inside a constructor)
+            if ( thisOrSuper && namespace.getParent() != null
+                    && namespace.getParent().isClass )
+                return Primitive.VOID;
+
+            Name name = nameNode.getName(namespace);
+            Object[] values = arguments(visitor, argsNode, args);
+
+            try {
+                return name.invokeMethod( visitor, values, node );
+            } catch ( ReflectError e ) {
+                throw new EvalError(
+                        "Error in method invocation: " + e.getMessage(),
+                        node, callstack, e );
+            } catch ( InvocationTargetException e ) {
+                throw TargetError.wrap("Method Invocation "+name, e, node, callstack);
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        }
+    }
+
+
+    private static CompiledNode translateBinaryExpression(BSHBinaryExpression node) {
+        switch ( node.kind ) {
+            case ParserConstants.INSTANCEOF:
+                return new InstanceOf(node);
+            case ParserConstants.BOOL_AND:
+            case ParserConstants.BOOL_ANDX:
+                return new ConditionalAnd(node);
+            case ParserConstants.BOOL_OR:
+            case ParserConstants.BOOL_ORX:
+                return new ConditionalOr(node);
+            case ParserConstants.PLUS:
+                BSHBinaryExpression[] chain = Concatenation.chain(node);
+                if ( chain != null )
+                    return new ConcatenationChain(node, chain);
+                return new Binary(node);
+            default:
+                return new Binary(node);
+        }
+    }
+
+
+    /*
+        object is a non-null and non-void Primitive type
+    */
+    private static boolean isPrimitiveValue( Object obj ) {
+        return ( (obj instanceof Primitive)
+                && (obj != Primitive.VOID) && (obj != Primitive.NULL) );
+    }
+
+
+    /*
+        object is a java.lang wrapper for boolean, char, or number type
+    */
+    private static boolean isWrapper( Object obj ) {
+        return ( obj instanceof Boolean ||
+                obj instanceof Character || obj instanceof Number );
+    }
+
+
+    static class Binary extends CompiledNode {
+
+        final CompiledNode lhs, rhs;
+        final int kind;
+
+        Binary(BSHBinaryExpression node) {
+            super(node);
+            this.lhs = child(node, 0);
+            this.rhs = child(node, 1);
+            this.kind = node.kind;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            return operate(visitor, lhs.eval(visitor));
+        }
+
+        final Object operate(BshEvaluatingVisitor visitor, Object lhs) throws EvalError {
+            boolean isLhsWrapper = isWrapper(lhs);
+            Object rhs = this.rhs.eval(visitor);
+            boolean isRhsWrapper = isWrapper(rhs);
+            if ( ( isLhsWrapper || isPrimitiveValue(lhs) )
+                    && ( isRhsWrapper || isPrimitiveValue(rhs) ) )
+            {
+                // Special case for EQ on two wrapper objects: don't auto-unwrap
+                // wrappers (preserve identity semantics), fall through to
+                // object operations below.
+                if ( !(isLhsWrapper && isRhsWrapper && kind == ParserConstants.EQ) )
+                    try {
+                        return Primitive.binaryOperation(lhs, rhs, kind);
+                    } catch ( UtilEvalError e ) {
+                        throw e.toEvalError( node, visitor.getCallstack() );
+                    }
+            }
+
+            // Treat lhs and rhs as arbitrary objects and do the operation.
+            switch ( kind )
+            {
+                case ParserConstants.EQ:
+                    return new Primitive((lhs == rhs));
+
+                case ParserConstants.NE:
+                    return new Primitive((lhs != rhs));
+
+                case ParserConstants.PLUS:
+                    if ( lhs instanceof String || rhs instanceof String )
+                        return lhs.toString() + rhs.toString();
+
+                    // FALL THROUGH TO DEFAULT CASE!!!
+
+                default:
+                    CallStack callstack = visitor.getCallstack();
+                    if ( lhs instanceof Primitive || rhs instanceof Primitive )
+                        if ( lhs == Primitive.VOID || rhs == Primitive.VOID )
+                            throw new EvalError(
+                                    "illegal use of undefined variable, class, or 'void' literal",
+                                    node, callstack );
+                        else
+                        if ( lhs == Primitive.NULL || rhs == Primitive.NULL )
+                            throw new EvalError(
+                                    "illegal use of null value or 'null' literal", node, callstack);
+
+                    throw new EvalError("Operator: '" + ParserConstants.tokenImage[kind] +
+                            "' inappropriate for objects", node, callstack );
+            }
+        }
+    }
+
+
+    /** a + b + c, see Concatenation */
+    static final class ConcatenationChain extends CompiledNode {
+
+        private final BSHBinaryExpression[] chain;
+        private final CompiledNode first;
+        private final CompiledNode[] operands;
+
+        ConcatenationChain(BSHBinaryExpression node, BSHBinaryExpression[] chain) {
+            super(node);
+            this.chain = chain;
+            this.first = child(chain[0], 0);
+            this.operands = new CompiledNode[chain.length];
+            for ( int i = 0; i < chain.length; i++ )
+                operands[i] = child(chain[i], 1);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object value = first.eval(visitor);
+            StringBuilder text = null;
+            for ( int i = 0; i < chain.length; i++ ) {
+                Object rhs = operands[i].eval(visitor);
+                if ( text != null )
+                    text.append( rhs.toString() );
+                else if ( value instanceof String || rhs instanceof String )
+                    text = Concatenation.builder( value, rhs, chain.length - i - 1 );
+                else
+                    value = visitor.binaryOperation( chain[i], value, rhs );
+            }
+            return text == null ? value : text.toString();
+        }
+    }
+
+
+    private static Boolean booleanValue(Object obj) {
+        if ( isPrimitiveValue(obj) )
+            obj = ((Primitive)obj).getValue();
+        return obj instanceof Boolean ? (Boolean)obj : null;
+    }
+
+
+    /** && short circuiting on a false lhs */
+    static final class ConditionalAnd extends Binary {
+
+        ConditionalAnd(BSHBinaryExpression node) {
+            super(node);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object lhs = this.lhs.eval(visitor);
+            Boolean value = booleanValue(lhs);
+            if ( value != null && !value.booleanValue() )
+                return new Primitive(false);
+            return operate(visitor, lhs);
+        }
+    }
+
+
+    /** || short circuiting on a true lhs */
+    static final class ConditionalOr extends Binary {
+
+        ConditionalOr(BSHBinaryExpression node) {
+            super(node);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object lhs = this.lhs.eval(visitor);
+            Boolean value = booleanValue(lhs);
+            if ( value != null && value.booleanValue() )
+                return new Primitive(true);
+            return operate(visitor, lhs);
+        }
+    }
+
+
+    static final class InstanceOf extends CompiledNode {
+
+        private final CompiledNode lhs;
+        private final BSHType type;
+
+        InstanceOf(BSHBinaryExpression node) {
+            super(node);
+            this.lhs = child(node, 0);
+            this.type = (BSHType)node.jjtGetChild(1);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object lhs = this.lhs.eval(visitor);
+
+            // null object ref is not instance of any type
+            if ( lhs == Primitive.NULL )
+                return new Primitive(false);
+
+            Class rhs = visitor.getType(type);
+
+            // Primitive (number or void) is not normally an instanceof
+            // anything.  But for internal use we'll test true for the
+            // bsh.Primitive class.
+            if ( lhs instanceof Primitive )
+                return new Primitive(rhs == bsh.Primitive.class);
+
+            return new Primitive(Types.isJavaBaseAssignable( rhs, lhs.getClass() ));
+        }
+    }
+
+
+    private static CompiledNode translateUnaryExpression(BSHUnaryExpression node) {
+        SimpleNode operand = (SimpleNode)node.jjtGetChild(0);
+        if ( node.kind == ParserConstants.INCR || node.kind == ParserConstants.DECR ) {
+            if ( !(operand instanceof BSHPrimaryExpression) )
+                return new Interpreted(node);
+            return new Increment(node, (BSHPrimaryExpression)operand);
+        }
+        return new Unary(node, compile(operand));
+    }
+
+
+    static final class Unary extends CompiledNode {
+
+        private final CompiledNode operand;
+        private final int kind;
+
+        Unary(BSHUnaryExpression node, CompiledNode operand) {
+            super(node);
+            this.operand = operand;
+            this.kind = node.kind;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object value = operand.eval(visitor);
+            try {
+                return ((BSHUnaryExpression)node).unaryOperation(value, kind);
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, visitor.getCallstack() );
+            }
+        }
+    }
+
+
+    /** pre- and postfix ++ and -- */
+    static final class Increment extends CompiledNode {
+
+        private final BSHPrimaryExpression operand;
+
+        Increment(BSHUnaryExpression node, BSHPrimaryExpression operand) {
+            super(node);
+            this.operand = operand;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            LHS lhs = visitor.primaryExprToLHS(operand);
+            try {
+                return ((BSHUnaryExpression)node).lhsUnaryOperation(
+                        lhs, visitor.getInterpreter().getStrictJava());
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, visitor.getCallstack() );
+            }
+        }
+    }
+
+
+    /**
+     Evaluate a condition as BshInterpreterUtil evaluateCondition().
+     */
+    static boolean condition(CompiledNode condition, BshEvaluatingVisitor visitor)
+            throws EvalError
+    {
+        Object obj = condition.eval(visitor);
+        if ( obj instanceof Primitive ) {
+            if ( obj == Primitive.VOID )
+                throw new EvalError("Condition evaluates to void type",
+                        condition.node, visitor.getCallstack() );
+            obj = ((Primitive)obj).getValue();
+        }
+
+        if ( obj instanceof Boolean )
+            return ((Boolean)obj).booleanValue();
+        else
+            throw new EvalError(
+                    "Condition must evaluate to a Boolean or boolean.",
+                    condition.node, visitor.getCallstack() );
+    }
+
+
+    static final class Ternary extends CompiledNode {
+
+        private final CompiledNode condition, evalTrue, evalFalse;
+
+        Ternary(SimpleNode node) {
+            super(node);
+            this.condition = child(node, 0);
+            this.evalTrue = child(node, 1);
+            this.evalFalse = child(node, 2);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            if ( condition(condition, visitor) )
+                return evalTrue.eval(visitor);
+            else
+                return evalFalse.eval(visitor);
+        }
+    }
+
+
+    private static CompiledNode translateAssignment(BSHAssignment node) {
+        int operation = -1;
+        if ( node.operator != ParserConstants.ASSIGN ) {
+            operation = BshInterpreterUtil.assignmentOperation(node.operator);
+            if ( operation < 0 )
+                return new Interpreted(node);
+        }
+        BSHPrimarySuffix indexSuffix = BshEvaluatingVisitor.arrayElementSuffix(
+                (BSHPrimaryExpression)node.jjtGetChild(0));
+        if ( indexSuffix != null )
+            return new ElementAssignment(node, indexSuffix, operation);
+        if ( operation < 0 )
+            return new Assignment(node);
+        if ( operation == ParserConstants.PLUS && Concatenation.isLoopAppend(node) )
+            return new LoopAppend(node);
+        return new OperatorAssignment(node, operation);
+    }
+
+
+    static class Assignment extends CompiledNode {
+
+        final BSHPrimaryExpression lhsNode;
+        final CompiledNode rhs;
+
+        Assignment(BSHAssignment node) {
+            super(node);
+            this.lhsNode = (BSHPrimaryExpression)node.jjtGetChild(0);
+            this.rhs = child(node, 1);
+        }
+
+        final LHS lhs(BshEvaluatingVisitor visitor) throws EvalError {
+            LHS lhs = visitor.primaryExprToLHS(lhsNode);
+            if ( lhs == null )
+                throw new InterpreterError( "Error, null LHS" );
+            return lhs;
+        }
+
+        final Object rhs(BshEvaluatingVisitor visitor) throws EvalError {
+            Object value = rhs.eval(visitor);
+            if ( value == Primitive.VOID )
+                throw new EvalError("Void assignment.", node, visitor.getCallstack() );
+            return value;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            boolean strictJava = visitor.getInterpreter().getStrictJava();
+            LHS lhs = lhs(visitor);
+            Object value = rhs(visitor);
+            try {
+                return lhs.assign( value, strictJava );
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, visitor.getCallstack() );
+            }
+        }
+    }
+
+
+    static class OperatorAssignment extends Assignment {
+
+        private final int operation;
+
+        OperatorAssignment(BSHAssignment node, int operation) {
+            super(node);
+            this.operation = operation;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            return assign(visitor, lhs(visitor));
+        }
+
+        final Object assign(BshEvaluatingVisitor visitor, LHS lhs) throws EvalError {
+            boolean strictJava = visitor.getInterpreter().getStrictJava();
+            CallStack callstack = visitor.getCallstack();
+
+            // save the lhs value before evaluating the rhs, e.g.
+            // i=1; i+=i++; // should be 2 not 3
+            Object lhsValue;
+            try {
+                lhsValue = lhs.getValue();
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+
+            Object value = rhs(visitor);
+            try {
+                return lhs.assign( BshInterpreterUtil.operation(
+                        (BSHAssignment)node, lhsValue, value, operation), strictJava );
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        }
+    }
+
+
+    /**
+     s += x in a loop body, which appends to a String variable in place, see
+     Concatenation.
+     */
+    static final class LoopAppend extends OperatorAssignment {
+
+        LoopAppend(BSHAssignment node) {
+            super(node, ParserConstants.PLUS);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            boolean strictJava = visitor.getInterpreter().getStrictJava();
+            LHS lhs = lhs(visitor);
+            BSHAssignment node = (BSHAssignment)this.node;
+            try {
+                if ( !node.loopAppend )
+                    return assign(visitor, lhs);
+                if ( !lhs.prepareAppend( strictJava ) ) {
+                    Concatenation.appendFailed( node );
+                    return assign(visitor, lhs);
+                }
+                lhs.appendString( rhs(visitor), strictJava );
+                return Primitive.VOID;
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, visitor.getCallstack() );
+            }
+        }
+    }
+
+
+    /**
+     Assignment to an array element, e.g. a[i] += x, which reads and writes
+     the element through an ArrayAccessor instead of an LHS.
+     */
+    static final class ElementAssignment extends Assignment {
+
+        private final BSHPrimarySuffix indexSuffix;
+        /** the binary operator of a compound assignment, -1 for plain = */
+        private final int operation;
+
+        ElementAssignment(BSHAssignment node, BSHPrimarySuffix indexSuffix, int operation) {
+            super(node);
+            this.indexSuffix = indexSuffix;
+            this.operation = operation;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object array = visitor.evalIndexedArray(lhsNode);
+            int index = BshInterpreterUtil.getIndexAux(array, visitor, indexSuffix);
+            ArrayAccessor accessor = ArrayAccessor.of(indexSuffix, array);
+            try {
+                Object lhsValue = operation < 0 ? null : accessor.get(array, index);
+                Object value = rhs(visitor);
+                if ( operation >= 0 )
+                    value = BshInterpreterUtil.operation(
+                            (BSHAssignment)node, lhsValue, value, operation);
+                accessor.set(array, index, value);
+                return value;
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, visitor.getCallstack() );
+            }
+        }
+    }
+
+
+    // Statements
+
+    /**
+     The statements of a block.  The compiling visitor evaluates blocks
+     through evalStatements(), evaluating the node goes through
+     BshEvaluatingVisitor evalBlock() to handle synchronized blocks.
+     */
+    static final class Block extends CompiledNode {
+
+        private final CompiledNode[] classDeclarations;
+        private final CompiledNode[] statements;
+
+        Block(BSHBlock node) {
+            super(node);
+            int start = node.isSynchronized ? 1 : 0;
+            int numClasses = 0;
+            for( int i=start; i<node.jjtGetNumChildren(); i++ )
+                if ( node.jjtGetChild(i) instanceof BSHClassDeclaration )
+                    numClasses++;
+            classDeclarations = new CompiledNode[numClasses];
+            statements = new CompiledNode[node.jjtGetNumChildren() - start - numClasses];
+            int c = 0, s = 0;
+            for( int i=start; i<node.jjtGetNumChildren(); i++ )
+                if ( node.jjtGetChild(i) instanceof BSHClassDeclaration )
+                    classDeclarations[c++] = child(node, i);
+                else
+                    statements[s++] = child(node, i);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            return visitor.evalBlock((BSHBlock)node, false);
+        }
+
+        Object evalStatements(BshEvaluatingVisitor visitor, boolean overrideNamespace)
+                throws EvalError
+        {
+            CallStack callstack = visitor.getCallstack();
+            Object ret = Primitive.VOID;
+            NameSpace enclosingNameSpace = null;
+            if ( !overrideNamespace )
+            {
+                enclosingNameSpace = callstack.top();
+                callstack.swap( new BlockNameSpace( enclosingNameSpace ) );
+            }
+
+            try {
+                // class declarations first
+                for( int i=0; i<classDeclarations.length; i++ )
+                    classDeclarations[i].eval(visitor);
+                for( int i=0; i<statements.length; i++ )
+                {
+                    ret = statements[i].eval(visitor);
+
+                    // statement or embedded block evaluated a return statement
+                    if ( ret instanceof ReturnControl )
+                        break;
+                }
+            } finally {
+                if ( !overrideNamespace )
+                    callstack.swap( enclosingNameSpace );
+            }
+            return ret;
+        }
+    }
+
+
+    static final class If extends CompiledNode {
+
+        private final CompiledNode condition, then;
+        /** null without else */
+        private final CompiledNode otherwise;
+
+        If(SimpleNode node) {
+            super(node);
+            this.condition = child(node, 0);
+            this.then = child(node, 1);
+            this.otherwise = node.jjtGetNumChildren() > 2 ? child(node, 2) : null;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object ret = null;
+            if ( condition(condition, visitor) )
+                ret = then.eval(visitor);
+            else
+            if ( otherwise != null )
+                ret = otherwise.eval(visitor);
+
+            if ( ret instanceof ReturnControl )
+                return ret;
+            else
+                return Primitive.VOID;
+        }
+    }
+
+
+    static final class While extends CompiledNode {
+
+        private final CompiledNode condition;
+        /** null for an empty body */
+        private final CompiledNode body;
+        private final boolean isDoStatement;
+
+        While(BSHWhileStatement node) {
+            super(node);
+            this.isDoStatement = node.isDoStatement;
+            if ( isDoStatement ) {
+                condition = child(node, 1);
+                body = child(node, 0);
+            } else {
+                condition = child(node, 0);
+                body = node.jjtGetNumChildren() > 1 ? child(node, 1) : null;
+            }
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            boolean doOnceFlag = isDoStatement;
+            while ( doOnceFlag || condition(condition, visitor) ) {
+                doOnceFlag = false;
+                // no body?
+                if ( body == null )
+                    continue;
+                Object ret = body.eval(visitor);
+                if ( ret instanceof ReturnControl ) {
+                    switch ( ((ReturnControl)ret).kind ) {
+                        case ParserConstants.RETURN:
+                            return ret;
+
+                        case ParserConstants.CONTINUE:
+                            break;
+
+                        case ParserConstants.BREAK:
+                            return Primitive.VOID;
+                    }
+                }
+            }
+            return Primitive.VOID;
+        }
+    }
+
+
+    static final class For extends CompiledNode {
+
+        /** null if absent */
+        private final CompiledNode forInit, expression, forUpdate, statement;
+        /** null if not a counted loop */
+        private final CountedLoop countedLoop;
+
+        For(BSHForStatement node) {
+            super(node);
+            countedLoop = CountedLoop.of(node);
+            int i = 0;
+            forInit = node.hasForInit ? child(node, i++) : null;
+            expression = node.hasExpression ? child(node, i++) : null;
+            forUpdate = node.hasForUpdate ? child(node, i++) : null;
+            statement = i < node.jjtGetNumChildren() ? child(node, i) : null;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            if ( countedLoop != null )
+                return countedLoop.eval(visitor);
+
+            CallStack callstack = visitor.getCallstack();
+            NameSpace enclosingNameSpace = callstack.top();
+
+            // see BshEvaluatingVisitor visit(BSHForStatement) on the namespaces
+            callstack.swap( new BlockNameSpace( enclosingNameSpace ) );
+
+            if ( forInit != null )
+                forInit.eval(visitor);
+
+            Object returnControl = Primitive.VOID;
+            while ( true )
+            {
+                if ( expression != null && !condition(expression, visitor) )
+                    break;
+
+                boolean breakout = false;
+                if ( statement != null )
+                {
+                    Object ret = statement.eval(visitor);
+
+                    if ( ret instanceof ReturnControl )
+                    {
+                        switch ( ((ReturnControl)ret).kind )
+                        {
+                            case ParserConstants.RETURN:
+                                returnControl = ret;
+                                breakout = true;
+                                break;
+
+                            case ParserConstants.CONTINUE:
+                                break;
+
+                            case ParserConstants.BREAK:
+                                breakout = true;
+                                break;
+                        }
+                    }
+                }
+
+                if ( breakout )
+                    break;
+
+                if ( forUpdate != null )
+                    forUpdate.eval(visitor);
+            }
+
+            callstack.swap( enclosingNameSpace );  // put it back
+            return returnControl;
+        }
+    }
+
+
+    static final class Return extends CompiledNode {
+
+        private final int kind;
+        /** null without a value */
+        private final CompiledNode value;
+
+        Return(BSHReturnStatement node) {
+            super(node);
+            this.kind = node.kind;
+            this.value = node.jjtGetNumChildren() > 0 ? child(node, 0) : null;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            Object value = this.value != null
+                    ? this.value.eval(visitor)
+                    : Primitive.VOID;
+            return new ReturnControl( kind, value, node );
+        }
+    }
+
+
+    static final class StatementList extends CompiledNode {
+
+        private final CompiledNode[] statements;
+
+        StatementList(SimpleNode node) {
+            super(node);
+            this.statements = children(node, 0);
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            for( int i=0; i<statements.length; i++ )
+                statements[i].eval(visitor);
+            return Primitive.VOID;
+        }
+    }
+
+
+    private static CompiledNode translateTypedVariableDeclaration(
+            BSHTypedVariableDeclaration node)
+    {
+        BSHVariableDeclarator[] declarators = node.getDeclarators();
+        for( int i=0; i<declarators.length; i++ )
+            // array initializers are evaluated with the declared type
+            if ( declarators[i].jjtGetNumChildren() > 0
+                    && declarators[i].jjtGetChild(0) instanceof BSHArrayInitializer )
+                return new Interpreted(node);
+        return new TypedVariableDeclaration(node, declarators);
+    }
+
+
+    static final class TypedVariableDeclaration extends CompiledNode {
+
+        private final BSHType typeNode;
+        private final BSHVariableDeclarator[] declarators;
+        /** null elements for declarators without initializer */
+        private final CompiledNode[] initializers;
+        private final Modifiers modifiers;
+
+        TypedVariableDeclaration(BSHTypedVariableDeclaration node,
+                BSHVariableDeclarator[] declarators)
+        {
+            super(node);
+            this.typeNode = node.getTypeNode();
+            this.declarators = declarators;
+            this.initializers = new CompiledNode[declarators.length];
+            for( int i=0; i<declarators.length; i++ )
+                if ( declarators[i].jjtGetNumChildren() > 0 )
+                    initializers[i] = child(declarators[i], 0);
+            this.modifiers = node.modifiers;
+        }
+
+        public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+            CallStack callstack = visitor.getCallstack();
+            try {
+                NameSpace namespace = callstack.top();
+                Class type = visitor.getType(typeNode);
+
+                for( int i=0; i<declarators.length; i++ )
+                {
+                    // null value means no value
+                    Object value = null;
+                    if ( initializers[i] != null ) {
+                        value = initializers[i].eval(visitor);
+                        if ( value == Primitive.VOID )
+                            throw new EvalError("Void initializer.",
+                                    declarators[i], callstack );
+                    }
+
+                    try {
+                        namespace.setTypedVariable(
+                                declarators[i].name, type, value, modifiers );
+                    } catch ( UtilEvalError e ) {
+                        throw e.toEvalError( node, callstack );
+                    }
+                }
+            } catch ( EvalError e ) {
+                e.reThrow( "Typed variable declaration" );
+            }
+
+            return Primitive.VOID;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh.interpreter;
+
+import bsh.CallStack;
+import bsh.EvalError;
+import bsh.Interpreter;
+import bsh.ast.*;
+
+/**
+ An evaluating visitor which evaluates nodes in their closure compiled form
+ (see BshClosureCompiler).  Visiting a node which has a compiled form
+ evaluates the compiled node, which evaluates its children directly.  The
+ nodes left to the visitor are visited as usual.
+ <p>
+
+ Use BshEvaluatingVisitor create() to get the evaluator selected for an
+ interpreter.
+
+ @see Interpreter#setClosureCompilation(boolean)
+ */
+public class BshCompilingVisitor extends BshEvaluatingVisitor {
+
+    public BshCompilingVisitor(CallStack callstack, Interpreter interpreter) {
+        super(callstack, interpreter);
+    }
+
+
+    @Override
+    public Object evalBlock( BSHBlock block,
+            boolean overrideNamespace, BSHBlock.NodeFilter nodeFilter )
+            throws EvalError
+    {
+        if ( nodeFilter != null )
+            return super.evalBlock(block, overrideNamespace, nodeFilter);
+        return ((BshClosureCompiler.Block)BshClosureCompiler.compile(block))
+                .evalStatements(this, overrideNamespace);
+    }
+
+
+    @Override
+    public Object visit(BSHLiteral node) {
+        CompiledNode compiled = BshClosureCompiler.compile(node);
+        return compiled.isInterpreted() ? super.visit(node) : compiled.eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHPrimaryExpression node) {
+        CompiledNode compiled = BshClosureCompiler.compile(node);
+        return compiled.isInterpreted() ? super.visit(node) : compiled.eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHMethodInvocation node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHBinaryExpression node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHUnaryExpression node) {
+        CompiledNode compiled = BshClosureCompiler.compile(node);
+        return compiled.isInterpreted() ? super.visit(node) : compiled.eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHTernaryExpression node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHAssignment node) {
+        CompiledNode compiled = BshClosureCompiler.compile(node);
+        return compiled.isInterpreted() ? super.visit(node) : compiled.eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHIfStatement node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHWhileStatement node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHForStatement node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHReturnStatement node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHStatementExpressionList node) {
+        return BshClosureCompiler.compile(node).eval(this);
+    }
+
+
+    @Override
+    public Object visit(BSHTypedVariableDeclaration node) {
+        CompiledNode compiled = BshClosureCompiler.compile(node);
+        return compiled.isInterpreted() ? super.visit(node) : compiled.eval(this);
+    }
+}
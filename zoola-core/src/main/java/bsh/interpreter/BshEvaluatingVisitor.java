@@ -24,6 +24,18 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
     }
 
 
+    /**
+     Create the evaluator selected by the interpreter: a BshCompilingVisitor
+     if closure compilation is enabled for it, a plain visitor otherwise.
+     @see Interpreter#setClosureCompilation(boolean)
+     */
+    public static BshEvaluatingVisitor create(CallStack callstack, Interpreter interpreter) {
+        if ( interpreter != null && interpreter.getClosureCompilation() )
+            return new BshCompilingVisitor(callstack, interpreter);
+        return new BshEvaluatingVisitor(callstack, interpreter);
+    }
+
+
     public CallStack getCallstack() {
         return callstack;
     }
@@ -100,53 +112,28 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
 
     public Object constructObject(BSHAllocationExpression node, Class<?> type, Object[] args ) throws EvalError {
         final boolean isGeneratedClass = GeneratedClass.class.isAssignableFrom(type);
+        Object previousContext = null;
         if (isGeneratedClass) {
-            ClassGeneratorUtil.registerConstructorContext(callstack, interpreter);
+            callstack.top().getClassManager().awaitClassDefinition(type.getName());
+            previousContext = ClassGeneratorUtil.registerConstructorContext(callstack, interpreter);
         }
-        Object obj;
+        // Instances of scripted inner classes are placed in the enclosing
+        // class instance by their ClassInstantiator using this context
         try {
-            obj = Reflect.constructObject( type, args );
+            return Reflect.constructObject( type, args );
         } catch ( ReflectError e) {
             throw new EvalError(
                     "Constructor error: " + e.getMessage(), node, callstack );
         } catch (InvocationTargetException e) {
             // No need to wrap this debug
             Interpreter.debug("The constructor threw an exception:\n\t" + e.getTargetException());
-            throw new TargetError("Object constructor", e.getTargetException(), node, callstack, true);
+            throw TargetError.wrap("Object constructor", e, node, callstack);
         } finally {
             if (isGeneratedClass) {
-                ClassGeneratorUtil.registerConstructorContext(null, null); // clean up, prevent memory leak
+                // clean up, prevent memory leak
+                ClassGeneratorUtil.restoreConstructorContext(previousContext);
             }
         }
-
-        String className = type.getName();
-        // Is it an inner class?
-        if ( className.indexOf("$") == -1 )
-            return obj;
-
-        // Temporary hack to support inner classes
-        // If the obj is a non-static inner class then import the context...
-        // This is not a sufficient emulation of inner classes.
-        // Replace this later...
-
-        // work through to class 'this'
-        This ths = callstack.top().getThis( null );
-        NameSpace instanceNameSpace =
-                Name.getClassNameSpace( ths.getNameSpace() );
-
-        // Change the parent (which was the class static) to the class instance
-        // We really need to check if we're a static inner class here first...
-        // but for some reason Java won't show the static modifier on our
-        // fake inner classes...  could generate a flag field.
-        if ( instanceNameSpace != null
-                && className.startsWith( instanceNameSpace.getName() +"$")
-                )
-        {
-            ClassGenerator.getClassGenerator().setInstanceNameSpaceParent(
-                    obj, className, instanceNameSpace );
-        }
-
-        return obj;
     }
 
 
@@ -466,6 +453,19 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
     public Object evalArrayInitializer(BSHArrayInitializer nodeA, Class baseType, int dimensions,
                         CallStack callstack, Interpreter interpreter )
             throws EvalError
+    {
+        ArrayTemplate template = ArrayTemplate.of( nodeA, baseType, dimensions, this );
+        if ( template != null )
+            return template.newArray();
+        return fillArrayInitializer( nodeA, baseType, dimensions );
+    }
+
+    /**
+     Evaluate the initializer elements into a new array.
+     @see #evalArrayInitializer
+     */
+    Object fillArrayInitializer(BSHArrayInitializer nodeA, Class baseType, int dimensions)
+            throws EvalError
     {
         int numInitializers = nodeA.jjtGetNumChildren();
 
@@ -475,6 +475,7 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
         // the values are set.
         dima[0] = numInitializers;
         Object initializers =  Array.newInstance( baseType, dima );
+        ArrayAccessor accessor = ArrayAccessor.of( initializers.getClass() );
 
         // Evaluate the initializers
         for (int i = 0; i < numInitializers; i++)
@@ -487,8 +488,8 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
                             "Invalid Location for Intializer, position: "+i,
                             nodeA, callstack );
                 currentInitializer =
-                        evalArrayInitializer(((BSHArrayInitializer)childNode),
-                                baseType, dimensions-1, callstack, interpreter);
+                        fillArrayInitializer(((BSHArrayInitializer)childNode),
+                                baseType, dimensions-1);
             } else
                 currentInitializer = childNode.accept(this);
 
@@ -523,12 +524,9 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
 
             // store the value in the array
             try {
-                Array.set(initializers, i, value);
-            } catch( IllegalArgumentException e ) {
-                Interpreter.debug("illegal arg"+e);
-                throwTypeError( nodeA, baseType, currentInitializer, i, callstack );
-            } catch( ArrayStoreException e ) { // I think this can happen
-                Interpreter.debug("arraystore"+e);
+                accessor.set( initializers, i, value );
+            } catch( UtilEvalError e ) {
+                Interpreter.debug("array store"+e);
                 throwTypeError(nodeA, baseType, currentInitializer, i, callstack );
             }
         }
@@ -569,24 +567,69 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
         if ( lhsNode == null )
             throw new InterpreterError( "Error, null LHSnode" );
 
+        int operation = -1;
+        if ( node.operator != ParserConstants.ASSIGN ) {
+            operation = BshInterpreterUtil.assignmentOperation( node.operator );
+            if ( operation < 0 )
+                throw new InterpreterError(
+                        "unimplemented operator in assignment BSH");
+        }
+
+        SimpleNode rhsNode = (SimpleNode)node.jjtGetChild(1);
+
+        BSHPrimarySuffix indexSuffix = arrayElementSuffix( lhsNode );
+        if ( indexSuffix != null )
+        {
+            // a[i] = x, read and write the array element directly
+            Object array = evalIndexedArray( lhsNode );
+            int index = BshInterpreterUtil.getIndexAux( array, this, indexSuffix );
+            ArrayAccessor accessor = ArrayAccessor.of( indexSuffix, array );
+            try {
+                Object lhsValue = operation < 0 ? null : accessor.get( array, index );
+                Object rhs = rhsNode.accept(this);
+                if ( rhs == Primitive.VOID )
+                    throw new EvalError("Void assignment.", node, callstack );
+                Object value = operation < 0 ? rhs :
+                        BshInterpreterUtil.operation(node, lhsValue, rhs, operation);
+                accessor.set( array, index, value );
+                return value;
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        }
+
         boolean strictJava = interpreter.getStrictJava();
         LHS lhs = primaryExprToLHS(lhsNode);
         if ( lhs == null )
             throw new InterpreterError( "Error, null LHS" );
 
+        // s += x in a loop body appends to a String variable in place
+        try {
+            if ( Concatenation.isLoopAppend( node ) ) {
+                if ( lhs.prepareAppend( strictJava ) ) {
+                    Object rhs = rhsNode.accept(this);
+                    if ( rhs == Primitive.VOID )
+                        throw new EvalError("Void assignment.", node, callstack );
+                    lhs.appendString( rhs, strictJava );
+                    return Primitive.VOID;
+                }
+                Concatenation.appendFailed( node );
+            }
+        } catch ( UtilEvalError e ) {
+            throw e.toEvalError( node, callstack );
+        }
+
         // For operator-assign operations save the lhs value before evaluating
         // the rhs.  This is correct Java behavior for postfix operations
         // e.g. i=1; i+=i++; // should be 2 not 3
         Object lhsValue = null;
-        if ( node.operator != ParserConstants.ASSIGN ) // assign doesn't need the pre-value
+        if ( operation >= 0 ) // assign doesn't need the pre-value
             try {
                 lhsValue = lhs.getValue();
             } catch ( UtilEvalError e ) {
                 throw e.toEvalError( node, callstack );
             }
 
-        SimpleNode rhsNode = (SimpleNode)node.jjtGetChild(1);
-
         Object rhs;
 
         // implement "blocks" foo = { };
@@ -599,65 +642,10 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
             throw new EvalError("Void assignment.", node, callstack );
 
         try {
-            switch(node.operator)
-            {
-                case ParserConstants.ASSIGN:
-                    return lhs.assign( rhs, strictJava );
-
-                case ParserConstants.PLUSASSIGN:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.PLUS), strictJava );
-
-                case ParserConstants.MINUSASSIGN:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.MINUS), strictJava );
-
-                case ParserConstants.STARASSIGN:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.STAR), strictJava );
-
-                case ParserConstants.SLASHASSIGN:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.SLASH), strictJava );
-
-                case ParserConstants.ANDASSIGN:
-                case ParserConstants.ANDASSIGNX:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.BIT_AND), strictJava );
-
-                case ParserConstants.ORASSIGN:
-                case ParserConstants.ORASSIGNX:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.BIT_OR), strictJava );
-
-                case ParserConstants.XORASSIGN:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.XOR), strictJava );
-
-                case ParserConstants.MODASSIGN:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.MOD), strictJava );
-
-                case ParserConstants.LSHIFTASSIGN:
-                case ParserConstants.LSHIFTASSIGNX:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.LSHIFT), strictJava );
-
-                case ParserConstants.RSIGNEDSHIFTASSIGN:
-                case ParserConstants.RSIGNEDSHIFTASSIGNX:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.RSIGNEDSHIFT ), strictJava );
-
-                case ParserConstants.RUNSIGNEDSHIFTASSIGN:
-                case ParserConstants.RUNSIGNEDSHIFTASSIGNX:
-                    return lhs.assign(
-                            BshInterpreterUtil.operation(node, lhsValue, rhs, ParserConstants.RUNSIGNEDSHIFT),
-                            strictJava );
-
-                default:
-                    throw new InterpreterError(
-                            "unimplemented operator in assignment BSH");
-            }
+            if ( operation < 0 )
+                return lhs.assign( rhs, strictJava );
+            return lhs.assign(
+                    BshInterpreterUtil.operation(node, lhsValue, rhs, operation), strictJava );
         } catch ( UtilEvalError e ) {
             throw e.toEvalError( node, callstack );
         }
@@ -666,6 +654,12 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
 
     @Override
     public Object visit(BSHBinaryExpression node) {
+        if ( node.kind == ParserConstants.PLUS ) {
+            BSHBinaryExpression[] chain = Concatenation.chain( node );
+            if ( chain != null )
+                return Concatenation.eval( this, chain );
+        }
+
         Object lhs = ((SimpleNode)node.jjtGetChild(0)).accept(this);
 
         /*
@@ -731,12 +725,21 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
 
         // end stuff that was tacked on for boolean short-circuiting.
 
+        Object rhs = ((SimpleNode)node.jjtGetChild(1)).accept(this); //eval(callstack, interpreter);
+        return binaryOperation(node, lhs, rhs);
+    }
+
+
+    /**
+     Apply the operator of a (non short circuiting) binary expression to
+     already evaluated operands.
+     */
+    Object binaryOperation(BSHBinaryExpression node, Object lhs, Object rhs) {
         /*
               Are both the lhs and rhs either wrappers or primitive values?
               do binary op
           */
         boolean isLhsWrapper = node.isWrapper(lhs);
-        Object rhs = ((SimpleNode)node.jjtGetChild(1)).accept(this); //eval(callstack, interpreter);
         boolean isRhsWrapper = node.isWrapper(rhs);
         if (
                 ( isLhsWrapper || node.isPrimitiveValue(lhs) )
@@ -1021,23 +1024,27 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
                     "enumeration portion of a for statement cannot be null.",
                     node, callstack );
 
-        CollectionManager cm = CollectionManager.getCollectionManager();
-        if ( !cm.isBshIterable( iteratee ) )
+        if ( node.parallel ) {
+            callstack.swap(enclosingNameSpace);
+            return ParallelForEach.run( node, elementType, statement, iteratee, this );
+        }
+
+        Iterator iterator = ForEachIteration.iterator( node, iteratee, callstack );
+        if ( iterator == null )
             throw new EvalError("Can't iterate over type: "
                     +iteratee.getClass(), node, callstack );
-        Iterator iterator = cm.getBshIterator( iteratee );
 
         Object returnControl = Primitive.VOID;
-        while( iterator.hasNext() )
+        while( ForEachIteration.hasNext( iterator, node, callstack ) )
         {
             try {
-                Object value = iterator.next();
+                Object value = ForEachIteration.next( iterator, elementType, node, callstack );
                 if ( value == null )
                     value = Primitive.NULL;
                 if ( elementType != null )
                     eachNameSpace.setTypedVariable(
                             node.varName/*name*/, elementType/*type*/,
-                            value, new Modifiers()/*none*/ );
+                            value, null/*modifiers*/ );
                 else
                     eachNameSpace.setVariable( node.varName, value, false );
             } catch ( UtilEvalError e ) {
@@ -1157,6 +1164,10 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
         if(i < node.jjtGetNumChildren()) // should normally be
             node.statement = ((SimpleNode)node.jjtGetChild(i));
 
+        CountedLoop countedLoop = CountedLoop.of(node);
+        if ( countedLoop != null )
+            return countedLoop.eval(this);
+
         NameSpace enclosingNameSpace= callstack.top();
         BlockNameSpace forNameSpace = new BlockNameSpace( enclosingNameSpace );
 
@@ -1251,6 +1262,18 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
     }
 
 
+    @Override
+    public Object visit(BSHIteratorExpression node) {
+        return new IteratorExpression(node, this);
+    }
+
+
+    @Override
+    public Object visit(BSHLambdaExpression node) {
+        return Lambda.create(node, this);
+    }
+
+
     @Override
     public Object visit(BSHImportDeclaration node) {
         NameSpace namespace = callstack.top();
@@ -1431,24 +1454,8 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
             throw new EvalError(
                     "Error in method invocation: " + e.getMessage(),
                     node, callstack, e );
-        } catch ( InvocationTargetException e )
-        {
-            String msg = "Method Invocation "+name;
-            Throwable te = e.getTargetException();
-
-            /*
-                   Try to squeltch the native code stack trace if the exception
-                   was caused by a reflective call back into the bsh interpreter
-                   (e.g. eval() or source()
-               */
-            boolean isNative = true;
-            if ( te instanceof EvalError )
-                if ( te instanceof TargetError )
-                    isNative = ((TargetError)te).inNativeCode();
-                else
-                    isNative = false;
-
-            throw new TargetError( msg, te, node, callstack, isNative );
+        } catch ( InvocationTargetException e ) {
+            throw TargetError.wrap( "Method Invocation "+name, e, node, callstack );
         } catch ( UtilEvalError e ) {
             throw e.toEvalError( node, callstack );
         }
@@ -1469,7 +1476,7 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
     /**
      Evaluate to a value object.
      */
-    private LHS primaryExprToLHS(BSHPrimaryExpression node)
+    LHS primaryExprToLHS(BSHPrimaryExpression node)
             throws EvalError
     {
         Object obj = evalPrimaryExpr(node, true);
@@ -1481,6 +1488,35 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
     }
 
 
+    /**
+     The index suffix of an assignment target that is an array element,
+     e.g. a[i], or null for other targets.
+     */
+    static BSHPrimarySuffix arrayElementSuffix(BSHPrimaryExpression node) {
+        int last = node.jjtGetNumChildren() - 1;
+        if ( last < 1 )
+            return null;
+        BSHPrimarySuffix suffix = (BSHPrimarySuffix)node.jjtGetChild(last);
+        return suffix.operation == BSHPrimarySuffix.INDEX ? suffix : null;
+    }
+
+
+    /**
+     Evaluate the array of an array element assignment target, i.e. the
+     primary expression without its last, index suffix.
+     @see #arrayElementSuffix(BSHPrimaryExpression)
+     */
+    Object evalIndexedArray(BSHPrimaryExpression node)
+            throws EvalError
+    {
+        int last = node.jjtGetNumChildren() - 1;
+        Object obj = node.jjtGetChild(0);
+        for(int i=1; i<last; i++)
+            obj = doSuffix(((BSHPrimarySuffix)node.jjtGetChild(i)), obj, false);
+        return suffixTarget( (BSHPrimarySuffix)node.jjtGetChild(last), obj );
+    }
+
+
     /*
          Our children are a prefix expression and any number of suffixes.
          <p>
@@ -1571,18 +1607,7 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
               that we can't just eval() - we need to direct the evaluation to
               the context sensitive type of result; namely object, class, etc.
           */
-        if ( obj instanceof SimpleNode )
-            if ( obj instanceof BSHAmbiguousName)
-                obj = ambiguousNameToObject(((BSHAmbiguousName)obj));
-            else
-                obj = ((SimpleNode)obj).accept(this);
-        else
-        if ( obj instanceof LHS )
-            try {
-                obj = ((LHS)obj).getValue();
-            } catch ( UtilEvalError e ) {
-                throw e.toEvalError( node, callstack );
-            }
+        obj = suffixTarget( node, obj );
 
         try
         {
@@ -1607,11 +1632,31 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
         }
         catch(InvocationTargetException e)
         {
-            throw new TargetError( "target exception", e.getTargetException(),
-                    node, callstack, true);
+            throw TargetError.wrap( "target exception", e, node, callstack );
         }
     }
 
+    /**
+     Evaluate the prefix of a suffix to the object the suffix applies to.
+     */
+    private Object suffixTarget( BSHPrimarySuffix node, Object obj )
+            throws EvalError
+    {
+        if ( obj instanceof SimpleNode )
+            if ( obj instanceof BSHAmbiguousName)
+                return ambiguousNameToObject(((BSHAmbiguousName)obj));
+            else
+                return ((SimpleNode)obj).accept(this);
+        else
+        if ( obj instanceof LHS )
+            try {
+                return ((LHS)obj).getValue();
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        return obj;
+    }
+
     /*
          Field access, .length on array, or a method invocation
          Must handle toLHS case for each.
@@ -1651,24 +1696,8 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
                 throw new EvalError(
                         "Error in method invocation: " + e.getMessage(),
                         node, callstack, e );
-            } catch ( InvocationTargetException e )
-            {
-                String msg = "Method Invocation "+node.field;
-                Throwable te = e.getTargetException();
-
-                /*
-                        Try to squeltch the native code stack trace if the exception
-                        was caused by a reflective call back into the bsh interpreter
-                        (e.g. eval() or source()
-                    */
-                boolean isNative = true;
-                if ( te instanceof EvalError )
-                    if ( te instanceof TargetError )
-                        isNative = ((TargetError)te).inNativeCode();
-                    else
-                        isNative = false;
-
-                throw new TargetError( msg, te, node, callstack, isNative );
+            } catch ( InvocationTargetException e ) {
+                throw TargetError.wrap( "Method Invocation "+node.field, e, node, callstack );
             }
 
         } catch ( UtilEvalError e ) {
@@ -1683,14 +1712,14 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
      */
     private Object doIndex( BSHPrimarySuffix node,
             Object obj, boolean toLHS )
-            throws EvalError, ReflectError
+            throws EvalError
     {
         int index = BshInterpreterUtil.getIndexAux( obj, this, node );
         if ( toLHS )
             return new LHS(obj, index);
         else
             try {
-                return Reflect.getIndex(obj, index);
+                return ArrayAccessor.of( node, obj ).get( obj, index );
             } catch ( UtilEvalError e ) {
                 throw e.toEvalError( node, callstack );
             }
@@ -1820,28 +1849,23 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
             throw new EvalError("Empty switch statement.", node, callstack );
         label = ((BSHSwitchLabel)node.jjtGetChild(child++));
 
+        // constant labels, jump to the one taken
+        SwitchTable table = SwitchTable.of(node, this);
+        int start = table != null ? table.lookup(switchVal) : SwitchTable.NOT_APPLICABLE;
+        if ( start != SwitchTable.NOT_APPLICABLE ) {
+            if ( start >= 0 )
+                returnControl = evalSwitchCases(node, start);
+            child = numchild;
+        }
+
         // while more labels or blocks and haven't hit return control
         while ( child < numchild && returnControl == null )
         {
             // if label is default or equals switchVal
             if ( label.isDefault
                     || primitiveEquals(node, switchVal, label.accept(this), switchExp) )  {
-                // execute nodes, skipping labels, until a break or return
-                while ( child < numchild )
-                {
-                    obj = node.jjtGetChild(child++);
-                    if ( obj instanceof BSHSwitchLabel )
-                        continue;
-                    // eval it
-                    Object value =
-                            ((SimpleNode)obj).accept(this);
-
-                    // should check to disallow continue here?
-                    if ( value instanceof ReturnControl ) {
-                        returnControl = (ReturnControl)value;
-                        break;
-                    }
-                }
+                returnControl = evalSwitchCases(node, child);
+                break;
             } else
             {
                 // skip nodes until next label
@@ -1862,6 +1886,29 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
             return Primitive.VOID;
     }
 
+    /**
+     Execute the children of a switch statement from the given one, skipping
+     labels, until a break or return.
+     @return the return control hit or null
+     */
+    private ReturnControl evalSwitchCases(BSHSwitchStatement node, int child) {
+        int numchild = node.jjtGetNumChildren();
+        while ( child < numchild )
+        {
+            Object obj = node.jjtGetChild(child++);
+            if ( obj instanceof BSHSwitchLabel )
+                continue;
+            // eval it
+            Object value =
+                    ((SimpleNode)obj).accept(this);
+
+            // should check to disallow continue here?
+            if ( value instanceof ReturnControl )
+                return (ReturnControl)value;
+        }
+        return null;
+    }
+
     /**
      Helper method for testing equals on two primitive or boxable objects.
      yuck: factor this out into Primitive.java
@@ -1959,9 +2006,8 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
         }
         catch( TargetError e ) {
             target = e;
-            String stackInfo = "Bsh Stack: ";
             while ( callstack.depth() > callstackDepth )
-                stackInfo += "\t" + callstack.pop() +"\n";
+                callstack.pop();
         }
 
         // unwrap the target error
@@ -1988,21 +2034,11 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
                     throw new EvalError(
                             "(Strict Java) Untyped catch block", node, callstack );
 
-                // If the param is typed check assignability
-                if ( fp.type != null )
-                    try {
-                        thrown = (Throwable)Types.castObject(
-                                thrown/*rsh*/, fp.type/*lhsType*/, Types.ASSIGNMENT );
-                    } catch( UtilEvalError e ) {
-                        /*
-                                  Catch the mismatch and continue to try the next
-                                  Note: this is innefficient, should have an
-                                  isAssignableFrom() that doesn't throw
-                                  // TODO: we do now have a way to test assignment
-                                  // 	in castObject(), use it?
-                              */
-                        continue;
-                    }
+                // If the param is typed check assignability, continue to try
+                // the next on a mismatch.  (An exception is assignable only
+                // to its own types, there is no bsh conversion to apply.)
+                if ( fp.type != null && !fp.type.isInstance( thrown ) )
+                    continue;
 
                 // Found match, execute catch block
                 BSHBlock cb = catchBlocks.get(i);
@@ -2022,9 +2058,8 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
                     else
                     {
                         // set a typed variable (directly in the block)
-                        Modifiers modifiers = new Modifiers();
                         cbNameSpace.setTypedVariable(
-                                fp.name, fp.type, thrown, new Modifiers()/*none*/ );
+                                fp.name, fp.type, thrown, null/*modifiers*/ );
                     }
                 } catch ( UtilEvalError e ) {
                     throw new InterpreterError(
@@ -2326,4 +2361,15 @@ public class BshEvaluatingVisitor extends BshNodeVisitor<Object> {
         return Primitive.VOID;
     }
 
+
+    /**
+     Yield statements are run by the Generator of a generator method, so
+     one evaluated here is not in a method.
+     */
+    @Override
+    public Object visit(BSHYieldStatement node) {
+        throw new EvalError("yield statement outside of a method",
+                node, callstack );
+    }
+
 }
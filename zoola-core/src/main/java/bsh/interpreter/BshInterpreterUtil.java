@@ -77,6 +77,46 @@ public class BshInterpreterUtil {
         return index;
     }
 
+    /**
+     Get the binary operator applied by a compound assignment operator,
+     e.g. PLUS for PLUSASSIGN.
+     @return the operator, or -1 if the operator is not a compound
+     assignment operator
+     */
+    public static int assignmentOperation(int operator) {
+        switch ( operator ) {
+            case ParserConstants.PLUSASSIGN:
+                return ParserConstants.PLUS;
+            case ParserConstants.MINUSASSIGN:
+                return ParserConstants.MINUS;
+            case ParserConstants.STARASSIGN:
+                return ParserConstants.STAR;
+            case ParserConstants.SLASHASSIGN:
+                return ParserConstants.SLASH;
+            case ParserConstants.ANDASSIGN:
+            case ParserConstants.ANDASSIGNX:
+                return ParserConstants.BIT_AND;
+            case ParserConstants.ORASSIGN:
+            case ParserConstants.ORASSIGNX:
+                return ParserConstants.BIT_OR;
+            case ParserConstants.XORASSIGN:
+                return ParserConstants.XOR;
+            case ParserConstants.MODASSIGN:
+                return ParserConstants.MOD;
+            case ParserConstants.LSHIFTASSIGN:
+            case ParserConstants.LSHIFTASSIGNX:
+                return ParserConstants.LSHIFT;
+            case ParserConstants.RSIGNEDSHIFTASSIGN:
+            case ParserConstants.RSIGNEDSHIFTASSIGNX:
+                return ParserConstants.RSIGNEDSHIFT;
+            case ParserConstants.RUNSIGNEDSHIFTASSIGN:
+            case ParserConstants.RUNSIGNEDSHIFTASSIGNX:
+                return ParserConstants.RUNSIGNEDSHIFT;
+            default:
+                return -1;
+        }
+    }
+
     public static Object operation(BSHAssignment node, Object lhs, Object rhs, int kind )
             throws UtilEvalError
     {
@@ -0,0 +1,74 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh.interpreter;
+
+import bsh.EvalError;
+import bsh.ast.SimpleNode;
+
+/**
+ An executable form of a syntax tree node produced by BshClosureCompiler.
+ A compiled node holds the compiled forms of its children and everything
+ about the node which is known before evaluation, e.g. the operator of an
+ expression or the shape of a statement, so evaluating it is a call down a
+ tree of small classes specialized for one kind of node each.
+ <p>
+
+ Compiled nodes are immutable and hold no evaluation state, they are shared
+ by all threads evaluating the node.  The callstack and interpreter of an
+ evaluation are passed in the visitor.
+
+ @see BshClosureCompiler
+ @see BshCompilingVisitor
+ */
+public abstract class CompiledNode {
+
+    final SimpleNode node;
+
+
+    CompiledNode(SimpleNode node) {
+        this.node = node;
+    }
+
+
+    public SimpleNode getNode() {
+        return node;
+    }
+
+
+    /**
+     Evaluate the node.  Returns what visiting the node with the visitor
+     would return.
+     */
+    public abstract Object eval(BshEvaluatingVisitor visitor) throws EvalError;
+
+
+    /**
+     True if the node is left to the visitor.  Evaluating it visits the node.
+     */
+    boolean isInterpreted() {
+        return false;
+    }
+}
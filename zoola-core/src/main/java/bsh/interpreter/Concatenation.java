@@ -0,0 +1,174 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+/**
+ String concatenation over a chain of + operators, e.g. a + ": " + b.
+ <p>
+
+ The chain parses as (a + ": ") + b, which evaluated node by node builds a
+ new String at every +.  Once the value of the chain so far is a String each
+ following + is a concatenation, so the remaining operands are appended to
+ one StringBuilder, sized for the operands still to come, and a single
+ String is built at the end.  The operators before the first String operand
+ are applied as usual, so that 1 + 2 + "x" is still "3x".
+ <p>
+
+ A String variable appended to in a loop body, s += x, is handed the value
+ to append instead of a new String.  The Variable keeps its text in a
+ StringBuilder until it is read, see Variable.appendString().
+ */
+public final class Concatenation {
+
+    /** the guessed length of an operand which has not been evaluated yet */
+    private static final int OPERAND_LENGTH = 16;
+
+    private Concatenation() { }
+
+    /**
+     Get the chain of + operators ending at the node, leftmost first.
+     @return the chain, or null if the node is not a + whose left operand
+     is another +
+     */
+    public static BSHBinaryExpression[] chain(BSHBinaryExpression node) {
+        if ( node.concatenationChecked )
+            return node.concatenation;
+
+        BSHBinaryExpression[] chain = null;
+        int length = 0;
+        for ( Node link = node; isPlus(link); link = link.jjtGetChild(0) )
+            length++;
+        if ( length > 1 ) {
+            chain = new BSHBinaryExpression[length];
+            Node link = node;
+            for ( int i = length - 1; i >= 0; i-- ) {
+                chain[i] = (BSHBinaryExpression)link;
+                link = link.jjtGetChild(0);
+            }
+        }
+
+        node.concatenation = chain;
+        node.concatenationChecked = true;
+        return chain;
+    }
+
+    private static boolean isPlus(Node node) {
+        return node instanceof BSHBinaryExpression
+                && ((BSHBinaryExpression)node).kind == ParserConstants.PLUS;
+    }
+
+    /**
+     Evaluate a chain of + operators.
+     */
+    static Object eval(BshEvaluatingVisitor visitor, BSHBinaryExpression[] chain) {
+        Object value = ((SimpleNode)chain[0].jjtGetChild(0)).accept(visitor);
+        StringBuilder text = null;
+        for ( int i = 0; i < chain.length; i++ ) {
+            Object rhs = ((SimpleNode)chain[i].jjtGetChild(1)).accept(visitor);
+            if ( text != null )
+                text.append( rhs.toString() );
+            else if ( value instanceof String || rhs instanceof String )
+                text = builder( value, rhs, chain.length - i - 1 );
+            else
+                value = visitor.binaryOperation( chain[i], value, rhs );
+        }
+        return text == null ? value : text.toString();
+    }
+
+    /**
+     Start the concatenation of the rest of a chain.
+     @param remaining the number of operands still to be appended
+     */
+    static StringBuilder builder(Object lhs, Object rhs, int remaining) {
+        String left = lhs.toString();
+        String right = rhs.toString();
+        StringBuilder text = new StringBuilder(
+                left.length() + right.length() + remaining * OPERAND_LENGTH );
+        return text.append( left ).append( right );
+    }
+
+    /**
+     Check if the node is a += statement of a loop body, whose value is not
+     used, so that a String variable can be appended to in place.
+     */
+    public static boolean isLoopAppend(BSHAssignment node) {
+        if ( node.loopAppendChecked )
+            return node.loopAppend;
+
+        boolean loopAppend = false;
+        if ( node.operator == ParserConstants.PLUSASSIGN ) {
+            Node statement = node;
+            Node parent = node.jjtGetParent();
+            // statements of blocks and branches of if statements
+            while ( ( parent instanceof BSHBlock
+                        && !( ((BSHBlock)parent).isSynchronized
+                            && parent.jjtGetChild(0) == statement ) )
+                    || ( parent instanceof BSHIfStatement
+                        && parent.jjtGetChild(0) != statement ) ) {
+                statement = parent;
+                parent = parent.jjtGetParent();
+            }
+            int body = parent == null ? -1 : bodyIndex(parent);
+            loopAppend = body >= 0 && parent.jjtGetChild(body) == statement;
+        }
+
+        node.loopAppend = loopAppend;
+        node.loopAppendChecked = true;
+        return loopAppend;
+    }
+
+    /**
+     Stop appending in place for the node after its target was found not to
+     be a String variable.  The variable assigned by a statement is normally
+     the same every time, so the lookup is not repeated for each assignment
+     of e.g. a numeric variable.  Other assignments are still correct, just
+     done as regular assignments.
+     */
+    static void appendFailed(BSHAssignment node) {
+        node.loopAppend = false;
+    }
+
+    /**
+     @return the index of the body of a loop statement, or -1 if the node is
+     not a loop or has no body
+     */
+    private static int bodyIndex(Node node) {
+        int index = -1;
+        if ( node instanceof BSHWhileStatement )
+            index = ((BSHWhileStatement)node).isDoStatement ? 0 : 1;
+        else if ( node instanceof BSHForStatement ) {
+            BSHForStatement loop = (BSHForStatement)node;
+            index = ( loop.hasForInit ? 1 : 0 ) + ( loop.hasExpression ? 1 : 0 )
+                    + ( loop.hasForUpdate ? 1 : 0 );
+        } else if ( node instanceof BSHEnhancedForStatement )
+            index = node.jjtGetChild(0) instanceof BSHType ? 2 : 1;
+        return index < node.jjtGetNumChildren() ? index : -1;
+    }
+}
@@ -0,0 +1,397 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+/**
+ A classic for statement recognized as a counted loop:
+ <pre>
+     for ( int i = start; i &lt; bound; i++ ) statement
+ </pre>
+ <p>
+
+ The induction variable must be a single int or long variable declared in
+ the for init, compared with a bound by a relational or != operator, stepped
+ by ++, --, += or -= with an integer literal in the for update and never
+ assigned in the loop body.  Such a loop keeps the variable in a raw
+ counter: the condition compares the counter with the evaluated bound and
+ the update adds the step, without name lookups, LHS evaluation or
+ allocation.  The variable is written back to the for namespace before each
+ evaluation of the body and when the loop ends only if the body refers to
+ it.
+ <p>
+
+ The bound is evaluated on every iteration, as the condition would be.  An
+ integer literal bound is evaluated once.  A bound which is not an integral
+ primitive is compared by the rules of the binary expression.
+ */
+public final class CountedLoop implements ParserConstants {
+
+    private final BSHForStatement node;
+    private final SimpleNode init;
+    private final String name;
+    private final boolean isInt;
+    private final BSHBinaryExpression condition;
+    private final SimpleNode bound;
+    /** the bound is the lhs of the condition, e.g. n &gt; i */
+    private final boolean reversed;
+    /** the comparison with the counter as its lhs */
+    private final int kind;
+    /** the value of a literal bound, otherwise null */
+    private final Object constantBound;
+    private final long step;
+    /** null for an empty statement */
+    private final SimpleNode statement;
+    private final boolean statementRefersVariable;
+
+    private CountedLoop(BSHForStatement node, String name, boolean isInt,
+            boolean reversed, int kind, long step)
+    {
+        this.node = node;
+        this.init = child(node, 0);
+        this.name = name;
+        this.isInt = isInt;
+        this.condition = (BSHBinaryExpression)child(node, 1);
+        this.bound = child(condition, reversed ? 0 : 1);
+        this.reversed = reversed;
+        this.kind = kind;
+        this.constantBound = isIntegral(literalValue(bound)) ? literalValue(bound) : null;
+        this.step = step;
+        this.statement = node.jjtGetNumChildren() > 3 ? child(node, 3) : null;
+        this.statementRefersVariable = statement != null && refers(statement, name);
+    }
+
+
+    /**
+     Get the counted loop form of the for statement.
+     @return null if the statement is not a counted loop
+     */
+    public static CountedLoop of(BSHForStatement node) {
+        if ( !node.countedLoopChecked ) {
+            node.countedLoop = analyze(node);
+            node.countedLoopChecked = true;
+        }
+        return node.countedLoop;
+    }
+
+
+    private static CountedLoop analyze(BSHForStatement node) {
+        if ( !node.hasForInit || !node.hasExpression || !node.hasForUpdate )
+            return null;
+
+        if ( !(child(node, 0) instanceof BSHTypedVariableDeclaration) )
+            return null;
+        BSHTypedVariableDeclaration declaration = (BSHTypedVariableDeclaration)child(node, 0);
+        if ( declaration.modifiers != null && declaration.modifiers.hasModifier("final") )
+            return null;
+        BSHType typeNode = declaration.getTypeNode();
+        if ( typeNode.arrayDims != 0 || !(typeNode.getTypeNode() instanceof BSHPrimitiveType) )
+            return null;
+        Class type = ((BSHPrimitiveType)typeNode.getTypeNode()).getType();
+        if ( type != Integer.TYPE && type != Long.TYPE )
+            return null;
+        if ( declaration.jjtGetNumChildren() != 2 )
+            return null;
+        String name = ((BSHVariableDeclarator)declaration.jjtGetChild(1)).name;
+
+        if ( !(child(node, 1) instanceof BSHBinaryExpression) )
+            return null;
+        BSHBinaryExpression condition = (BSHBinaryExpression)child(node, 1);
+        int kind = comparison(condition.kind);
+        boolean reversed;
+        if ( kind < 0 )
+            return null;
+        if ( isName(child(condition, 0), name) )
+            reversed = false;
+        else if ( isName(child(condition, 1), name) ) {
+            reversed = true;
+            kind = reverse(kind);
+        } else
+            return null;
+        if ( refers(child(condition, reversed ? 0 : 1), name) )
+            return null;
+
+        SimpleNode update = child(node, 2);
+        if ( update.jjtGetNumChildren() != 1 )
+            return null;
+        long step = step(child(update, 0), name, type == Integer.TYPE);
+        if ( step == 0 )
+            return null;
+
+        if ( node.jjtGetNumChildren() > 3 && assigns(child(node, 3), name) )
+            return null;
+
+        return new CountedLoop(node, name, type == Integer.TYPE, reversed, kind, step);
+    }
+
+
+    public Object eval(BshEvaluatingVisitor visitor) throws EvalError {
+        CallStack callstack = visitor.getCallstack();
+        NameSpace enclosingNameSpace = callstack.top();
+        BlockNameSpace forNameSpace = new BlockNameSpace( enclosingNameSpace );
+
+        // see BshEvaluatingVisitor visit(BSHForStatement) on the namespaces
+        callstack.swap( forNameSpace );
+
+        init.accept(visitor);
+        long counter;
+        try {
+            counter = longValue(forNameSpace.getVariable(name, false));
+        } catch ( UtilEvalError e ) {
+            throw e.toEvalError( node, callstack );
+        }
+
+        Object returnControl = Primitive.VOID;
+        while ( test(visitor, counter) )
+        {
+            if ( statement != null )
+            {
+                if ( statementRefersVariable )
+                    try {
+                        forNameSpace.setBlockVariable( name, value(counter) );
+                    } catch ( UtilEvalError e ) {
+                        throw e.toEvalError( node, callstack );
+                    }
+
+                // do *not* invoke special override for block...
+                Object ret = statement.accept(visitor);
+
+                if ( ret instanceof ReturnControl )
+                {
+                    if ( ((ReturnControl)ret).kind == RETURN ) {
+                        returnControl = ret;
+                        break;
+                    }
+                    if ( ((ReturnControl)ret).kind == BREAK )
+                        break;
+                }
+            }
+
+            counter += step;
+            if ( isInt )
+                counter = (int)counter;
+        }
+
+        // the body may have captured the for namespace, e.g. in a closure
+        if ( statementRefersVariable )
+            try {
+                forNameSpace.setBlockVariable( name, value(counter) );
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+
+        callstack.swap( enclosingNameSpace );  // put it back
+        return returnControl;
+    }
+
+
+    private boolean test(BshEvaluatingVisitor visitor, long counter) throws EvalError {
+        Object bound = constantBound != null ? constantBound : this.bound.accept(visitor);
+
+        if ( !isIntegral(bound) ) {
+            Object value = value(counter);
+            Object ret = reversed
+                    ? visitor.binaryOperation(condition, bound, value)
+                    : visitor.binaryOperation(condition, value, bound);
+            return ((Boolean)Primitive.unwrap(ret)).booleanValue();
+        }
+
+        long limit = longValue(bound);
+        switch ( kind )
+        {
+            case LT:
+                return counter < limit;
+            case LE:
+                return counter <= limit;
+            case GT:
+                return counter > limit;
+            case GE:
+                return counter >= limit;
+            default:
+                return counter != limit;
+        }
+    }
+
+
+    private Primitive value(long counter) {
+        return isInt ? new Primitive((int)counter) : new Primitive(counter);
+    }
+
+
+    private static boolean isIntegral(Object obj) {
+        if ( !(obj instanceof Primitive) )
+            return false;
+        Object value = ((Primitive)obj).getValue();
+        return value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte
+                || value instanceof Character;
+    }
+
+
+    private static long longValue(Object obj) {
+        Object value = ((Primitive)obj).getValue();
+        if ( value instanceof Character )
+            return ((Character)value).charValue();
+        return ((Number)value).longValue();
+    }
+
+
+    /** @return the comparison without the alternate (@lt...) form, -1 if not one */
+    private static int comparison(int kind) {
+        switch ( kind )
+        {
+            case LT: case LTX:
+                return LT;
+            case LE: case LEX:
+                return LE;
+            case GT: case GTX:
+                return GT;
+            case GE: case GEX:
+                return GE;
+            case NE:
+                return NE;
+            default:
+                return -1;
+        }
+    }
+
+
+    /** @return the comparison with the operands swapped */
+    private static int reverse(int kind) {
+        switch ( kind )
+        {
+            case LT:
+                return GT;
+            case LE:
+                return GE;
+            case GT:
+                return LT;
+            case GE:
+                return LE;
+            default:
+                return kind;
+        }
+    }
+
+
+    /** @return the step of the update, 0 if it is not a supported one */
+    private static long step(SimpleNode update, String name, boolean isInt) {
+        if ( update instanceof BSHUnaryExpression ) {
+            BSHUnaryExpression unary = (BSHUnaryExpression)update;
+            if ( !isName(child(unary, 0), name) )
+                return 0;
+            return unary.kind == INCR ? 1 : unary.kind == DECR ? -1 : 0;
+        }
+        if ( update instanceof BSHAssignment ) {
+            BSHAssignment assignment = (BSHAssignment)update;
+            if ( !isName(child(assignment, 0), name) )
+                return 0;
+            // int += long does not assign
+            Object value = Primitive.unwrap(literalValue(child(assignment, 1)));
+            if ( !(value instanceof Integer || !isInt && value instanceof Long) )
+                return 0;
+            long step = ((Number)value).longValue();
+            return assignment.operator == PLUSASSIGN ? step
+                    : assignment.operator == MINUSASSIGN ? -step : 0;
+        }
+        return 0;
+    }
+
+
+    /** @return the value of a literal primary expression, otherwise null */
+    private static Object literalValue(SimpleNode node) {
+        if ( node instanceof BSHPrimaryExpression && node.jjtGetNumChildren() == 1
+                && node.jjtGetChild(0) instanceof BSHLiteral )
+            return ((BSHLiteral)node.jjtGetChild(0)).value;
+        return null;
+    }
+
+
+    /** the node is a primary expression consisting of the plain name */
+    private static boolean isName(SimpleNode node, String name) {
+        return node instanceof BSHPrimaryExpression && node.jjtGetNumChildren() == 1
+                && node.jjtGetChild(0) instanceof BSHAmbiguousName
+                && ((BSHAmbiguousName)node.jjtGetChild(0)).text.equals(name);
+    }
+
+
+    /**
+     The ambiguous name may refer to the variable, or is a call of eval() or
+     source() which can do anything with it.
+     */
+    private static boolean refers(String text, String name) {
+        return text.equals(name) || text.startsWith(name + ".")
+                || text.endsWith("." + name) || text.contains("." + name + ".")
+                || isEval(text);
+    }
+
+
+    private static boolean isEval(String text) {
+        return text.equals("eval") || text.equals("source");
+    }
+
+
+    /** any name in the tree may refer to the variable */
+    private static boolean refers(SimpleNode node, String name) {
+        if ( node instanceof BSHAmbiguousName && refers(((BSHAmbiguousName)node).text, name) )
+            return true;
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+            if ( refers(child(node, i), name) )
+                return true;
+        return false;
+    }
+
+
+    /** the tree may assign or redeclare the variable */
+    private static boolean assigns(SimpleNode node, String name) {
+        if ( node instanceof BSHAssignment || node instanceof BSHUnaryExpression
+                && ( ((BSHUnaryExpression)node).kind == INCR
+                    || ((BSHUnaryExpression)node).kind == DECR ) )
+        {
+            SimpleNode target = child(node, 0);
+            if ( target.jjtGetNumChildren() > 0
+                    && target.jjtGetChild(0) instanceof BSHAmbiguousName
+                    && refers(((BSHAmbiguousName)target.jjtGetChild(0)).text, name) )
+                return true;
+        }
+        if ( node instanceof BSHVariableDeclarator && name.equals(((BSHVariableDeclarator)node).name)
+                || node instanceof BSHFormalParameter && name.equals(((BSHFormalParameter)node).name)
+                || node instanceof BSHEnhancedForStatement
+                    && name.equals(((BSHEnhancedForStatement)node).varName)
+                || node instanceof BSHAmbiguousName && isEval(((BSHAmbiguousName)node).text) )
+            return true;
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+            if ( assigns(child(node, i), name) )
+                return true;
+        return false;
+    }
+
+
+    private static SimpleNode child(SimpleNode node, int i) {
+        return (SimpleNode)node.jjtGetChild(i);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package bsh.interpreter;
+
+import bsh.CallStack;
+import bsh.CollectionManager;
+import bsh.IterationStrategy;
+import bsh.TargetError;
+import bsh.ast.BSHEnhancedForStatement;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ The iteration strategy an enhanced for statement picked for the class of
+ the last object it iterated over.
+ <p>
+
+ Most loops always iterate over objects of one class, so the strategy is
+ looked up once and only looked up again when the class changes.  The class
+ and the strategy are kept together so that threads sharing the statement
+ always see a matching pair.
+ */
+public final class ForEachIteration {
+
+    private final Class<?> type;
+    private final IterationStrategy strategy;
+
+    private ForEachIteration(Class<?> type, IterationStrategy strategy) {
+        this.type = type;
+        this.strategy = strategy;
+    }
+
+    /**
+     Get an iterator over the iteratee of the statement.
+     @return the iterator, or null if the iteratee cannot be iterated
+     @throws TargetError if the file of a path cannot be read
+     */
+    public static Iterator iterator(BSHEnhancedForStatement node, Object iteratee, CallStack callstack) {
+        Class<?> type = iteratee.getClass();
+        ForEachIteration iteration = node.iteration;
+        if ( iteration == null || iteration.type != type ) {
+            IterationStrategy strategy =
+                CollectionManager.getCollectionManager().getIterationStrategy(type);
+            if ( strategy == null )
+                return null;
+            iteration = new ForEachIteration(type, strategy);
+            node.iteration = iteration;
+        }
+        try {
+            return iteration.strategy.iterator(iteratee);
+        } catch ( IllegalStateException e ) {
+            throw ioError(e, node, callstack);
+        }
+    }
+
+    /**
+     @throws TargetError if the next element cannot be read
+     */
+    public static boolean hasNext(Iterator iterator, BSHEnhancedForStatement node, CallStack callstack) {
+        try {
+            return iterator.hasNext();
+        } catch ( IllegalStateException e ) {
+            throw ioError(e, node, callstack);
+        }
+    }
+
+    /**
+     Get the next element for a loop variable of the element type.  The
+     elements of a primitive array are read as Primitives, without boxing
+     them, for a variable of a primitive type.
+     @param elementType the type of the loop variable, or null if untyped
+     @throws TargetError if the next element cannot be read
+     */
+    public static Object next(Iterator iterator, Class elementType,
+            BSHEnhancedForStatement node, CallStack callstack) {
+        if ( elementType != null && elementType.isPrimitive()
+                && iterator instanceof CollectionManager.PrimitiveIterator )
+            return ((CollectionManager.PrimitiveIterator)iterator).nextPrimitive();
+        return next(iterator, node, callstack);
+    }
+
+    /**
+     @throws TargetError if the next element cannot be read
+     */
+    public static Object next(Iterator iterator, BSHEnhancedForStatement node, CallStack callstack) {
+        try {
+            return iterator.next();
+        } catch ( IllegalStateException e ) {
+            throw ioError(e, node, callstack);
+        }
+    }
+
+    /**
+     The iterators of readers and files report a failure to read as an
+     IllegalStateException caused by the IOException, which the script could
+     not catch.  The IOException is thrown to the script as a TargetError,
+     any other exception is rethrown as it is.
+     */
+    private static TargetError ioError(IllegalStateException e,
+            BSHEnhancedForStatement node, CallStack callstack) {
+        if ( !(e.getCause() instanceof IOException) )
+            throw e;
+        return new TargetError( "for loop iteration", e.getCause(), node, callstack, true );
+    }
+}
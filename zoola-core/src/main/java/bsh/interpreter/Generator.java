@@ -0,0 +1,424 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ The iterator returned by a generator method, a scripted method whose body
+ contains yield statements:
+ <pre>
+     Iterator range(int from, int to) {
+         for ( int i = from; i &lt; to; i++ )
+             yield i;
+     }
+ </pre>
+ <p>
+
+ Calling the method evaluates its arguments and returns the generator
+ without running the body.  Each element asked for resumes the body where
+ the last yield left it and runs it to the next yield.  The body is not
+ run on a thread of its own: the generator keeps the statements it is in
+ the middle of, the blocks and loops containing a yield, as a stack of
+ frames which remember how far they got.  Statements which do not contain
+ a yield are evaluated by the visitor as usual.
+ <p>
+
+ A yield may be nested in blocks, if statements and loops.  A generator
+ cannot be suspended inside the other statements, e.g. a try or switch
+ statement or a synchronized block, so yielding there is an error.  A
+ return statement ends the generator, it cannot return a value.
+ */
+public final class Generator extends LazyIterator {
+
+    private final BshEvaluatingVisitor visitor;
+    private final Set<Node> yielding;
+    private final List<Frame> frames = new ArrayList<Frame>();
+
+    /**
+     Create the generator of a method invocation.
+     @param callstack the call stack of the invocation, with the method
+     namespace holding the arguments on top
+     */
+    public Generator(BSHBlock body, Set<Node> yielding,
+            CallStack callstack, Interpreter interpreter) {
+        this.visitor = BshEvaluatingVisitor.create( callstack, interpreter );
+        this.yielding = yielding;
+        frames.add( new BlockFrame( body, true ) );
+    }
+
+    /**
+     Get the statements of a method body which contain a yield statement.
+     Method and class declarations in the body are not searched, their
+     yield statements belong to them.
+     @return the statements, or null if the body has no yield statement
+     @throws EvalError if a yield statement is inside a statement which a
+     generator cannot suspend
+     */
+    public static Set<Node> yielding(BSHBlock body, CallStack callstack) {
+        if ( body.yieldingChecked )
+            return body.yielding;
+
+        Set<Node> yielding = new HashSet<Node>();
+        if ( !collect( body, yielding, callstack ) )
+            yielding = null;
+
+        body.yielding = yielding;
+        body.yieldingChecked = true;
+        return yielding;
+    }
+
+    private static boolean collect(Node node, Set<Node> yielding, CallStack callstack) {
+        if ( node instanceof BSHMethodDeclaration
+                || node instanceof BSHClassDeclaration
+                || node instanceof BSHAllocationExpression )
+            return false;
+
+        boolean yields = node instanceof BSHYieldStatement;
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+            if ( collect( node.jjtGetChild(i), yielding, callstack ) )
+                yields = true;
+        if ( !yields )
+            return false;
+
+        if ( node instanceof BSHBlock && ((BSHBlock)node).isSynchronized )
+            throw new EvalError( "Cannot yield inside a synchronized block",
+                    (SimpleNode)node, callstack );
+        if ( node instanceof BSHEnhancedForStatement && ((BSHEnhancedForStatement)node).parallel )
+            throw new EvalError( "Cannot yield inside a parallel for",
+                    (SimpleNode)node, callstack );
+        if ( !( node instanceof BSHBlock
+                || node instanceof BSHIfStatement
+                || node instanceof BSHWhileStatement
+                || node instanceof BSHForStatement
+                || node instanceof BSHEnhancedForStatement
+                || node instanceof BSHYieldStatement ) )
+            throw new EvalError( "Cannot yield inside " + node,
+                    (SimpleNode)node, callstack );
+        yielding.add( node );
+        return true;
+    }
+
+
+    @Override
+    Object computeNext() {
+        while ( !frames.isEmpty() ) {
+            SimpleNode statement = frames.get( frames.size() - 1 ).next();
+            if ( statement == null )
+                pop();
+            else if ( statement instanceof BSHYieldStatement )
+                return yieldValue( (BSHYieldStatement)statement );
+            else if ( yielding.contains( statement ) )
+                frames.add( frame( statement ) );
+            else {
+                Object ret = statement.accept( visitor );
+                if ( ret instanceof ReturnControl )
+                    unwind( (ReturnControl)ret );
+            }
+        }
+        return END;
+    }
+
+    private Object yieldValue(BSHYieldStatement node) {
+        Object value = ((SimpleNode)node.jjtGetChild(0)).accept( visitor );
+        if ( value == Primitive.VOID )
+            throw new EvalError( "Cannot yield a void value",
+                    node, visitor.getCallstack() );
+        return Primitive.unwrap( value );
+    }
+
+    private Frame frame(SimpleNode statement) {
+        if ( statement instanceof BSHBlock )
+            return new BlockFrame( (BSHBlock)statement, false );
+        if ( statement instanceof BSHIfStatement )
+            return new IfFrame( (BSHIfStatement)statement );
+        if ( statement instanceof BSHWhileStatement )
+            return new WhileFrame( (BSHWhileStatement)statement );
+        if ( statement instanceof BSHForStatement )
+            return new ForFrame( (BSHForStatement)statement );
+        return new ForEachFrame( (BSHEnhancedForStatement)statement );
+    }
+
+    private void pop() {
+        frames.remove( frames.size() - 1 ).exit();
+    }
+
+    /**
+     Leave the frames a break, continue or return statement jumps out of.
+     */
+    private void unwind(ReturnControl control) {
+        switch ( control.kind ) {
+            case ParserConstants.RETURN:
+                if ( control.value != Primitive.VOID )
+                    throw new EvalError( "Cannot return a value from a generator",
+                            control.returnPoint, visitor.getCallstack() );
+                while ( !frames.isEmpty() )
+                    pop();
+                break;
+
+            case ParserConstants.CONTINUE:
+            case ParserConstants.BREAK:
+                while ( !frames.isEmpty() && !frames.get( frames.size() - 1 ).isLoop() )
+                    pop();
+                if ( frames.isEmpty() )
+                    throw new EvalError( "'continue' or 'break' in method body",
+                            control.returnPoint, visitor.getCallstack() );
+                if ( control.kind == ParserConstants.BREAK )
+                    pop();
+                break;
+        }
+    }
+
+
+    /**
+     A statement containing a yield which the generator is in the middle of.
+     */
+    private abstract class Frame {
+
+        /**
+         Get the next statement to run.
+         @return the statement, or null if the frame is done
+         */
+        abstract SimpleNode next();
+
+        boolean isLoop() {
+            return false;
+        }
+
+        /** Called when the frame is left. */
+        void exit() { }
+    }
+
+
+    /**
+     Mirrors BshEvaluatingVisitor.evalBlock(): class declarations are
+     evaluated on entry, the other statements one by one.  The method body
+     is evaluated in the method namespace, any other block in a namespace of
+     its own.
+     */
+    private final class BlockFrame extends Frame {
+        private final BSHBlock block;
+        private final NameSpace enclosingNameSpace;
+        private int index;
+
+        BlockFrame(BSHBlock block, boolean methodBody) {
+            this.block = block;
+            CallStack callstack = visitor.getCallstack();
+            if ( methodBody )
+                enclosingNameSpace = null;
+            else {
+                enclosingNameSpace = callstack.top();
+                callstack.swap( new BlockNameSpace( enclosingNameSpace ) );
+            }
+            for ( int i = 0; i < block.jjtGetNumChildren(); i++ ) {
+                SimpleNode node = (SimpleNode)block.jjtGetChild(i);
+                if ( node instanceof BSHClassDeclaration )
+                    node.accept( visitor );
+            }
+        }
+
+        SimpleNode next() {
+            while ( index < block.jjtGetNumChildren() ) {
+                SimpleNode node = (SimpleNode)block.jjtGetChild( index++ );
+                if ( !( node instanceof BSHClassDeclaration ) )
+                    return node;
+            }
+            return null;
+        }
+
+        void exit() {
+            if ( enclosingNameSpace != null )
+                visitor.getCallstack().swap( enclosingNameSpace );
+        }
+    }
+
+
+    private final class IfFrame extends Frame {
+        private final BSHIfStatement node;
+        private boolean entered;
+
+        IfFrame(BSHIfStatement node) {
+            this.node = node;
+        }
+
+        SimpleNode next() {
+            if ( entered )
+                return null;
+            entered = true;
+            if ( BshInterpreterUtil.evaluateCondition(
+                    (SimpleNode)node.jjtGetChild(0), visitor ) )
+                return (SimpleNode)node.jjtGetChild(1);
+            if ( node.jjtGetNumChildren() > 2 )
+                return (SimpleNode)node.jjtGetChild(2);
+            return null;
+        }
+    }
+
+
+    private final class WhileFrame extends Frame {
+        private final SimpleNode condition;
+        private final SimpleNode body;
+        private boolean doOnce;
+
+        WhileFrame(BSHWhileStatement node) {
+            doOnce = node.isDoStatement;
+            condition = (SimpleNode)node.jjtGetChild( doOnce ? 1 : 0 );
+            body = (SimpleNode)node.jjtGetChild( doOnce ? 0 : 1 );
+        }
+
+        SimpleNode next() {
+            if ( doOnce || BshInterpreterUtil.evaluateCondition( condition, visitor ) ) {
+                doOnce = false;
+                return body;
+            }
+            return null;
+        }
+
+        boolean isLoop() {
+            return true;
+        }
+    }
+
+
+    /**
+     Mirrors BshEvaluatingVisitor.visit(BSHForStatement): the for init and
+     the loop variables live in a namespace of the loop.  The update is done
+     before the condition of every iteration but the first, so that a
+     continue statement only has to return to the frame.
+     */
+    private final class ForFrame extends Frame {
+        private final SimpleNode forInit, expression, forUpdate, statement;
+        private final NameSpace enclosingNameSpace;
+        private boolean started;
+
+        ForFrame(BSHForStatement node) {
+            int i = 0;
+            forInit = node.hasForInit ? (SimpleNode)node.jjtGetChild(i++) : null;
+            expression = node.hasExpression ? (SimpleNode)node.jjtGetChild(i++) : null;
+            forUpdate = node.hasForUpdate ? (SimpleNode)node.jjtGetChild(i++) : null;
+            statement = (SimpleNode)node.jjtGetChild(i);
+
+            CallStack callstack = visitor.getCallstack();
+            enclosingNameSpace = callstack.top();
+            callstack.swap( new BlockNameSpace( enclosingNameSpace ) );
+            if ( forInit != null )
+                forInit.accept( visitor );
+        }
+
+        SimpleNode next() {
+            if ( started && forUpdate != null )
+                forUpdate.accept( visitor );
+            started = true;
+            if ( expression != null
+                    && !BshInterpreterUtil.evaluateCondition( expression, visitor ) )
+                return null;
+            return statement;
+        }
+
+        boolean isLoop() {
+            return true;
+        }
+
+        void exit() {
+            visitor.getCallstack().swap( enclosingNameSpace );
+        }
+    }
+
+
+    /**
+     Mirrors BshEvaluatingVisitor.visit(BSHEnhancedForStatement).
+     */
+    private final class ForEachFrame extends Frame {
+        private final BSHEnhancedForStatement node;
+        private final Class elementType;
+        private final SimpleNode statement;
+        private final NameSpace enclosingNameSpace;
+        private final BlockNameSpace eachNameSpace;
+        private final Iterator iterator;
+
+        ForEachFrame(BSHEnhancedForStatement node) {
+            this.node = node;
+            CallStack callstack = visitor.getCallstack();
+            SimpleNode expression = (SimpleNode)node.jjtGetChild(0);
+            if ( expression instanceof BSHType ) {
+                elementType = visitor.getType( (BSHType)expression );
+                expression = (SimpleNode)node.jjtGetChild(1);
+                statement = (SimpleNode)node.jjtGetChild(2);
+            } else {
+                elementType = null;
+                statement = (SimpleNode)node.jjtGetChild(1);
+            }
+
+            enclosingNameSpace = callstack.top();
+            eachNameSpace = new BlockNameSpace( enclosingNameSpace );
+            callstack.swap( eachNameSpace );
+
+            Object iteratee = expression.accept( visitor );
+            if ( iteratee == Primitive.NULL )
+                throw new EvalError( "The collection, array, map, iterator, or " +
+                        "enumeration portion of a for statement cannot be null.",
+                        node, callstack );
+            iterator = ForEachIteration.iterator( node, iteratee, callstack );
+            if ( iterator == null )
+                throw new EvalError( "Can't iterate over type: "
+                        + iteratee.getClass(), node, callstack );
+        }
+
+        SimpleNode next() {
+            CallStack callstack = visitor.getCallstack();
+            if ( !ForEachIteration.hasNext( iterator, node, callstack ) )
+                return null;
+            Object value = ForEachIteration.next( iterator, elementType, node, callstack );
+            if ( value == null )
+                value = Primitive.NULL;
+            try {
+                if ( elementType != null )
+                    eachNameSpace.setTypedVariable(
+                            node.varName, elementType, value, null/*modifiers*/ );
+                else
+                    eachNameSpace.setVariable( node.varName, value, false );
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( "for loop iterator variable:" + node.varName,
+                        node, callstack );
+            }
+            return statement;
+        }
+
+        boolean isLoop() {
+            return true;
+        }
+
+        void exit() {
+            visitor.getCallstack().swap( enclosingNameSpace );
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+import java.util.Iterator;
+
+/**
+ The iterator an iterator expression evaluates to:
+ <pre>
+     squares = ( x * x for ( x : numbers ) if ( x % 2 == 0 ) );
+ </pre>
+ <p>
+
+ The collection iterated over is evaluated with the expression.  The
+ condition and the value of an element are evaluated only when the element
+ is asked for, in a namespace of the expression whose parent is the
+ namespace the expression was evaluated in, so they see the variables of
+ the enclosing scope as they are at that time.
+ */
+public final class IteratorExpression extends LazyIterator {
+
+    private final BSHIteratorExpression node;
+    private final BshEvaluatingVisitor visitor;
+    private final BlockNameSpace nameSpace;
+    private final Class elementType;
+    private final SimpleNode value;
+    private final SimpleNode condition;
+    private final Iterator source;
+
+    /**
+     Evaluate an iterator expression.
+     */
+    public IteratorExpression(BSHIteratorExpression node, BshEvaluatingVisitor caller) {
+        this.node = node;
+        int child = 0;
+        value = (SimpleNode)node.jjtGetChild( child++ );
+        SimpleNode type = (SimpleNode)node.jjtGetChild( child );
+        if ( type instanceof BSHType ) {
+            elementType = caller.getType( (BSHType)type );
+            child++;
+        } else
+            elementType = null;
+        SimpleNode expression = (SimpleNode)node.jjtGetChild( child++ );
+        condition = node.hasCondition ? (SimpleNode)node.jjtGetChild( child ) : null;
+
+        CallStack callstack = caller.getCallstack();
+        Object iteratee = expression.accept( caller );
+        if ( iteratee == Primitive.NULL )
+            throw new EvalError( "The collection, array, map, iterator, or " +
+                    "enumeration portion of an iterator expression cannot be null.",
+                    node, callstack );
+        CollectionManager collectionManager = CollectionManager.getCollectionManager();
+        if ( !collectionManager.isBshIterable( iteratee ) )
+            throw new EvalError( "Can't iterate over type: "
+                    + iteratee.getClass(), node, callstack );
+        source = collectionManager.getBshIterator( iteratee );
+
+        callstack = callstack.copy();
+        nameSpace = new BlockNameSpace( callstack.top() );
+        callstack.swap( nameSpace );
+        visitor = BshEvaluatingVisitor.create( callstack, caller.getInterpreter() );
+    }
+
+
+    @Override
+    Object computeNext() {
+        while ( source.hasNext() ) {
+            Object element = source.next();
+            if ( element == null )
+                element = Primitive.NULL;
+            try {
+                if ( elementType != null )
+                    nameSpace.setTypedVariable(
+                            node.varName, elementType, element, null/*modifiers*/ );
+                else
+                    nameSpace.setBlockVariable( node.varName, element );
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( "iterator expression variable:" + node.varName,
+                        node, visitor.getCallstack() );
+            }
+
+            if ( condition != null
+                    && !BshInterpreterUtil.evaluateCondition( condition, visitor ) )
+                continue;
+
+            Object result = value.accept( visitor );
+            if ( result == Primitive.VOID )
+                throw new EvalError( "Iterator expression value is void",
+                        value, visitor.getCallstack() );
+            return Primitive.unwrap( result );
+        }
+        return END;
+    }
+}
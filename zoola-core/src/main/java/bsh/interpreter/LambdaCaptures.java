@@ -0,0 +1,110 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import bsh.ParserConstants;
+import bsh.ast.*;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ The names of local variables a lambda expression captures: the names its
+ body reads but never assigns, declares or takes as a parameter.
+ <p>
+
+ The values of these variables are copied into the lambda when it is
+ created, as Java copies the effectively final locals a lambda uses, so
+ the body finds them without searching the blocks and the method around
+ the lambda.  Variables the body assigns are looked up where they are
+ declared, so the assignment changes that variable.
+ */
+public final class LambdaCaptures {
+
+    private LambdaCaptures() { }
+
+    /**
+     Get the names of the variables the lambda may capture.
+     */
+    public static String[] of(BSHLambdaExpression node) {
+        if ( node.capturesChecked )
+            return node.captures;
+
+        Set<String> read = new LinkedHashSet<String>();
+        Set<String> local = new LinkedHashSet<String>();
+        scan( node, read, local );
+        read.removeAll( local );
+        read.remove( "this" );
+        read.remove( "super" );
+        read.remove( "global" );
+
+        node.captures = read.toArray( new String[read.size()] );
+        node.capturesChecked = true;
+        return node.captures;
+    }
+
+    private static void scan(Node node, Set<String> read, Set<String> local) {
+        if ( node instanceof BSHClassDeclaration || node instanceof BSHMethodDeclaration )
+            return;
+
+        if ( node instanceof BSHAmbiguousName ) {
+            String text = ((BSHAmbiguousName)node).text;
+            int dot = text.indexOf( '.' );
+            // an unqualified method name is not a variable
+            if ( dot != -1 || !( node.jjtGetParent() instanceof BSHMethodInvocation ) )
+                read.add( dot == -1 ? text : text.substring( 0, dot ) );
+        } else if ( node instanceof BSHAssignment )
+            addAssigned( node.jjtGetChild(0), local );
+        else if ( node instanceof BSHUnaryExpression ) {
+            int kind = ((BSHUnaryExpression)node).kind;
+            if ( kind == ParserConstants.INCR || kind == ParserConstants.DECR )
+                addAssigned( node.jjtGetChild(0), local );
+        } else if ( node instanceof BSHVariableDeclarator )
+            local.add( ((BSHVariableDeclarator)node).name );
+        else if ( node instanceof BSHFormalParameter )
+            local.add( ((BSHFormalParameter)node).name );
+        else if ( node instanceof BSHEnhancedForStatement )
+            local.add( ((BSHEnhancedForStatement)node).varName );
+        else if ( node instanceof BSHIteratorExpression )
+            local.add( ((BSHIteratorExpression)node).varName );
+
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+            scan( node.jjtGetChild(i), read, local );
+    }
+
+    /**
+     Add the variable assigned by an assignment or increment, if it is
+     assigned by its plain name.
+     */
+    private static void addAssigned(Node lhs, Set<String> local) {
+        if ( lhs instanceof BSHPrimaryExpression && lhs.jjtGetNumChildren() == 1 )
+            lhs = lhs.jjtGetChild(0);
+        if ( lhs instanceof BSHAmbiguousName ) {
+            String text = ((BSHAmbiguousName)lhs).text;
+            if ( text.indexOf( '.' ) == -1 )
+                local.add( text );
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ An iterator whose elements are evaluated one at a time, as they are asked
+ for.  It is its own Iterable, so that it can be handed to Java code which
+ expects one, but since its elements are evaluated only once it can be
+ iterated over only once.
+ */
+abstract class LazyIterator implements Iterator<Object>, Iterable<Object> {
+
+    /** returned by computeNext() when there are no more elements */
+    static final Object END = new Object();
+
+    private Object next = END;
+    private boolean done;
+    private boolean computing;
+    private boolean iterated;
+
+    /**
+     Evaluate the next element.
+     @return the element, or END if there are no more elements
+     */
+    abstract Object computeNext();
+
+    public boolean hasNext() {
+        if ( next == END && !done ) {
+            if ( computing )
+                throw new IllegalStateException(
+                        "Iterator is already evaluating its next element" );
+            computing = true;
+            // stays done if the evaluation throws, it is not resumed
+            done = true;
+            try {
+                next = computeNext();
+            } finally {
+                computing = false;
+            }
+            done = next == END;
+        }
+        return next != END;
+    }
+
+    public Object next() {
+        if ( !hasNext() )
+            throw new NoSuchElementException();
+        Object value = next;
+        next = END;
+        return value;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Iterator<Object> iterator() {
+        if ( iterated )
+            throw new IllegalStateException( "Iterator can be iterated over only once" );
+        iterated = true;
+        return this;
+    }
+}
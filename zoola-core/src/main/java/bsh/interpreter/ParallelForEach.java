@@ -0,0 +1,477 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ A parallel for-each statement, parallel for ( x : list ) { ... }.
+ <p>
+
+ The elements are split into ranges which are run as tasks of a shared
+ pool: the common ForkJoinPool where the platform has one, else a pool with
+ a thread per processor.  Lists with random access are split in place,
+ other iteratees are copied to a list first.  Each task evaluates the body
+ with its own CallStack in its own block namespace, whose parent is the
+ namespace of the statement, so the body reads the variables of the
+ enclosing scopes as usual.  The calling thread runs the first range itself
+ and evaluates the first element before the other tasks are started, so
+ that names and classes used by the body are resolved once.
+ <p>
+
+ Writes are kept in the task:
+ <ul>
+ <li>An enclosing variable the body only updates with +=, -=, ++ and -- or
+ only with *= is a reduction.  Each task updates its own copy, starting at
+ zero (one for *=, the empty string for a String) and the copies are
+ combined with the value of the variable in the order of the ranges when
+ all tasks are done.</li>
+ <li>Untyped variables the body assigns which are not defined in the
+ enclosing scopes, like the loop variable, are local to the task.</li>
+ <li>Assigning an enclosing variable in any other way is an error, as is a
+ return statement.  A break stops the loop after the elements being
+ evaluated, a continue goes on with the next element.</li>
+ </ul>
+ Objects shared by the tasks, e.g. a list the body adds to, must be thread
+ safe.  A parallel for inside the body of another is run in the task that
+ reaches it.
+ <p>
+
+ The analysis of the body is done once and kept on the statement.
+ */
+public final class ParallelForEach {
+
+    /** the number of ranges per thread, so that uneven ranges even out */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** set while a task runs on a pool thread */
+    private static final ThreadLocal<Boolean> IN_TASK = new ThreadLocal<Boolean>();
+
+    /** the enclosing variables reduced by the body and their operators */
+    private final String[] reductions;
+    private final int[] operators;
+
+    /** the other enclosing variables the body may assign */
+    private final String[] assigned;
+
+    private ParallelForEach(Map<String,Integer> reductions, List<String> assigned) {
+        this.reductions = reductions.keySet().toArray( new String[reductions.size()] );
+        this.operators = new int[reductions.size()];
+        int i = 0;
+        for ( Integer operator : reductions.values() )
+            operators[i++] = operator;
+        this.assigned = assigned.toArray( new String[assigned.size()] );
+    }
+
+    /**
+     Get the analysis of the body of the statement.
+     */
+    static ParallelForEach of(BSHEnhancedForStatement node) {
+        ParallelForEach parallel = node.parallelForEach;
+        if ( parallel == null ) {
+            Map<String,Integer> operators = new LinkedHashMap<String,Integer>();
+            List<String> local = new ArrayList<String>();
+            local.add( node.varName );
+            for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+                scan( node.jjtGetChild(i), operators, local );
+
+            Map<String,Integer> reductions = new LinkedHashMap<String,Integer>();
+            List<String> assigned = new ArrayList<String>();
+            for ( Map.Entry<String,Integer> entry : operators.entrySet() )
+                if ( local.contains( entry.getKey() ) )
+                    continue;
+                else if ( entry.getValue() < 0 )
+                    assigned.add( entry.getKey() );
+                else
+                    reductions.put( entry.getKey(), entry.getValue() );
+
+            parallel = new ParallelForEach( reductions, assigned );
+            node.parallelForEach = parallel;
+        }
+        return parallel;
+    }
+
+    /**
+     Collect the names assigned by the tree with the operator of a
+     reduction, PLUS or STAR, or -1 for other assignments, and the names
+     declared in the tree.
+     */
+    private static void scan(Node node, Map<String,Integer> operators, List<String> local) {
+        if ( node instanceof BSHClassDeclaration || node instanceof BSHMethodDeclaration
+                || node instanceof BSHLambdaExpression )
+            return;
+
+        if ( node instanceof BSHAssignment ) {
+            int operator = ((BSHAssignment)node).operator;
+            assign( node.jjtGetChild(0),
+                    operator == ParserConstants.PLUSASSIGN
+                        || operator == ParserConstants.MINUSASSIGN ? ParserConstants.PLUS
+                    : operator == ParserConstants.STARASSIGN ? ParserConstants.STAR : -1,
+                    operators );
+        } else if ( node instanceof BSHUnaryExpression ) {
+            int kind = ((BSHUnaryExpression)node).kind;
+            if ( kind == ParserConstants.INCR || kind == ParserConstants.DECR )
+                assign( node.jjtGetChild(0), ParserConstants.PLUS, operators );
+        } else if ( node instanceof BSHVariableDeclarator )
+            local.add( ((BSHVariableDeclarator)node).name );
+        else if ( node instanceof BSHFormalParameter )
+            local.add( ((BSHFormalParameter)node).name );
+        else if ( node instanceof BSHEnhancedForStatement )
+            local.add( ((BSHEnhancedForStatement)node).varName );
+        else if ( node instanceof BSHIteratorExpression )
+            local.add( ((BSHIteratorExpression)node).varName );
+
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+            scan( node.jjtGetChild(i), operators, local );
+    }
+
+    private static void assign(Node lhs, int operator, Map<String,Integer> operators) {
+        if ( lhs instanceof BSHPrimaryExpression && lhs.jjtGetNumChildren() == 1 )
+            lhs = lhs.jjtGetChild(0);
+        if ( !( lhs instanceof BSHAmbiguousName ) )
+            return;
+        String name = ((BSHAmbiguousName)lhs).text;
+        if ( name.indexOf( '.' ) != -1 )
+            return;
+        Integer previous = operators.get( name );
+        operators.put( name, previous == null || previous == operator ? operator : -1 );
+    }
+
+
+    /**
+     Run the statement over the iteratee.
+     @param statement the body, or null if it is empty
+     */
+    public static Object run(BSHEnhancedForStatement node, Class elementType,
+            SimpleNode statement, Object iteratee, BshEvaluatingVisitor visitor) {
+        return of( node ).new Loop( node, elementType, statement, visitor )
+                .run( elements( node, iteratee, visitor.getCallstack() ) );
+    }
+
+    private static List elements(BSHEnhancedForStatement node, Object iteratee, CallStack callstack) {
+        if ( iteratee instanceof List && iteratee instanceof RandomAccess )
+            return (List)iteratee;
+        Iterator iterator = ForEachIteration.iterator( node, iteratee, callstack );
+        if ( iterator == null )
+            throw new EvalError( "Can't iterate over type: "
+                    + iteratee.getClass(), node, callstack );
+        List elements = new ArrayList();
+        while ( ForEachIteration.hasNext( iterator, node, callstack ) )
+            elements.add( ForEachIteration.next( iterator, node, callstack ) );
+        return elements;
+    }
+
+
+    /**
+     One run of the statement.
+     */
+    private final class Loop {
+
+        private final BSHEnhancedForStatement node;
+        private final Class elementType;
+        private final SimpleNode statement;
+        private final NameSpace enclosingNameSpace;
+        private final CallStack callstack;
+        private final Interpreter interpreter;
+
+        /** the start values of the reductions in a task */
+        private final Object[] identities;
+
+        /** set by a break or a failed task */
+        private volatile boolean stopped;
+
+        Loop(BSHEnhancedForStatement node, Class elementType,
+                SimpleNode statement, BshEvaluatingVisitor visitor) {
+            this.node = node;
+            this.elementType = elementType;
+            this.statement = statement;
+            this.callstack = visitor.getCallstack();
+            this.enclosingNameSpace = callstack.top();
+            this.interpreter = visitor.getInterpreter();
+
+            try {
+                for ( String name : assigned )
+                    if ( enclosingNameSpace.getVariable( name ) != Primitive.VOID )
+                        throw new EvalError( "Cannot assign variable " + name
+                                + " of the enclosing scope in a parallel for,"
+                                + " only +=, -=, *=, ++ and -- reductions are allowed",
+                                node, callstack );
+                identities = new Object[reductions.length];
+                for ( int i = 0; i < reductions.length; i++ )
+                    identities[i] = identity( reductions[i], operators[i] );
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( node, callstack );
+            }
+        }
+
+        /**
+         @return the start value of the reduction, or null if the variable
+         is not defined, in which case the task does not get a copy
+         */
+        private Object identity(String name, int operator) throws UtilEvalError {
+            Object value = enclosingNameSpace.getVariable( name );
+            if ( value == Primitive.VOID )
+                return null;
+            if ( value instanceof String && operator == ParserConstants.PLUS )
+                return "";
+
+            Class type = value instanceof Primitive ? ((Primitive)value).getType()
+                    : value instanceof Number ? Primitive.unboxType( value.getClass() )
+                    : null;
+            if ( type == null || type == Boolean.TYPE || type == Character.TYPE )
+                throw new UtilEvalError( "Cannot reduce variable " + name
+                        + " in a parallel for: " + ( value == Primitive.NULL ? "null"
+                            : value instanceof Primitive ? type.getName()
+                            : value.getClass().getName() ) );
+            return Types.castObject( new Primitive( operator == ParserConstants.STAR ? 1 : 0 ),
+                    type, Types.CAST );
+        }
+
+        Object run(final List elements) {
+            int size = elements.size();
+            if ( size == 0 )
+                return Primitive.VOID;
+
+            int count = Boolean.TRUE.equals( IN_TASK.get() ) ? 1
+                    : Math.min( size,
+                        Runtime.getRuntime().availableProcessors() * RANGES_PER_THREAD );
+            Task[] tasks = new Task[count];
+            for ( int i = 0; i < count; i++ )
+                tasks[i] = new Task( elements,
+                        (int)( (long)size * i / count ), (int)( (long)size * ( i + 1 ) / count ) );
+
+            // the first element resolves the names of the body in this thread
+            tasks[0].evalNext();
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            try {
+                for ( int i = 1; i < count && !stopped; i++ )
+                    futures.add( Pool.EXECUTOR.submit( tasks[i] ) );
+                tasks[0].call();
+            } catch ( RuntimeException e ) {
+                stopped = true;
+                await( futures );
+                throw e;
+            } catch ( Error e ) {
+                stopped = true;
+                await( futures );
+                throw e;
+            }
+            Throwable failure = await( futures );
+            if ( failure instanceof RuntimeException )
+                throw (RuntimeException)failure;
+            if ( failure instanceof Error )
+                throw (Error)failure;
+
+            if ( reductions.length > 0 )
+                reduce( tasks );
+            return Primitive.VOID;
+        }
+
+        /**
+         Wait for the tasks.
+         @return the exception of the first task that failed, or null
+         */
+        private Throwable await(List<Future<Object>> futures) {
+            Throwable failure = null;
+            boolean interrupted = false;
+            for ( Future<Object> future : futures )
+                while ( true )
+                    try {
+                        future.get();
+                        break;
+                    } catch ( ExecutionException e ) {
+                        if ( failure == null )
+                            failure = e.getCause();
+                        break;
+                    } catch ( InterruptedException e ) {
+                        // the tasks use the namespaces of this thread
+                        stopped = interrupted = true;
+                    }
+            if ( interrupted )
+                Thread.currentThread().interrupt();
+            return failure;
+        }
+
+        /**
+         Combine the copies of the reductions of the tasks with the enclosing
+         variables.  Tasks stopped by a break before they started still hold
+         the start values.
+         */
+        private void reduce(Task[] tasks) {
+            try {
+                for ( int r = 0; r < reductions.length; r++ ) {
+                    if ( identities[r] == null )
+                        continue;
+                    Object value = enclosingNameSpace.getVariable( reductions[r] );
+                    for ( Task task : tasks ) {
+                        Object part = task.nameSpace.getVariable( reductions[r], false );
+                        value = value instanceof String || part instanceof String
+                                ? value.toString() + part
+                                : Primitive.binaryOperation( value, part, operators[r] );
+                    }
+                    enclosingNameSpace.setVariable(
+                            reductions[r], value, interpreter.getStrictJava() );
+                }
+            } catch ( UtilEvalError e ) {
+                throw e.toEvalError( "parallel for reduction", node, callstack );
+            }
+        }
+
+
+        /**
+         The elements of a range.
+         */
+        private final class Task implements Callable<Object> {
+
+            private final List elements;
+            private int next;
+            private final int end;
+            private final TaskNameSpace nameSpace;
+            private final BshEvaluatingVisitor visitor;
+
+            Task(List elements, int start, int end) {
+                this.elements = elements;
+                this.next = start;
+                this.end = end;
+                this.nameSpace = new TaskNameSpace( enclosingNameSpace );
+                CallStack taskCallstack = callstack.copy();
+                taskCallstack.swap( nameSpace );
+                this.visitor = BshEvaluatingVisitor.create( taskCallstack, interpreter );
+                try {
+                    for ( int r = 0; r < reductions.length; r++ )
+                        if ( identities[r] != null )
+                            nameSpace.setBlockVariable( reductions[r], identities[r] );
+                } catch ( UtilEvalError e ) {
+                    throw e.toEvalError( node, callstack );
+                }
+            }
+
+            public Object call() {
+                boolean nested = Boolean.TRUE.equals( IN_TASK.get() );
+                IN_TASK.set( Boolean.TRUE );
+                try {
+                    while ( next < end && !stopped )
+                        evalNext();
+                } catch ( RuntimeException e ) {
+                    stopped = true;
+                    throw e;
+                } catch ( Error e ) {
+                    stopped = true;
+                    throw e;
+                } finally {
+                    if ( !nested )
+                        IN_TASK.remove();
+                }
+                return null;
+            }
+
+            void evalNext() {
+                Object value = elements.get( next++ );
+                if ( value == null )
+                    value = Primitive.NULL;
+                try {
+                    if ( elementType != null )
+                        nameSpace.setTypedVariable( node.varName, elementType, value, null/*modifiers*/ );
+                    else
+                        nameSpace.setBlockVariable( node.varName, value );
+                } catch ( UtilEvalError e ) {
+                    throw e.toEvalError( "for loop iterator variable:" + node.varName,
+                            node, visitor.getCallstack() );
+                }
+
+                if ( statement == null )
+                    return;
+                Object ret = statement.accept( visitor );
+                if ( ret instanceof ReturnControl ) {
+                    ReturnControl control = (ReturnControl)ret;
+                    if ( control.kind == ParserConstants.RETURN )
+                        throw new EvalError( "Cannot return from a parallel for",
+                                control.returnPoint, visitor.getCallstack() );
+                    if ( control.kind == ParserConstants.BREAK )
+                        stopped = true;
+                }
+            }
+        }
+    }
+
+
+    /**
+     The namespace of a task.  Untyped variables that are not defined in the
+     enclosing scopes are set here rather than in the enclosing namespace.
+     */
+    private static final class TaskNameSpace extends BlockNameSpace {
+
+        TaskNameSpace(NameSpace parent) {
+            super( parent );
+        }
+
+        @Override
+        public void setVariable(String name, Object value, boolean strictJava, boolean recurse)
+                throws UtilEvalError {
+            if ( getVariable( name, true ) == Primitive.VOID && !strictJava )
+                setBlockVariable( name, value );
+            else
+                super.setVariable( name, value, strictJava, recurse );
+        }
+    }
+
+
+    /** The pool, created when it is first used */
+    private static final class Pool {
+
+        static final ExecutorService EXECUTOR = create();
+
+        private static ExecutorService create() {
+            try {
+                // ForkJoinPool.commonPool() of Java 8
+                return (ExecutorService)Class.forName( "java.util.concurrent.ForkJoinPool" )
+                        .getMethod( "commonPool" ).invoke( null );
+            } catch ( Exception e ) {
+                return Executors.newFixedThreadPool(
+                        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread( runnable, "bsh parallel for" );
+                                thread.setDaemon( true );
+                                return thread;
+                            }
+                        } );
+            }
+        }
+    }
+}
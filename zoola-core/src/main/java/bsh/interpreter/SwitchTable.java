@@ -0,0 +1,267 @@
+/**
+ *
+ * This file is a part of ZOOLA - an extensible BeanShell implementation.
+ * Zoola is based on original BeanShell code created by Pat Niemeyer.
+ *
+ * Original BeanShell code is Copyright (C) 2000 Pat Niemeyer <pat@pat.net>.
+ *
+ * New portions are Copyright 2012 Rafal Lewczuk <rafal.lewczuk@jitlogic.com>
+ *
+ * This is free software. You can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ZOOLA. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package bsh.interpreter;
+
+import bsh.*;
+import bsh.ast.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ A jump table for a switch statement whose labels are all constants.
+ <p>
+
+ The labels are integral literals (int, long, char...), or string literals
+ and qualified enum constants (e.g. Color.RED).  The table maps a switch
+ value to the index of the first child following the first matching label,
+ so the statement does not evaluate and compare the labels one by one.
+ Integral labels index an array when they are dense and are binary searched
+ otherwise.
+ <p>
+
+ The lookup gives the same result as the label by label comparison of
+ BshEvaluatingVisitor, including a default label taken when it comes before
+ the matching label.  Switch values the table was not built for (e.g. a
+ string for integral labels, or null) are left to that comparison.
+ */
+public final class SwitchTable {
+
+    /** lookup() result for a switch value not handled by the table */
+    public static final int NOT_APPLICABLE = -2;
+
+    /** integral labels spanning at most this many slots per label are dense */
+    private static final int DENSITY = 4;
+
+    /** child index following the default label, -1 if none */
+    private final int defaultStart;
+
+    /** dense integral labels: child index by value - min, -1 if none */
+    private final long min;
+    private final int[] dense;
+    /** sparse integral labels: sorted values and their child indexes */
+    private final long[] keys;
+    private final int[] starts;
+    /** string and enum labels, null for integral ones */
+    private final Map<Object,Integer> objects;
+
+
+    private SwitchTable(int defaultStart, Map<Long,Integer> integrals,
+            Map<Object,Integer> objects)
+    {
+        this.defaultStart = defaultStart;
+        this.objects = objects;
+
+        long[] keys = new long[integrals.size()];
+        int i = 0;
+        for( Long key : integrals.keySet() )
+            keys[i++] = key.longValue();
+        Arrays.sort(keys);
+
+        long span = keys.length > 0 ? keys[keys.length-1] - keys[0] : -1;
+        if ( span >= 0 && span < (long)keys.length * DENSITY )
+        {
+            this.min = keys[0];
+            this.dense = new int[(int)span + 1];
+            Arrays.fill(dense, -1);
+            for( long key : keys )
+                dense[(int)(key - min)] = integrals.get(key).intValue();
+            this.keys = null;
+            this.starts = null;
+        } else
+        {
+            this.min = 0;
+            this.dense = null;
+            this.keys = keys;
+            this.starts = new int[keys.length];
+            for( i=0; i<keys.length; i++ )
+                starts[i] = integrals.get(keys[i]).intValue();
+        }
+    }
+
+
+    /**
+     Get the jump table of the switch statement, building it on the first
+     execution.
+     @return null if the labels are not all constants
+     */
+    public static SwitchTable of(BSHSwitchStatement node, BshEvaluatingVisitor visitor) {
+        if ( !node.switchTableChecked ) {
+            try {
+                node.switchTable = build(node, visitor);
+            } catch ( EvalError e ) {
+                // an unresolvable label, leave the reporting to the statement
+                return null;
+            }
+            node.switchTableChecked = true;
+        }
+        return node.switchTable;
+    }
+
+
+    private static SwitchTable build(BSHSwitchStatement node, BshEvaluatingVisitor visitor) {
+        int defaultStart = -1;
+        Map<Long,Integer> integrals = new HashMap<Long,Integer>();
+        Map<Object,Integer> objects = new HashMap<Object,Integer>();
+
+        for( int i=1; i<node.jjtGetNumChildren(); i++ )
+        {
+            if ( !(node.jjtGetChild(i) instanceof BSHSwitchLabel) )
+                continue;
+            BSHSwitchLabel label = (BSHSwitchLabel)node.jjtGetChild(i);
+            if ( label.isDefault ) {
+                if ( defaultStart < 0 )
+                    defaultStart = i + 1;
+                continue;
+            }
+
+            Object value = constant((SimpleNode)label.jjtGetChild(0), visitor);
+            if ( value == null )
+                return null;
+            Integer start = Integer.valueOf(i + 1);
+            if ( value instanceof Primitive ) {
+                Long key = Long.valueOf(longValue(value));
+                if ( !integrals.containsKey(key) )
+                    integrals.put(key, start);
+            } else if ( !objects.containsKey(value) )
+                objects.put(value, start);
+        }
+
+        if ( !integrals.isEmpty() && !objects.isEmpty() )
+            return null;
+        return new SwitchTable(defaultStart, integrals, objects.isEmpty() ? null : objects);
+    }
+
+
+    /**
+     @return the integral Primitive, String or enum value of a constant label,
+     null if the label is not a constant
+     */
+    private static Object constant(SimpleNode expression, BshEvaluatingVisitor visitor) {
+        if ( expression instanceof BSHUnaryExpression
+                && ((BSHUnaryExpression)expression).kind == ParserConstants.MINUS )
+        {
+            Object value = literalValue((SimpleNode)expression.jjtGetChild(0));
+            return isIntegral(value) ? new Primitive(-longValue(value)) : null;
+        }
+
+        Object value = literalValue(expression);
+        if ( isIntegral(value) || value instanceof String )
+            return value;
+
+        if ( expression instanceof BSHPrimaryExpression
+                && expression.jjtGetNumChildren() == 1
+                && expression.jjtGetChild(0) instanceof BSHAmbiguousName )
+        {
+            String text = ((BSHAmbiguousName)expression.jjtGetChild(0)).text;
+            if ( text.indexOf('.') < 0 )
+                return null;
+            value = expression.accept(visitor);
+            if ( value instanceof Enum && isEnumConstantName(text, (Enum)value) )
+                return value;
+        }
+        return null;
+    }
+
+
+    /** the name is the enum constant qualified with its class */
+    private static boolean isEnumConstantName(String text, Enum value) {
+        Class type = value.getDeclaringClass();
+        String suffix = "." + value.name();
+        return text.equals(type.getName() + suffix)
+                || text.equals(type.getSimpleName() + suffix)
+                || type.getCanonicalName() != null
+                    && text.equals(type.getCanonicalName() + suffix);
+    }
+
+
+    private static Object literalValue(SimpleNode node) {
+        if ( node instanceof BSHPrimaryExpression && node.jjtGetNumChildren() == 1
+                && node.jjtGetChild(0) instanceof BSHLiteral )
+            return ((BSHLiteral)node.jjtGetChild(0)).value;
+        return null;
+    }
+
+
+    private static boolean isIntegral(Object obj) {
+        if ( !(obj instanceof Primitive) )
+            return false;
+        Object value = ((Primitive)obj).getValue();
+        return isIntegralWrapper(value);
+    }
+
+
+    private static boolean isIntegralWrapper(Object value) {
+        return value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte
+                || value instanceof Character;
+    }
+
+
+    private static long longValue(Object value) {
+        if ( value instanceof Primitive )
+            value = ((Primitive)value).getValue();
+        if ( value instanceof Character )
+            return ((Character)value).charValue();
+        return ((Number)value).longValue();
+    }
+
+
+    /**
+     Find where execution of the switch statement starts for the value.
+     @return the index of the child following the label taken, -1 if no
+     label is taken, NOT_APPLICABLE if the value must be compared with
+     the labels one by one
+     */
+    public int lookup(Object switchVal) {
+        int start;
+        if ( objects != null ) {
+            if ( !(switchVal instanceof String || switchVal instanceof Enum) )
+                return NOT_APPLICABLE;
+            Integer match = objects.get(switchVal);
+            start = match != null ? match.intValue() : -1;
+        } else {
+            if ( !(isIntegral(switchVal) || isIntegralWrapper(switchVal)) )
+                return NOT_APPLICABLE;
+            start = integralStart(longValue(switchVal));
+        }
+
+        // a default label before the matching one is taken first
+        if ( defaultStart >= 0 && (start < 0 || defaultStart < start) )
+            return defaultStart;
+        return start;
+    }
+
+
+    private int integralStart(long value) {
+        if ( dense != null ) {
+            long offset = value - min;
+            return offset >= 0 && offset < dense.length ? dense[(int)offset] : -1;
+        }
+        int i = Arrays.binarySearch(keys, value);
+        return i >= 0 ? starts[i] : -1;
+    }
+}
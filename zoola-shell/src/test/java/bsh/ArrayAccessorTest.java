@@ -0,0 +1,58 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(FilteredTestRunner.class)
+public class ArrayAccessorTest {
+
+	@Test
+	public void typed_arrays() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertTrue(Arrays.equals(new int[] { 1, 11, 3 }, (int[]) TestUtil.eval(compiled,
+					"int[] a = { 1, 2, 3 }; a[1] += 9; a[2] = a[2]; return a;")));
+			// an int stored in a long[] is widened
+			assertTrue(Arrays.equals(new long[] { 5, 7 }, (long[]) TestUtil.eval(compiled,
+					"long[] a = new long[2]; a[0] = 5; a[1] = 2L; a[1] += 5; return a;")));
+			assertTrue(Arrays.equals(new double[] { 0.5, 3 }, (double[]) TestUtil.eval(compiled,
+					"double[] a = new double[2]; a[0] = 0.5; a[1] = 3; return a;")));
+			assertTrue(Arrays.equals(new byte[] { 7, 0 }, (byte[]) TestUtil.eval(compiled,
+					"byte[] a = new byte[2]; a[0] = (byte) 7; return a;")));
+			assertTrue(Arrays.equals(new short[] { 3 }, (short[]) TestUtil.eval(compiled,
+					"short[] a = new short[1]; a[0] = (short) 3; return a;")));
+			assertTrue(Arrays.equals(new Object[] { "ab", null }, (Object[]) TestUtil.eval(compiled,
+					"String[] a = { \"a\", \"x\" }; a[0] += \"b\"; a[1] = null; return a;")));
+		}
+	}
+
+
+	@Test
+	public void matrix() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals(30.0, TestUtil.eval(compiled,
+					"double[][] m = new double[3][3];",
+					"for (int i = 0; i < 3; i++) for (int j = 0; j < 3; j++) m[i][j] += i * 3 + j;",
+					"for (int i = 0; i < 3; i++) m[i][i] = m[i][i] * 2;",
+					"return m[0][0] + m[1][1] + m[2][2] + m[2][0];"));
+		}
+	}
+
+
+	@Test
+	public void script_catches_bounds_and_store_errors() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("read write compound store", TestUtil.eval(compiled,
+					"int[] a = new int[1]; Object[] o = new String[1]; s = \"\";",
+					"try { x = a[1]; } catch (ArrayIndexOutOfBoundsException e) { s = s + \"read\"; }",
+					"try { a[-1] = 1; } catch (ArrayIndexOutOfBoundsException e) { s = s + \" write\"; }",
+					"try { a[2] += 1; } catch (ArrayIndexOutOfBoundsException e) { s = s + \" compound\"; }",
+					"try { o[0] = 1; } catch (ArrayStoreException e) { s = s + \" store\"; }",
+					"return s;"));
+		}
+	}
+}
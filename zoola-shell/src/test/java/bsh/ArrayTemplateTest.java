@@ -0,0 +1,57 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(FilteredTestRunner.class)
+public class ArrayTemplateTest {
+
+	@Test
+	public void constant_initializers_give_fresh_arrays() throws Exception {
+		final Object[] oa = (Object[]) TestUtil.eval(
+				"table() { int[] t = { 1, -2, 3 }; return t; }",
+				"names() { String[] n = { \"a\", \"b\" }; return n; }",
+				"matrix() { double[][] m = { { 1, 2 }, { -3.5 }, null }; return m; }",
+				"a = table(); a[0] = 100;",
+				"n = names(); n[1] = \"z\";",
+				"m = matrix(); m[0][0] = 9; m[2] = new double[1];",
+				"return new Object[] { a, table(), n, names(), m, matrix() };");
+		assertTrue(Arrays.equals(new int[] { 100, -2, 3 }, (int[]) oa[0]));
+		assertTrue(Arrays.equals(new int[] { 1, -2, 3 }, (int[]) oa[1]));
+		assertTrue(Arrays.equals(new String[] { "a", "z" }, (String[]) oa[2]));
+		assertTrue(Arrays.equals(new String[] { "a", "b" }, (String[]) oa[3]));
+		assertTrue(Arrays.deepEquals(new double[][] { { 9, 2 }, { -3.5 }, { 0 } }, (double[][]) oa[4]));
+		assertTrue(Arrays.deepEquals(new double[][] { { 1, 2 }, { -3.5 }, null }, (double[][]) oa[5]));
+	}
+
+
+	@Test
+	public void non_constant_initializers_are_evaluated_each_time() throws Exception {
+		assertEquals("1,2|2,3|", TestUtil.eval(
+				"f(x) { long[] a = { x, x + 1 }; return a[0] + \",\" + a[1] + \"|\"; }",
+				"return f(1) + f(2);"));
+	}
+
+
+	@Test
+	public void template_follows_declared_type() throws Exception {
+		final Object[] oa = (Object[]) TestUtil.eval(
+				"f() { return new int[] { 1, 2 }; }",
+				"g() { return new long[] { 1, 2 }; }",
+				"return new Object[] { f(), f(), g(), new Object[] { 'c', \"s\", 1.5f } };");
+		assertTrue(Arrays.equals(new int[] { 1, 2 }, (int[]) oa[1]));
+		assertTrue(Arrays.equals(new long[] { 1, 2 }, (long[]) oa[2]));
+		assertTrue(Arrays.equals(new Object[] { 'c', "s", 1.5f }, (Object[]) oa[3]));
+	}
+
+
+	@Test(expected = EvalError.class)
+	public void incompatible_constant() throws Exception {
+		TestUtil.eval("int[] a = { 1, \"two\" };");
+	}
+}
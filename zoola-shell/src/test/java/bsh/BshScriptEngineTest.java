@@ -0,0 +1,59 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.script.Invocable;
+import javax.script.ScriptException;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class BshScriptEngineTest {
+
+	@Test
+	public void invoke_function_after_redefinition() throws Exception {
+		final BshScriptEngine engine = new BshScriptEngine();
+		engine.eval("f(x) { return x + 1; } g() { }");
+		assertEquals(2, engine.invokeFunction("f", 1));
+		assertEquals("a1", engine.invokeFunction("f", "a"));
+		assertNull(engine.invokeFunction("g"));
+		engine.eval("f(x) { return x + 2; }");
+		assertEquals(3, engine.invokeFunction("f", 1));
+		engine.eval("int f(int x) { return x + 3; }");
+		assertEquals(4, engine.invokeFunction("f", 1));
+		assertEquals("a2", engine.invokeFunction("f", "a"));
+	}
+
+
+	@Test
+	public void function_handle() throws Exception {
+		final BshScriptEngine engine = new BshScriptEngine();
+		engine.eval("long twice(int x) { return 2L * x; } fail(msg) { throw new IllegalStateException(msg); }");
+		final BshScriptEngine.FunctionHandle twice = engine.getFunctionHandle("twice", int.class);
+		assertEquals(42L, twice.invoke(21));
+		assertEquals(2L, twice.invoke(1));
+		engine.eval("long twice(int x) { return 4L * x; }");
+		assertEquals(4L, twice.invoke(1));
+		try {
+			engine.getFunctionHandle("fail", String.class).invoke("boom");
+			fail("expected script exception");
+		} catch (final ScriptException e) {
+			assertEquals("boom", e.getCause().getMessage());
+		}
+	}
+
+
+	@Test
+	public void get_interface() throws Exception {
+		final BshScriptEngine engine = new BshScriptEngine();
+		engine.eval("call() { return \"called\"; }");
+		final Callable callable = ((Invocable) engine).getInterface(Callable.class);
+		assertEquals("called", callable.call());
+		engine.eval("call() { return \"redefined\"; }");
+		assertEquals("redefined", callable.call());
+	}
+}
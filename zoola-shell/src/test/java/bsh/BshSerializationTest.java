@@ -3,6 +3,10 @@ package bsh;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Modifier;
+
 /**
  * This tests serialization of the beanshell interpreter
  * 
@@ -36,4 +40,36 @@ public class BshSerializationTest {
         final Interpreter deserInterpreter = TestUtil.serDeser(originalInterpreter);
         Assert.assertTrue((Boolean) deserInterpreter.eval("myNull == null"));
     }
+
+    /**
+     * Tests that modifiers keep their serialized form, a Hashtable of names
+	 * @throws Exception in case of failure
+	 */
+    @Test
+    public void testModifiersSerialization() throws Exception {
+		final String publicFinal = "aced00057372000d6273682e4d6f64696669657273758fb1e52ffd43d0020001"
+			+ "4c00096d6f646966696572737400154c6a6176612f7574696c2f486173687461"
+			+ "626c653b7870737200136a6176612e7574696c2e486173687461626c6513bb0f"
+			+ "25214ae4b803000246000a6c6f6164466163746f724900097468726573686f6c"
+			+ "6478703f4000000000000877080000000b0000000274000566696e616c767200"
+			+ "04766f6964000000000000000000000078707400067075626c696371007e0007"
+			+ "78";
+		final byte[] bytes = new byte[publicFinal.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(publicFinal.substring(2 * i, 2 * i + 2), 16);
+		}
+		final Modifiers modifiers = (Modifiers) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+		Assert.assertEquals(Modifier.PUBLIC | Modifier.FINAL, modifiers.getFlags());
+		Assert.assertEquals(modifiers.getFlags(), TestUtil.serDeser(modifiers).getFlags());
+
+		final Interpreter originalInterpreter = new Interpreter();
+		originalInterpreter.eval("final int x = 1;");
+		final Interpreter deserInterpreter = TestUtil.serDeser(originalInterpreter);
+		try {
+			deserInterpreter.eval("x = 2;");
+			Assert.fail("final variable assigned");
+		} catch (final EvalError e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("Final variable"));
+		}
+    }
 }
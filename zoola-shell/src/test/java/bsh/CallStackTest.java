@@ -17,4 +17,26 @@ public class CallStackTest {
 		final CallStack stack = TestUtil.serDeser(new CallStack(nameSpace));
 		Assert.assertEquals("test", stack.top().get("test", null));
 	}
+
+
+	@Test
+	public void copy_is_a_snapshot() throws Exception {
+		final NameSpace global = new NameSpace(null, new BshClassManager(), "global");
+		final NameSpace method = new NameSpace(global, "method");
+		final NameSpace block = new NameSpace(method, "block");
+		final CallStack stack = new CallStack(global);
+		stack.push(method);
+		final CallStack copy = stack.copy();
+		stack.swap(block);
+		stack.pop();
+		stack.push(block);
+		Assert.assertEquals(2, copy.depth());
+		Assert.assertSame(method, copy.top());
+		Assert.assertSame(global, copy.get(1));
+		Assert.assertSame(NameSpace.JAVACODE, copy.get(2));
+		Assert.assertSame(block, stack.top());
+		Assert.assertSame(method, copy.pop());
+		Assert.assertSame(global, copy.top());
+		Assert.assertEquals(2, stack.depth());
+	}
 }
@@ -5,9 +5,15 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 
+import java.lang.reflect.Method;
+import java.util.Comparator;
 import java.util.concurrent.Callable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(FilteredTestRunner.class)
 public class ClassGeneratorTest {
@@ -72,6 +78,148 @@ public class ClassGeneratorTest {
 	}
 
 
+	@Test
+	public void delegate_primitive_and_null_args() throws Exception {
+		final Comparator comparator = (Comparator) TestUtil.eval(
+				"class X6 implements java.util.Comparator {",
+					"public int compare(Object a, Object b) {",
+						"if (a == null) return b == null ? 0 : -1;",
+						"return b == null ? 1 : a.compareTo(b);",
+					"}",
+					"public static long twice(int i) { return 2L * i; }",
+				"}",
+				"return new X6();"
+		);
+		assertEquals(0, comparator.compare(null, null));
+		assertEquals(-1, comparator.compare(null, "a"));
+		assertTrue(comparator.compare("b", "a") > 0);
+		final Method twice = comparator.getClass().getMethod("twice", int.class);
+		assertEquals(42L, twice.invoke(null, 21));
+	}
+
+
+	@Test
+	public void delegate_links_are_kept_per_instance() throws Exception {
+		final Object[] pair = (Object[]) TestUtil.eval(
+				"class X14 implements java.util.concurrent.Callable {",
+					"int n;",
+					"X14(int n) { this.n = n; }",
+					"public Object call() { return n; }",
+				"}",
+				"return new Object[] { new X14(1), new X14(2) };"
+		);
+		final Callable a = (Callable) pair[0];
+		final Callable b = (Callable) pair[1];
+		assertEquals(1, a.call());
+		assertEquals(2, b.call());
+		final DelegateCallSite site = (DelegateCallSite) a.getClass().getField("_bshCallSite0").get(null);
+		final NameSpace aSpace = ((This) a.getClass().getField("_bshThisX14").get(a)).getNameSpace();
+		final NameSpace bSpace = ((This) b.getClass().getField("_bshThisX14").get(b)).getNameSpace();
+		final DelegateCallSite.Link aLink = aSpace.getCallSiteLink(site);
+		assertNotNull(aLink);
+		assertEquals(1, a.call());
+		assertEquals(2, b.call());
+		assertSame(aLink, aSpace.getCallSiteLink(site));
+		assertNotSame(aLink, bSpace.getCallSiteLink(site));
+	}
+
+
+	@Test
+	public void delegate_relinks_redefined_method() throws Exception {
+		final Callable callable = (Callable) TestUtil.eval(
+				"class X7 implements java.util.concurrent.Callable {",
+					"public Object call() { return value(); }",
+					"public static Object value() { return 1; }",
+				"}",
+				"return new X7();"
+		);
+		assertEquals(1, callable.call());
+		final Method value = callable.getClass().getMethod("value");
+		assertEquals(1, value.invoke(null));
+		final This staticThis = (This) callable.getClass().getField("_bshStaticX7").get(null);
+		new Interpreter().eval("public static Object value() { return 2; }", staticThis.getNameSpace());
+		assertEquals(2, value.invoke(null));
+	}
+
+
+	@Test
+	public void cached_bytecode_keeps_static_state_separate() throws Exception {
+		final String[] code = {
+				"class X8 implements java.util.concurrent.Callable {",
+					"static int count;",
+					"public X8() { count++; }",
+					"public Object call() { return count; }",
+				"}",
+				"new X8();",
+				"return new X8();"
+		};
+		final Callable first = (Callable) TestUtil.eval(code);
+		final Callable second = (Callable) TestUtil.eval(code);
+		// each interpreter gets its own class with its own static state
+		Assert.assertNotSame(first.getClass(), second.getClass());
+		assertEquals(2, first.call());
+		assertEquals(2, second.call());
+	}
+
+
+	@Test
+	public void classes_share_loader_until_redefined() throws Exception {
+		final Object[] oa = (Object[]) TestUtil.eval(
+				"class X9 {}",
+				"class X10 {}",
+				"a = new X9();",
+				"class X9 {}",
+				"return new Object[] { a, new X10(), new X9() };"
+		);
+		assertSame(oa[0].getClass().getClassLoader(), oa[1].getClass().getClassLoader());
+		Assert.assertNotSame(oa[0].getClass(), oa[2].getClass());
+		Assert.assertNotSame(oa[0].getClass().getClassLoader(), oa[2].getClass().getClassLoader());
+	}
+
+
+	@Test
+	public void alternate_constructors_and_initializers() throws Exception {
+		final Object[] oa = (Object[]) TestUtil.eval(
+				"class X11 extends java.util.ArrayList implements java.util.concurrent.Callable {",
+					"int base = 10;",
+					"int value;",
+					"X11(int value) { super(value); this.value = base + value; }",
+					"X11() { this(5); value++; }",
+					"public Object call() { return value; }",
+				"}",
+				"return new Object[] { new X11(), new X11(1), new X11(2) };"
+		);
+		assertEquals(16, ( (Callable) oa[0] ).call());
+		assertEquals(11, ( (Callable) oa[1] ).call());
+		assertEquals(12, ( (Callable) oa[2] ).call());
+	}
+
+
+	@Test
+	public void script_catches_exception_of_scripted_method() throws Exception {
+		assertEquals("x y", TestUtil.eval(
+				"class X12 {",
+					"X12(boolean fail) { if (fail) throw new IllegalStateException(\"y\"); }",
+					"void fail() { throw new IllegalStateException(\"x\"); }",
+				"}",
+				"s = \"\";",
+				"try { new X12(false).fail(); } catch (IllegalStateException e) { s += e.getMessage(); }",
+				"try { new X12(true); } catch (IllegalStateException e) { s += \" \" + e.getMessage(); }",
+				"return s;"
+		));
+	}
+
+
+	@Test
+	public void script_catches_exception_of_interface_adapter() throws Exception {
+		assertEquals("x", TestUtil.eval(
+				"run() { throw new IllegalStateException(\"x\"); }",
+				"Runnable r = this;",
+				"try { r.run(); } catch (IllegalStateException e) { return e.getMessage(); }"
+		));
+	}
+
+
 	/**
 	 * See also failing test script "classinterf1.bsh" and
 	 * <a href="http://code.google.com/p/beanshell2/issues/detail?id=46">issue #46</a>.
@@ -0,0 +1,55 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(FilteredTestRunner.class)
+public class ClosureCompilationTest {
+
+	private static Object eval(final boolean closureCompilation, final String code) {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.setClosureCompilation(closureCompilation);
+		try {
+			return interpreter.eval(code);
+		} catch (final EvalError e) {
+			return e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+	}
+
+
+	private static void assertSameResult(final String code) {
+		final Object interpreted = eval(false, code);
+		final Object compiled = eval(true, code);
+		assertTrue(code + ": " + interpreted + " != " + compiled,
+				Arrays.deepEquals(new Object[] { interpreted }, new Object[] { compiled }));
+	}
+
+
+	@Test
+	public void same_results_as_visitor() throws Exception {
+		assertSameResult("int s = 0; for (int i = 0; i < 10; i++) { if (i % 2 == 0) continue; s += i; } return s;");
+		assertSameResult("s = \"\"; i = 0; do { s = s + i++; } while (i < 5); return s;");
+		assertSameResult("int[] a = { 3, 4 }; a[1] <<= a[0]; return a[1] > 16 ? a : null;");
+		assertSameResult("f(n) { return n < 2 ? n : f(n - 1) + f(n - 2); } return f(15);");
+		assertSameResult("x = null; return x == null && !(x instanceof String) || x.length() > 0;");
+		assertSameResult("return \"abc\".substring(1).length() + Integer.MAX_VALUE;");
+		assertSameResult("sb = new StringBuilder(); for (s : new String[] { \"a\", \"b\" }) sb.append(s); return sb.toString();");
+		assertSameResult("return new Object[] { 1 + 2L, 'a' + 1, 7 / 2.0, -5 >>> 28, ~7, !true };");
+	}
+
+
+	@Test
+	public void same_errors_as_visitor() throws Exception {
+		assertSameResult("return undefinedVariable + 1;");
+		assertSameResult("int i = \"string\";");
+		assertSameResult("if (1) return 2;");
+		assertSameResult("x = new int[2]; return x[5];");
+		assertSameResult("return \"abc\".noSuchMethod();");
+		assertSameResult("f(x) {} return f(void);");
+		assertSameResult("throw new IllegalStateException(\"boom\");");
+	}
+}
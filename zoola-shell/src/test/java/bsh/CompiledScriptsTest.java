@@ -0,0 +1,15 @@
+package bsh;
+
+/**
+ * Run the old test scripts with closure compilation, they must give the same results as with the visitor.
+ *
+ * @see OldScriptsTest
+ * @see Interpreter#setClosureCompilation(boolean)
+ */
+public class CompiledScriptsTest {
+
+	public static junit.framework.Test suite() throws Exception {
+		return OldScriptsTest.suite(true);
+	}
+
+}
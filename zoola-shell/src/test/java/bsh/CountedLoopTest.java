@@ -0,0 +1,57 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(FilteredTestRunner.class)
+public class CountedLoopTest {
+
+	@Test
+	public void counted_loops() throws Exception {
+		assertEquals(45, TestUtil.eval("int s = 0; for (int i = 0; i < 10; i++) s += i; return s;"));
+		assertEquals(10, TestUtil.eval("int s = 0; for (int i = 0; i < 10; i++) s++; return s;"));
+		assertEquals(55L, TestUtil.eval("long s = 0; for (long i = 10; 0 < i; --i) s += i; return s;"));
+		assertEquals(20, TestUtil.eval("int s = 0; for (int i = 0; i <= 8; i += 2) s += i; return s;"));
+		assertEquals(321, TestUtil.eval("a = new int[] { 1, 2, 3 }; int s = 0; for (int i = a.length - 1; i @gteq 0; i -= 1) s = s * 10 + a[i]; return s;"));
+		assertEquals(5, TestUtil.eval("int s = 0; for (int i = 0; i != 5; i++) s++; return s;"));
+	}
+
+
+	@Test
+	public void bound_is_evaluated_on_each_iteration() throws Exception {
+		assertEquals(6, TestUtil.eval("n = 3; int s = 0; for (int i = 0; i < n; i++) { if (n < 6) n++; s++; } return s;"));
+		assertEquals(4, TestUtil.eval("l = new ArrayList(); l.add(1); for (int i = 0; i < l.size(); i++) if (l.size() < 4) l.add(i); return l.size();"));
+		assertEquals(3, TestUtil.eval("int s = 0; for (int i = 0; i < 2.5; i++) s++; return s + 0;"));
+		assertEquals(4, TestUtil.eval("int s = 0; for (int i = 0; i < new Integer(4); i++) s++; return s;"));
+	}
+
+
+	@Test
+	public void control_flow() throws Exception {
+		assertEquals(4, TestUtil.eval("for (int i = 0; i < 10; i++) if (i == 4) return i; return -1;"));
+		assertEquals(6, TestUtil.eval("int s = 0; for (int i = 0; i < 10; i++) { if (i == 4) break; s += i; } return s;"));
+		assertEquals(25, TestUtil.eval("int s = 0; for (int i = 0; i < 10; i++) { if (i % 2 == 0) continue; s += i; } return s;"));
+		assertEquals(Integer.MIN_VALUE, TestUtil.eval("int last = 0; for (int i = Integer.MAX_VALUE - 1; i != Integer.MIN_VALUE + 1; i++) last = i; return last;"));
+	}
+
+
+	@Test
+	public void variable_keeps_its_last_value_for_closures() throws Exception {
+		assertEquals(3, TestUtil.eval(
+				"import java.util.concurrent.Callable;",
+				"for (int i = 0; i < 3; i++) { o = new Callable() { call() { return i; } }; }",
+				"return o.call();"));
+		assertEquals(1, TestUtil.eval(
+				"for (int i = 0; i < 3; i++) { f() { return i; } if (i == 1) break; }",
+				"return f();"));
+	}
+
+
+	@Test
+	public void loops_assigning_the_variable() throws Exception {
+		assertEquals(5, TestUtil.eval("int s = 0; for (int i = 0; i < 10; i++) { i++; s++; } return s;"));
+		assertEquals(7, TestUtil.eval("int s = 0; for (int i = 0; i < 10; i++) { f() { i = 9; } s++; if (s > 6) f(); } return s;"));
+	}
+}
@@ -0,0 +1,96 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(FilteredTestRunner.class)
+public class ForEachIterationTest {
+
+	private static final String JOIN =
+			"join(values) { s = \"\"; for (v : values) s = s + v + \",\"; return s; }";
+
+
+	@Test
+	public void arrays() throws Exception {
+		assertEquals("1,2,3,", TestUtil.eval(JOIN, "return join(new int[] { 1, 2, 3 });"));
+		assertEquals("1,-2,", TestUtil.eval(JOIN, "return join(new long[] { 1, -2 });"));
+		assertEquals("a,null,", TestUtil.eval(JOIN, "return join(new String[] { \"a\", null });"));
+		assertEquals("true,", TestUtil.eval(JOIN, "return join(new boolean[] { true });"));
+		assertEquals(4.0, TestUtil.eval(
+				"double s = 0; for (double d : new double[] { 1.5, 2.5 }) s += d; return s;"));
+	}
+
+
+	@Test
+	public void lists_maps_and_strings() throws Exception {
+		assertEquals("a,b,", TestUtil.eval(JOIN, "return join(java.util.Arrays.asList(new Object[] { \"a\", \"b\" }));"));
+		assertEquals("a,b,", TestUtil.eval(JOIN,
+				"l = new java.util.LinkedList(); l.add(\"a\"); l.add(\"b\"); return join(l);"));
+		assertEquals("k=v,", TestUtil.eval(JOIN,
+				"m = new java.util.HashMap(); m.put(\"k\", \"v\"); return join(m);"));
+		assertEquals("h,i,", TestUtil.eval(JOIN, "return join(\"hi\");"));
+		assertEquals("h,i,", TestUtil.eval(JOIN, "return join(new StringBuilder(\"hi\"));"));
+	}
+
+
+	@Test
+	public void loop_follows_changing_iteratee_class() throws Exception {
+		assertEquals("1,2,|x,|c,|", TestUtil.eval(JOIN,
+				"s = \"\";",
+				"for (o : new Object[] { new int[] { 1, 2 }, java.util.Collections.singletonList(\"x\"), \"c\" })",
+				"	s = s + join(o) + \"|\";",
+				"return s;"));
+	}
+
+
+	@Test
+	public void typed_primitive_array_elements() throws Exception {
+		assertEquals("6 6 4.5 true", TestUtil.eval(
+				"int a = 0; for (int i : new int[] { 1, 2, 3 }) a += i;",
+				"long b = 0; for (long l : new int[] { 1, 2, 3 }) b += l;",
+				"double c = 0; for (double d : new long[] { 1, 2 }) c += d * 1.5;",
+				"u = null; for (x : new int[] { 1 }) u = x;",
+				"return a + \" \" + b + \" \" + c + \" \" + (u instanceof Integer);"));
+	}
+
+
+	@Test
+	public void lists_modified_in_loop_behave_as_their_iterator() throws Exception {
+		assertEquals("1,2,|[1, 2, 2, 4]", TestUtil.eval(
+				"l = new java.util.concurrent.CopyOnWriteArrayList(); l.add(1); l.add(2);",
+				"s = \"\"; for (x : l) { s = s + x + \",\"; l.add(x * 2); }",
+				"return s + \"|\" + l;"));
+		assertEquals("a,b,|[a, c]", TestUtil.eval(
+				"l = new ArrayList(); l.add(\"a\"); l.add(\"b\"); l.add(\"c\");",
+				"s = \"\"; for (x : l) { s = s + x + \",\"; if (x.equals(\"b\")) l.remove(x); }",
+				"return s + \"|\" + l;"));
+	}
+
+
+	@Test(expected = EvalError.class)
+	public void removing_from_list_fails_loop() throws Exception {
+		TestUtil.eval(
+				"l = new ArrayList(); l.add(\"a\"); l.add(\"b\");",
+				"for (v : l) { l.clear(); }");
+	}
+
+
+	@Test
+	public void read_failure_is_caught_by_script() throws Exception {
+		assertEquals("java.io.FileNotFoundException", TestUtil.eval(
+				"try { for (l : java.nio.file.Paths.get(\"/nonexistent/zoola.txt\")) {} }",
+				"catch (Exception e) { return e.getClass().getName(); }"));
+		assertEquals("java.io.IOException", TestUtil.eval(
+				"r = new BufferedReader(new StringReader(\"a\")); r.close();",
+				"try { for (l : r) {} }",
+				"catch (IOException e) { return e.getClass().getName(); }"));
+	}
+
+
+	@Test(expected = EvalError.class)
+	public void not_iterable() throws Exception {
+		TestUtil.eval("for (x : new Object()) {}");
+	}
+}
@@ -0,0 +1,224 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class GeneratorTest {
+
+	private static List<Object> list(final Iterable<?> iterable) {
+		final List<Object> list = new ArrayList<Object>();
+		for (final Object value : iterable) {
+			list.add(value);
+		}
+		return list;
+	}
+
+
+	@Test
+	public void generator_is_consumed_by_enhanced_for() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("01234", TestUtil.eval(compiled,
+					"Iterator range(int from, int to) {",
+						"for (int i = from; i < to; i++)",
+							"yield i;",
+					"}",
+					"s = \"\";",
+					"for (x : range(0, 5)) s += x;",
+					"return s;"));
+		}
+	}
+
+
+	@Test
+	public void generator_runs_lazily() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("[0, 1, 1, 2, 3, 5] 7", TestUtil.eval(compiled,
+					"calls = 0;",
+					"fib() {",
+						"a = 0; b = 1;",
+						"while (true) {",
+							"calls++;",
+							"yield a;",
+							"t = a + b; a = b; b = t;",
+						"}",
+					"}",
+					"l = new ArrayList();",
+					"for (x : fib()) { if (x > 5) break; l.add(x); }",
+					"return l + \" \" + calls;"));
+		}
+	}
+
+
+	@Test
+	public void break_continue_and_return_in_generator() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("[1:0, 1:1, 3:0, 3:1, 4:0, 4:1, end]", TestUtil.eval(compiled,
+					"pairs(list) {",
+						"for (x : list) {",
+							"if (x == 2) continue;",
+							"for (int j = 0; j < 3; j++) {",
+								"if (j == 2) break;",
+								"yield x + \":\" + j;",
+							"}",
+							"if (x == 4) break;",
+						"}",
+						"yield \"end\";",
+						"return;",
+						"yield \"unreachable\";",
+					"}",
+					"l = new ArrayList();",
+					"for (p : pairs(new int[] { 1, 2, 3, 4, 5 })) l.add(p);",
+					"return l.toString();"));
+		}
+	}
+
+
+	@Test
+	public void do_while_and_nested_blocks() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("[3, 2, 1, 0, done]", TestUtil.eval(compiled,
+					"countdown(n) {",
+						"do {",
+							"{ int m = n; yield m; }",
+							"n--;",
+						"} while (n >= 0);",
+						"if (n < 0) yield \"done\"; else yield \"not done\";",
+					"}",
+					"l = new ArrayList();",
+					"for (x : countdown(3)) l.add(x);",
+					"return l.toString();"));
+		}
+	}
+
+
+	@Test
+	public void generator_is_a_java_iterable() throws Exception {
+		final Iterable<?> squares = (Iterable<?>) TestUtil.eval(false,
+				"Iterable squares(int n) {",
+					"for (int i = 1; i <= n; i++) yield i * i;",
+				"}",
+				"return squares(4);");
+		assertEquals(Arrays.<Object>asList(1, 4, 9, 16), list(squares));
+		try {
+			squares.iterator();
+			fail("second iteration");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+	}
+
+
+	@Test
+	public void generator_ends_after_error() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			final Iterator<?> iterator = (Iterator<?>) TestUtil.eval(compiled,
+					"gen() { yield 1; o = null; o.hashCode(); yield 2; }",
+					"return gen();");
+			assertEquals(1, iterator.next());
+			try {
+				iterator.hasNext();
+				fail("error in generator");
+			} catch (final EvalError e) {
+				// expected
+			}
+			assertFalse(iterator.hasNext());
+		}
+	}
+
+
+	@Test
+	public void iterator_expressions() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("[4, 16, 36] [102, 104] [A, B]", TestUtil.eval(compiled,
+					"evens = (x * x for (x : new int[] { 1, 2, 3, 4, 5, 6 }) if (x % 2 == 0));",
+					"base = 10;",
+					"shifted = (base + y for (int y : (z * 2 for (z : new int[] { 1, 2 }))));",
+					"base = 100;",
+					"a = new ArrayList(); for (x : evens) a.add(x);",
+					"b = new ArrayList(); for (x : shifted) b.add(x);",
+					"c = new ArrayList(); for (x : (Character.toUpperCase(ch) for (ch : \"ab\"))) c.add(x);",
+					"return a + \" \" + b + \" \" + c;"));
+		}
+	}
+
+
+	@Test
+	public void iterator_expression_is_a_java_iterator() throws Exception {
+		final Iterator<?> iterator = (Iterator<?>) TestUtil.eval(true,
+				"list = new ArrayList();",
+				"list.add(\"a\"); list.add(null); list.add(\"b\");",
+				"return (s == null ? \"-\" : s + s for (s : list));");
+		assertEquals("aa", iterator.next());
+		assertEquals("-", iterator.next());
+		assertTrue(iterator.hasNext());
+		assertEquals("bb", iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+
+	@Test
+	public void read_failure_in_generator_is_caught_by_script() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("java.io.FileNotFoundException", TestUtil.eval(compiled,
+					"lines(path) { for (l : path) yield l; }",
+					"try { for (l : lines(java.nio.file.Paths.get(\"/nonexistent/zoola.txt\"))) {} }",
+					"catch (Exception e) { return e.getClass().getName(); }"));
+		}
+	}
+
+
+	@Test
+	public void yield_is_still_a_name() throws Exception {
+		assertEquals(6, TestUtil.eval(false,
+				"yield(x) { return x + 1; }",
+				"yield = 2;",
+				"yield++;",
+				"return yield.intValue() + 3;"));
+	}
+
+
+	@Test
+	public void yield_method_is_called() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("6 8", TestUtil.eval(compiled,
+					"yield(x) { return x + 1; }",
+					"f(x) { return yield(x) + 2; }",
+					"return yield(5) + \" \" + f(5);"));
+		}
+	}
+
+
+	@Test
+	public void yield_errors() throws Exception {
+		final String[][] scripts = {
+				{ "yield 1;", "outside of a method" },
+				{ "f() { try { yield 1; } catch (Exception e) { } }", "f();", "Cannot yield inside TryStatement" },
+				{ "f() { synchronized (this) { yield 1; } }", "f();", "Cannot yield inside a synchronized block" },
+				{ "void f() { yield 1; }", "f();", "cannot be void" },
+				{ "String f() { yield 1; }", "f();", "Incorrect type returned from generator method" },
+				{ "f() { yield 1; return 2; }", "for (x : f()) { }", "Cannot return a value from a generator" },
+		};
+		for (final boolean compiled : new boolean[] { false, true }) {
+			for (final String[] script : scripts) {
+				final String expected = script[script.length - 1];
+				try {
+					TestUtil.eval(compiled, Arrays.asList(script).subList(0, script.length - 1).toArray(new String[0]));
+					fail(expected);
+				} catch (final EvalError e) {
+					assertTrue(e.getMessage(), e.getMessage().contains(expected));
+				}
+			}
+		}
+	}
+}
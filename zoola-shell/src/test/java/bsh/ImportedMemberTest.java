@@ -0,0 +1,86 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(FilteredTestRunner.class)
+public class ImportedMemberTest {
+
+	public static class Holder {
+		public int count;
+		public String name = "holder";
+		public static String label = "static";
+
+		public int twice(int i) { return 2 * i; }
+		public static String describe(Object o) { return "object"; }
+		public static String describe(String s) { return "string " + s; }
+	}
+
+
+	@Test
+	public void imported_fields_are_read_and_written_live() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		final Holder holder = new Holder();
+		interpreter.getNameSpace().importObject(holder);
+		interpreter.eval("for (int i = 0; i < 10; i++) count += i;");
+		assertEquals(45, holder.count);
+		holder.name = "changed";
+		assertEquals("changed 45", interpreter.eval("return name + \" \" + count;"));
+	}
+
+
+	@Test
+	public void imports_added_later_are_found() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		assertNull(interpreter.eval("return label;"));
+		assertNull(interpreter.eval("return name;"));
+		interpreter.getNameSpace().importStatic(Holder.class);
+		assertEquals("static", interpreter.eval("return label;"));
+		interpreter.getNameSpace().importObject(new Holder());
+		assertEquals("holder", interpreter.eval("return name;"));
+	}
+
+
+	@Test
+	public void cleared_imports_are_not_found() throws Exception {
+		final NameSpace nameSpace = new Interpreter().getNameSpace();
+		nameSpace.importStatic(Math.class);
+		nameSpace.importObject(new java.awt.Point(3, 4));
+		assertEquals(new Primitive(3), nameSpace.getVariable("x"));
+		nameSpace.clear();
+		assertEquals(Primitive.VOID, nameSpace.getVariable("x"));
+		assertEquals(Primitive.VOID, nameSpace.getVariable("PI"));
+	}
+
+
+	@Test
+	public void imported_methods_by_signature() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		final List<Object> list = new ArrayList<Object>();
+		interpreter.getNameSpace().importStatic(Holder.class);
+		interpreter.getNameSpace().importObject(list);
+		assertEquals("string a|object|2", interpreter.eval(
+				"for (int i = 0; i < 2; i++) add(i);"
+				+ "return describe(\"a\") + \"|\" + describe(1) + \"|\" + size();"));
+		list.add("x");
+		assertEquals(3, interpreter.eval("return size();"));
+	}
+
+
+	@Test
+	public void scripted_class_fields() throws Exception {
+		assertEquals(55, TestUtil.eval(
+				"class Counter {",
+					"int total;",
+					"int step = 1;",
+					"int sum(int n) { for (int i = 1; i <= n; i += step) total += i; return total; }",
+				"}",
+				"return new Counter().sum(10);"));
+	}
+}
@@ -0,0 +1,92 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class InterfaceAdapterTest {
+
+	@Test
+	public void adapter_is_generated_and_cached() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.eval("compare(a, b) { return a.length() - b.length(); }");
+		final Comparator comparator = (Comparator) interpreter.getInterface(Comparator.class);
+		assertTrue(comparator instanceof InterfaceAdapter);
+		assertSame(comparator, interpreter.getInterface(Comparator.class));
+		assertEquals(-2, comparator.compare("a", "abc"));
+	}
+
+
+	@Test
+	public void primitive_args_and_return() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.eval("long apply(int i, double d) { return (long) (i * d); }");
+		final LongFunction function = (LongFunction) interpreter.getInterface(LongFunction.class);
+		assertEquals(21L, function.apply(7, 3.0));
+	}
+
+
+	@Test
+	public void object_protocol_defaults() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		final Runnable runnable = (Runnable) interpreter.getInterface(Runnable.class);
+		assertTrue(runnable.equals(runnable));
+		assertFalse(runnable.equals(null));
+		assertNotNull(runnable.toString());
+		assertTrue(runnable.toString().contains("implements: java.lang.Runnable"));
+		interpreter.eval("toString() { return \"scripted\"; }");
+		assertEquals("scripted", runnable.toString());
+	}
+
+
+	@Test
+	public void overload_is_chosen_by_argument_types() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.eval("int compare(Object a, Object b) { return 100; }");
+		interpreter.eval("int compare(String a, String b) { return 7; }");
+		final Comparator comparator = (Comparator) interpreter.getInterface(Comparator.class);
+		assertEquals(7, comparator.compare("x", "y"));
+		assertEquals(100, comparator.compare(1, 2));
+	}
+
+
+	@Test
+	public void redefined_method_is_relinked() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.eval("call() { return 1; }");
+		final Callable callable = (Callable) interpreter.getInterface(Callable.class);
+		assertEquals(1, callable.call());
+		interpreter.eval("call() { return 2; }");
+		assertEquals(2, callable.call());
+	}
+
+
+	@Test
+	public void declared_exception_is_delivered() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.eval("call() { throw new java.io.IOException(\"boom\"); }");
+		final Callable callable = (Callable) interpreter.getInterface(Callable.class);
+		try {
+			callable.call();
+			fail("exception expected");
+		} catch (IOException e) {
+			assertEquals("boom", e.getMessage());
+		}
+	}
+
+
+	public interface LongFunction {
+		long apply(int i, double d);
+	}
+}
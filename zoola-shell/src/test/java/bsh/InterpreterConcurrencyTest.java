@@ -3,6 +3,12 @@ package bsh;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.io.StringWriter;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class InterpreterConcurrencyTest {
@@ -79,6 +85,67 @@ public class InterpreterConcurrencyTest {
 	}
 
 
+	@Test
+	public void multi_threaded_class_definition() throws Exception {
+		final AtomicInteger counter = new AtomicInteger();
+		final Interpreter shared = new Interpreter();
+		final Runnable runnable = new Runnable() {
+			public void run() {
+				try {
+					final int i = counter.incrementAndGet();
+					// a class per interpreter, as when loading scripts in parallel
+					final Object o = new Interpreter().eval(
+							"class Tenant { Object echo(Object o) { return o; } }" +
+							"return new Tenant().echo(" + i + ");");
+					Assert.assertEquals(i, o);
+					// a few names defined concurrently through one class manager
+					final String className = "Shared" + (i % 3);
+					final NameSpace ns = new NameSpace(shared.getNameSpace(), "task" + i);
+					final Object p = shared.eval(
+							"class " + className + " { Object echo(Object o) { return o; } }" +
+							"return new " + className + "().echo(" + i + ");", ns);
+					Assert.assertEquals(i, p);
+				} catch (final EvalError evalError) {
+					throw new RuntimeException(evalError);
+				}
+			}
+		};
+		TestUtil.measureConcurrentTime(runnable, 10, 10, 10);
+	}
+
+
+	@Test
+	public void multi_threaded_script_engine() throws Exception {
+		final BshScriptEngineFactory factory = new BshScriptEngineFactory();
+		Assert.assertEquals("MULTITHREADED", factory.getParameter("THREADING"));
+		final ScriptEngine engine = factory.getScriptEngine();
+		engine.eval("twice(x) { return x * 2; }");
+		final AtomicInteger counter = new AtomicInteger();
+		final Runnable runnable = new Runnable() {
+			public void run() {
+				try {
+					final int i = counter.incrementAndGet();
+					// a context per call, as in a service using a shared engine
+					final ScriptContext context = new SimpleScriptContext();
+					final StringWriter out = new StringWriter();
+					context.setWriter(out);
+					context.setAttribute("i", i, ScriptContext.ENGINE_SCOPE);
+					final Object o = engine.eval("print(\"out\" + i); return i + 1;", context);
+					Assert.assertEquals(i + 1, o);
+					Assert.assertEquals("out" + i, out.toString().trim());
+					// calls in the shared default context
+					Assert.assertEquals(2 * i, ((Invocable) engine).invokeFunction("twice", i));
+				} catch (final ScriptException e) {
+					throw new RuntimeException(e);
+				} catch (final NoSuchMethodException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		TestUtil.measureConcurrentTime(runnable, 30, 30, 20);
+	}
+
+
 	private This createCallable() throws EvalError {
 		final Interpreter interpreter = new Interpreter();
 		return (This) interpreter.eval(script);
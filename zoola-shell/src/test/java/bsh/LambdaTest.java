@@ -0,0 +1,145 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class LambdaTest {
+
+	@Test
+	public void lambda_as_comparator_argument() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("[9, 7, 5, 3, 1] [a, bb, ccc]", TestUtil.eval(compiled,
+					"l = new ArrayList(Arrays.asList(new Integer[] { 3, 1, 9, 5, 7 }));",
+					"Collections.sort(l, (a, b) -> b - a);",
+					"s = new ArrayList(Arrays.asList(new String[] { \"ccc\", \"a\", \"bb\" }));",
+					"Collections.sort(s, (String a, String b) -> { return a.length() - b.length(); });",
+					"return l + \" \" + s;"));
+		}
+	}
+
+
+	@Test
+	public void lambda_implements_interface_for_java() throws Exception {
+		final Object[] oa = (Object[]) TestUtil.eval(true,
+				"Comparator c = (a, b) -> a.compareTo(b);",
+				"return new Object[] { c, (java.util.concurrent.Callable) () -> \"called\" };");
+		final Comparator comparator = (Comparator) oa[0];
+		assertTrue(comparator.compare("a", "b") < 0);
+		assertEquals(0, comparator.compare("b", "b"));
+		assertEquals("called", ((Callable) oa[1]).call());
+		assertEquals(comparator, comparator);
+		assertTrue(comparator.toString().contains("implementing java.util.Comparator"));
+		assertNotSame(comparator.getClass(), oa[1].getClass());
+	}
+
+
+	@Test
+	public void adapter_class_is_shared() throws Exception {
+		final Object[] oa = (Object[]) TestUtil.eval(false,
+				"Runnable a = () -> { };",
+				"Runnable b = () -> { };",
+				"return new Object[] { a, b };");
+		assertSame(oa[0].getClass(), oa[1].getClass());
+		assertNotSame(oa[0], oa[1]);
+	}
+
+
+	@Test
+	public void locals_are_captured_by_value() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("0:0 1:10 2:20 x", TestUtil.eval(compiled,
+					"l = new ArrayList();",
+					"for (int i = 0; i < 3; i++) {",
+						"int k = i * 10;",
+						"l.add((java.util.concurrent.Callable) () -> i + \":\" + k);",
+					"}",
+					"f() { String s = \"x\"; java.util.concurrent.Callable c = () -> s; s = \"y\"; return c; }",
+					"return l.get(0).call() + \" \" + l.get(1).call() + \" \" + l.get(2).call() + \" \" + f().call();"));
+		}
+	}
+
+
+	@Test
+	public void assigned_variables_stay_live() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals(3, TestUtil.eval(compiled,
+					"counter = 0;",
+					"Runnable inc = () -> counter++;",
+					"inc.run(); inc.run();",
+					"Runnable add = () -> { counter = counter + 1; };",
+					"add.run();",
+					"return counter;"));
+		}
+	}
+
+
+	@Test
+	public void lambda_returned_from_method() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals(15, TestUtil.eval(compiled,
+					"adder(int n) { return x -> x + n; }",
+					"Comparator c = (a, b) -> adder(a).invoke(new Object[] { b });",
+					"return c.compare(5, 10);"));
+		}
+	}
+
+
+	@Test
+	public void exceptions_are_delivered() throws Exception {
+		final Callable callable = (Callable) TestUtil.eval(false,
+				"return (java.util.concurrent.Callable) () -> { throw new java.io.IOException(\"io\"); };");
+		try {
+			callable.call();
+			fail("IOException");
+		} catch (final java.io.IOException e) {
+			assertEquals("io", e.getMessage());
+		}
+		final Runnable runnable = (Runnable) TestUtil.eval(false,
+				"return (Runnable) () -> { throw new java.io.IOException(\"io\"); };");
+		try {
+			runnable.run();
+			fail("UndeclaredThrowableException");
+		} catch (final java.lang.reflect.UndeclaredThrowableException e) {
+			assertTrue(e.getCause() instanceof java.io.IOException);
+		}
+	}
+
+
+	@Test
+	public void lambda_errors() throws Exception {
+		final String[][] scripts = {
+				{ "List l = x -> x;", "Cannot cast bsh.Lambda to java.util.List" },
+				{ "Comparator c = (a, b) -> \"x\";", "c.compare(1, 2);", "Incorrect type returned from lambda" },
+		};
+		for (final boolean compiled : new boolean[] { false, true }) {
+			for (final String[] script : scripts) {
+				final String expected = script[script.length - 1];
+				try {
+					TestUtil.eval(compiled, java.util.Arrays.asList(script).subList(0, script.length - 1).toArray(new String[0]));
+					fail(expected);
+				} catch (final EvalError e) {
+					assertTrue(e.getMessage(), e.getMessage().contains(expected));
+				}
+			}
+		}
+	}
+
+
+	@Test
+	public void minus_greater_is_still_an_expression() throws Exception {
+		assertEquals(true, TestUtil.eval(false,
+				"x = 3;",
+				"y = (x) - 1;",
+				"return x-->y;"));
+	}
+}
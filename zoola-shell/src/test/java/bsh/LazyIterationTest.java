@@ -0,0 +1,108 @@
+package bsh;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(FilteredTestRunner.class)
+public class LazyIterationTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void lines_of_mapped_file() throws Exception {
+		final File file = write("first\r\n\nthird line is longer than the window\nlast");
+		final List<String> expected = Arrays.asList("first", "", "third line is longer than the window", "last");
+		// windows smaller than a line, at a line break and larger than the file
+		for (int window : new int[] { 1, 4, 7, 1024 }) {
+			assertEquals("window " + window, expected, lines(new MappedLineIterator(file, window)));
+		}
+		assertEquals(Arrays.asList("a", "b"), lines(new MappedLineIterator(write("a\nb\n"), 3)));
+		assertEquals(new ArrayList<String>(), lines(new MappedLineIterator(write(""), 3)));
+		assertEquals(Arrays.asList("été"), lines(new MappedLineIterator(write("été"), 2)));
+	}
+
+
+	@Test
+	public void path_and_stream() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.set("file", write("x\ny"));
+		assertEquals("x,y,", interpreter.eval(
+				"s = \"\"; for (line : java.nio.file.Paths.get(file.getPath())) s = s + line + \",\"; return s;"));
+		assertEquals("a,b,", interpreter.eval(
+				"s = \"\"; for (e : java.util.Arrays.asList(new Object[] { \"a\", \"b\" }).stream()) s = s + e + \",\"; return s;"));
+	}
+
+
+	@Test
+	public void buffered_reader() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.set("reader", new java.io.BufferedReader(new StringReader("a\nb\nc")));
+		assertEquals("a,b,c,", interpreter.eval("s = \"\"; for (String line : reader) s = s + line + \",\"; return s;"));
+	}
+
+
+	@Test
+	public void registered_strategy_takes_precedence() throws Exception {
+		final CollectionManager manager = CollectionManager.getCollectionManager();
+		manager.registerIterationStrategy(Countdown.class, new IterationStrategy() {
+			public Iterator iterator(final Object iteratee) {
+				final List<Integer> values = new ArrayList<Integer>();
+				for (int i = ((Countdown) iteratee).from; i > 0; i--) {
+					values.add(i);
+				}
+				return values.iterator();
+			}
+		});
+		final Interpreter interpreter = new Interpreter();
+		interpreter.set("countdown", new Countdown(3));
+		assertEquals("321", interpreter.eval("s = \"\"; for (i : countdown) s = s + i; return s;"));
+	}
+
+
+	public static class Countdown implements Iterable<Object> {
+		final int from;
+
+		Countdown(final int from) {
+			this.from = from;
+		}
+
+		public Iterator<Object> iterator() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+
+	private File write(final String text) throws Exception {
+		final File file = folder.newFile();
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+
+	private static List<String> lines(final Iterator<?> iterator) {
+		final List<String> lines = new ArrayList<String>();
+		while (iterator.hasNext()) {
+			lines.add((String) iterator.next());
+		}
+		return lines;
+	}
+}
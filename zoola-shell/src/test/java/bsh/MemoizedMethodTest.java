@@ -0,0 +1,117 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class MemoizedMethodTest {
+
+	private static final Class[] INT = { Integer.TYPE };
+
+
+	@Test
+	public void results_are_cached_by_argument() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		assertEquals("15:3", interpreter.eval(
+				"calls = 0;"
+				+ "memoized int square(int x) { calls++; return x * x; }"
+				+ "total = 0;"
+				+ "for (int i = 0; i < 10; i++) total += square(i % 3);"
+				+ "return total + \":\" + calls;"));
+		final MemoCache cache = interpreter.getNameSpace().getMemoCache("square", INT);
+		assertEquals(7, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(3, cache.size());
+		assertNull(interpreter.getNameSpace().getMemoCache("missing", INT));
+	}
+
+
+	@Test
+	public void recursive_memoized_method() throws Exception {
+		assertEquals(12586269025L, TestUtil.eval(
+				"public static memoized long fib(int n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }",
+				"return fib(50);"));
+	}
+
+
+	@Test
+	public void untyped_arguments_are_unwrapped() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		assertEquals(2, interpreter.eval(
+				"calls = 0;"
+				+ "memoized describe(a, b) { calls++; return a + \"/\" + b; }"
+				+ "describe(1, \"x\"); describe(new Integer(1), \"x\"); describe(1, null); describe(1, null);"
+				+ "return calls;"));
+	}
+
+
+	@Test
+	public void size_and_expiry_limits() throws Exception {
+		final Interpreter interpreter = new Interpreter();
+		interpreter.eval("calls = 0; memoized int id(int x) { calls++; return x; }");
+		final MemoCache cache = interpreter.getNameSpace().getMemoCache("id", INT);
+		cache.setMaximumSize(2);
+		interpreter.eval("id(1); id(2); id(3); id(3); id(1);");
+		assertEquals(4, interpreter.eval("return calls;"));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getEvictions());
+
+		cache.setExpiry(1);
+		interpreter.eval("id(5);");
+		Thread.sleep(20);
+		interpreter.eval("id(5);");
+		assertEquals(6, interpreter.eval("return calls;"));
+	}
+
+
+	@Test
+	public void exceptions_are_not_cached() throws Exception {
+		assertEquals("failed 2", TestUtil.eval(
+				"fail = true;",
+				"memoized int check(int x) { if (fail) throw new IllegalStateException(\"failed\"); return x; }",
+				"s = \"\";",
+				"try { check(2); } catch (IllegalStateException e) { s = e.getMessage(); }",
+				"fail = false;",
+				"return s + \" \" + check(2);"));
+	}
+
+
+	@Test
+	public void memoized_is_still_a_name() throws Exception {
+		assertEquals(6, TestUtil.eval(
+				"memoized(x) { return x + 1; }",
+				"memoized = 2;",
+				"return memoized(memoized) + 3;"));
+	}
+
+
+	@Test
+	public void memoized_is_a_method_modifier_only() throws Exception {
+		try {
+			TestUtil.eval("memoized int x = 1;");
+			fail("memoized variable");
+		} catch (final EvalError e) {
+			assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof ParseException);
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("cannot be declared 'memoized'"));
+		}
+	}
+
+
+	@Test
+	public void memoized_instance_methods() throws Exception {
+		assertEquals("11 12 11", TestUtil.eval(
+				"class Offset {",
+					"int base;",
+					"Offset(int base) { this.base = base; }",
+					"memoized int add(int x) { return base + x; }",
+				"}",
+				"a = new Offset(10);",
+				"b = new Offset(11);",
+				"return a.add(1) + \" \" + b.add(1) + \" \" + a.add(1);"));
+	}
+}
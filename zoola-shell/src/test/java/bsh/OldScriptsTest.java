@@ -28,22 +28,27 @@ public class OldScriptsTest {
 	}
 
 	public static junit.framework.Test suite() throws Exception {
+		return suite(false);
+	}
+
+
+	static junit.framework.Test suite(final boolean closureCompilation) throws Exception {
 		final TestSuite suite = new TestSuite();
         String path = OldScriptsTest.class.getResource("/test-scripts/Fail.bsh").getPath();
         final File baseFailScript = new File(path);
 		final File baseDir = new File(baseFailScript.getParent());
 		try {
-			new TestBshScript(baseFailScript).runTest();
+			new TestBshScript(baseFailScript, closureCompilation).runTest();
 			Assert.fail("Fail.bsh should fail!");
 		} catch (final AssertionError e) {
 			// expected
 		}
-		addTests(baseDir, suite);
+		addTests(baseDir, suite, closureCompilation);
 		return suite;
 	}
 
 
-	private static void addTests(File baseDir, TestSuite suite) {
+	private static void addTests(File baseDir, TestSuite suite, boolean closureCompilation) {
 		final File[] files = baseDir.listFiles();
 		if (files != null) {
 			for (final File file : files) {
@@ -53,7 +58,7 @@ public class OldScriptsTest {
 						System.out.println("skipping test " + file);
 						continue;
 					}
-					suite.addTest(new TestBshScript(file));
+					suite.addTest(new TestBshScript(file, closureCompilation));
 				}
 			}
 		}
@@ -63,9 +68,16 @@ public class OldScriptsTest {
 	static class TestBshScript extends TestCase {
 
 		private File _file;
+		private boolean _closureCompilation;
 
 		public TestBshScript(final File file) {
+			this(file, false);
+		}
+
+
+		public TestBshScript(final File file, final boolean closureCompilation) {
 			_file = file;
+			_closureCompilation = closureCompilation;
 		}
 
 
@@ -79,6 +91,7 @@ public class OldScriptsTest {
 		public void runTest() throws Exception {
 			System.out.println("file is " + _file.getAbsolutePath());
 			final Interpreter interpreter = new Interpreter();
+			interpreter.setClosureCompilation(_closureCompilation);
 			final String path = '\"' + _file.getParentFile().getAbsolutePath().replace('\\', '/') + '\"';
 			interpreter.eval("path=" + path + ';');
 			interpreter.eval("cd(" + path + ");");
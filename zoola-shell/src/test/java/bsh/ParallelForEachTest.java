@@ -0,0 +1,120 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class ParallelForEachTest {
+
+	@Test
+	public void reductions_are_merged() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("332833500 1000 -499500 499500", TestUtil.eval(compiled,
+					"list = new ArrayList();",
+					"for (int i = 0; i < 1000; i++) list.add(i);",
+					"sum = 0; count = 0; long down = 0; long total = 0;",
+					"parallel for (x : list) {",
+						"square = x * x;",
+						"sum += square;",
+						"count++;",
+						"down -= x;",
+					"}",
+					"parallel for (int x : list.toArray()) total += x;",
+					"return sum + \" \" + count + \" \" + down + \" \" + total;"));
+		}
+	}
+
+
+	@Test
+	public void body_reads_string_appended_in_place() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals(100000, TestUtil.eval(compiled,
+					"String s = \"\";",
+					"for (int i = 0; i < 100; i++) s += \"x\";",
+					"n = 0;",
+					"parallel for (x : new int[1000]) n += s.length();",
+					"return n;"));
+		}
+	}
+
+
+	@Test
+	public void string_and_product_reductions_keep_order() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("s:abcdefghij 3628800.0", TestUtil.eval(compiled,
+					"s = \"s:\"; product = 1.0;",
+					"parallel for (c : \"abcdefghij\") { s += c; product *= c - 'a' + 1; }",
+					"return s + \" \" + product;"));
+		}
+	}
+
+
+	@Test
+	public void body_reads_enclosing_variables_and_methods() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("[11, 12, 13, 21, 22, 23]", TestUtil.eval(compiled,
+					"base = 10;",
+					"add(a, b) { return a + b; }",
+					"out = Collections.synchronizedList(new ArrayList());",
+					"parallel for (x : new int[] { 1, 2 })",
+						"parallel for (y : Arrays.asList(new Integer[] { 1, 2, 3 }))",
+							"out.add(add(base * x, y));",
+					"Collections.sort(out);",
+					"return out.toString();"));
+		}
+	}
+
+
+	@Test
+	public void break_and_continue() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("10 true", TestUtil.eval(compiled,
+					"hits = new java.util.concurrent.atomic.AtomicInteger();",
+					"seen = new java.util.concurrent.atomic.AtomicInteger();",
+					"list = new ArrayList();",
+					"for (int i = 0; i < 100; i++) list.add(i);",
+					"parallel for (x : list) { if (x % 10 != 0) continue; hits.incrementAndGet(); }",
+					"parallel for (x : list) { seen.incrementAndGet(); break; }",
+					"return hits + \" \" + (seen.get() < 100);"));
+		}
+	}
+
+
+	@Test
+	public void parallel_is_still_a_name() throws Exception {
+		assertEquals(4, TestUtil.eval(false,
+				"parallel = 3;",
+				"parallel++;",
+				"return parallel;"));
+	}
+
+
+	@Test
+	public void parallel_for_errors() throws Exception {
+		final String[][] scripts = {
+				{ "max = 0;", "parallel for (x : new int[] { 1, 2 }) max = Math.max(max, x);",
+						"Cannot assign variable max of the enclosing scope in a parallel for" },
+				{ "f() { parallel for (x : new int[] { 1, 2 }) return x; }", "f();", "Cannot return from a parallel for" },
+				{ "f() { parallel for (x : new int[] { 1, 2 }) yield x; }", "f();", "Cannot yield inside a parallel for" },
+				{ "flag = false;", "parallel for (x : new int[] { 1 }) flag += x;", "Cannot reduce variable flag" },
+				{ "parallel for (x : new int[] { 1, 2, 3 }) if (x == 3) throw new IllegalStateException(\"three\");", "three" },
+		};
+		for (final boolean compiled : new boolean[] { false, true }) {
+			for (final String[] script : scripts) {
+				final String expected = script[script.length - 1];
+				try {
+					TestUtil.eval(compiled, Arrays.asList(script).subList(0, script.length - 1).toArray(new String[0]));
+					fail(expected);
+				} catch (final EvalError e) {
+					assertTrue(e.getMessage(), e.getMessage().contains(expected));
+				}
+			}
+		}
+	}
+}
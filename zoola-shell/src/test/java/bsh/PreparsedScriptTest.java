@@ -4,8 +4,18 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+import java.io.StringWriter;
 import java.net.URL;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -102,4 +112,52 @@ public class PreparsedScriptTest {
 		f.invoke(Collections.singletonMap("result", result));
 		Assert.assertEquals(84, result.get());
 	}
+
+
+	@Test
+	public void context_is_read_on_demand() throws Exception {
+		final Map<String, Integer> reads = new HashMap<String, Integer>();
+		final Map<String, Object> context = new HashMap<String, Object>() {
+			@Override
+			public Object get(Object key) {
+				final Integer count = reads.get(key);
+				reads.put((String) key, count == null ? 1 : count + 1);
+				return super.get(key);
+			}
+		};
+		for (int i = 0; i < 300; i++) {
+			context.put("v" + i, i);
+		}
+		context.put("a", 20);
+		context.put("b", 2);
+		final PreparsedScript f = new PreparsedScript("a = a + b; return a + b + a;", _classLoader);
+		assertEquals(46, f.invoke(context));
+		assertEquals(Integer.valueOf(1), reads.get("a"));
+		assertEquals(Integer.valueOf(1), reads.get("b"));
+		for (int i = 0; i < 300; i++) {
+			Assert.assertNull(reads.get("v" + i));
+		}
+		// assignments stay in the invocation
+		assertEquals(20, context.get("a"));
+		assertEquals(46, f.invoke(context));
+	}
+
+
+	@Test
+	public void compiled_script_resolves_shadowed_bindings() throws Exception {
+		final ScriptEngine engine = new BshScriptEngineFactory().getScriptEngine();
+		final CompiledScript script = ((Compilable) engine).compile("print(x + y); return x;");
+		final ScriptContext context = new SimpleScriptContext();
+		final Bindings global = new SimpleBindings();
+		global.put("x", "global");
+		global.put("y", "global");
+		context.setBindings(global, ScriptContext.GLOBAL_SCOPE);
+		context.getBindings(ScriptContext.ENGINE_SCOPE).put("x", "engine");
+		final StringWriter writer = new StringWriter();
+		context.setWriter(writer);
+		assertEquals("engine", script.eval(context));
+		context.getBindings(ScriptContext.ENGINE_SCOPE).remove("x");
+		assertEquals("global", script.eval(context));
+		assertEquals("engineglobal\nglobalglobal\n", writer.toString());
+	}
 }
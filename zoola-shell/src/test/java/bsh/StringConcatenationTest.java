@@ -0,0 +1,109 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class StringConcatenationTest {
+
+	@Test
+	public void operators_before_first_string_are_applied() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("3x|x12|3x12|98b|6|nulla", TestUtil.eval(compiled,
+					"f() {",
+						"Object o = null;",
+						"int i = 1;",
+						"return 1 + 2 + \"x\" + \"|\" + \"x\" + 1 + 2 + \"|\"",
+							"+ (i + 2 + \"x\" + 1 + 2) + \"|\" + ('a' + i + \"b\") + \"|\"",
+							"+ (1 + 2 + 3) + \"|\" + (o + \"a\");",
+					"}",
+					"return f();"));
+		}
+	}
+
+
+	@Test
+	public void operands_are_evaluated_in_order() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("1a2b3c:1a2b3c", TestUtil.eval(compiled,
+					"log = \"\";",
+					"next(x) { log = log + x; return x; }",
+					"f() { s = next(1) + next(\"a\") + next(2) + next(\"b\") + next(3) + next(\"c\"); return log + \":\" + s; }",
+					"return f();"));
+		}
+	}
+
+
+	@Test
+	public void error_in_chain() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			try {
+				TestUtil.eval(compiled, "f() { return new Object() + 1 + \"x\"; }", "f();");
+				fail("Object + int");
+			} catch (final EvalError e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("inappropriate for objects"));
+			}
+		}
+	}
+
+
+	@Test
+	public void loop_appends_are_visible_when_read() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("01234|012|5", TestUtil.eval(compiled,
+					"f() {",
+						"String s = \"\";",
+						"String seen = null;",
+						"int length = 0;",
+						"for (int i = 0; i < 5; i++) {",
+							"s += i;",
+							"if (i == 2) seen = s;",
+						"}",
+						"for (c : s.toCharArray()) length++;",
+						"return s + \"|\" + seen + \"|\" + length;",
+					"}",
+					"return f();"));
+			assertEquals("abcabc", TestUtil.eval(compiled,
+					"String s = \"\";",
+					"i = 0;",
+					"while (i++ < 2) { for (c : new char[] { 'a', 'b', 'c' }) s += c; }",
+					"return s;"));
+		}
+	}
+
+
+	@Test
+	public void lhs_is_read_before_rhs() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("ayy", TestUtil.eval(compiled,
+					"String s = \"a\";",
+					"for (int i = 0; i < 2; i++) s += (s = \"y\");",
+					"return s;"));
+			// the appends of g() are overwritten, as in Java
+			assertEquals("ar", TestUtil.eval(compiled,
+					"String s = \"a\";",
+					"g() { for (int j = 0; j < 2; j++) s += \"g\"; return \"r\"; }",
+					"for (int i = 0; i < 1; i++) s += g();",
+					"return s;"));
+		}
+	}
+
+
+	@Test
+	public void append_value_outside_loop() throws Exception {
+		for (final boolean compiled : new boolean[] { false, true }) {
+			assertEquals("ab|ab", TestUtil.eval(compiled,
+					"String s = \"a\";",
+					"t = (s += \"b\");",
+					"return t + \"|\" + s;"));
+			assertEquals("a0b1", TestUtil.eval(compiled,
+					"s = \"a\";",
+					"for (int i = 0; i < 2; i++) { s += i; if (i == 0) s += \"b\"; }",
+					"return s;"));
+		}
+	}
+}
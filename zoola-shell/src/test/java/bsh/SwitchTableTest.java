@@ -0,0 +1,74 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(FilteredTestRunner.class)
+public class SwitchTableTest {
+
+	private static final String DECODE =
+			"decode(x) { switch (x) {" +
+				" case 1: return \"one\";" +
+				" case 2: case 3: return \"two or three\";" +
+				" case -4: s = \"minus four, \";" +
+				" case 'a': s = s + \"a\"; break;" +
+				" case 1000000: return \"million\";" +
+				" default: return \"other\";" +
+			" } return s; }";
+
+
+	@Test
+	public void integral_labels() throws Exception {
+		assertEquals("one", TestUtil.eval(DECODE, "return decode(1);"));
+		assertEquals("two or three", TestUtil.eval(DECODE, "return decode(3);"));
+		assertEquals("minus four, a", TestUtil.eval(DECODE, "return decode(-4);"));
+		assertEquals("a", TestUtil.eval(DECODE, "s = \"\"; return decode('a');"));
+		assertEquals("a", TestUtil.eval(DECODE, "s = \"\"; return decode(97L);"));
+		assertEquals("million", TestUtil.eval(DECODE, "return decode(new Integer(1000000));"));
+		assertEquals("other", TestUtil.eval(DECODE, "return decode(5);"));
+	}
+
+
+	@Test(expected = EvalError.class)
+	public void mismatched_value_compared_with_labels() throws Exception {
+		TestUtil.eval(DECODE, "return decode(\"1\");");
+	}
+
+
+	@Test
+	public void string_and_enum_labels() throws Exception {
+		final String code = "f(x) { switch (x) {" +
+				" case \"ping\": return 1;" +
+				" case \"pong\": return 2;" +
+				" case java.util.concurrent.TimeUnit.SECONDS: return 3;" +
+				" default: return 0;" +
+				" } }";
+		assertEquals(1, TestUtil.eval(code, "return f(\"pi\" + \"ng\");"));
+		assertEquals(2, TestUtil.eval(code, "return f(\"pong\");"));
+		assertEquals(3, TestUtil.eval(code, "return f(java.util.concurrent.TimeUnit.SECONDS);"));
+		assertEquals(0, TestUtil.eval(code, "return f(java.util.concurrent.TimeUnit.DAYS);"));
+		assertEquals(0, TestUtil.eval(code, "return f(new Object());"));
+	}
+
+
+	@Test
+	public void default_before_matching_label() throws Exception {
+		final String code = "f(x) { s = \"\"; switch (x) {" +
+				" case 1: s = s + 1;" +
+				" default: s = s + \"d\";" +
+				" case 2: s = s + 2;" +
+				" } return s; }";
+		assertEquals("1d2", TestUtil.eval(code, "return f(1);"));
+		assertEquals("d2", TestUtil.eval(code, "return f(2);"));
+		assertEquals("d2", TestUtil.eval(code, "return f(3);"));
+	}
+
+
+	@Test
+	public void labels_evaluated_in_order() throws Exception {
+		assertEquals(2, TestUtil.eval("a = 1; b = 2; x = 2; switch (x) { case a: return 1; case b: return 2; } return 0;"));
+		assertEquals(0, TestUtil.eval("x = 5; switch (x) { case 1: return 1; case 2.5: return 2; } return 0;"));
+	}
+}
@@ -116,6 +116,17 @@ public class TestUtil {
 	}
 
 
+	public static Object eval(final boolean closureCompilation, final String ... code) throws Exception {
+		StringBuffer buffer = new StringBuffer();
+		for (String s : code) {
+			buffer.append(s).append('\n');
+		}
+		Interpreter interpreter = new Interpreter();
+		interpreter.setClosureCompilation(closureCompilation);
+		return interpreter.eval(buffer.toString());
+	}
+
+
 	static class MeasureRunnable implements Runnable {
 
 		private final CountDownLatch _countDownLatch;
@@ -0,0 +1,98 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(FilteredTestRunner.class)
+public class TypesTest {
+
+	private static final Object[] VALUES = {
+			new Primitive(42), new Primitive((byte) 7), new Primitive('c'), new Primitive(3L),
+			new Primitive(1.5d), new Primitive(true), 42, 'c', 2.5f, "text", new ArrayList<Object>(),
+	};
+
+	private static final Class<?>[] TYPES = {
+			Integer.TYPE, Byte.TYPE, Character.TYPE, Long.TYPE, Double.TYPE, Boolean.TYPE,
+			Integer.class, Long.class, Character.class, Object.class, Number.class, String.class,
+			Collection.class, List.class, Runnable.class,
+	};
+
+
+	@Test
+	public void converters_match_full_conversion() throws Exception {
+		for (int operation : new int[] { Types.CAST, Types.ASSIGNMENT }) {
+			for (Object value : VALUES) {
+				for (Class<?> toType : TYPES) {
+					final String context = value + " to " + toType + " (" + operation + ")";
+					// the second call goes through the cached converter
+					for (int i = 0; i < 2; i++) {
+						assertEquals(context, fullCast(value, toType, operation), cast(value, toType, operation));
+					}
+				}
+			}
+		}
+	}
+
+
+	@Test
+	public void assignability_is_cached() throws Exception {
+		assertTrue(Types.isBshAssignable(Object.class, Integer.TYPE));
+		assertTrue(Types.isBshAssignable(Long.TYPE, Integer.class));
+		assertFalse(Types.isBshAssignable(Integer.TYPE, Long.TYPE));
+		assertFalse(Types.isBshAssignable(String.class, Integer.class));
+		final TypeConverter converter = Types.getConverter(Long.TYPE, Integer.class, Types.ASSIGNMENT);
+		assertSame(converter, Types.getConverter(Long.TYPE, Integer.class, Types.ASSIGNMENT));
+		assertEquals(TypeConverter.UNBOX, converter.kind);
+	}
+
+
+	@Test
+	public void typed_variables_convert_values_of_changing_types() throws Exception {
+		assertEquals(Arrays.asList(1L, 98L, 3L, 4L), TestUtil.eval(
+				"l = new ArrayList();",
+				"for (long x : new Object[] { 1, 'b', (byte) 3, 4L }) l.add(x);",
+				"return l;"
+		));
+	}
+
+
+	@Test
+	public void final_variable_cannot_be_reassigned() throws Exception {
+		try {
+			TestUtil.eval("final int f = 7;", "f = 8;");
+			fail("final variable was reassigned");
+		} catch (EvalError e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Final variable"));
+		}
+	}
+
+
+	private static Object cast(final Object value, final Class<?> toType, final int operation) {
+		try {
+			return Types.castObject(value, toType, operation);
+		} catch (Throwable e) {
+			return e.getClass().getName() + ": " + e.getMessage();
+		}
+	}
+
+
+	private static Object fullCast(final Object value, final Class<?> toType, final int operation) {
+		try {
+			final Class<?> fromType = value instanceof Primitive ? ((Primitive) value).getType() : value.getClass();
+			return Types.castObject(toType, fromType, value, operation, false);
+		} catch (Throwable e) {
+			return e.getClass().getName() + ": " + e.getMessage();
+		}
+	}
+}
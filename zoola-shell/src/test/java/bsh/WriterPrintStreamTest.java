@@ -0,0 +1,59 @@
+package bsh;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(FilteredTestRunner.class)
+public class WriterPrintStreamTest {
+
+	private static final String NL = System.getProperty("line.separator");
+
+
+	@Test
+	public void print_text_to_writer() throws Exception {
+		final StringWriter writer = new StringWriter();
+		final WriterPrintStream out = new WriterPrintStream(writer);
+		out.print("zażółć ");
+		out.print(42);
+		out.println('!');
+		out.printf("%s-%d", "x", 1);
+		out.println();
+		assertEquals("zażółć 42!" + NL + "x-1" + NL, writer.toString());
+		assertFalse(out.checkError());
+	}
+
+
+	@Test
+	public void decode_bytes_split_inside_characters() throws Exception {
+		final String text = "grüße €";
+		final StringBuilder expected = new StringBuilder();
+		final StringWriter writer = new StringWriter();
+		final WriterPrintStream out = new WriterPrintStream(writer);
+		for (int i = 0; i < 500; i++) {
+			for (final byte b : text.getBytes()) {
+				out.write(b);
+			}
+			out.print(i);
+			expected.append(new String(text.getBytes())).append(i);
+		}
+		out.flush();
+		assertEquals(expected.toString(), writer.toString());
+	}
+
+
+	@Test
+	public void bytes_are_written_without_flush() throws Exception {
+		final StringWriter writer = new StringWriter();
+		final WriterPrintStream out = new WriterPrintStream(writer);
+		final byte[] bytes = "a€".getBytes();
+		out.write(bytes[0]);
+		assertEquals("a", writer.toString());
+		out.write(bytes, 1, bytes.length - 1);
+		assertEquals(new String(bytes), writer.toString());
+	}
+}